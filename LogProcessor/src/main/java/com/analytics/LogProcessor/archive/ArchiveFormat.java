@@ -0,0 +1,352 @@
+package com.analytics.LogProcessor.archive;
+
+import com.analytics.LogProcessor.model.EnrichedRecord;
+import com.analytics.LogProcessor.network.IpAddresses;
+import com.github.luben.zstd.Zstd;
+
+import java.net.Inet6Address;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * On-disk layout of the enriched-record archive.
+ *
+ * A segment file is a header (int magic, int version) followed by blocks of up to block-records records
+ * (big endian):
+ * <pre>
+ *  block   : int length (of what follows), int count, long minTime, long maxTime,
+ *            int dictionaryBytes, int rawLength, dictionaries, zstd(columns)
+ *  dicts   : tenants, categories, asns; each varint n, n x string
+ *  columns : 8 x int offset, then time, id, tenant, category, asn, ip, asset, correlationId
+ * </pre>
+ * Times, ids and correlation ids are zigzag varints (times and ids as deltas to the previous row); tenant,
+ * category and asn are varint codes into the block's dictionaries (0 = null); IPs are packed to 4 or 16
+ * bytes behind a one-byte family tag. Strings are a varint length + 1 (0 = null) and UTF-8 bytes.
+ *
+ * The time range and dictionaries sit outside the compressed part, so a reader can skip a block that
+ * cannot match a time, category or ASN filter without decompressing it. A torn last block (crash
+ * mid-append) is shorter than its length says and ends the segment.
+ */
+final class ArchiveFormat {
+
+    static final int MAGIC = 0x4C504541; // "LPEA"
+    static final int VERSION = 1;
+    static final int FILE_HEADER_BYTES = 8;
+    // after the length: count, minTime, maxTime, dictionaryBytes, rawLength
+    static final int BLOCK_HEADER_BYTES = 28;
+    static final String SEGMENT_PREFIX = "enriched-";
+    static final String SEGMENT_SUFFIX = ".lpa";
+
+    static final int COLUMNS = 8;
+    static final int TIME = 0;
+    static final int ID = 1;
+    static final int TENANT = 2;
+    static final int CATEGORY = 3;
+    static final int ASN = 4;
+    static final int IP = 5;
+    static final int ASSET = 6;
+    static final int CORRELATION = 7;
+
+    static final byte IP_NULL = 0;
+    static final byte IP_TEXT = 1;
+    static final byte IP_V4 = 4;
+    static final byte IP_V6 = 6;
+
+    private ArchiveFormat() {
+    }
+
+    static String segmentName(long startMillis) {
+        return SEGMENT_PREFIX + String.format("%013d", startMillis) + SEGMENT_SUFFIX;
+    }
+
+    static boolean isSegment(Path path) {
+        String name = path.getFileName().toString();
+        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+    }
+
+    /**
+     * One encoded block, length prefix included.
+     */
+    static byte[] encodeBlock(List<ArchivedRecord> records, int compressionLevel) {
+        Dictionary tenants = new Dictionary();
+        Dictionary categories = new Dictionary();
+        Dictionary asns = new Dictionary();
+        Bytes[] columns = new Bytes[COLUMNS];
+        for (int c = 0; c < COLUMNS; c++) {
+            columns[c] = new Bytes(records.size() * (c == ASSET ? 16 : c == IP ? 5 : 4));
+        }
+        long minTime = Long.MAX_VALUE;
+        long maxTime = Long.MIN_VALUE;
+        long previousTime = 0;
+        long previousId = 0;
+        for (ArchivedRecord archived : records) {
+            EnrichedRecord record = archived.record();
+            minTime = Math.min(minTime, archived.archivedAt());
+            maxTime = Math.max(maxTime, archived.archivedAt());
+            columns[TIME].putZigZag(archived.archivedAt() - previousTime);
+            previousTime = archived.archivedAt();
+            columns[ID].putZigZag(record.id() - previousId);
+            previousId = record.id();
+            columns[TENANT].putVarLong(tenants.code(archived.tenant()));
+            columns[CATEGORY].putVarLong(categories.code(record.category()));
+            columns[ASN].putVarLong(asns.code(record.asn()));
+            putIp(columns[IP], record.ip());
+            columns[ASSET].putString(record.asset());
+            columns[CORRELATION].putZigZag(record.correlationId());
+        }
+
+        Bytes raw = new Bytes(COLUMNS * Integer.BYTES + Arrays.stream(columns).mapToInt(Bytes::size).sum());
+        int offset = COLUMNS * Integer.BYTES;
+        for (Bytes column : columns) {
+            raw.putInt(offset);
+            offset += column.size();
+        }
+        for (Bytes column : columns) {
+            raw.putBytes(column.buf, 0, column.size());
+        }
+        byte[] compressed = Zstd.compress(Arrays.copyOf(raw.buf, raw.size()), compressionLevel);
+
+        Bytes dictionaries = new Bytes(256);
+        tenants.writeTo(dictionaries);
+        categories.writeTo(dictionaries);
+        asns.writeTo(dictionaries);
+
+        int length = BLOCK_HEADER_BYTES + dictionaries.size() + compressed.length;
+        ByteBuffer block = ByteBuffer.allocate(Integer.BYTES + length);
+        block.putInt(length).putInt(records.size()).putLong(minTime).putLong(maxTime)
+                .putInt(dictionaries.size()).putInt(raw.size())
+                .put(dictionaries.buf, 0, dictionaries.size())
+                .put(compressed);
+        return block.array();
+    }
+
+    static List<String> readDictionary(Cursor cursor) {
+        int size = (int) cursor.readVarLong();
+        List<String> values = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            values.add(cursor.readString());
+        }
+        return values;
+    }
+
+    private static void putIp(Bytes column, String ip) {
+        if (ip == null) {
+            column.putByte(IP_NULL);
+            return;
+        }
+        long v4 = IpAddresses.parseIpv4(ip);
+        if (v4 >= 0) {
+            column.putByte(IP_V4);
+            column.putInt((int) v4);
+            return;
+        }
+        byte[] v6 = IpAddresses.ipv6Bytes(ip);
+        if (v6 != null) {
+            column.putByte(IP_V6);
+            column.putBytes(v6, 0, v6.length);
+            return;
+        }
+        column.putByte(IP_TEXT);
+        column.putString(ip);
+    }
+
+    /**
+     * IPv4 comes back as written; IPv6 in the JDK's full form (e.g. 2001:db8:0:0:0:0:0:1).
+     */
+    static String readIp(Cursor cursor) {
+        byte family = cursor.readByte();
+        switch (family) {
+            case IP_V4 -> {
+                long v4 = cursor.readInt() & 0xFFFFFFFFL;
+                return (v4 >>> 24) + "." + ((v4 >>> 16) & 0xFF) + "." + ((v4 >>> 8) & 0xFF) + "." + (v4 & 0xFF);
+            }
+            case IP_V6 -> {
+                byte[] bytes = cursor.readBytes(16);
+                try {
+                    return Inet6Address.getByAddress(null, bytes, -1).getHostAddress();
+                } catch (UnknownHostException e) {
+                    throw new IllegalStateException("Corrupt IPv6 address in archive block", e);
+                }
+            }
+            case IP_TEXT -> {
+                return cursor.readString();
+            }
+            default -> {
+                return null;
+            }
+        }
+    }
+
+    static void skipIp(Cursor cursor) {
+        byte family = cursor.readByte();
+        switch (family) {
+            case IP_V4 -> cursor.skip(4);
+            case IP_V6 -> cursor.skip(16);
+            case IP_TEXT -> cursor.skipString();
+            default -> {
+                // null, nothing follows
+            }
+        }
+    }
+
+    /**
+     * String to varint code within one block: index + 1, 0 for null.
+     */
+    private static final class Dictionary {
+
+        private final Map<String, Integer> codes = new LinkedHashMap<>();
+
+        int code(String value) {
+            if (value == null) {
+                return 0;
+            }
+            return codes.computeIfAbsent(value, v -> codes.size() + 1);
+        }
+
+        void writeTo(Bytes out) {
+            out.putVarLong(codes.size());
+            for (String value : codes.keySet()) {
+                out.putString(value);
+            }
+        }
+    }
+
+    /**
+     * Growable byte buffer with the varint and string encodings of the format.
+     */
+    static final class Bytes {
+
+        private byte[] buf;
+        private int size;
+
+        Bytes(int capacity) {
+            this.buf = new byte[Math.max(16, capacity)];
+        }
+
+        int size() {
+            return size;
+        }
+
+        void putByte(int value) {
+            ensure(1);
+            buf[size++] = (byte) value;
+        }
+
+        void putInt(int value) {
+            ensure(4);
+            buf[size++] = (byte) (value >>> 24);
+            buf[size++] = (byte) (value >>> 16);
+            buf[size++] = (byte) (value >>> 8);
+            buf[size++] = (byte) value;
+        }
+
+        void putBytes(byte[] bytes, int offset, int length) {
+            ensure(length);
+            System.arraycopy(bytes, offset, buf, size, length);
+            size += length;
+        }
+
+        void putVarLong(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buf[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buf[size++] = (byte) value;
+        }
+
+        void putZigZag(long value) {
+            putVarLong((value << 1) ^ (value >> 63));
+        }
+
+        void putString(String value) {
+            if (value == null) {
+                putVarLong(0);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            putVarLong(bytes.length + 1L);
+            putBytes(bytes, 0, bytes.length);
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, size + extra));
+            }
+        }
+    }
+
+    /**
+     * Read position in a decoded byte array.
+     */
+    static final class Cursor {
+
+        private final byte[] buf;
+        private int pos;
+
+        Cursor(byte[] buf, int pos) {
+            this.buf = buf;
+            this.pos = pos;
+        }
+
+        byte readByte() {
+            return buf[pos++];
+        }
+
+        int readInt() {
+            int value = ((buf[pos] & 0xFF) << 24) | ((buf[pos + 1] & 0xFF) << 16)
+                    | ((buf[pos + 2] & 0xFF) << 8) | (buf[pos + 3] & 0xFF);
+            pos += 4;
+            return value;
+        }
+
+        byte[] readBytes(int length) {
+            byte[] bytes = Arrays.copyOfRange(buf, pos, pos + length);
+            pos += length;
+            return bytes;
+        }
+
+        long readVarLong() {
+            long value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = buf[pos++];
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            return value;
+        }
+
+        long readZigZag() {
+            long value = readVarLong();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        String readString() {
+            int length = (int) readVarLong();
+            if (length == 0) {
+                return null;
+            }
+            String value = new String(buf, pos, length - 1, StandardCharsets.UTF_8);
+            pos += length - 1;
+            return value;
+        }
+
+        void skipString() {
+            int length = (int) readVarLong();
+            pos += Math.max(0, length - 1);
+        }
+
+        void skip(int length) {
+            pos += length;
+        }
+    }
+}
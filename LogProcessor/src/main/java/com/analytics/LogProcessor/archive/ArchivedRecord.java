@@ -0,0 +1,10 @@
+package com.analytics.LogProcessor.archive;
+
+import com.analytics.LogProcessor.model.EnrichedRecord;
+
+/**
+ * An enriched record as kept in the local archive (or in the recent-record store).
+ *
+ * @param archivedAt epoch millis the enriched record was confirmed on the enriched queue
+ */
+public record ArchivedRecord(long archivedAt, String tenant, EnrichedRecord record) {}
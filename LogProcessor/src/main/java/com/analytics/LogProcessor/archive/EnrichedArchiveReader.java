@@ -0,0 +1,210 @@
+package com.analytics.LogProcessor.archive;
+
+import com.analytics.LogProcessor.archive.ArchiveFormat.Cursor;
+import com.analytics.LogProcessor.model.EnrichedRecord;
+import com.github.luben.zstd.Zstd;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * Scans the segments written by {@link EnrichedRecordArchive}, oldest first.
+ *
+ * Blocks are filtered on their uncompressed headers first: a block whose time range misses the filter,
+ * or whose dictionaries do not hold the category or ASN asked for, is skipped with a seek. Only the
+ * remaining blocks are read, decompressed and decoded, and within them only the rows that match are
+ * turned into records. Reading the segment the archive is still appending to is safe; a block that is
+ * not completely written yet is not seen.
+ */
+public final class EnrichedArchiveReader {
+
+    private EnrichedArchiveReader() {
+    }
+
+    /**
+     * Hands every archived record matching the filter to {@code sink} until it returns false.
+     */
+    public static ScanStats scan(Path directory, Filter filter, Predicate<ArchivedRecord> sink) throws IOException {
+        List<Path> segments;
+        if (!Files.isDirectory(directory)) {
+            return new ScanStats(0, 0, 0, 0, 0);
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            segments = files.filter(ArchiveFormat::isSegment).sorted().toList();
+        }
+        Scan scan = new Scan(filter, sink);
+        for (Path segment : segments) {
+            try {
+                if (!scan.segment(segment)) {
+                    break;
+                }
+            } catch (NoSuchFileException e) {
+                // removed by retention while we were listing
+            }
+        }
+        return new ScanStats(scan.segments, scan.blocks, scan.blocksSkipped, scan.recordsDecoded, scan.matched);
+    }
+
+    /**
+     * @param from     inclusive lower bound of the archive time, null for none
+     * @param to       exclusive upper bound of the archive time, null for none
+     * @param category category as enrichment reports it (technique id), null for any
+     * @param asn      ASN as enrichment reports it, null for any
+     */
+    public record Filter(Instant from, Instant to, String category, String asn) {
+
+        long fromMillis() {
+            return from == null ? Long.MIN_VALUE : from.toEpochMilli();
+        }
+
+        long toMillis() {
+            return to == null ? Long.MAX_VALUE : to.toEpochMilli();
+        }
+    }
+
+    /**
+     * @param recordsDecoded rows of the blocks that had to be decompressed
+     */
+    public record ScanStats(int segments, long blocks, long blocksSkipped, long recordsDecoded, long matched) {}
+
+    private static final class Scan {
+
+        private final Filter filter;
+        private final Predicate<ArchivedRecord> sink;
+        private final long from;
+        private final long to;
+        private int segments;
+        private long blocks;
+        private long blocksSkipped;
+        private long recordsDecoded;
+        private long matched;
+
+        Scan(Filter filter, Predicate<ArchivedRecord> sink) {
+            this.filter = filter;
+            this.sink = sink;
+            this.from = filter.fromMillis();
+            this.to = filter.toMillis();
+        }
+
+        /**
+         * @return false once the sink asked to stop
+         */
+        boolean segment(Path path) throws IOException {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                long size = channel.size();
+                ByteBuffer fileHeader = ByteBuffer.allocate(ArchiveFormat.FILE_HEADER_BYTES);
+                if (size < ArchiveFormat.FILE_HEADER_BYTES || !readFully(channel, fileHeader, 0)
+                        || fileHeader.getInt(0) != ArchiveFormat.MAGIC || fileHeader.getInt(4) != ArchiveFormat.VERSION) {
+                    return true;
+                }
+                segments++;
+                ByteBuffer header = ByteBuffer.allocate(Integer.BYTES + ArchiveFormat.BLOCK_HEADER_BYTES);
+                long position = ArchiveFormat.FILE_HEADER_BYTES;
+                while (position + header.capacity() <= size) {
+                    header.clear();
+                    if (!readFully(channel, header, position)) {
+                        break;
+                    }
+                    int length = header.getInt(0);
+                    long next = position + Integer.BYTES + length;
+                    if (length < ArchiveFormat.BLOCK_HEADER_BYTES || next > size) {
+                        break; // torn tail
+                    }
+                    blocks++;
+                    if (!block(channel, header, position + header.capacity(), length - ArchiveFormat.BLOCK_HEADER_BYTES)) {
+                        return false;
+                    }
+                    position = next;
+                }
+                return true;
+            }
+        }
+
+        private boolean block(FileChannel channel, ByteBuffer header, long bodyPosition, int bodyLength) throws IOException {
+            int count = header.getInt(4);
+            long minTime = header.getLong(8);
+            long maxTime = header.getLong(16);
+            int dictionaryBytes = header.getInt(24);
+            int rawLength = header.getInt(28);
+            if (maxTime < from || minTime >= to) {
+                blocksSkipped++;
+                return true;
+            }
+            ByteBuffer dictionaryBuffer = ByteBuffer.allocate(dictionaryBytes);
+            if (!readFully(channel, dictionaryBuffer, bodyPosition)) {
+                return true;
+            }
+            Cursor dictionaries = new Cursor(dictionaryBuffer.array(), 0);
+            List<String> tenants = ArchiveFormat.readDictionary(dictionaries);
+            List<String> categories = ArchiveFormat.readDictionary(dictionaries);
+            List<String> asns = ArchiveFormat.readDictionary(dictionaries);
+            int categoryCode = filter.category() == null ? -1 : categories.indexOf(filter.category()) + 1;
+            int asnCode = filter.asn() == null ? -1 : asns.indexOf(filter.asn()) + 1;
+            if (categoryCode == 0 || asnCode == 0) {
+                blocksSkipped++;
+                return true;
+            }
+
+            ByteBuffer compressed = ByteBuffer.allocate(bodyLength - dictionaryBytes);
+            if (!readFully(channel, compressed, bodyPosition + dictionaryBytes)) {
+                return true;
+            }
+            byte[] raw = Zstd.decompress(compressed.array(), rawLength);
+            recordsDecoded += count;
+            Cursor offsets = new Cursor(raw, 0);
+            Cursor[] columns = new Cursor[ArchiveFormat.COLUMNS];
+            for (int c = 0; c < ArchiveFormat.COLUMNS; c++) {
+                columns[c] = new Cursor(raw, offsets.readInt());
+            }
+            long time = 0;
+            long id = 0;
+            for (int row = 0; row < count; row++) {
+                time += columns[ArchiveFormat.TIME].readZigZag();
+                id += columns[ArchiveFormat.ID].readZigZag();
+                int tenant = (int) columns[ArchiveFormat.TENANT].readVarLong();
+                int category = (int) columns[ArchiveFormat.CATEGORY].readVarLong();
+                int asn = (int) columns[ArchiveFormat.ASN].readVarLong();
+                if (time < from || time >= to
+                        || (categoryCode > 0 && category != categoryCode) || (asnCode > 0 && asn != asnCode)) {
+                    ArchiveFormat.skipIp(columns[ArchiveFormat.IP]);
+                    columns[ArchiveFormat.ASSET].skipString();
+                    columns[ArchiveFormat.CORRELATION].readVarLong();
+                    continue;
+                }
+                String ip = ArchiveFormat.readIp(columns[ArchiveFormat.IP]);
+                String asset = columns[ArchiveFormat.ASSET].readString();
+                long correlationId = columns[ArchiveFormat.CORRELATION].readZigZag();
+                matched++;
+                EnrichedRecord record = new EnrichedRecord(id, asset, ip, lookup(categories, category),
+                        lookup(asns, asn), correlationId);
+                if (!sink.test(new ArchivedRecord(time, lookup(tenants, tenant), record))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static String lookup(List<String> dictionary, int code) {
+            return code == 0 ? null : dictionary.get(code - 1);
+        }
+
+        private static boolean readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+            while (buffer.hasRemaining()) {
+                int read = channel.read(buffer, position + buffer.position());
+                if (read < 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package com.analytics.LogProcessor.archive;
+
+import com.analytics.LogProcessor.model.EnrichedRecord;
+import com.analytics.LogProcessor.service.MetricsService;
+import com.analytics.LogProcessor.service.TenantRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Local archive of every enriched record (app.archive), so re-analysis, audits and backfills do not have
+ * to pay for enrichment again.
+ *
+ * {@link #accept} only offers the record to a bounded queue; when the writer falls that far behind the
+ * record is counted as dropped rather than slowing enrichment down. A single writer thread collects
+ * block-records records (or whatever arrived within flush-interval), encodes them column by column
+ * ({@link ArchiveFormat}) and appends the block to the current segment. Segments roll at segment-size or
+ * segment-age, and segments older than retention are deleted on roll. Every start opens a new segment,
+ * so a block torn by a crash is only ever at the end of a file nobody appends to again.
+ *
+ * Use {@link EnrichedArchiveReader} (or GET /private/v1/admin/archive) to scan it.
+ */
+@Component
+@Slf4j
+public class EnrichedRecordArchive implements EnrichedRecordSink {
+
+    private static final int COMPRESSION_LEVEL = 3;
+    private static final long POLL_MILLIS = 100;
+
+    private final MetricsService metricsService;
+    private final boolean enabled;
+    private final Path directory;
+    private final int blockRecords;
+    private final long flushIntervalNanos;
+    private final long segmentBytes;
+    private final Duration segmentAge;
+    private final Duration retention;
+    private final BlockingQueue<ArchivedRecord> queue;
+
+    private volatile boolean running;
+    private Thread writer;
+    private FileChannel segment;
+    private long segmentOpenedAt;
+
+    public EnrichedRecordArchive(MetricsService metricsService,
+                                 @Value("${app.archive.enabled}") boolean enabled,
+                                 @Value("${app.archive.path}") String path,
+                                 @Value("${app.archive.block-records}") int blockRecords,
+                                 @Value("${app.archive.flush-interval}") long flushIntervalMs,
+                                 @Value("${app.archive.segment-size-bytes}") long segmentBytes,
+                                 @Value("${app.archive.segment-age}") Duration segmentAge,
+                                 @Value("${app.archive.retention}") Duration retention,
+                                 @Value("${app.archive.queue-capacity}") int queueCapacity) {
+        if (blockRecords < 1 || queueCapacity < blockRecords) {
+            throw new IllegalArgumentException("app.archive needs 1 <= block-records <= queue-capacity");
+        }
+        this.metricsService = metricsService;
+        this.enabled = enabled;
+        this.directory = Path.of(path);
+        this.blockRecords = blockRecords;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+        this.segmentBytes = segmentBytes;
+        this.segmentAge = segmentAge;
+        this.retention = retention;
+        this.queue = new ArrayBlockingQueue<>(enabled ? queueCapacity : 1);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        running = true;
+        writer = new Thread(this::writeLoop, "archive-writer");
+        writer.setDaemon(true);
+        writer.start();
+        log.info("[Archive] Archiving enriched records to {} in blocks of {}", directory.toAbsolutePath(), blockRecords);
+    }
+
+    /**
+     * Stops the writer once everything queued so far is written, and closes the current segment.
+     */
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void accept(EnrichedRecord record, String tenant) {
+        if (!enabled) {
+            return;
+        }
+        ArchivedRecord archived = new ArchivedRecord(System.currentTimeMillis(),
+                tenant == null ? TenantRegistry.DEFAULT_TENANT : tenant, record);
+        if (!queue.offer(archived)) {
+            metricsService.incrementArchiveRecordsDropped(1);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public Path directory() {
+        return directory;
+    }
+
+    private void writeLoop() {
+        List<ArchivedRecord> block = new ArrayList<>(blockRecords);
+        long blockStarted = 0;
+        while (running || !queue.isEmpty()) {
+            try {
+                ArchivedRecord next = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (next != null) {
+                    if (block.isEmpty()) {
+                        blockStarted = System.nanoTime();
+                    }
+                    block.add(next);
+                    queue.drainTo(block, blockRecords - block.size());
+                }
+            } catch (InterruptedException e) {
+                running = false;
+            }
+            if (block.size() >= blockRecords
+                    || (!block.isEmpty() && System.nanoTime() - blockStarted >= flushIntervalNanos)) {
+                write(block);
+                block.clear();
+            }
+        }
+        if (!block.isEmpty()) {
+            write(block);
+        }
+        closeSegment();
+    }
+
+    private void write(List<ArchivedRecord> block) {
+        byte[] encoded = ArchiveFormat.encodeBlock(block, COMPRESSION_LEVEL);
+        try {
+            if (segment == null || segment.size() >= segmentBytes
+                    || System.currentTimeMillis() - segmentOpenedAt >= segmentAge.toMillis()) {
+                roll(block.get(0).archivedAt());
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(encoded);
+            while (buffer.hasRemaining()) {
+                segment.write(buffer);
+            }
+            metricsService.incrementArchiveRecordsWritten(block.size(), encoded.length);
+        } catch (IOException e) {
+            log.error("[Archive] Failed to append {} records to {}: {}", block.size(), directory, e.getMessage());
+            metricsService.incrementArchiveRecordsDropped(block.size());
+            // the segment may end in a partial block now, carry on in a fresh one
+            closeSegment();
+        }
+    }
+
+    private void roll(long startMillis) throws IOException {
+        closeSegment();
+        Files.createDirectories(directory);
+        deleteExpired();
+        Path path = directory.resolve(ArchiveFormat.segmentName(startMillis));
+        while (Files.exists(path)) {
+            path = directory.resolve(ArchiveFormat.segmentName(++startMillis));
+        }
+        segment = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        segmentOpenedAt = System.currentTimeMillis();
+        ByteBuffer header = ByteBuffer.allocate(ArchiveFormat.FILE_HEADER_BYTES)
+                .putInt(ArchiveFormat.MAGIC).putInt(ArchiveFormat.VERSION).flip();
+        while (header.hasRemaining()) {
+            segment.write(header);
+        }
+        log.info("[Archive] Started segment {}", path.getFileName());
+    }
+
+    private void closeSegment() {
+        if (segment == null) {
+            return;
+        }
+        try {
+            segment.force(false);
+            segment.close();
+        } catch (IOException e) {
+            log.warn("[Archive] Failed to close segment: {}", e.getMessage());
+        }
+        segment = null;
+    }
+
+    private void deleteExpired() throws IOException {
+        long cutoff = System.currentTimeMillis() - retention.toMillis();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path path : files.filter(ArchiveFormat::isSegment).toList()) {
+                if (Files.getLastModifiedTime(path).toMillis() < cutoff) {
+                    Files.deleteIfExists(path);
+                    log.info("[Archive] Deleted segment {} past the {} retention", path.getFileName(), retention);
+                }
+            }
+        }
+    }
+}
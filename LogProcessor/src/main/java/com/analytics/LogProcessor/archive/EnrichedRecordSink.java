@@ -0,0 +1,12 @@
+package com.analytics.LogProcessor.archive;
+
+import com.analytics.LogProcessor.model.EnrichedRecord;
+
+/**
+ * Extra destination for enriched records besides the enriched queue. Called once the enriched publish
+ * is confirmed by the broker, on the confirm thread, so implementations must only hand the record off.
+ */
+public interface EnrichedRecordSink {
+
+    void accept(EnrichedRecord record, String tenant);
+}
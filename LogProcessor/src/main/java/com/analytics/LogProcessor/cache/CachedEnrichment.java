@@ -0,0 +1,12 @@
+package com.analytics.LogProcessor.cache;
+
+/**
+ * Enrichment API answer kept for an (ip, category) pair until {@code expiresAt} (epoch millis).
+ * The correlation id is not kept: it belongs to the record the API answered for, not to the pair.
+ */
+public record CachedEnrichment(String asn, String category, long expiresAt) {
+
+    public boolean isExpired(long now) {
+        return now >= expiresAt;
+    }
+}
@@ -0,0 +1,210 @@
+package com.analytics.LogProcessor.cache;
+
+import com.analytics.LogProcessor.model.EnrichmentResponse;
+import com.analytics.LogProcessor.service.MetricsService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of Enrichment API answers keyed by (ip, category), with a TTL.
+ *
+ * The live entries are snapshotted periodically and at shutdown to a memory-mapped file
+ * ({@link EnrichmentSnapshotFile}). On startup the snapshot is only mapped, not read; a miss in the
+ * live map falls through to the snapshot and promotes unexpired entries, so a restarted instance
+ * starts warm without paying for a full load before it can serve traffic.
+ */
+@Component
+@Slf4j
+public class EnrichmentCache {
+
+    private static final int WARMUP_WINDOW = 1000;
+
+    private final MetricsService metricsService;
+    private final boolean enabled;
+    private final long ttlMillis;
+    private final int maxEntries;
+    private final Path snapshotPath;
+    private final double warmHitRatio;
+
+    private final Map<String, CachedEnrichment> entries = new ConcurrentHashMap<>();
+    private volatile EnrichmentSnapshotFile snapshot;
+
+    private final long startedAt = System.currentTimeMillis();
+    private final AtomicLong windowLookups = new AtomicLong();
+    private final AtomicLong windowHits = new AtomicLong();
+    private volatile long warmupMillis = -1;
+
+    public EnrichmentCache(MetricsService metricsService,
+                           @Value("${app.enrichment.cache.enabled}") boolean enabled,
+                           @Value("${app.enrichment.cache.ttl}") Duration ttl,
+                           @Value("${app.enrichment.cache.max-entries}") int maxEntries,
+                           @Value("${app.enrichment.cache.snapshot-path}") String snapshotPath,
+                           @Value("${app.enrichment.cache.warm-hit-ratio}") double warmHitRatio) {
+        this.metricsService = metricsService;
+        this.enabled = enabled;
+        this.ttlMillis = ttl.toMillis();
+        this.maxEntries = maxEntries;
+        this.snapshotPath = Path.of(snapshotPath);
+        this.warmHitRatio = warmHitRatio;
+    }
+
+    @PostConstruct
+    public void openSnapshot() {
+        if (!enabled) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            snapshot = EnrichmentSnapshotFile.open(snapshotPath);
+        } catch (IOException e) {
+            log.warn("Could not map enrichment cache snapshot {}: {}", snapshotPath, e.getMessage());
+        }
+        long micros = (System.nanoTime() - start) / 1000;
+        if (snapshot != null) {
+            log.info("[Cache] Mapped enrichment snapshot {} with {} entries in {} us",
+                    snapshotPath, snapshot.size(), micros);
+        } else {
+            log.info("[Cache] No enrichment snapshot at {}, starting cold", snapshotPath);
+        }
+    }
+
+    public CachedEnrichment get(String ip, String category) {
+        if (!enabled) {
+            return null;
+        }
+        String key = key(ip, category);
+        long now = System.currentTimeMillis();
+        CachedEnrichment cached = entries.get(key);
+        if (cached != null && cached.isExpired(now)) {
+            entries.remove(key, cached);
+            cached = null;
+        }
+        if (cached == null) {
+            cached = fromSnapshot(key, now);
+        }
+        recordLookup(cached != null, now);
+        return cached;
+    }
+
+    public void put(String ip, String category, EnrichmentResponse response) {
+        if (!enabled) {
+            return;
+        }
+        if (entries.size() >= maxEntries) {
+            // full: skip rather than evict; expired entries are purged on every snapshot
+            return;
+        }
+        entries.put(key(ip, category), new CachedEnrichment(response.asn(), response.category(),
+                System.currentTimeMillis() + ttlMillis));
+    }
+
+    /**
+     * Periodic snapshot; also purges expired entries from the live map. Synchronized because shutdown
+     * runs it too, and two runs would share the temp file and close the previous mapping twice.
+     */
+    @Scheduled(fixedDelayString = "${app.enrichment.cache.snapshot-interval}",
+            initialDelayString = "${app.enrichment.cache.snapshot-interval}")
+    public synchronized void snapshot() {
+        if (!enabled) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        entries.values().removeIf(entry -> entry.isExpired(now));
+
+        // live entries first, then unexpired carry-overs from the previous snapshot up to max-entries,
+        // so the file never holds more than the live map may
+        Map<String, CachedEnrichment> toWrite = new HashMap<>();
+        for (Map.Entry<String, CachedEnrichment> entry : entries.entrySet()) {
+            if (toWrite.size() >= maxEntries) {
+                break;
+            }
+            toWrite.put(entry.getKey(), entry.getValue());
+        }
+        EnrichmentSnapshotFile previous = snapshot;
+        if (previous != null) {
+            previous.forEach((key, value) -> {
+                if (toWrite.size() < maxEntries && !value.isExpired(now)) {
+                    toWrite.putIfAbsent(key, value);
+                }
+            });
+        }
+
+        long start = System.nanoTime();
+        try {
+            int written = EnrichmentSnapshotFile.write(snapshotPath, toWrite);
+            snapshot = EnrichmentSnapshotFile.open(snapshotPath);
+            if (previous != null) {
+                previous.close();
+            }
+            log.info("[Cache] Wrote enrichment snapshot with {} entries in {} ms",
+                    written, (System.nanoTime() - start) / 1_000_000);
+        } catch (IOException e) {
+            log.error("Failed to write enrichment cache snapshot {}: {}", snapshotPath, e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        snapshot();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Milliseconds from startup until the hit ratio over a window of lookups first reached
+     * app.enrichment.cache.warm-hit-ratio, or -1 while still warming up.
+     */
+    public long getWarmupMillis() {
+        return warmupMillis;
+    }
+
+    private CachedEnrichment fromSnapshot(String key, long now) {
+        EnrichmentSnapshotFile current = snapshot;
+        if (current == null) {
+            return null;
+        }
+        CachedEnrichment stored = current.lookup(key);
+        if (stored == null || stored.isExpired(now)) {
+            return null;
+        }
+        entries.putIfAbsent(key, stored);
+        metricsService.incrementEnrichmentSnapshotHits();
+        return stored;
+    }
+
+    private void recordLookup(boolean hit, long now) {
+        if (hit) {
+            metricsService.incrementEnrichmentCacheHits();
+            windowHits.incrementAndGet();
+        } else {
+            metricsService.incrementEnrichmentCacheMisses();
+        }
+        if (windowLookups.incrementAndGet() % WARMUP_WINDOW == 0) {
+            long hits = windowHits.getAndSet(0);
+            if (warmupMillis < 0 && hits >= WARMUP_WINDOW * warmHitRatio) {
+                warmupMillis = now - startedAt;
+                log.info("[Cache] Enrichment cache warm ({}% hits) {} ms after startup",
+                        hits * 100 / WARMUP_WINDOW, warmupMillis);
+            }
+        }
+    }
+
+    private static String key(String ip, String category) {
+        return ip + '|' + category.toLowerCase(Locale.ROOT).trim();
+    }
+}
@@ -0,0 +1,237 @@
+package com.analytics.LogProcessor.cache;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * Compact on-disk snapshot of the enrichment cache.
+ *
+ * Layout (big endian):
+ * <pre>
+ *  header : int magic, int version, int count, int reserved
+ *  index  : count x (long keyHash, int dataOffset), sorted by keyHash
+ *  data   : per entry: short keyLen, key, long expiresAt, short asnLen, asn, short categoryLen, category
+ * </pre>
+ * The file is memory mapped and never parsed up front; {@link #lookup(String)} binary searches the
+ * index, so opening a snapshot of any size is O(1) and entries are only decoded when asked for.
+ */
+public final class EnrichmentSnapshotFile implements AutoCloseable {
+
+    static final int MAGIC = 0x4C504543; // "LPEC"
+    // version 1 also stored a correlation id per entry; such files are ignored (cold start)
+    static final int VERSION = 2;
+    private static final int HEADER_BYTES = 16;
+    private static final int INDEX_ENTRY_BYTES = 12;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int count;
+
+    private EnrichmentSnapshotFile(FileChannel channel, MappedByteBuffer buffer, int count) {
+        this.channel = channel;
+        this.buffer = buffer;
+        this.count = count;
+    }
+
+    /**
+     * Maps an existing snapshot. Returns null when there is no file or it is not a snapshot we understand.
+     */
+    public static EnrichmentSnapshotFile open(Path path) throws IOException {
+        if (!Files.isRegularFile(path) || Files.size(path) < HEADER_BYTES) {
+            return null;
+        }
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            channel.close();
+            return null;
+        }
+        int count = buffer.getInt(8);
+        if ((long) HEADER_BYTES + (long) count * INDEX_ENTRY_BYTES > buffer.capacity()) {
+            channel.close();
+            return null;
+        }
+        return new EnrichmentSnapshotFile(channel, buffer, count);
+    }
+
+    /**
+     * Writes the given entries to a temp file and atomically moves it into place,
+     * so a crash mid-write never leaves a torn snapshot behind.
+     */
+    public static int write(Path path, Map<String, CachedEnrichment> entries) throws IOException {
+        List<Encoded> encoded = new ArrayList<>(entries.size());
+        for (Map.Entry<String, CachedEnrichment> entry : entries.entrySet()) {
+            encoded.add(Encoded.of(entry.getKey(), entry.getValue()));
+        }
+        encoded.sort(Comparator.comparingLong(Encoded::hash));
+
+        int dataStart = HEADER_BYTES + encoded.size() * INDEX_ENTRY_BYTES;
+        int dataBytes = 0;
+        for (Encoded e : encoded) {
+            dataBytes += e.size();
+        }
+        ByteBuffer out = ByteBuffer.allocate(dataStart + dataBytes);
+        out.putInt(MAGIC).putInt(VERSION).putInt(encoded.size()).putInt(0);
+        int offset = dataStart;
+        for (Encoded e : encoded) {
+            out.putLong(e.hash()).putInt(offset);
+            offset += e.size();
+        }
+        for (Encoded e : encoded) {
+            e.writeTo(out);
+        }
+        out.flip();
+
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (out.hasRemaining()) {
+                ch.write(out);
+            }
+            ch.force(true);
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return encoded.size();
+    }
+
+    public CachedEnrichment lookup(String key) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        long hash = hash(keyBytes);
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long midHash = hashAt(mid);
+            if (midHash < hash) {
+                low = mid + 1;
+            } else if (midHash > hash) {
+                high = mid - 1;
+            } else {
+                // walk back to the first entry with this hash, then check each candidate's key
+                int i = mid;
+                while (i > 0 && hashAt(i - 1) == hash) {
+                    i--;
+                }
+                for (; i < count && hashAt(i) == hash; i++) {
+                    CachedEnrichment match = readIfKeyMatches(offsetAt(i), keyBytes);
+                    if (match != null) {
+                        return match;
+                    }
+                }
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Decodes every entry; used when a new snapshot is written so entries that were never
+     * looked up since the last restart are carried over.
+     */
+    public void forEach(BiConsumer<String, CachedEnrichment> consumer) {
+        for (int i = 0; i < count; i++) {
+            int offset = offsetAt(i);
+            int keyLen = buffer.getShort(offset) & 0xFFFF;
+            String key = readString(offset + 2, keyLen);
+            byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+            consumer.accept(key, readIfKeyMatches(offset, keyBytes));
+        }
+    }
+
+    public int size() {
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private long hashAt(int index) {
+        return buffer.getLong(HEADER_BYTES + index * INDEX_ENTRY_BYTES);
+    }
+
+    private int offsetAt(int index) {
+        return buffer.getInt(HEADER_BYTES + index * INDEX_ENTRY_BYTES + 8);
+    }
+
+    private CachedEnrichment readIfKeyMatches(int offset, byte[] keyBytes) {
+        int keyLen = buffer.getShort(offset) & 0xFFFF;
+        if (keyLen != keyBytes.length) {
+            return null;
+        }
+        int pos = offset + 2;
+        for (int i = 0; i < keyLen; i++) {
+            if (buffer.get(pos + i) != keyBytes[i]) {
+                return null;
+            }
+        }
+        pos += keyLen;
+        long expiresAt = buffer.getLong(pos);
+        pos += 8;
+        int asnLen = buffer.getShort(pos) & 0xFFFF;
+        String asn = readString(pos + 2, asnLen);
+        pos += 2 + asnLen;
+        int categoryLen = buffer.getShort(pos) & 0xFFFF;
+        String category = readString(pos + 2, categoryLen);
+        return new CachedEnrichment(asn, category, expiresAt);
+    }
+
+    private String readString(int offset, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(offset, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * FNV-1a, stable across JVMs (unlike String.hashCode it is also 64 bits wide).
+     */
+    static long hash(byte[] bytes) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : bytes) {
+            h ^= (b & 0xFF);
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    private record Encoded(long hash, byte[] key, byte[] asn, byte[] category, long expiresAt) {
+
+        static Encoded of(String key, CachedEnrichment value) {
+            byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+            return new Encoded(EnrichmentSnapshotFile.hash(keyBytes), keyBytes,
+                    bytes(value.asn()), bytes(value.category()), value.expiresAt());
+        }
+
+        private static byte[] bytes(String value) {
+            return value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+        }
+
+        int size() {
+            return 2 + key.length + 8 + 2 + asn.length + 2 + category.length;
+        }
+
+        void writeTo(ByteBuffer out) {
+            out.putShort((short) key.length).put(key);
+            out.putLong(expiresAt);
+            out.putShort((short) asn.length).put(asn);
+            out.putShort((short) category.length).put(category);
+        }
+    }
+}
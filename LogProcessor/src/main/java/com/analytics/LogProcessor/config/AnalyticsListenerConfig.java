@@ -3,6 +3,8 @@ package com.analytics.LogProcessor.config;
 import org.springframework.amqp.core.AcknowledgeMode;
 import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainerFactoryConfigurer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import static com.analytics.LogProcessor.constants.LogProcessorConstants.ANALYTICS_MAX_BATCH_SIZE;
@@ -14,21 +16,26 @@ import static com.analytics.LogProcessor.constants.LogProcessorConstants.ANALYTI
 @Configuration
 public class AnalyticsListenerConfig {
 
+    @Value("${app.analytics.pipeline-depth}")
+    private int pipelineDepth;
+
     @Bean
     public SimpleRabbitListenerContainerFactory analyticsBatchContainerFactory(
+            SimpleRabbitListenerContainerFactoryConfigurer configurer,
             ConnectionFactory connectionFactory) {
         SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
-        factory.setConnectionFactory(connectionFactory);
+        // shared settings (requeue policy, virtual thread executor when enabled), overridden below for batching
+        configurer.configure(factory, connectionFactory);
 
         factory.setBatchListener(true);
         factory.setBatchSize(ANALYTICS_MAX_BATCH_SIZE);
         factory.setConsumerBatchEnabled(true);
         factory.setReceiveTimeout(1000L);
 
-        //  limit how many messages broker sends at once
-        factory.setPrefetchCount(20);
-        //no manual acknowledgement of messages, listener monitors and queues to DLQ in case of failure
-        factory.setAcknowledgeMode(AcknowledgeMode.AUTO);
+        //  limit how many messages broker sends at once: one batch in flight, the prepared ones, and the one being received
+        factory.setPrefetchCount(ANALYTICS_MAX_BATCH_SIZE * (pipelineDepth + 2));
+        // the dispatcher acks once the Analytics API accepted the batch, and rejects to the DLQ on failure
+        factory.setAcknowledgeMode(AcknowledgeMode.MANUAL);
 
         factory.setConcurrentConsumers(1);
         factory.setMaxConcurrentConsumers(1);
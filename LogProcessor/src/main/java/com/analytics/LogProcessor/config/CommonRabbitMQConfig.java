@@ -1,5 +1,8 @@
 package com.analytics.LogProcessor.config;
 
+import com.analytics.LogProcessor.service.EnrichmentRetryTiers;
+import com.analytics.LogProcessor.service.RawShardLayout;
+import com.analytics.LogProcessor.service.TenantRegistry;
 import org.springframework.amqp.core.*;
 import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
@@ -7,9 +10,14 @@ import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
 import org.springframework.amqp.support.converter.MessageConverter;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainerFactoryConfigurer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
 /**
  * Centralized RabbitMQ configuration class.
  *
@@ -36,6 +44,9 @@ public class CommonRabbitMQConfig {
     @Value("${exchange.dlx}")
     private String dlxExchange;
 
+    @Value("${exchange.retry}")
+    private String retryExchange;
+
     // ==================== Message Converter ====================
 
     @Bean
@@ -50,11 +61,18 @@ public class CommonRabbitMQConfig {
         return template;
     }
 
+    /**
+     * Default listener container factory (raw records).
+     * Goes through Boot's configurer so the spring.rabbitmq.listener.simple settings
+     * (prefetch, concurrency) are applied, and so consumers run on virtual threads
+     * when spring.threads.virtual.enabled is set on a Java 21 runtime.
+     */
     @Bean
     public SimpleRabbitListenerContainerFactory rabbitListenerContainerFactory(
+            SimpleRabbitListenerContainerFactoryConfigurer configurer,
             ConnectionFactory connectionFactory) {
         SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
-        factory.setConnectionFactory(connectionFactory);
+        configurer.configure(factory, connectionFactory);
         factory.setMessageConverter(jsonMessageConverter());
 
         return factory;
@@ -72,6 +90,11 @@ public class CommonRabbitMQConfig {
         return new DirectExchange(dlxExchange, true, false);
     }
 
+    @Bean
+    public DirectExchange retryExchange() {
+        return new DirectExchange(retryExchange, true, false);
+    }
+
     // ==================== Queues ====================
 
     @Bean
@@ -95,6 +118,72 @@ public class CommonRabbitMQConfig {
         return QueueBuilder.durable(deadLetterQueue).build();
     }
 
+    /**
+     * One consumer-less TTL queue per retry tier. Expired messages dead-letter back to the
+     * main exchange with the raw routing key, so they are redelivered to the enrichment listener.
+     * With sharding on they dead-letter to the sharded exchange instead, which routes them back
+     * to their shard by the shard-key header.
+     */
+    @Bean
+    public Declarables retryTierQueues(EnrichmentRetryTiers retryTiers, DirectExchange retryExchange,
+                                       RawShardLayout shardLayout) {
+        String target = shardLayout.isEnabled() ? shardLayout.getShardedExchange() : mainExchange;
+        List<Declarable> declarables = new ArrayList<>();
+        for (int tier = 0; tier < retryTiers.size(); tier++) {
+            Queue queue = QueueBuilder.durable(retryTiers.queueName(tier))
+                    .ttl((int) retryTiers.delay(tier).toMillis())
+                    .deadLetterExchange(target)
+                    .deadLetterRoutingKey("raw")
+                    .build();
+            declarables.add(queue);
+            declarables.add(BindingBuilder.bind(queue).to(retryExchange).with(queue.getName()));
+        }
+        return new Declarables(declarables);
+    }
+
+    /**
+     * Shard queues behind an x-consistent-hash exchange (rabbitmq_consistent_hash_exchange plugin).
+     * The exchange hashes the shard-key header; each queue is bound with weight "1" so shards get an
+     * equal share of the hash ring. Nothing is declared unless app.sharding.enabled is set.
+     */
+    @Bean
+    public Declarables rawShardQueues(RawShardLayout shardLayout) {
+        if (!shardLayout.isEnabled()) {
+            return new Declarables();
+        }
+        CustomExchange exchange = new CustomExchange(shardLayout.getShardedExchange(), "x-consistent-hash", true, false,
+                Map.of("hash-header", RawShardLayout.SHARD_KEY_HEADER));
+        List<Declarable> declarables = new ArrayList<>();
+        declarables.add(exchange);
+        for (int shard = 0; shard < shardLayout.getShards(); shard++) {
+            Queue queue = QueueBuilder.durable(shardLayout.shardQueue(shard))
+                    .withArgument("x-dead-letter-exchange", dlxExchange)
+                    .withArgument("x-dead-letter-routing-key", "dlq")
+                    .build();
+            declarables.add(queue);
+            declarables.add(BindingBuilder.bind(queue).to(exchange).with("1").noargs());
+        }
+        return new Declarables(declarables);
+    }
+
+    /**
+     * Enriched lane per weighted tenant (app.tenants.weights), bound to the main exchange with
+     * "enriched.<tenant>" and dead-lettering like the shared enriched queue.
+     */
+    @Bean
+    public Declarables tenantLaneQueues(TenantRegistry tenantRegistry, DirectExchange mainExchange) {
+        List<Declarable> declarables = new ArrayList<>();
+        for (String tenant : tenantRegistry.laneTenants()) {
+            Queue queue = QueueBuilder.durable(tenantRegistry.laneQueue(tenant))
+                    .withArgument("x-dead-letter-exchange", dlxExchange)
+                    .withArgument("x-dead-letter-routing-key", "dlq")
+                    .build();
+            declarables.add(queue);
+            declarables.add(BindingBuilder.bind(queue).to(mainExchange).with(tenantRegistry.enrichedRoutingKey(tenant)));
+        }
+        return new Declarables(declarables);
+    }
+
     // ==================== Bindings ====================
 
     @Bean
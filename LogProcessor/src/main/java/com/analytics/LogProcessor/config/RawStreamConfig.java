@@ -0,0 +1,84 @@
+package com.analytics.LogProcessor.config;
+
+import com.analytics.LogProcessor.consumer.RawStreamOffsets;
+import org.springframework.amqp.core.AcknowledgeMode;
+import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.Declarables;
+import org.springframework.amqp.core.DirectExchange;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.core.QueueBuilder;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.Map;
+
+import static com.analytics.LogProcessor.constants.LogProcessorConstants.RAW_STREAM_ROUTING_KEY;
+
+/**
+ * Optional stream-backed raw stage (app.stream), declared next to the classic raw queue.
+ * A stream keeps its messages after they are consumed, so the raw traffic of the last max-age
+ * can be read again from any offset or timestamp without re-ingesting it.
+ */
+@Configuration
+public class RawStreamConfig {
+
+    @Value("${app.stream.enabled}")
+    private boolean enabled;
+
+    @Value("${queue.raw-stream}")
+    private String rawStream;
+
+    @Value("${app.stream.max-age}")
+    private String maxAge;
+
+    @Value("${app.stream.max-segment-size-bytes}")
+    private long maxSegmentSizeBytes;
+
+    @Value("${app.stream.batch-size}")
+    private int batchSize;
+
+    @Value("${app.stream.prefetch}")
+    private int prefetch;
+
+    /**
+     * Nothing is declared unless app.stream.enabled is set, brokers without stream support keep working.
+     */
+    @Bean
+    public Declarables rawStreamDeclarables(DirectExchange mainExchange) {
+        if (!enabled) {
+            return new Declarables();
+        }
+        Queue stream = QueueBuilder.durable(rawStream)
+                .stream()
+                .withArgument("x-max-age", maxAge)
+                .withArgument("x-stream-max-segment-size-bytes", maxSegmentSizeBytes)
+                .build();
+        return new Declarables(stream, BindingBuilder.bind(stream).to(mainExchange).with(RAW_STREAM_ROUTING_KEY));
+    }
+
+    @Bean
+    public SimpleRabbitListenerContainerFactory rawStreamContainerFactory(ConnectionFactory connectionFactory,
+                                                                         RawStreamOffsets offsets) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        factory.setConnectionFactory(connectionFactory);
+
+        factory.setBatchListener(true);
+        factory.setConsumerBatchEnabled(true);
+        factory.setBatchSize(batchSize);
+        factory.setReceiveTimeout(1000L);
+        // stream consumers must set a QoS; acks only return credit, the log itself is never trimmed by them
+        factory.setPrefetchCount(prefetch);
+        factory.setAcknowledgeMode(AcknowledgeMode.MANUAL);
+
+        // every consumer of a stream reads every message, so one consumer per instance
+        factory.setConcurrentConsumers(1);
+        factory.setMaxConcurrentConsumers(1);
+        factory.setContainerCustomizer(container ->
+                container.setConsumerArguments(Map.of(RawStreamOffsets.OFFSET_ARGUMENT, offsets.startOffset())));
+
+        return factory;
+    }
+}
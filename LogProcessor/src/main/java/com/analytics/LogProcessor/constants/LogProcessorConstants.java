@@ -5,5 +5,6 @@ public class LogProcessorConstants {
     public static final Integer ANALYTICS_MAX_BATCH_SIZE = 20;
     public static final String ANALYTICS_SERVICE = "analyticsService";
     public static final String RAW_ROUTING_KEY = "raw";
+    public static final String RAW_STREAM_ROUTING_KEY = "raw-stream";
     public static final String ENRICHED_ROUTING_KEY = "enriched";
 }
@@ -1,59 +1,77 @@
 package com.analytics.LogProcessor.consumer;
 
-import com.analytics.LogProcessor.annotation.TrackExecutionTime;
-import com.analytics.LogProcessor.exception.AnalyticsException;
-import com.analytics.LogProcessor.service.AnalyticsService;
-import com.analytics.LogProcessor.service.MetricsService;
 import com.analytics.LogProcessor.model.EnrichedRecord;
+import com.analytics.LogProcessor.service.AnalyticsDispatcher;
+import com.analytics.LogProcessor.service.AnalyticsDispatcher.PendingRecord;
+import com.analytics.LogProcessor.service.AnalyticsLoadShedder;
+import com.analytics.LogProcessor.service.DeliveryLedger;
+import com.analytics.LogProcessor.service.TenantRegistry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rabbitmq.client.Channel;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.Message;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * Consumer for enriched records.
+ * Only decodes the deliveries and hands them to the {@link AnalyticsDispatcher};
+ * acks happen once the batch a record ended up in has been accepted by the Analytics API,
+ * so the listener thread is free to receive the next batch while one is in flight.
+ * Besides the shared enriched queue it consumes every tenant lane declared from app.tenants.weights.
+ * With app.serialization.passthrough the message bodies are kept so the dispatcher can join them into
+ * the batch request instead of serializing the decoded records again.
+ */
 @Component
 @RequiredArgsConstructor
 @Slf4j
 public class AnalyticsConsumer {
 
-    private final AnalyticsService analyticsService;
-    private final MetricsService metricsService;
+    private final AnalyticsDispatcher analyticsDispatcher;
+    private final ObjectMapper objectMapper;
+
+    @Value("${app.serialization.passthrough}")
+    private boolean passthrough;
 
-    @TrackExecutionTime("AnalyticsConsumer#consumeBatch")
     @RabbitListener(
-            queues = "${queue.enriched-records}",
+            queues = "#{@tenantRegistry.enrichedQueues()}",
             containerFactory = "analyticsBatchContainerFactory"
     )
-    public void consumeBatch(List<EnrichedRecord> batch) {
-        long startTime = System.currentTimeMillis();
-        log.info("Received batch of {} records from RabbitMQ", batch.size());
+    public void consumeBatch(List<Message> messages, Channel channel) throws InterruptedException {
+        log.info("Received batch of {} records from RabbitMQ", messages.size());
 
-        try {
-            analyticsService.sendBatchToAnalytics(batch);
-            metricsService.incrementRecordsSentToAnalytics(batch.size());
-            log.info("Successfully sent sub-batch of {} records to Analytics (Total sent: {})",
-                    batch.size(), metricsService.getRecordsSentToAnalytics().get());
-        } catch (Exception e) {
-            metricsService.incrementAnalyticsFailures();
-            throw e;
-            // With AUTO ack and DLQ configured, throwing the exception will send the batch to DLQ
+        List<PendingRecord> pending = new ArrayList<>(messages.size());
+        long receivedAt = System.currentTimeMillis();
+        for (Message message : messages) {
+            long deliveryTag = message.getMessageProperties().getDeliveryTag();
+            try {
+                EnrichedRecord record = objectMapper.readValue(message.getBody(), EnrichedRecord.class);
+                String tenant = message.getMessageProperties().getHeader(TenantRegistry.TENANT_HEADER);
+                Object ingestedAt = message.getMessageProperties().getHeader(AnalyticsLoadShedder.INGESTED_AT_HEADER);
+                pending.add(new PendingRecord(record, channel, deliveryTag,
+                        tenant == null ? TenantRegistry.DEFAULT_TENANT : tenant, receivedAt,
+                        ingestedAt instanceof Number number ? number.longValue() : receivedAt,
+                        passthrough ? MessageBodies.jsonObject(message) : null, DeliveryLedger.deliveryId(message)));
+            } catch (IOException e) {
+                // unreadable payload will never succeed, reject it straight to the DLQ
+                log.error("Discarding unreadable enriched message (tag {}): {}", deliveryTag, e.getMessage());
+                rejectQuietly(channel, deliveryTag);
+            }
         }
+        analyticsDispatcher.accept(pending);
+    }
 
-        // Record metrics after successful batch processing
-        long duration = System.currentTimeMillis() - startTime;
-        metricsService.incrementBatchesProcessed();
-        metricsService.recordBatchProcessingTime(duration);
-
-        // Log both current batch time and cumulative total
-        long totalTime = metricsService.getTotalBatchProcessingTime().get();
-        long batchCount = metricsService.getBatchesProcessed().get();
-
-        log.info("Completed processing batch of {} records in {} ms", batch.size(), duration);
-        log.info(" ANALYTICS TOTAL: {} batches processed, {} records sent, TOTAL TIME: {} ms ({} sec)",
-                batchCount,
-                metricsService.getRecordsSentToAnalytics().get(),
-                totalTime,
-                totalTime / 1000.0);
+    private void rejectQuietly(Channel channel, long deliveryTag) {
+        try {
+            channel.basicNack(deliveryTag, false, false);
+        } catch (IOException e) {
+            log.error("Failed to reject message with tag {}: {}", deliveryTag, e.getMessage());
+        }
     }
 }
@@ -0,0 +1,130 @@
+package com.analytics.LogProcessor.consumer;
+
+import com.analytics.LogProcessor.service.MetricsService;
+import com.rabbitmq.client.Channel;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Settles manually acknowledged deliveries once whatever they turned into has been confirmed by the broker.
+ *
+ * Deliveries are tracked per channel in tag order. A delivery is done when the publisher confirm for its
+ * output (enriched record, retry tier or DLQ copy) arrives; the lowest run of done tags is then acked with a
+ * single {@code basicAck(tag, multiple=true)}. A negative confirm or a failed publish requeues just that
+ * delivery, so a record is never acked unless its output is safely on the broker.
+ */
+@Component
+@Slf4j
+public class DeliveryAcknowledger {
+
+    private final MetricsService metricsService;
+    private final Map<Channel, ChannelDeliveries> channels = new ConcurrentHashMap<>();
+
+    public DeliveryAcknowledger(MetricsService metricsService) {
+        this.metricsService = metricsService;
+    }
+
+    /**
+     * Registers a delivery; must be called on the listener thread before the delivery is settled.
+     */
+    public void received(Channel channel, long deliveryTag) {
+        ChannelDeliveries deliveries = channels.get(channel);
+        if (deliveries == null) {
+            // channels of stopped or recovered consumers are dead, the broker requeued their deliveries
+            channels.keySet().removeIf(c -> !c.isOpen());
+            deliveries = channels.computeIfAbsent(channel, ChannelDeliveries::new);
+        }
+        deliveries.add(deliveryTag);
+    }
+
+    /**
+     * Acks the delivery once the publish correlated with {@code correlation} is confirmed, requeues it otherwise.
+     */
+    public void settleOnConfirm(Channel channel, long deliveryTag, CorrelationData correlation) {
+        correlation.getFuture().whenComplete((confirm, error) -> {
+            if (error == null && confirm.isAck()) {
+                ack(channel, deliveryTag);
+            } else {
+                log.warn("Publish for delivery {} not confirmed ({}), requeueing",
+                        deliveryTag, error != null ? error.getMessage() : confirm.getReason());
+                requeue(channel, deliveryTag);
+            }
+        });
+    }
+
+    public void ack(Channel channel, long deliveryTag) {
+        ChannelDeliveries deliveries = channels.get(channel);
+        if (deliveries != null) {
+            deliveries.complete(deliveryTag);
+        }
+    }
+
+    public void requeue(Channel channel, long deliveryTag) {
+        ChannelDeliveries deliveries = channels.get(channel);
+        if (deliveries != null) {
+            deliveries.requeue(deliveryTag);
+        }
+    }
+
+    /**
+     * Outstanding deliveries of one channel. Tags arrive in increasing order, completions in any order.
+     */
+    private final class ChannelDeliveries {
+
+        private final Channel channel;
+        private final ArrayDeque<Long> outstanding = new ArrayDeque<>();
+        private final Set<Long> done = new HashSet<>();
+
+        private ChannelDeliveries(Channel channel) {
+            this.channel = channel;
+        }
+
+        synchronized void add(long deliveryTag) {
+            outstanding.addLast(deliveryTag);
+        }
+
+        synchronized void complete(long deliveryTag) {
+            done.add(deliveryTag);
+            ackContiguous();
+        }
+
+        synchronized void requeue(long deliveryTag) {
+            if (!outstanding.remove(deliveryTag)) {
+                return;
+            }
+            try {
+                channel.basicNack(deliveryTag, false, true);
+            } catch (IOException | RuntimeException e) {
+                log.warn("Could not requeue delivery {}: {}", deliveryTag, e.getMessage());
+            }
+            ackContiguous();
+        }
+
+        private void ackContiguous() {
+            long upTo = -1;
+            int count = 0;
+            while (!outstanding.isEmpty() && done.remove(outstanding.peekFirst())) {
+                upTo = outstanding.pollFirst();
+                count++;
+            }
+            if (upTo < 0) {
+                return;
+            }
+            try {
+                channel.basicAck(upTo, true);
+                metricsService.recordEnrichmentAcks(count);
+            } catch (IOException | RuntimeException e) {
+                // channel is gone, the broker redelivers and the enrichment cache makes that cheap
+                log.warn("Could not ack deliveries up to {}: {}", upTo, e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.analytics.LogProcessor.consumer;
+
+import com.analytics.LogProcessor.service.QueueLagMonitor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistry;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Sizes the raw-records listener so the enriched backlog stays near app.autoscale.target-enriched-backlog,
+ * i.e. enrichment runs just ahead of the analytics drain rate instead of racing it.
+ *
+ * The enrichment rate needed is the drain rate plus whatever closes the gap to the target backlog within
+ * catch-up-seconds; by Little's law that takes rate x latency consumers. A backlog above target therefore
+ * scales consumers (and the Enrichment API calls, threads and prefetched messages they hold) down, and a
+ * starving analytics stage scales them up. Consumer changes go through {@link EnrichmentListenerGate},
+ * which ramps them in one step at a time and has the last word while the circuit breaker is not closed.
+ * Prefetch is applied to the container and picked up by consumers as they are (re)started.
+ */
+@Component
+@Slf4j
+public class EnrichmentAutoscaler {
+
+    private final QueueLagMonitor lagMonitor;
+    private final EnrichmentListenerGate gate;
+    private final RabbitListenerEndpointRegistry listenerRegistry;
+    private final Settings settings;
+
+    private volatile Decision lastDecision;
+
+    public EnrichmentAutoscaler(QueueLagMonitor lagMonitor, EnrichmentListenerGate gate,
+                                RabbitListenerEndpointRegistry listenerRegistry,
+                                @Value("${app.autoscale.enabled}") boolean enabled,
+                                @Value("${app.autoscale.target-enriched-backlog}") long targetBacklog,
+                                @Value("${app.autoscale.catch-up-seconds}") double catchUpSeconds,
+                                @Value("${app.autoscale.sample-interval}") long sampleIntervalMs,
+                                @Value("${app.autoscale.min-consumers}") int minConsumers,
+                                @Value("${spring.rabbitmq.listener.simple.max-concurrency}") int maxConsumers,
+                                @Value("${app.autoscale.min-prefetch}") int minPrefetch,
+                                @Value("${app.autoscale.max-prefetch}") int maxPrefetch) {
+        this.lagMonitor = lagMonitor;
+        this.gate = gate;
+        this.listenerRegistry = listenerRegistry;
+        this.settings = new Settings(enabled, targetBacklog, catchUpSeconds, sampleIntervalMs / 1000.0,
+                minConsumers, maxConsumers, minPrefetch, maxPrefetch);
+    }
+
+    @Scheduled(fixedDelayString = "${app.autoscale.sample-interval}",
+            initialDelayString = "${app.autoscale.sample-interval}")
+    public void adjust() {
+        if (!settings.enabled() || gate.isPaused()) {
+            return;
+        }
+        Decision decision = decide(lagMonitor.getLatest(), gate.getTargetConsumers(), settings);
+        if (decision == null) {
+            return;
+        }
+        Decision previous = lastDecision;
+        lastDecision = decision;
+        gate.setTargetConsumers(decision.consumers());
+        if (listenerRegistry.getListenerContainer(EnrichmentListenerGate.LISTENER_ID)
+                instanceof SimpleMessageListenerContainer container) {
+            container.setPrefetchCount(decision.prefetch());
+        }
+        if (previous == null || previous.consumers() != decision.consumers() || previous.prefetch() != decision.prefetch()) {
+            log.info("[Autoscale] {} consumers, prefetch {} (needed {} records/s)",
+                    decision.consumers(), decision.prefetch(), String.format("%.2f", decision.neededRate()));
+        }
+    }
+
+    public Decision getLastDecision() {
+        return lastDecision;
+    }
+
+    /**
+     * Target consumers and prefetch for a sample, or null when there is not enough data to decide.
+     */
+    static Decision decide(QueueLagMonitor.Sample sample, int currentConsumers, Settings settings) {
+        if (!sample.isKnown()) {
+            return null;
+        }
+        if (sample.rawDepth() == 0) {
+            return new Decision(settings.minConsumers(), settings.minPrefetch(), 0);
+        }
+        if (sample.enrichmentLatencyMs() <= 0) {
+            return null;
+        }
+        double backlogGap = settings.targetBacklog() - sample.enrichedDepth();
+        double neededRate = Math.max(0, sample.drainRatePerSecond() + backlogGap / settings.catchUpSeconds());
+        int consumers = (int) Math.ceil(neededRate * sample.enrichmentLatencyMs() / 1000.0);
+        consumers = Math.max(settings.minConsumers(), Math.min(settings.maxConsumers(), consumers));
+
+        // enough messages per consumer to cover one sampling interval at the needed rate
+        int prefetch = (int) Math.ceil(neededRate * settings.intervalSeconds() / consumers);
+        prefetch = Math.max(settings.minPrefetch(), Math.min(settings.maxPrefetch(), prefetch));
+        return new Decision(consumers, prefetch, neededRate);
+    }
+
+    public record Decision(int consumers, int prefetch, double neededRate) {}
+
+    record Settings(boolean enabled, long targetBacklog, double catchUpSeconds, double intervalSeconds,
+                    int minConsumers, int maxConsumers, int minPrefetch, int maxPrefetch) {}
+}
@@ -1,19 +1,32 @@
 package com.analytics.LogProcessor.consumer;
 
 import com.analytics.LogProcessor.annotation.TrackExecutionTime;
+import com.analytics.LogProcessor.archive.EnrichedRecordSink;
 import com.analytics.LogProcessor.exception.MessagePublishException;
+import com.analytics.LogProcessor.service.AnalyticsLoadShedder;
+import com.analytics.LogProcessor.service.ConcurrencyLimiter;
+import com.analytics.LogProcessor.service.DeliveryLedger;
+import com.analytics.LogProcessor.service.EnrichmentRetryTiers;
 import com.analytics.LogProcessor.service.EnrichmentService;
 import com.analytics.LogProcessor.service.MetricsService;
+import com.analytics.LogProcessor.service.TenantRegistry;
 import com.analytics.LogProcessor.model.ActivityRecord;
 import com.analytics.LogProcessor.model.EnrichedRecord;
+import com.rabbitmq.client.Channel;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessagePostProcessor;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.AmqpHeaders;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.stereotype.Component;
 
-import static com.analytics.LogProcessor.constants.LogProcessorConstants.ENRICHED_ROUTING_KEY;
+import java.util.List;
 
 /**
  * Consumer for enriching raw activity records.
@@ -22,8 +35,8 @@ import static com.analytics.LogProcessor.constants.LogProcessorConstants.ENRICHE
  * Features:
  * - Concurrent processing (10-20 threads)
  * - Circuit breaker for Enrichment Service failures
- * - Automatic retry with exponential backoff
- * - Dead letter queue for failed records
+ * - Delayed retry through broker-side TTL tiers (no sleeping listener threads)
+ * - Dead letter queue for records that fail every tier
  **/
 
 @Component
@@ -34,6 +47,11 @@ public class EnrichmentConsumer {
     private final EnrichmentService enrichmentClient;
     private final RabbitTemplate rabbitTemplate;
     private final MetricsService metricsService;
+    private final ConcurrencyLimiter concurrencyLimiter;
+    private final EnrichmentRetryTiers retryTiers;
+    private final DeliveryAcknowledger acknowledger;
+    private final TenantRegistry tenantRegistry;
+    private final List<EnrichedRecordSink> recordSinks;
 
     @Value("${exchange.main}")
     private String mainExchange;
@@ -41,49 +59,127 @@ public class EnrichmentConsumer {
     @Value("${queue.dead-letter}")
     private String deadLetterQueue;
 
+    @Value("${app.serialization.passthrough}")
+    private boolean passthrough;
+
     /**
      * Process messages from raw records queue.
      * Concurrent listeners: 4-8 threads (configured in application.yml)
      * Prefetch: 32 messages
+     * In-flight enrichment calls are capped by the ENRICHMENT permit, which is what bounds
+     * concurrency when the listener runs on virtual threads.
+     * Transient failures are parked in the next retry tier; attempt is null on first delivery.
+     * While the circuit is open records are requeued, and EnrichmentListenerGate stops this listener.
+     * Acks are manual: the delivery is settled by {@link DeliveryAcknowledger} once the publish it
+     * resulted in (enriched, retry tier or DLQ) is confirmed, and requeued if no publish went through.
+     * With app.sharding enabled the same listener also consumes this instance's raw shard queues.
+     * The tenant, ingest-time and delivery-id headers set at ingest are carried onto the enriched record,
+     * retry tiers and DLQ copy.
+     * With app.serialization.passthrough the message body itself is the Enrichment API request body.
      */
-    @RabbitListener(queues = "${queue.raw-records}")
-    public void processRawRecord(ActivityRecord record) {
-        long startTime = System.currentTimeMillis();
+    @RabbitListener(id = EnrichmentListenerGate.LISTENER_ID, queues = "#{@rawShardLayout.listenerQueues()}")
+    public void processRawRecord(ActivityRecord record,
+                                 @Header(name = EnrichmentRetryTiers.ATTEMPT_HEADER, required = false) Integer attempt,
+                                 @Header(name = TenantRegistry.TENANT_HEADER, required = false) String tenant,
+                                 @Header(name = AnalyticsLoadShedder.INGESTED_AT_HEADER, required = false) Long ingestedAt,
+                                 @Header(name = DeliveryLedger.DELIVERY_ID_HEADER, required = false) Long deliveryId,
+                                 Message message,
+                                 Channel channel,
+                                 @Header(AmqpHeaders.DELIVERY_TAG) long deliveryTag) {
+        int attemptNo = attempt == null ? 0 : attempt;
         log.debug("Processing raw record: {} ", record.id());
+        acknowledger.received(channel, deliveryTag);
+
+        CorrelationData correlation = enrich(record, attemptNo, tenant, ingestedAt, deliveryId,
+                MessageBodies.jsonObject(message));
+        if (correlation != null) {
+            acknowledger.settleOnConfirm(channel, deliveryTag, correlation);
+        } else {
+            // nothing reached the broker, keep the record in the raw queue rather than lose it
+            acknowledger.requeue(channel, deliveryTag);
+        }
+    }
 
+    /**
+     * Enriches one raw record and publishes the outcome: the enriched record, a retry tier or the DLQ.
+     * Shared by the raw-queue listener and {@link RawStreamConsumer}. Enriched records of a weighted
+     * tenant are routed to its lane, and handed to every {@link EnrichedRecordSink} once the broker
+     * confirmed them.
+     *
+     * @param ingestedAt ingest time header of the raw message, null if it had none
+     * @param deliveryId delivery id header of the raw message, null if it had none
+     * @param rawBody JSON body of the raw message, sent to the Enrichment API as is when passthrough is on;
+     *                null to serialize the record
+     * @return correlation of the publish to settle the delivery on, or null when nothing was published
+     *         (circuit open, or every publish failed) and the record must be kept for another attempt
+     */
+    public CorrelationData enrich(ActivityRecord record, int attemptNo, String tenant, Long ingestedAt, Long deliveryId,
+                                  byte[] rawBody) {
+        long startTime = System.currentTimeMillis();
+        byte[] requestBody = passthrough ? rawBody : null;
         try {
-            enrichmentClient.enrichRecords(record)
-                    .doOnNext(enrichedRecord -> {
-                        publishToEnrichedQueue(enrichedRecord, record);
-                        metricsService.incrementRecordsEnriched();
-                        long duration = System.currentTimeMillis() - startTime;
-                        metricsService.recordEnrichmentTime(duration);
-                    })
-                    .block();
+            EnrichedRecord enrichedRecord = concurrencyLimiter.call(ConcurrencyLimiter.Stage.ENRICHMENT, () ->
+                    enrichmentClient.enrichRecords(record, attemptNo, requestBody).block());
+            if (enrichedRecord == null) {
+                throw new IllegalStateException("Enrichment returned no result for record " + record.id());
+            }
+            CorrelationData correlation = publishToEnrichedQueue(enrichedRecord, record, tenant, ingestedAt, deliveryId);
+            if (!recordSinks.isEmpty()) {
+                correlation.getFuture().thenAccept(confirm -> {
+                    if (confirm.isAck()) {
+                        recordSinks.forEach(sink -> sink.accept(enrichedRecord, tenant));
+                    }
+                });
+            }
+            metricsService.incrementRecordsEnriched();
+            metricsService.recordEnrichmentTime(System.currentTimeMillis() - startTime);
+            return correlation;
 
+        } catch (CallNotPermittedException e) {
+            metricsService.incrementDlqWritesAvoided();
+            return null;
         } catch (Exception e) {
             metricsService.incrementEnrichmentFailures();
-            sendToDeadLetterQueue(record, e);
+            CorrelationData correlation = new CorrelationData(String.valueOf(record.id()));
+            if (retryTiers.scheduleRetry(record, attemptNo, tenant, ingestedAt, deliveryId, e, correlation)
+                    || sendToDeadLetterQueue(record, tenant, deliveryId, e, correlation)) {
+                return correlation;
+            }
+            return null;
         }
     }
-    private void publishToEnrichedQueue(EnrichedRecord enrichedRecord,ActivityRecord rawRecord){
+
+    private CorrelationData publishToEnrichedQueue(EnrichedRecord enrichedRecord, ActivityRecord rawRecord,
+                                                   String tenant, Long ingestedAt, Long deliveryId){
         try{
-            rabbitTemplate.convertAndSend(mainExchange,ENRICHED_ROUTING_KEY, enrichedRecord);
+            CorrelationData correlation = new CorrelationData(String.valueOf(rawRecord.id()));
+            MessagePostProcessor withTenant = TenantRegistry.withTenant(tenant);
+            MessagePostProcessor withIngestedAt = AnalyticsLoadShedder.withIngestedAt(ingestedAt);
+            MessagePostProcessor withDeliveryId = DeliveryLedger.withDeliveryId(deliveryId);
+            rabbitTemplate.convertAndSend(mainExchange, tenantRegistry.enrichedRoutingKey(tenant), enrichedRecord,
+                    message -> withDeliveryId.postProcessMessage(
+                            withIngestedAt.postProcessMessage(withTenant.postProcessMessage(message))), correlation);
+            return correlation;
         }catch(Exception e){
             log.error("Failed to publish enriched record {}: {}",rawRecord.id(),e.getMessage());
-            sendToDeadLetterQueue(rawRecord, e);
             throw new MessagePublishException("Error publishing records to enriched queue",e);
         }
     }
 
-    private void sendToDeadLetterQueue(ActivityRecord record,Throwable error){
+    private boolean sendToDeadLetterQueue(ActivityRecord record, String tenant, Long deliveryId, Throwable error,
+                                          CorrelationData correlation){
         log.error("Enrichment failed for record: {}", record.id());
         try{
             FailedRecordMessage failedRecordMessage = new FailedRecordMessage(record, error.getClass().getSimpleName(), error.getMessage());
-            rabbitTemplate.convertAndSend(deadLetterQueue, failedRecordMessage);
+            MessagePostProcessor withTenant = TenantRegistry.withTenant(tenant);
+            MessagePostProcessor withDeliveryId = DeliveryLedger.withDeliveryId(deliveryId);
+            rabbitTemplate.convertAndSend(deadLetterQueue, failedRecordMessage,
+                    message -> withDeliveryId.postProcessMessage(withTenant.postProcessMessage(message)), correlation);
             log.error("Sent failed record :{} to DLQ", record.id());
+            return true;
         }catch (Exception e){
             log.error("Critical: Failed to publish record to DLQ: {} with Exception :{}  ", record.id(),  e.getMessage());
+            return false;
         }
     }
 
@@ -0,0 +1,154 @@
+package com.analytics.LogProcessor.consumer;
+
+import com.analytics.LogProcessor.service.MetricsService;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.circuitbreaker.event.CircuitBreakerOnStateTransitionEvent;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.rabbit.listener.MessageListenerContainer;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistry;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Parks the raw-records listener while the enrichmentService circuit breaker is open.
+ *
+ * OPEN stops the container, so records stay in raw-records-queue instead of failing fast into the DLQ.
+ * HALF_OPEN restarts it with a single consumer to feed the breaker's trial calls, and once CLOSED the
+ * consumer count is ramped back up one step per app.enrichment.pause.ramp-interval. Container stop/start
+ * runs on a dedicated thread because the transition is usually triggered from a listener thread.
+ *
+ * The gate sets both the concurrent and the max consumers of the container to the same count, so the
+ * container's own idle-based scaling (spring.rabbitmq.listener.simple.max-concurrency) cannot grow past
+ * it. {@link EnrichmentAutoscaler} moves the target through {@link #setTargetConsumers(int)} and the ramp
+ * walks towards it.
+ */
+@Component
+@Slf4j
+public class EnrichmentListenerGate {
+
+    public static final String LISTENER_ID = "enrichmentListener";
+
+    private final RabbitListenerEndpointRegistry listenerRegistry;
+    private final CircuitBreaker circuitBreaker;
+    private final MetricsService metricsService;
+    private final ExecutorService transitions = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "enrichment-listener-gate");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile long pausedSince;
+    private volatile int consumers;
+    private volatile int targetConsumers;
+
+    public EnrichmentListenerGate(RabbitListenerEndpointRegistry listenerRegistry,
+                                  CircuitBreakerRegistry circuitBreakerRegistry,
+                                  MetricsService metricsService,
+                                  @Value("${spring.rabbitmq.listener.simple.concurrency}") int targetConsumers) {
+        this.listenerRegistry = listenerRegistry;
+        this.circuitBreaker = circuitBreakerRegistry.circuitBreaker("enrichmentService");
+        this.metricsService = metricsService;
+        this.targetConsumers = targetConsumers;
+        this.consumers = targetConsumers;
+    }
+
+    @PostConstruct
+    public void subscribe() {
+        circuitBreaker.getEventPublisher().onStateTransition(this::onStateTransition);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        transitions.shutdownNow();
+    }
+
+    public boolean isPaused() {
+        return pausedSince != 0;
+    }
+
+    public void setTargetConsumers(int target) {
+        targetConsumers = Math.max(1, target);
+    }
+
+    public int getTargetConsumers() {
+        return targetConsumers;
+    }
+
+    public int getConsumers() {
+        return consumers;
+    }
+
+    void onStateTransition(CircuitBreakerOnStateTransitionEvent event) {
+        switch (event.getStateTransition().getToState()) {
+            case OPEN, FORCED_OPEN -> transitions.execute(this::pause);
+            case HALF_OPEN -> transitions.execute(() -> resume(1));
+            case CLOSED -> transitions.execute(() -> resume(Math.max(consumers, 1)));
+            default -> { }
+        }
+    }
+
+    /**
+     * Adds one consumer per tick until the target is reached, while the breaker stays closed.
+     * Scaling down to a lower target happens in one step.
+     */
+    @Scheduled(fixedDelayString = "${app.enrichment.pause.ramp-interval}")
+    public void rampUp() {
+        int target = targetConsumers;
+        if (isPaused() || consumers == target
+                || circuitBreaker.getState() != CircuitBreaker.State.CLOSED) {
+            return;
+        }
+        transitions.execute(() -> setConsumers(consumers < target ? consumers + 1 : target));
+    }
+
+    private void pause() {
+        MessageListenerContainer container = listenerRegistry.getListenerContainer(LISTENER_ID);
+        if (container == null || isPaused()) {
+            return;
+        }
+        pausedSince = System.currentTimeMillis();
+        container.stop();
+        log.warn("[Gate] Enrichment circuit open, paused raw-records listener; records stay queued");
+    }
+
+    private void resume(int startConsumers) {
+        MessageListenerContainer container = listenerRegistry.getListenerContainer(LISTENER_ID);
+        if (container == null) {
+            return;
+        }
+        setConsumers(startConsumers);
+        if (!container.isRunning()) {
+            container.start();
+        }
+        long since = pausedSince;
+        if (since != 0) {
+            pausedSince = 0;
+            metricsService.recordEnrichmentPausedTime(System.currentTimeMillis() - since);
+        }
+        log.info("[Gate] Enrichment circuit {}, raw-records listener running with {} consumer(s)",
+                circuitBreaker.getState(), startConsumers);
+    }
+
+    private void setConsumers(int count) {
+        int previous = consumers;
+        consumers = Math.min(count, targetConsumers);
+        if (listenerRegistry.getListenerContainer(LISTENER_ID) instanceof SimpleMessageListenerContainer simple) {
+            // the container rejects a concurrency above its max, so raise max first and lower it last
+            if (consumers > previous) {
+                simple.setMaxConcurrentConsumers(consumers);
+                simple.setConcurrentConsumers(consumers);
+            } else {
+                simple.setConcurrentConsumers(consumers);
+                simple.setMaxConcurrentConsumers(consumers);
+            }
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.analytics.LogProcessor.consumer;
+
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+
+/**
+ * Access to the raw bytes of a delivery for app.serialization.passthrough, where a message body that is
+ * already the JSON the next API expects is forwarded instead of being serialized again.
+ */
+final class MessageBodies {
+
+    private MessageBodies() {
+    }
+
+    /**
+     * The body if it is a JSON object written by our JSON message converter, null otherwise
+     * (callers then serialize the decoded record).
+     */
+    static byte[] jsonObject(Message message) {
+        if (message == null) {
+            return null;
+        }
+        String contentType = message.getMessageProperties().getContentType();
+        byte[] body = message.getBody();
+        if (!MessageProperties.CONTENT_TYPE_JSON.equals(contentType) || body == null || body.length < 2) {
+            return null;
+        }
+        return body[0] == '{' && body[body.length - 1] == '}' ? body : null;
+    }
+}
@@ -0,0 +1,261 @@
+package com.analytics.LogProcessor.consumer;
+
+import com.analytics.LogProcessor.model.ActivityRecord;
+import com.analytics.LogProcessor.model.StreamStatus;
+import com.analytics.LogProcessor.service.AnalyticsLoadShedder;
+import com.analytics.LogProcessor.service.DeliveryLedger;
+import com.analytics.LogProcessor.service.EnrichmentRetryTiers;
+import com.analytics.LogProcessor.service.MetricsService;
+import com.analytics.LogProcessor.service.RawShardLayout;
+import com.analytics.LogProcessor.service.TenantRegistry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rabbitmq.client.Channel;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.listener.AbstractMessageListenerContainer;
+import org.springframework.amqp.rabbit.listener.MessageListenerContainer;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Batch consumer of the raw stream (app.stream).
+ *
+ * Records of a batch are enriched concurrently through {@link EnrichmentConsumer#enrich}, then the batch is
+ * committed up to the last record whose output (enriched, retry tier or DLQ) was confirmed. A stream cannot
+ * requeue a single message, so when a record could not be published the consumer rewinds: it stops, and after
+ * app.stream.rewind-delay re-attaches at that record's offset. The same mechanism serves operator replays
+ * from an offset or a timestamp.
+ *
+ * Every instance reads the whole stream, so each one only enriches the records of its owned shards
+ * ({@link RawShardLayout#ownsKey(String)}) and commits past the others.
+ *
+ * A rewind after a failed publish keeps the records' delivery ids, so outputs that did get through are
+ * dropped as duplicates by the analytics {@link DeliveryLedger}. An operator replay is meant to analyse
+ * records again, so records up to the offset committed when it was requested get fresh delivery ids.
+ */
+@Component
+@Slf4j
+public class RawStreamConsumer {
+
+    public static final String LISTENER_ID = "rawStreamListener";
+
+    private static final long CONFIRM_TIMEOUT_MS = 30_000;
+
+    private final EnrichmentConsumer enrichmentConsumer;
+    private final ObjectMapper objectMapper;
+    private final RawStreamOffsets offsets;
+    private final RawShardLayout shardLayout;
+    private final RabbitListenerEndpointRegistry listenerRegistry;
+    private final MetricsService metricsService;
+    private final boolean enabled;
+    private final long rewindDelayMs;
+    private final ExecutorService workers;
+    private final ScheduledExecutorService control = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "raw-stream-control");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile Object pendingRewind;
+    private volatile long replayedUpTo = -1;
+
+    public RawStreamConsumer(EnrichmentConsumer enrichmentConsumer, ObjectMapper objectMapper, RawStreamOffsets offsets,
+                             RawShardLayout shardLayout, RabbitListenerEndpointRegistry listenerRegistry, MetricsService metricsService,
+                             @Value("${app.stream.enabled}") boolean enabled,
+                             @Value("${app.stream.parallelism}") int parallelism,
+                             @Value("${app.stream.rewind-delay}") long rewindDelayMs) {
+        this.enrichmentConsumer = enrichmentConsumer;
+        this.objectMapper = objectMapper;
+        this.offsets = offsets;
+        this.shardLayout = shardLayout;
+        this.listenerRegistry = listenerRegistry;
+        this.metricsService = metricsService;
+        this.enabled = enabled;
+        this.rewindDelayMs = rewindDelayMs;
+        this.workers = Executors.newFixedThreadPool(Math.max(1, parallelism), r -> {
+            Thread thread = new Thread(r, "raw-stream-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        control.shutdownNow();
+        workers.shutdownNow();
+    }
+
+    @RabbitListener(
+            id = LISTENER_ID,
+            queues = "${queue.raw-stream}",
+            containerFactory = "rawStreamContainerFactory",
+            autoStartup = "${app.stream.enabled}"
+    )
+    public void consumeBatch(List<Message> messages, Channel channel) {
+        if (messages.isEmpty()) {
+            return;
+        }
+        long lastTag = messages.get(messages.size() - 1).getMessageProperties().getDeliveryTag();
+        if (pendingRewind != null) {
+            // already re-reading from an earlier offset, these will be delivered again
+            ackCredit(channel, lastTag);
+            return;
+        }
+
+        List<CompletableFuture<Boolean>> outcomes = new ArrayList<>(messages.size());
+        for (Message message : messages) {
+            outcomes.add(handle(message));
+        }
+
+        Long failedOffset = null;
+        long lastOffset = -1;
+        for (int i = 0; i < messages.size(); i++) {
+            long offset = offset(messages.get(i));
+            if (!settled(outcomes.get(i))) {
+                failedOffset = offset;
+                break;
+            }
+            lastOffset = offset;
+        }
+
+        if (lastOffset >= 0) {
+            offsets.commit(lastOffset);
+            resumeArgument(lastOffset + 1);
+        }
+        ackCredit(channel, lastTag);
+        metricsService.incrementStreamRecordsConsumed(messages.size());
+        if (failedOffset != null && failedOffset >= 0) {
+            log.warn("[Stream] Output of offset {} was not published, re-reading from there in {} ms",
+                    failedOffset, rewindDelayMs);
+            rewind(failedOffset, rewindDelayMs);
+        }
+    }
+
+    /**
+     * Re-reads the stream from {@code offset}; everything from there on is enriched and sent to analytics
+     * again under new delivery ids, so the ledger does not drop the records already delivered.
+     */
+    public StreamStatus replayFrom(long offset) {
+        markReplayed();
+        return rewind(offset, 0);
+    }
+
+    /**
+     * Re-reads the stream from the first message appended at or after {@code from} (second precision),
+     * like {@link #replayFrom(long)}.
+     */
+    public StreamStatus replayFrom(Instant from) {
+        markReplayed();
+        return rewind(Date.from(from), 0);
+    }
+
+    public StreamStatus status() {
+        MessageListenerContainer container = listenerRegistry.getListenerContainer(LISTENER_ID);
+        Object rewind = pendingRewind;
+        return new StreamStatus(enabled, container != null && container.isRunning(), offsets.getCommitted(),
+                rewind == null ? null : rewind instanceof Date date ? date.toInstant().toString() : rewind.toString());
+    }
+
+    private CompletableFuture<Boolean> handle(Message message) {
+        ActivityRecord record;
+        try {
+            record = objectMapper.readValue(message.getBody(), ActivityRecord.class);
+        } catch (IOException e) {
+            // stays in the stream for inspection, nothing to enrich
+            log.error("[Stream] Skipping unreadable raw message at offset {}: {}", offset(message), e.getMessage());
+            return CompletableFuture.completedFuture(true);
+        }
+        String shardKey = message.getMessageProperties().getHeader(RawShardLayout.SHARD_KEY_HEADER);
+        if (!shardLayout.ownsKey(shardKey != null ? shardKey : record.ip())) {
+            // another instance's shard
+            return CompletableFuture.completedFuture(true);
+        }
+        Integer attempt = message.getMessageProperties().getHeader(EnrichmentRetryTiers.ATTEMPT_HEADER);
+        int attemptNo = attempt == null ? 0 : attempt;
+        String tenant = message.getMessageProperties().getHeader(TenantRegistry.TENANT_HEADER);
+        Object stamp = message.getMessageProperties().getHeader(AnalyticsLoadShedder.INGESTED_AT_HEADER);
+        Long ingestedAt = stamp instanceof Number number ? number.longValue() : null;
+        Long deliveryId = offset(message) <= replayedUpTo ? DeliveryLedger.newDeliveryId() : DeliveryLedger.deliveryId(message);
+        return CompletableFuture.supplyAsync(() -> enrichmentConsumer.enrich(record, attemptNo, tenant, ingestedAt,
+                        deliveryId, MessageBodies.jsonObject(message)), workers)
+                .thenCompose(correlation -> correlation == null
+                        ? CompletableFuture.completedFuture(false)
+                        : correlation.getFuture().thenApply(CorrelationData.Confirm::isAck));
+    }
+
+    private void markReplayed() {
+        if (enabled) {
+            replayedUpTo = Math.max(replayedUpTo, offsets.getCommitted());
+        }
+    }
+
+    private static boolean settled(CompletableFuture<Boolean> outcome) {
+        try {
+            return outcome.get(CONFIRM_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private static long offset(Message message) {
+        Object offset = message.getMessageProperties().getHeader(RawStreamOffsets.OFFSET_ARGUMENT);
+        return offset instanceof Number number ? number.longValue() : -1;
+    }
+
+    private static void ackCredit(Channel channel, long deliveryTag) {
+        try {
+            channel.basicAck(deliveryTag, true);
+        } catch (IOException | RuntimeException e) {
+            log.warn("[Stream] Could not ack deliveries up to {}: {}", deliveryTag, e.getMessage());
+        }
+    }
+
+    /**
+     * Keeps the consumer argument in step with the commits, so a consumer the container restarts
+     * (e.g. after a connection recovery) resumes where this one left off.
+     */
+    private void resumeArgument(Object start) {
+        if (listenerRegistry.getListenerContainer(LISTENER_ID) instanceof AbstractMessageListenerContainer container) {
+            container.setConsumerArguments(Map.of(RawStreamOffsets.OFFSET_ARGUMENT, start));
+        }
+    }
+
+    private StreamStatus rewind(Object start, long delayMs) {
+        if (!enabled) {
+            return status();
+        }
+        pendingRewind = start;
+        metricsService.incrementStreamRewinds();
+        control.schedule(() -> {
+            MessageListenerContainer container = listenerRegistry.getListenerContainer(LISTENER_ID);
+            if (container == null || pendingRewind != start) {
+                return;
+            }
+            container.stop();
+            resumeArgument(start);
+            pendingRewind = null;
+            container.start();
+            log.info("[Stream] Raw stream consumer re-attached at {}", start);
+        }, delayMs, TimeUnit.MILLISECONDS);
+        return status();
+    }
+}
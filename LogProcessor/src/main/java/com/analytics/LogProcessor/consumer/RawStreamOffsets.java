@@ -0,0 +1,94 @@
+package com.analytics.LogProcessor.consumer;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Committed read position of the raw stream, kept in a small file so a restarted instance
+ * resumes right after the last record whose output was confirmed.
+ *
+ * AMQP 0.9.1 stream consumers have no broker-side offset tracking, so the offset is tracked here
+ * and passed back as the {@value #OFFSET_ARGUMENT} consumer argument. Commits are in memory and
+ * flushed every app.stream.offset-flush-interval; after a crash the records since the last flush
+ * are enriched again, which the enrichment cache makes cheap.
+ */
+@Component
+@Slf4j
+public class RawStreamOffsets {
+
+    public static final String OFFSET_ARGUMENT = "x-stream-offset";
+
+    private final Path file;
+    private volatile long committed = -1;
+    private volatile long flushed = -1;
+
+    public RawStreamOffsets(@Value("${app.stream.offset-file}") String offsetFile) {
+        this.file = Paths.get(offsetFile);
+    }
+
+    @PostConstruct
+    public void load() {
+        if (!Files.isRegularFile(file)) {
+            return;
+        }
+        try {
+            committed = Long.parseLong(Files.readString(file).trim());
+            flushed = committed;
+            log.info("[Stream] Resuming raw stream after offset {}", committed);
+        } catch (IOException | NumberFormatException e) {
+            log.warn("[Stream] Ignoring unreadable offset file {}: {}", file, e.getMessage());
+        }
+    }
+
+    /**
+     * Where a (re)started consumer should attach: right after the committed offset, or only new
+     * messages when nothing has been committed yet.
+     */
+    public Object startOffset() {
+        long offset = committed;
+        return offset < 0 ? "next" : offset + 1;
+    }
+
+    public long getCommitted() {
+        return committed;
+    }
+
+    /**
+     * Records that every message up to and including {@code offset} has been handled. A single consumer
+     * reads the stream in order, so the latest commit always wins, including after a rewind.
+     */
+    public void commit(long offset) {
+        committed = offset;
+    }
+
+    @Scheduled(fixedDelayString = "${app.stream.offset-flush-interval}")
+    @PreDestroy
+    public synchronized void flush() {
+        long offset = committed;
+        if (offset == flushed) {
+            return;
+        }
+        try {
+            Path parent = file.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.writeString(tmp, Long.toString(offset));
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            flushed = offset;
+        } catch (IOException e) {
+            log.warn("[Stream] Could not write offset {} to {}: {}", offset, file, e.getMessage());
+        }
+    }
+}
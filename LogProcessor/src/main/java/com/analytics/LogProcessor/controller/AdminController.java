@@ -0,0 +1,251 @@
+package com.analytics.LogProcessor.controller;
+
+import com.analytics.LogProcessor.archive.ArchivedRecord;
+import com.analytics.LogProcessor.archive.EnrichedArchiveReader;
+import com.analytics.LogProcessor.archive.EnrichedRecordArchive;
+import com.analytics.LogProcessor.consumer.EnrichmentAutoscaler;
+import com.analytics.LogProcessor.consumer.EnrichmentListenerGate;
+import com.analytics.LogProcessor.consumer.RawStreamConsumer;
+import com.analytics.LogProcessor.model.ArchiveScanResult;
+import com.analytics.LogProcessor.model.Category;
+import com.analytics.LogProcessor.model.DlqGroupSummary;
+import com.analytics.LogProcessor.model.FilterRuleStats;
+import com.analytics.LogProcessor.model.RecentRecordsResult;
+import com.analytics.LogProcessor.model.LagStatus;
+import com.analytics.LogProcessor.model.ReplayProgress;
+import com.analytics.LogProcessor.model.ReplayRequest;
+import com.analytics.LogProcessor.model.SketchSummary;
+import com.analytics.LogProcessor.model.StreamStatus;
+import com.analytics.LogProcessor.model.TenantStats;
+import com.analytics.LogProcessor.replay.DlqReplayService;
+import com.analytics.LogProcessor.service.AnalyticsDispatcher;
+import com.analytics.LogProcessor.service.AnalyticsLoadShedder;
+import com.analytics.LogProcessor.service.IngestFilter;
+import com.analytics.LogProcessor.service.MetricsService;
+import com.analytics.LogProcessor.service.QueueLagMonitor;
+import com.analytics.LogProcessor.service.TenantRegistry;
+import com.analytics.LogProcessor.sketch.StreamSketches;
+import com.analytics.LogProcessor.store.RecentRecordStore;
+import jakarta.validation.Valid;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Operational endpoints for inspecting and steering the pipeline at runtime.
+ */
+@RestController
+@RequestMapping("/private/v1/admin")
+@Slf4j
+public class AdminController {
+
+    private final IngestFilter ingestFilter;
+    private final QueueLagMonitor lagMonitor;
+    private final EnrichmentListenerGate listenerGate;
+    private final EnrichmentAutoscaler autoscaler;
+    private final DlqReplayService replayService;
+    private final RawStreamConsumer streamConsumer;
+    private final TenantRegistry tenantRegistry;
+    private final AnalyticsDispatcher analyticsDispatcher;
+    private final MetricsService metricsService;
+    private final AnalyticsLoadShedder loadShedder;
+    private final EnrichedRecordArchive archive;
+    private final RecentRecordStore recentRecords;
+    private final StreamSketches sketches;
+
+    public AdminController(IngestFilter ingestFilter, QueueLagMonitor lagMonitor,
+                           EnrichmentListenerGate listenerGate, EnrichmentAutoscaler autoscaler,
+                           DlqReplayService replayService, RawStreamConsumer streamConsumer,
+                           TenantRegistry tenantRegistry, AnalyticsDispatcher analyticsDispatcher,
+                           MetricsService metricsService, AnalyticsLoadShedder loadShedder,
+                           EnrichedRecordArchive archive, RecentRecordStore recentRecords,
+                           StreamSketches sketches){
+        this.ingestFilter = ingestFilter;
+        this.lagMonitor = lagMonitor;
+        this.listenerGate = listenerGate;
+        this.autoscaler = autoscaler;
+        this.replayService = replayService;
+        this.streamConsumer = streamConsumer;
+        this.tenantRegistry = tenantRegistry;
+        this.analyticsDispatcher = analyticsDispatcher;
+        this.metricsService = metricsService;
+        this.loadShedder = loadShedder;
+        this.archive = archive;
+        this.recentRecords = recentRecords;
+        this.sketches = sketches;
+    }
+
+    @GetMapping("/ingest-filter")
+    public ResponseEntity<List<FilterRuleStats>> ingestFilterRules(){
+        return ResponseEntity.ok(ingestFilter.getRules().stream()
+                .map(rule -> new FilterRuleStats(rule.text(), rule.hits().get()))
+                .toList());
+    }
+
+    @PostMapping("/ingest-filter/reload")
+    public ResponseEntity<List<FilterRuleStats>> reloadIngestFilter(){
+        log.info("Reloading ingest filter rules on request");
+        ingestFilter.reload();
+        return ingestFilterRules();
+    }
+
+    @GetMapping("/lag")
+    public ResponseEntity<LagStatus> lag(){
+        QueueLagMonitor.Sample sample = lagMonitor.getLatest();
+        EnrichmentAutoscaler.Decision decision = autoscaler.getLastDecision();
+        return ResponseEntity.ok(new LagStatus(sample.rawDepth(), sample.enrichedDepth(),
+                sample.drainRatePerSecond(), sample.enrichmentLatencyMs(),
+                listenerGate.getConsumers(), listenerGate.getTargetConsumers(),
+                decision == null ? null : decision.prefetch(), listenerGate.isPaused(),
+                loadShedder.getBacklogEtaSeconds(), loadShedder.isShedding(),
+                metricsService.getAnalyticsRecordsShed().get(), metricsService.getAnalyticsRecordsSampledOut().get()));
+    }
+
+    /**
+     * Analytics share per tenant: weighted lanes, tenants with records waiting in the dispatcher and
+     * every tenant that had records delivered since startup.
+     */
+    @GetMapping("/tenants")
+    public ResponseEntity<List<TenantStats>> tenants(){
+        Map<String, Integer> backlog = analyticsDispatcher.backlog();
+        Map<String, MetricsService.TenantDeliveries> deliveries = metricsService.getTenantDeliveries();
+        TreeSet<String> tenants = new TreeSet<>(tenantRegistry.laneTenants());
+        tenants.addAll(backlog.keySet());
+        tenants.addAll(deliveries.keySet());
+
+        List<String> lanes = tenantRegistry.laneTenants();
+        return ResponseEntity.ok(tenants.stream().map(tenant -> {
+            MetricsService.TenantDeliveries delivered = deliveries.get(tenant);
+            return new TenantStats(tenant, tenantRegistry.weight(tenant),
+                    lanes.contains(tenant) ? lagMonitor.depth(tenantRegistry.laneQueue(tenant)) : -1,
+                    backlog.getOrDefault(tenant, 0),
+                    delivered == null ? 0 : delivered.getSent().get(),
+                    delivered == null ? 0 : delivered.averageLatencyMs(),
+                    delivered == null ? 0 : delivered.getMaxLatency().get());
+        }).toList());
+    }
+
+    /**
+     * Dead-letter queue contents grouped by error type (or dead-letter reason and source queue).
+     */
+    @GetMapping("/dlq/groups")
+    public ResponseEntity<List<DlqGroupSummary>> dlqGroups(@RequestParam(defaultValue = "10000") int limit){
+        List<DlqGroupSummary> groups = replayService.summarize(limit);
+        return groups == null ? ResponseEntity.status(HttpStatus.CONFLICT).build() : ResponseEntity.ok(groups);
+    }
+
+    @PostMapping("/dlq/replay")
+    public ResponseEntity<ReplayProgress> startReplay(@Valid @RequestBody ReplayRequest replayRequest){
+        log.info("Received DLQ replay request for groups {}", replayRequest.groups());
+        ReplayProgress progress = replayService.start(replayRequest);
+        if (progress == null) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(replayService.progress());
+        }
+        return ResponseEntity.accepted().body(progress);
+    }
+
+    @GetMapping("/dlq/replay")
+    public ResponseEntity<ReplayProgress> replayProgress(){
+        ReplayProgress progress = replayService.progress();
+        return progress == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(progress);
+    }
+
+    @DeleteMapping("/dlq/replay")
+    public ResponseEntity<ReplayProgress> stopReplay(){
+        ReplayProgress progress = replayService.stop();
+        return progress == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(progress);
+    }
+
+    @GetMapping("/stream")
+    public ResponseEntity<StreamStatus> streamStatus(){
+        return ResponseEntity.ok(streamConsumer.status());
+    }
+
+    /**
+     * Re-runs enrichment over the raw stream from an offset, or from an ISO-8601 instant.
+     */
+    @PostMapping("/stream/replay")
+    public ResponseEntity<StreamStatus> replayStream(@RequestParam(required = false) Long offset,
+                                                     @RequestParam(required = false) Instant from){
+        if ((offset == null) == (from == null)) {
+            return ResponseEntity.badRequest().build();
+        }
+        if (!streamConsumer.status().enabled()) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+        log.info("Replaying raw stream from {}", offset != null ? "offset " + offset : from);
+        StreamStatus status = offset != null ? streamConsumer.replayFrom(offset) : streamConsumer.replayFrom(from);
+        return ResponseEntity.accepted().body(status);
+    }
+
+    /**
+     * Scans the local archive of enriched records, oldest first. from/to are ISO-8601 instants (to exclusive),
+     * category a name or technique id, asn as enrichment reports it (e.g. AS13335).
+     */
+    @GetMapping("/archive")
+    public ResponseEntity<ArchiveScanResult> scanArchive(@RequestParam(required = false) Instant from,
+                                                         @RequestParam(required = false) Instant to,
+                                                         @RequestParam(required = false) String category,
+                                                         @RequestParam(required = false) String asn,
+                                                         @RequestParam(defaultValue = "100") int limit) throws IOException {
+        if (!archive.isEnabled()) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+        if (limit < 1) {
+            return ResponseEntity.badRequest().build();
+        }
+        String techniqueId = category != null && Category.isValid(category)
+                ? Category.fromString(category).getTechniqueId() : category;
+        List<ArchivedRecord> records = new ArrayList<>();
+        EnrichedArchiveReader.ScanStats stats = EnrichedArchiveReader.scan(archive.directory(),
+                new EnrichedArchiveReader.Filter(from, to, techniqueId, asn),
+                record -> records.add(record) && records.size() < limit);
+        return ResponseEntity.ok(new ArchiveScanResult(records, stats.segments(), stats.blocks(),
+                stats.blocksSkipped(), stats.recordsDecoded(), stats.matched()));
+    }
+
+    /**
+     * Recent enriched records from memory, newest first: what an IP (or IPv6 /64), ASN or category did within
+     * app.recent.window. from/to are ISO-8601 instants (to exclusive).
+     */
+    @GetMapping("/recent")
+    public ResponseEntity<RecentRecordsResult> recentRecords(@RequestParam(required = false) String ip,
+                                                             @RequestParam(required = false) String asn,
+                                                             @RequestParam(required = false) String category,
+                                                             @RequestParam(required = false) Instant from,
+                                                             @RequestParam(required = false) Instant to,
+                                                             @RequestParam(defaultValue = "100") int limit){
+        if (!recentRecords.isEnabled()) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+        if (limit < 1) {
+            return ResponseEntity.badRequest().build();
+        }
+        try {
+            return ResponseEntity.ok(recentRecords.query(ip, asn, category, from, to, limit));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    /**
+     * Heavy hitters (IPs, ASNs, assets) and distinct IP counts of the current app.sketch.window, or of the
+     * one before it with previous=true. Counts are sketch estimates, see StreamSketches.
+     */
+    @GetMapping("/sketches")
+    public ResponseEntity<SketchSummary> sketches(@RequestParam(defaultValue = "false") boolean previous){
+        if (!sketches.isEnabled()) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+        SketchSummary summary = sketches.summary(previous);
+        return summary == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(summary);
+    }
+}
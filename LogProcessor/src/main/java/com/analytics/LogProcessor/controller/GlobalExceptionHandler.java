@@ -5,6 +5,7 @@ import io.swagger.v3.oas.annotations.Hidden;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.HttpMessageNotReadableException;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
@@ -36,6 +37,17 @@ public class GlobalExceptionHandler {
          return ResponseEntity.badRequest().body(response);
     }
 
+    /**
+     * Malformed bodies, including corrupt or oversized compressed ones, are the client's fault.
+     */
+    @ExceptionHandler(HttpMessageNotReadableException.class)
+    public ResponseEntity<ErrorResponse> handleUnreadableBody(HttpMessageNotReadableException ex) {
+        log.error("Unreadable request body: {}", ex.getMostSpecificCause().getMessage());
+        ErrorResponse errorResponse = new ErrorResponse(HttpStatus.BAD_REQUEST.value(),
+                "Unreadable request body: " + ex.getMostSpecificCause().getMessage(), LocalDateTime.now());
+        return ResponseEntity.badRequest().body(errorResponse);
+    }
+
     @ExceptionHandler(AnalyticsException.class)
     public ResponseEntity<ErrorResponse> handleAnalyticsException(AnalyticsException ex) {
         log.error("Analytics exception occurred: {}", ex.getMessage());
@@ -2,12 +2,18 @@ package com.analytics.LogProcessor.controller;
 
 import com.analytics.LogProcessor.model.IngestRequest;
 import com.analytics.LogProcessor.model.IngestResponse;
+import com.analytics.LogProcessor.model.IngestTicketStatus;
 import com.analytics.LogProcessor.service.IngestService;
+import com.analytics.LogProcessor.service.IngestTicketService;
 import jakarta.validation.Valid;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.net.URI;
+
 /**
  * This controller exposes a REST API endpoint for the LogProcessor service.
  * The endpoint allows the CLI script to send batches of raw activity records
@@ -21,9 +27,11 @@ import org.springframework.web.bind.annotation.*;
 public class LogProcessorController {
 
     private final IngestService ingestService;
+    private final IngestTicketService ticketService;
 
-    public LogProcessorController(IngestService ingestService){
+    public LogProcessorController(IngestService ingestService, IngestTicketService ticketService){
         this.ingestService = ingestService;
+        this.ticketService = ticketService;
     }
 
     @PostMapping("/ingest")
@@ -36,4 +44,28 @@ public class LogProcessorController {
         return ResponseEntity.ok(ingestResponse);
 
     }
+
+    /**
+     * Validates the batch and queues it for publishing, answering 202 with a ticket right away.
+     * Answers 503 when the publisher queue is full.
+     */
+    @PostMapping("/ingest/async")
+    public ResponseEntity<IngestTicketStatus> ingestAsync(
+            @Valid @RequestBody IngestRequest ingestRequest,
+            @RequestHeader("Authorization") String authorization){
+        IngestTicketStatus ticket = ticketService.submit(ingestRequest.activityRecordList(), authorization);
+        if (ticket == null) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "1").build();
+        }
+        log.info("Accepted {} records under ticket {}", ingestRequest.activityRecordList().size(), ticket.ticketId());
+        return ResponseEntity.accepted()
+                .location(URI.create("/private/v1/ingest/tickets/" + ticket.ticketId()))
+                .body(ticket);
+    }
+
+    @GetMapping("/ingest/tickets/{ticketId}")
+    public ResponseEntity<IngestTicketStatus> ticket(@PathVariable String ticketId){
+        IngestTicketStatus ticket = ticketService.status(ticketId);
+        return ticket == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(ticket);
+    }
 }
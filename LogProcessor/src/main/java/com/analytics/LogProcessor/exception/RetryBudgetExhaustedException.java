@@ -0,0 +1,11 @@
+package com.analytics.LogProcessor.exception;
+
+/**
+ * Exception thrown when a retry is refused because the shared retry budget is empty
+ */
+public class RetryBudgetExhaustedException extends RuntimeException {
+
+    public RetryBudgetExhaustedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,41 @@
+package com.analytics.LogProcessor.filter;
+
+import com.github.luben.zstd.ZstdInputStreamNoFinalizer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Request body encodings understood by {@link RequestDecompressionFilter}.
+ */
+public enum ContentCodec {
+
+    GZIP {
+        @Override
+        InputStream decode(InputStream in) throws IOException {
+            return new GZIPInputStream(in, BUFFER_SIZE);
+        }
+    },
+    ZSTD {
+        @Override
+        InputStream decode(InputStream in) throws IOException {
+            return new ZstdInputStreamNoFinalizer(in);
+        }
+    };
+
+    private static final int BUFFER_SIZE = 8192;
+
+    abstract InputStream decode(InputStream in) throws IOException;
+
+    /**
+     * @return the codec for a Content-Encoding value, null when it is not supported
+     */
+    public static ContentCodec of(String contentEncoding) {
+        return switch (contentEncoding.trim().toLowerCase()) {
+            case "gzip", "x-gzip" -> GZIP;
+            case "zstd" -> ZSTD;
+            default -> null;
+        };
+    }
+}
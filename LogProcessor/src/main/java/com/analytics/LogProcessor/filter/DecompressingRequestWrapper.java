@@ -0,0 +1,188 @@
+package com.analytics.LogProcessor.filter;
+
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import org.springframework.http.HttpHeaders;
+
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+
+/**
+ * Presents a compressed request as the plain body it encodes: the input stream inflates on the fly,
+ * and Content-Encoding / Content-Length are hidden because they describe the compressed bytes.
+ */
+class DecompressingRequestWrapper extends HttpServletRequestWrapper {
+
+    private final ContentCodec codec;
+    private final long maxDecodedBytes;
+    private CountingInputStream wire;
+    private CountingInputStream decoded;
+    private ServletInputStream body;
+
+    DecompressingRequestWrapper(HttpServletRequest request, ContentCodec codec, long maxDecodedBytes) {
+        super(request);
+        this.codec = codec;
+        this.maxDecodedBytes = maxDecodedBytes;
+    }
+
+    @Override
+    public ServletInputStream getInputStream() throws IOException {
+        if (body == null) {
+            // created on first read: a gzip stream consumes the header as soon as it is constructed
+            ServletInputStream raw = super.getInputStream();
+            wire = new CountingInputStream(raw, Long.MAX_VALUE);
+            decoded = new CountingInputStream(codec.decode(wire), maxDecodedBytes);
+            body = new DecodedServletInputStream(decoded);
+        }
+        return body;
+    }
+
+    @Override
+    public BufferedReader getReader() throws IOException {
+        String encoding = getCharacterEncoding();
+        Charset charset = encoding != null ? Charset.forName(encoding) : StandardCharsets.UTF_8;
+        return new BufferedReader(new InputStreamReader(getInputStream(), charset));
+    }
+
+    @Override
+    public int getContentLength() {
+        return -1;
+    }
+
+    @Override
+    public long getContentLengthLong() {
+        return -1;
+    }
+
+    @Override
+    public String getHeader(String name) {
+        return isHidden(name) ? null : super.getHeader(name);
+    }
+
+    @Override
+    public Enumeration<String> getHeaders(String name) {
+        return isHidden(name) ? Collections.emptyEnumeration() : super.getHeaders(name);
+    }
+
+    @Override
+    public Enumeration<String> getHeaderNames() {
+        List<String> names = Collections.list(super.getHeaderNames());
+        names.removeIf(DecompressingRequestWrapper::isHidden);
+        return Collections.enumeration(names);
+    }
+
+    /**
+     * Releases the decoder (zstd holds native buffers) whether or not the body was read to the end.
+     */
+    void close() throws IOException {
+        if (decoded != null) {
+            decoded.close();
+        }
+    }
+
+    long getWireBytes() {
+        return wire == null ? 0 : wire.count;
+    }
+
+    long getDecodedBytes() {
+        return decoded == null ? 0 : decoded.count;
+    }
+
+    private static boolean isHidden(String name) {
+        return HttpHeaders.CONTENT_ENCODING.equalsIgnoreCase(name) || HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name);
+    }
+
+    /**
+     * Counts bytes read through it and fails once more than {@code limit} have been read.
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+
+        private final long limit;
+        private long count;
+
+        private CountingInputStream(InputStream in, long limit) {
+            super(in);
+            this.limit = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                advance(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int n = super.read(buffer, offset, length);
+            if (n > 0) {
+                advance(n);
+            }
+            return n;
+        }
+
+        private void advance(int n) throws IOException {
+            count += n;
+            if (count > limit) {
+                throw new IOException("Decompressed request body exceeds " + limit + " bytes");
+            }
+        }
+    }
+
+    private static final class DecodedServletInputStream extends ServletInputStream {
+
+        private final InputStream decoded;
+        private boolean finished;
+
+        private DecodedServletInputStream(InputStream decoded) {
+            this.decoded = decoded;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = decoded.read();
+            finished = b < 0;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int n = decoded.read(buffer, offset, length);
+            finished = n < 0;
+            return n;
+        }
+
+        @Override
+        public boolean isFinished() {
+            return finished;
+        }
+
+        @Override
+        public boolean isReady() {
+            return !finished;
+        }
+
+        @Override
+        public void setReadListener(ReadListener readListener) {
+            // inflating is blocking; the ingest endpoint does not use async servlet IO
+            throw new IllegalStateException("Non-blocking reads of compressed request bodies are not supported");
+        }
+
+        @Override
+        public void close() throws IOException {
+            decoded.close();
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.analytics.LogProcessor.filter;
+
+import com.analytics.LogProcessor.service.MetricsService;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * Accepts gzip- and zstd-compressed request bodies (Content-Encoding header).
+ *
+ * The body is decompressed as it is read, so Jackson parses straight from the inflating stream and the
+ * compressed upload is never held in memory. Decoded size is capped by app.ingest.max-decoded-bytes to
+ * keep a small compressed body from expanding without bound. Any other encoding is refused with 415.
+ */
+@Component
+@Slf4j
+public class RequestDecompressionFilter extends OncePerRequestFilter {
+
+    private final MetricsService metricsService;
+    private final long maxDecodedBytes;
+
+    public RequestDecompressionFilter(MetricsService metricsService,
+                                      @Value("${app.ingest.max-decoded-bytes}") long maxDecodedBytes) {
+        this.metricsService = metricsService;
+        this.maxDecodedBytes = maxDecodedBytes;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String encoding = request.getHeader(HttpHeaders.CONTENT_ENCODING);
+        if (encoding == null || encoding.isBlank() || encoding.trim().equalsIgnoreCase("identity")) {
+            chain.doFilter(request, response);
+            return;
+        }
+        ContentCodec codec = ContentCodec.of(encoding);
+        if (codec == null) {
+            log.warn("Rejecting request with unsupported Content-Encoding '{}'", encoding);
+            response.sendError(HttpStatus.UNSUPPORTED_MEDIA_TYPE.value(), "Unsupported Content-Encoding: " + encoding);
+            return;
+        }
+
+        DecompressingRequestWrapper decompressed = new DecompressingRequestWrapper(request, codec, maxDecodedBytes);
+        try {
+            chain.doFilter(decompressed, response);
+        } finally {
+            metricsService.recordIngestBytes(decompressed.getWireBytes(), decompressed.getDecodedBytes());
+            try {
+                decompressed.close();
+            } catch (IOException e) {
+                log.debug("Could not close decompressed request body: {}", e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.analytics.LogProcessor.model;
+
+import com.analytics.LogProcessor.archive.ArchivedRecord;
+
+import java.util.List;
+
+/**
+ * @param blocksSkipped  blocks ruled out by their time range or dictionaries without being decompressed
+ * @param recordsDecoded rows of the blocks that were decompressed
+ */
+public record ArchiveScanResult(List<ArchivedRecord> records, int segments, long blocks,
+                                long blocksSkipped, long recordsDecoded, long matched) {}
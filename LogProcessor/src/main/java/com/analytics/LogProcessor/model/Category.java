@@ -11,30 +11,32 @@ import java.util.Arrays;
  */
 public enum Category {
 
-    CONTENT_INJECTION("contentinjection"),
+    CONTENT_INJECTION("contentinjection", "T1659"),
 
-    DRIVE_BY_COMPROMISE("drivebycompromise"),
+    DRIVE_BY_COMPROMISE("drivebycompromise", "T1189"),
 
-    EXPLOIT_PUBLIC_FACING_APPLICATIONS("exploitpublicfacingapplication"),
+    EXPLOIT_PUBLIC_FACING_APPLICATIONS("exploitpublicfacingapplication", "T1190"),
 
-    EXTERNAL_REMOTE_SERVICES("externalremoteservices"),
+    EXTERNAL_REMOTE_SERVICES("externalremoteservices", "T1133"),
 
-    HARDWARE_ADDITIONS("hardwareadditions"),
+    HARDWARE_ADDITIONS("hardwareadditions", "T1200"),
 
-    PHISHING("phishing"),
+    PHISHING("phishing", "T1566"),
 
-    REPLICATION_THROUGH_REMOVABLE_MEDIA("replicationthroughremovablemedia"),
+    REPLICATION_THROUGH_REMOVABLE_MEDIA("replicationthroughremovablemedia", "T1091"),
 
-    SUPPLY_CHAIN_COMPROMISE("supplychaincompromise"),
+    SUPPLY_CHAIN_COMPROMISE("supplychaincompromise", "T1195"),
 
-     TRUSTED_RELATIONSHIP("trustedrelationship"),
+     TRUSTED_RELATIONSHIP("trustedrelationship", "T1199"),
 
-     VALID_ACCOUNTS("validaccounts");
+     VALID_ACCOUNTS("validaccounts", "T1078");
 
      private final String value;
+     private final String techniqueId;
 
-    Category(String value){
+    Category(String value, String techniqueId){
         this.value = value;
+        this.techniqueId = techniqueId;
     }
 
     /**
@@ -45,6 +47,13 @@ public enum Category {
         return value;
     }
 
+    /**
+     * MITRE ATT&CK technique id, which is what the Enrichment API reports back as the category
+     */
+    public String getTechniqueId(){
+        return techniqueId;
+    }
+
     @JsonCreator
     public static Category fromString(String value){
         if(value==null) return null;
@@ -57,6 +66,19 @@ public enum Category {
                 .orElseThrow(() -> new IllegalArgumentException("Invalid category value: "+value));
     }
 
+    /**
+     * Category for a technique id as the Enrichment API reports it, null if it is not one of ours.
+     */
+    public static Category fromTechniqueId(String techniqueId){
+        if(techniqueId == null) return null;
+        for(Category category : values()){
+            if(category.techniqueId.equalsIgnoreCase(techniqueId.trim())){
+                return category;
+            }
+        }
+        return null;
+    }
+
     public static boolean isValid(String value){
         if(value == null) return false;
         try{
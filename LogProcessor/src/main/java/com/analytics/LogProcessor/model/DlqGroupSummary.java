@@ -0,0 +1,3 @@
+package com.analytics.LogProcessor.model;
+
+public record DlqGroupSummary(String group, String stage, long count, String sampleError) {}
@@ -0,0 +1,3 @@
+package com.analytics.LogProcessor.model;
+
+public record FilterRuleStats(String rule, long hits) {}
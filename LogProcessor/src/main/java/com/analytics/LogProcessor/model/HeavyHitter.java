@@ -0,0 +1,7 @@
+package com.analytics.LogProcessor.model;
+
+/**
+ * @param estimate   occurrences in the window, never underestimated
+ * @param guaranteed occurrences the key certainly had in the window
+ */
+public record HeavyHitter(String key, long estimate, long guaranteed) {}
@@ -3,9 +3,13 @@ package com.analytics.LogProcessor.model;
 import lombok.Builder;
 import lombok.Data;
 
+import java.util.List;
+
 @Data
 @Builder
 public class IngestResponse{
     private Integer recordsIngested;
+    private Integer recordsRejected;
+    private List<RejectedRecord> rejectedRecords;
     private String message;
 }
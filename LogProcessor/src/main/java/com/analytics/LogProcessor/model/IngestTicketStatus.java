@@ -0,0 +1,19 @@
+package com.analytics.LogProcessor.model;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Outcome of an asynchronously ingested batch.
+ *
+ * @param confirmed records the broker confirmed on the raw stage
+ * @param rejected  records denied by the ingest filter, listed in rejectedRecords
+ * @param spilled   records that could not be confirmed and were written to the local spool for a later publish
+ * @param failed    records that could neither be confirmed nor spooled
+ */
+public record IngestTicketStatus(String ticketId, Status status, int records, int confirmed, int rejected,
+                                 int spilled, int failed, List<RejectedRecord> rejectedRecords,
+                                 Instant acceptedAt, Instant completedAt) {
+
+    public enum Status { QUEUED, PUBLISHING, COMPLETED }
+}
@@ -0,0 +1,6 @@
+package com.analytics.LogProcessor.model;
+
+public record LagStatus(long rawDepth, long enrichedDepth, double drainRatePerSecond, double enrichmentLatencyMs,
+                        int enrichmentConsumers, int targetConsumers, Integer prefetch, boolean paused,
+                        double analyticsBacklogEtaSeconds, boolean analyticsShedding,
+                        long analyticsRecordsShed, long analyticsRecordsSampledOut) {}
@@ -0,0 +1,13 @@
+package com.analytics.LogProcessor.model;
+
+import com.analytics.LogProcessor.archive.ArchivedRecord;
+
+import java.util.List;
+
+/**
+ * @param rowsExamined   rows the query looked at, index chains or whole partitions
+ * @param estimatedBytes estimated heap held by the store
+ * @param evictedRecords records dropped by age or for the memory budget since startup
+ */
+public record RecentRecordsResult(List<ArchivedRecord> records, int partitionsScanned, long rowsExamined,
+                                  long storedRecords, long estimatedBytes, long evictedRecords) {}
@@ -0,0 +1,6 @@
+package com.analytics.LogProcessor.model;
+
+/**
+ * A record dropped at ingest, with the filter rule that matched it.
+ */
+public record RejectedRecord(Long id, String ip, String rule) {}
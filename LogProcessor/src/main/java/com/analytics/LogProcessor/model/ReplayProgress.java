@@ -0,0 +1,18 @@
+package com.analytics.LogProcessor.model;
+
+import java.time.Instant;
+import java.util.Map;
+
+public record ReplayProgress(
+        String jobId,
+        String state,
+        long scanned,
+        long replayed,
+        long skipped,
+        long publishFailures,
+        double pipelineFailureRate,
+        Map<String, Long> replayedByGroup,
+        Instant startedAt,
+        Instant finishedAt,
+        String stopReason
+) {}
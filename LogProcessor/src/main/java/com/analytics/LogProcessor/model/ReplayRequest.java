@@ -0,0 +1,19 @@
+package com.analytics.LogProcessor.model;
+
+import jakarta.validation.constraints.DecimalMax;
+import jakarta.validation.constraints.DecimalMin;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotEmpty;
+
+import java.util.List;
+
+/**
+ * Which dead-letter groups to replay and how hard to push. Unset limits fall back to app.dlq-replay.
+ */
+public record ReplayRequest(
+        @NotEmpty List<String> groups,
+        @Min(1) Integer ratePerSecond,
+        @Min(1) Integer parallelism,
+        @DecimalMin("0.0") @DecimalMax("1.0") Double maxFailureRate,
+        @Min(1) Integer maxRecords
+) {}
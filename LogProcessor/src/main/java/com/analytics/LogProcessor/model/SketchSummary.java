@@ -0,0 +1,14 @@
+package com.analytics.LogProcessor.model;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Streaming sketch answers for one tumbling window; every count is an estimate.
+ *
+ * @param distinctIpsByCategory distinct IPs per category name (technique id if not one of ours)
+ */
+public record SketchSummary(Instant windowStart, Instant windowEnd, long records,
+                            List<HeavyHitter> topIps, List<HeavyHitter> topAsns, List<HeavyHitter> topAssets,
+                            long distinctIps, Map<String, Long> distinctIpsByCategory) {}
@@ -0,0 +1,7 @@
+package com.analytics.LogProcessor.model;
+
+/**
+ * @param committedOffset last raw stream offset whose output was confirmed, -1 before the first commit
+ * @param pendingRewind   offset or timestamp the consumer is about to re-read from, null when none
+ */
+public record StreamStatus(boolean enabled, boolean running, long committedOffset, String pendingRewind) {}
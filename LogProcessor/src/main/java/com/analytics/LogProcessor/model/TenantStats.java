@@ -0,0 +1,8 @@
+package com.analytics.LogProcessor.model;
+
+/**
+ * @param laneDepth ready messages in the tenant's enriched lane, -1 for tenants sharing the enriched queue
+ * @param backlog   records waiting in the analytics dispatcher
+ */
+public record TenantStats(String tenant, int weight, long laneDepth, int backlog, long sent,
+                          double averageLatencyMs, long maxLatencyMs) {}
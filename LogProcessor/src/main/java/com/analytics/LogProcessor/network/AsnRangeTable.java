@@ -0,0 +1,145 @@
+package com.analytics.LogProcessor.network;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Immutable, off-heap table of non-overlapping address ranges to ASNs for one address family.
+ *
+ * Prefix dumps contain nested prefixes (a /16 announced by one AS, a /24 inside it by another);
+ * {@link #build(boolean, List)} flattens them into disjoint segments where the most specific prefix
+ * wins, so a lookup is a single binary search over the segment starts. Starts, ends and ASNs live in
+ * direct buffers (4 bytes per bound for IPv4, 8 for IPv6 /64s), keeping a full routing table
+ * (~1M prefixes) out of the heap and out of GC scans.
+ */
+public final class AsnRangeTable {
+
+    public static final int NO_ASN = -1;
+
+    private final boolean ipv6;
+    private final int size;
+    private final ByteBuffer starts;
+    private final ByteBuffer ends;
+    private final ByteBuffer asns;
+
+    private AsnRangeTable(boolean ipv6, List<long[]> segments) {
+        this.ipv6 = ipv6;
+        this.size = segments.size();
+        int width = ipv6 ? Long.BYTES : Integer.BYTES;
+        this.starts = ByteBuffer.allocateDirect(Math.max(1, size * width));
+        this.ends = ByteBuffer.allocateDirect(Math.max(1, size * width));
+        this.asns = ByteBuffer.allocateDirect(Math.max(1, size * Integer.BYTES));
+        for (int i = 0; i < size; i++) {
+            long[] segment = segments.get(i);
+            if (ipv6) {
+                starts.putLong(i * width, segment[0]);
+                ends.putLong(i * width, segment[1]);
+            } else {
+                starts.putInt(i * width, (int) segment[0]);
+                ends.putInt(i * width, (int) segment[1]);
+            }
+            asns.putInt(i * Integer.BYTES, (int) segment[2]);
+        }
+    }
+
+    /**
+     * Builds a table from prefixes of a single family (see {@link CidrBlock}).
+     */
+    public static AsnRangeTable build(boolean ipv6, List<Prefix> prefixes) {
+        List<Prefix> sorted = new ArrayList<>(prefixes);
+        // parents before children: ascending start, then widest range first
+        sorted.sort(Comparator.<Prefix>comparingLong(p -> p.block().first() ^ Long.MIN_VALUE)
+                .thenComparing(p -> p.block().last() ^ Long.MIN_VALUE, Comparator.reverseOrder()));
+
+        List<long[]> segments = new ArrayList<>();
+        Deque<Prefix> open = new ArrayDeque<>();
+        long cursor = 0;
+        for (Prefix prefix : sorted) {
+            CidrBlock block = prefix.block();
+            while (!open.isEmpty() && Long.compareUnsigned(open.peek().block().last(), block.first()) < 0) {
+                Prefix closed = open.pop();
+                emit(segments, cursor, closed.block().last(), closed.asn());
+                cursor = closed.block().last() + 1; // cannot wrap: last < block.first()
+            }
+            if (!open.isEmpty()) {
+                Prefix parent = open.peek();
+                if (parent.block().first() == block.first() && parent.block().last() == block.last()) {
+                    continue; // same prefix listed twice, first one wins
+                }
+                if (Long.compareUnsigned(cursor, block.first()) < 0) {
+                    emit(segments, cursor, block.first() - 1, parent.asn());
+                }
+            }
+            open.push(prefix);
+            cursor = block.first();
+        }
+        boolean exhausted = false;
+        while (!open.isEmpty()) {
+            Prefix closed = open.pop();
+            if (!exhausted) {
+                emit(segments, cursor, closed.block().last(), closed.asn());
+                exhausted = closed.block().last() == (ipv6 ? -1L : 0xFFFFFFFFL);
+                cursor = closed.block().last() + 1;
+            }
+        }
+        return new AsnRangeTable(ipv6, segments);
+    }
+
+    private static void emit(List<long[]> segments, long start, long end, int asn) {
+        if (Long.compareUnsigned(start, end) > 0) {
+            return;
+        }
+        if (!segments.isEmpty()) {
+            long[] previous = segments.get(segments.size() - 1);
+            if (previous[2] == asn && previous[1] + 1 == start) {
+                previous[1] = end;
+                return;
+            }
+        }
+        segments.add(new long[]{start, end, asn});
+    }
+
+    /**
+     * ASN covering the packed address, or {@link #NO_ASN}.
+     */
+    public int lookup(long address) {
+        int low = 0;
+        int high = size - 1;
+        int candidate = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (Long.compareUnsigned(startAt(mid), address) <= 0) {
+                candidate = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        if (candidate < 0 || Long.compareUnsigned(address, endAt(candidate)) > 0) {
+            return NO_ASN;
+        }
+        return asns.getInt(candidate * Integer.BYTES);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isIpv6() {
+        return ipv6;
+    }
+
+    private long startAt(int index) {
+        return ipv6 ? starts.getLong(index * Long.BYTES) : starts.getInt(index * Integer.BYTES) & 0xFFFFFFFFL;
+    }
+
+    private long endAt(int index) {
+        return ipv6 ? ends.getLong(index * Long.BYTES) : ends.getInt(index * Integer.BYTES) & 0xFFFFFFFFL;
+    }
+
+    public record Prefix(CidrBlock block, int asn) {}
+}
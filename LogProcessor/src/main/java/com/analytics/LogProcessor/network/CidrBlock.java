@@ -0,0 +1,49 @@
+package com.analytics.LogProcessor.network;
+
+/**
+ * A CIDR prefix in the packed form used by {@link IpAddresses}.
+ * For IPv4, {@code first}/{@code last} are 32-bit values; for IPv6 they are the upper 64 bits,
+ * so as a range a prefix longer than /64 is widened to its /64 (fine for prefix tables such as
+ * {@link AsnRangeTable}). {@code firstLow} keeps the low 64 bits of an IPv6 network address, so
+ * a 128-bit {@link CidrTrie} can still match the prefix exactly; it is 0 for IPv4.
+ */
+public record CidrBlock(boolean ipv6, long first, long last, int prefixLength, long firstLow) {
+
+    public static CidrBlock parse(String cidr) {
+        String value = cidr.trim();
+        int slash = value.indexOf('/');
+        String address = slash < 0 ? value : value.substring(0, slash);
+
+        long v4 = IpAddresses.parseIpv4(address);
+        if (v4 >= 0) {
+            int length = slash < 0 ? 32 : parseLength(value.substring(slash + 1), 32, cidr);
+            long mask = length == 0 ? 0 : (0xFFFFFFFFL << (32 - length)) & 0xFFFFFFFFL;
+            long first = v4 & mask;
+            return new CidrBlock(false, first, first | (~mask & 0xFFFFFFFFL), length, 0);
+        }
+
+        byte[] v6 = IpAddresses.ipv6Bytes(address);
+        if (v6 == null) {
+            throw new IllegalArgumentException("Invalid CIDR: " + cidr);
+        }
+        int length = slash < 0 ? 128 : parseLength(value.substring(slash + 1), 128, cidr);
+        int bits = Math.min(length, 64);
+        long mask = bits == 0 ? 0 : -1L << (64 - bits);
+        long first = IpAddresses.high64(v6) & mask;
+        int lowBits = length - bits;
+        long lowMask = lowBits == 0 ? 0 : -1L << (64 - lowBits);
+        return new CidrBlock(true, first, first | ~mask, length, IpAddresses.low64(v6) & lowMask);
+    }
+
+    private static int parseLength(String value, int max, String cidr) {
+        try {
+            int length = Integer.parseInt(value.trim());
+            if (length < 0 || length > max) {
+                throw new IllegalArgumentException("Invalid prefix length in CIDR: " + cidr);
+            }
+            return length;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid prefix length in CIDR: " + cidr, e);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.analytics.LogProcessor.network;
+
+import java.util.Arrays;
+
+/**
+ * Binary prefix trie over packed addresses with longest-prefix-match lookup.
+ *
+ * Nodes are stored in parallel int arrays rather than objects, so even a few thousand rules stay a
+ * handful of small arrays. The trie is built once and then only read; callers swap in a new
+ * instance to change the rule set, which makes lookups safe from any thread without locking.
+ *
+ * @param <T> value attached to a prefix
+ */
+public final class CidrTrie<T> {
+
+    private final int width;
+    private int[] zero = new int[16];
+    private int[] one = new int[16];
+    private Object[] values = new Object[16];
+    private int nodes = 1;
+
+    /**
+     * @param width address width in bits: 32 for IPv4, 64 for IPv6 /64 keys, 128 for full IPv6 addresses
+     */
+    public CidrTrie(int width) {
+        this.width = width;
+    }
+
+    public void put(CidrBlock block, T value) {
+        int depth = Math.min(block.prefixLength(), width);
+        int node = 0;
+        for (int i = 0; i < depth; i++) {
+            boolean bit = bitAt(block.first(), block.firstLow(), i);
+            int next = bit ? one[node] : zero[node];
+            if (next == 0) {
+                next = newNode();
+                if (bit) {
+                    one[node] = next;
+                } else {
+                    zero[node] = next;
+                }
+            }
+            node = next;
+        }
+        values[node] = value;
+    }
+
+    /**
+     * Value of the longest prefix covering the address, or null.
+     */
+    public T longestMatch(long address) {
+        return longestMatch(address, 0);
+    }
+
+    /**
+     * Longest match for a 128-bit trie: {@code high} and {@code low} are the two halves of the address.
+     */
+    @SuppressWarnings("unchecked")
+    public T longestMatch(long high, long low) {
+        Object best = values[0];
+        int node = 0;
+        for (int i = 0; i < width; i++) {
+            node = bitAt(high, low, i) ? one[node] : zero[node];
+            if (node == 0) {
+                break;
+            }
+            if (values[node] != null) {
+                best = values[node];
+            }
+        }
+        return (T) best;
+    }
+
+    public int nodeCount() {
+        return nodes;
+    }
+
+    private boolean bitAt(long high, long low, int index) {
+        if (width <= 64) {
+            return ((high >>> (width - 1 - index)) & 1L) != 0;
+        }
+        return index < 64 ? ((high >>> (63 - index)) & 1L) != 0 : ((low >>> (127 - index)) & 1L) != 0;
+    }
+
+    private int newNode() {
+        if (nodes == zero.length) {
+            int capacity = nodes * 2;
+            zero = Arrays.copyOf(zero, capacity);
+            one = Arrays.copyOf(one, capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+        return nodes++;
+    }
+}
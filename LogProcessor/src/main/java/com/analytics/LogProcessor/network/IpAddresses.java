@@ -0,0 +1,162 @@
+package com.analytics.LogProcessor.network;
+
+import java.net.Inet4Address;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * Parsing and packing of IP literals into primitive keys.
+ *
+ * IPv4 addresses are packed into the low 32 bits of a long. IPv6 addresses are reduced to their
+ * upper 64 bits (the routed /64), which is the granularity prefix tables work at, or split into two
+ * halves where all 128 bits matter (the ingest filter).
+ * Parsing never resolves host names: a value with anything but hex digits, ':' and '.' (plus a zone
+ * suffix) is rejected before it reaches {@link InetAddress}, which would otherwise look it up in DNS.
+ */
+public final class IpAddresses {
+
+    private IpAddresses() {
+    }
+
+    /**
+     * Packed IPv4 address (unsigned, 0..2^32-1), or -1 if the value is not a dotted quad.
+     */
+    public static long parseIpv4(String ip) {
+        if (ip == null) {
+            return -1;
+        }
+        long value = 0;
+        int octets = 0;
+        int current = -1;
+        for (int i = 0, n = ip.length(); i < n; i++) {
+            char c = ip.charAt(i);
+            if (c >= '0' && c <= '9') {
+                current = current < 0 ? c - '0' : current * 10 + (c - '0');
+                if (current > 255) {
+                    return -1;
+                }
+            } else if (c == '.' && current >= 0 && octets < 3) {
+                value = (value << 8) | current;
+                octets++;
+                current = -1;
+            } else {
+                return -1;
+            }
+        }
+        if (octets != 3 || current < 0) {
+            return -1;
+        }
+        return (value << 8) | current;
+    }
+
+    /**
+     * Upper 64 bits of an IPv6 literal, or null if the value is not an IPv6 literal.
+     * IPv4-mapped addresses are not special-cased; callers try {@link #parseIpv4(String)} first.
+     */
+    public static Long parseIpv6Prefix(String ip) {
+        byte[] bytes = ipv6Bytes(ip);
+        return bytes == null ? null : high64(bytes);
+    }
+
+    /**
+     * Upper 64 bits of the 16 bytes from {@link #ipv6Bytes(String)}.
+     */
+    public static long high64(byte[] ipv6) {
+        return pack(ipv6, 0);
+    }
+
+    /**
+     * Lower 64 bits of the 16 bytes from {@link #ipv6Bytes(String)}.
+     */
+    public static long low64(byte[] ipv6) {
+        return pack(ipv6, 8);
+    }
+
+    /**
+     * Packed IPv4 address of an IPv4-mapped IPv6 address (::ffff:0:0/96), or -1 for any other address.
+     */
+    public static long mappedIpv4(byte[] ipv6) {
+        for (int i = 0; i < 10; i++) {
+            if (ipv6[i] != 0) {
+                return -1;
+            }
+        }
+        if (ipv6[10] != (byte) 0xFF || ipv6[11] != (byte) 0xFF) {
+            return -1;
+        }
+        return pack(ipv6, 12) & 0xFFFFFFFFL;
+    }
+
+    private static boolean isIpv6Literal(String literal) {
+        if (literal.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < literal.length(); i++) {
+            char c = literal.charAt(i);
+            if (c != ':' && c != '.' && Character.digit(c, 16) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long pack(byte[] bytes, int from) {
+        long value = 0;
+        for (int i = from, end = Math.min(from + 8, bytes.length); i < end; i++) {
+            value = (value << 8) | (bytes[i] & 0xFF);
+        }
+        return value;
+    }
+
+    /**
+     * Full 16 bytes of an IPv6 literal, or null if the value is not one.
+     */
+    public static byte[] ipv6Bytes(String ip) {
+        if (ip == null || ip.indexOf(':') < 0) {
+            return null;
+        }
+        String literal = ip.trim();
+        int zone = literal.indexOf('%');
+        if (zone >= 0) {
+            literal = literal.substring(0, zone);
+        }
+        if (!isIpv6Literal(literal)) {
+            return null;
+        }
+        try {
+            // only hex digits, ':' and '.': InetAddress parses this as a literal and never looks it up
+            InetAddress address = InetAddress.getByName(literal);
+            if (address instanceof Inet6Address) {
+                return address.getAddress();
+            }
+            if (address instanceof Inet4Address) {
+                // ::ffff:a.b.c.d is collapsed to IPv4 by the JDK
+                byte[] mapped = new byte[16];
+                mapped[10] = (byte) 0xFF;
+                mapped[11] = (byte) 0xFF;
+                System.arraycopy(address.getAddress(), 0, mapped, 12, 4);
+                return mapped;
+            }
+            return null;
+        } catch (UnknownHostException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 64-bit key for any literal: IPv4 packed in the low 32 bits (high bits zero),
+     * IPv6 as its /64 with the top bit forced on so the two families never collide.
+     * (Within IPv6 that folds 0000::/1 onto 8000::/1; of the allocated space only 2000::/3 is
+     * below the fold and a000::/3 is unassigned, so real addresses do not clash.)
+     * Returns null for anything that is not an IP literal.
+     */
+    public static Long packedKey(String ip) {
+        long v4 = parseIpv4(ip);
+        if (v4 >= 0) {
+            return v4;
+        }
+        Long v6 = parseIpv6Prefix(ip);
+        return v6 == null ? null : v6 | Long.MIN_VALUE;
+    }
+}
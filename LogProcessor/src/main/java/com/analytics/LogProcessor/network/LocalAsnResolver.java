@@ -0,0 +1,135 @@
+package com.analytics.LogProcessor.network;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Resolves IP to ASN from a local prefix dump instead of the remote Enrichment API.
+ *
+ * The dump is the usual "prefix/length &lt;whitespace&gt; asn" text format (pyasn/ipasn .dat files,
+ * "AS" prefixes and ';' or '#' comment lines are accepted). It is compiled into one
+ * {@link AsnRangeTable} per family and swapped in atomically whenever the file changes on disk.
+ * A dataset older than app.enrichment.local-asn.max-age is treated as stale and ignored, so callers
+ * fall back to the remote API rather than serving outdated ASNs.
+ */
+@Component
+@Slf4j
+public class LocalAsnResolver {
+
+    private final boolean enabled;
+    private final Path path;
+    private final long maxAgeMillis;
+
+    private volatile Tables tables;
+
+    public LocalAsnResolver(@Value("${app.enrichment.local-asn.enabled}") boolean enabled,
+                            @Value("${app.enrichment.local-asn.path}") String path,
+                            @Value("${app.enrichment.local-asn.max-age}") Duration maxAge) {
+        this.enabled = enabled;
+        this.path = Path.of(path);
+        this.maxAgeMillis = maxAge.toMillis();
+    }
+
+    @PostConstruct
+    public void load() {
+        if (!enabled) {
+            return;
+        }
+        if (!Files.isRegularFile(path)) {
+            log.warn("[ASN] Local ASN dataset {} not found, every lookup goes to the Enrichment API", path);
+            return;
+        }
+        try {
+            long modified = Files.getLastModifiedTime(path).toMillis();
+            long start = System.nanoTime();
+            tables = parse(path, modified);
+            log.info("[ASN] Loaded {} IPv4 and {} IPv6 ranges from {} in {} ms",
+                    tables.ipv4().size(), tables.ipv6().size(), path, (System.nanoTime() - start) / 1_000_000);
+        } catch (IOException | RuntimeException e) {
+            log.error("[ASN] Failed to load local ASN dataset {}: {}", path, e.getMessage());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.enrichment.local-asn.reload-interval}",
+            initialDelayString = "${app.enrichment.local-asn.reload-interval}")
+    public void reloadIfChanged() {
+        if (!enabled || !Files.isRegularFile(path)) {
+            return;
+        }
+        try {
+            Tables current = tables;
+            if (current == null || Files.getLastModifiedTime(path).toMillis() != current.modifiedAt()) {
+                load();
+            }
+        } catch (IOException e) {
+            log.warn("[ASN] Could not stat {}: {}", path, e.getMessage());
+        }
+    }
+
+    /**
+     * ASN for the address, or {@link AsnRangeTable#NO_ASN} when not found, disabled, or stale.
+     */
+    public int lookup(String ip) {
+        Tables current = tables;
+        if (current == null || System.currentTimeMillis() - current.modifiedAt() > maxAgeMillis) {
+            return AsnRangeTable.NO_ASN;
+        }
+        long v4 = IpAddresses.parseIpv4(ip);
+        if (v4 >= 0) {
+            return current.ipv4().lookup(v4);
+        }
+        Long v6 = IpAddresses.parseIpv6Prefix(ip);
+        return v6 == null ? AsnRangeTable.NO_ASN : current.ipv6().lookup(v6);
+    }
+
+    public boolean isAvailable() {
+        Tables current = tables;
+        return current != null && System.currentTimeMillis() - current.modifiedAt() <= maxAgeMillis;
+    }
+
+    static Tables parse(Path file, long modifiedAt) throws IOException {
+        List<AsnRangeTable.Prefix> ipv4 = new ArrayList<>();
+        List<AsnRangeTable.Prefix> ipv6 = new ArrayList<>();
+        int skipped = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.charAt(0) == ';' || line.charAt(0) == '#') {
+                    continue;
+                }
+                String[] parts = line.split("\\s+");
+                if (parts.length < 2) {
+                    skipped++;
+                    continue;
+                }
+                try {
+                    CidrBlock block = CidrBlock.parse(parts[0]);
+                    String asn = parts[1].regionMatches(true, 0, "AS", 0, 2) ? parts[1].substring(2) : parts[1];
+                    AsnRangeTable.Prefix prefix = new AsnRangeTable.Prefix(block, Integer.parseUnsignedInt(asn));
+                    (block.ipv6() ? ipv6 : ipv4).add(prefix);
+                } catch (IllegalArgumentException e) {
+                    skipped++;
+                }
+            }
+        }
+        if (skipped > 0) {
+            log.warn("[ASN] Skipped {} malformed lines in {}", skipped, file);
+        }
+        return new Tables(AsnRangeTable.build(false, ipv4), AsnRangeTable.build(true, ipv6), modifiedAt);
+    }
+
+    record Tables(AsnRangeTable ipv4, AsnRangeTable ipv6, long modifiedAt) {}
+}
@@ -0,0 +1,105 @@
+package com.analytics.LogProcessor.replay;
+
+import com.analytics.LogProcessor.model.ActivityRecord;
+import com.analytics.LogProcessor.model.EnrichedRecord;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.amqp.core.Message;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Works out what a dead-letter-queue message is and where it would have to be replayed.
+ *
+ * Three shapes end up in the DLQ:
+ *  - {@code EnrichmentConsumer.FailedRecordMessage} wrappers, grouped by their errorType and replayed to raw
+ *  - {@code AnalyticsDispatcher.FailedAnalyticsRecord} wrappers (records the Analytics API refused), grouped
+ *    by their errorType and replayed to enriched
+ *  - plain records dead-lettered by the broker (x-death header), grouped by reason and source queue and
+ *    replayed to the stage they were dead-lettered from
+ * Anything else is reported under {@value #UNREADABLE} and never replayed.
+ */
+@Component
+public class DlqMessageClassifier {
+
+    public static final String UNREADABLE = "unreadable";
+
+    public enum Stage { RAW, ENRICHED }
+
+    private final ObjectMapper objectMapper;
+    private final String rawRecordsQueue;
+    private final String enrichedRecordsQueue;
+
+    public DlqMessageClassifier(ObjectMapper objectMapper,
+                                @Value("${queue.raw-records}") String rawRecordsQueue,
+                                @Value("${queue.enriched-records}") String enrichedRecordsQueue) {
+        this.objectMapper = objectMapper;
+        this.rawRecordsQueue = rawRecordsQueue;
+        this.enrichedRecordsQueue = enrichedRecordsQueue;
+    }
+
+    public Classified classify(Message message) {
+        JsonNode body;
+        try {
+            body = objectMapper.readTree(message.getBody());
+        } catch (IOException e) {
+            return Classified.unreplayable(UNREADABLE, e.getMessage());
+        }
+        if (body == null) {
+            return Classified.unreplayable(UNREADABLE, "empty body");
+        }
+        try {
+            if (body.hasNonNull("errorType") && body.hasNonNull("enrichedRecord")) {
+                EnrichedRecord record = objectMapper.treeToValue(body.get("enrichedRecord"), EnrichedRecord.class);
+                return new Classified(body.get("errorType").asText(), Stage.ENRICHED, record,
+                        body.path("error").asText(null));
+            }
+            if (body.hasNonNull("errorType") && body.hasNonNull("record")) {
+                ActivityRecord record = objectMapper.treeToValue(body.get("record"), ActivityRecord.class);
+                return new Classified(body.get("errorType").asText(), Stage.RAW, record,
+                        body.path("error").asText(null));
+            }
+            List<Map<String, ?>> deaths = message.getMessageProperties().getXDeathHeader();
+            if (deaths != null && !deaths.isEmpty()) {
+                String queue = String.valueOf(deaths.get(0).get("queue"));
+                String group = deaths.get(0).get("reason") + "@" + queue;
+                if (isStageQueue(queue, rawRecordsQueue)) {
+                    return new Classified(group, Stage.RAW, objectMapper.treeToValue(body, ActivityRecord.class), null);
+                }
+                if (isStageQueue(queue, enrichedRecordsQueue)) {
+                    return new Classified(group, Stage.ENRICHED, objectMapper.treeToValue(body, EnrichedRecord.class), null);
+                }
+                return Classified.unreplayable(group, "dead-lettered from unknown queue");
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            return Classified.unreplayable(UNREADABLE, e.getMessage());
+        }
+        return Classified.unreplayable(UNREADABLE, "neither a failed-record wrapper nor dead-lettered");
+    }
+
+    /**
+     * The stage queue itself or one derived from it (raw shards, enriched tenant lanes).
+     */
+    private static boolean isStageQueue(String queue, String stageQueue) {
+        return queue.equals(stageQueue) || queue.startsWith(stageQueue + ".");
+    }
+
+    /**
+     * @param stage   where to re-inject the payload, null when the message cannot be replayed
+     * @param payload the record to publish to that stage
+     */
+    public record Classified(String group, Stage stage, Object payload, String error) {
+
+        static Classified unreplayable(String group, String error) {
+            return new Classified(group, null, null, error);
+        }
+
+        public boolean isReplayable() {
+            return stage != null;
+        }
+    }
+}
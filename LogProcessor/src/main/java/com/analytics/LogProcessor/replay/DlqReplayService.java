@@ -0,0 +1,404 @@
+package com.analytics.LogProcessor.replay;
+
+import com.analytics.LogProcessor.model.DlqGroupSummary;
+import com.analytics.LogProcessor.model.ReplayProgress;
+import com.analytics.LogProcessor.model.ReplayRequest;
+import com.analytics.LogProcessor.service.DeliveryLedger;
+import com.analytics.LogProcessor.service.MetricsService;
+import com.analytics.LogProcessor.service.RawShardLayout;
+import com.analytics.LogProcessor.service.TenantRegistry;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.GetResponse;
+import io.github.resilience4j.ratelimiter.RateLimiter;
+import io.github.resilience4j.ratelimiter.RateLimiterConfig;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessagePostProcessor;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.support.DefaultMessagePropertiesConverter;
+import org.springframework.amqp.rabbit.support.MessagePropertiesConverter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.analytics.LogProcessor.constants.LogProcessorConstants.RAW_ROUTING_KEY;
+
+/**
+ * Bulk replay of dead-letter-queue messages back into the pipeline.
+ *
+ * A job reads the DLQ with basicGet on one channel, classifies every message with
+ * {@link DlqMessageClassifier} and, for the selected groups, publishes the record back to its stage from a
+ * small worker pool, paced by a job-local rate limiter. A message is acked only once the broker confirmed its
+ * republish; skipped groups and failed or unconfirmed publishes are nacked back onto the DLQ when the job ends. A job looks at
+ * no more messages than the DLQ held when it started, so records that fail again are not picked up twice.
+ *
+ * After every window the job compares the enrichment and analytics failure counters against their successes
+ * since it started, and stops itself when that failure rate climbs above the job's maxFailureRate: a
+ * downstream that is still broken just sends everything straight back to the DLQ.
+ */
+@Service
+@Slf4j
+public class DlqReplayService {
+
+    public static final String REPLAY_JOB_HEADER = "x-dlq-replay-job";
+
+    private static final long CONFIRM_TIMEOUT_MS = 30_000;
+
+    private final RabbitTemplate rabbitTemplate;
+    private final DlqMessageClassifier classifier;
+    private final MetricsService metricsService;
+    private final RawShardLayout shardLayout;
+    private final TenantRegistry tenantRegistry;
+    private final MessagePropertiesConverter propertiesConverter = new DefaultMessagePropertiesConverter();
+    private final ExecutorService runner = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "dlq-replay");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final String deadLetterQueue;
+    private final String mainExchange;
+    private final int defaultRate;
+    private final int defaultParallelism;
+    private final double defaultMaxFailureRate;
+    private final int minSample;
+
+    private final AtomicReference<ReplayJob> currentJob = new AtomicReference<>();
+
+    public DlqReplayService(RabbitTemplate rabbitTemplate, DlqMessageClassifier classifier, MetricsService metricsService,
+                            RawShardLayout shardLayout, TenantRegistry tenantRegistry,
+                            @Value("${queue.dead-letter}") String deadLetterQueue,
+                            @Value("${exchange.main}") String mainExchange,
+                            @Value("${app.dlq-replay.rate-per-second}") int defaultRate,
+                            @Value("${app.dlq-replay.parallelism}") int defaultParallelism,
+                            @Value("${app.dlq-replay.max-failure-rate}") double defaultMaxFailureRate,
+                            @Value("${app.dlq-replay.min-sample}") int minSample) {
+        this.rabbitTemplate = rabbitTemplate;
+        this.classifier = classifier;
+        this.metricsService = metricsService;
+        this.shardLayout = shardLayout;
+        this.tenantRegistry = tenantRegistry;
+        this.deadLetterQueue = deadLetterQueue;
+        this.mainExchange = mainExchange;
+        this.defaultRate = defaultRate;
+        this.defaultParallelism = defaultParallelism;
+        this.defaultMaxFailureRate = defaultMaxFailureRate;
+        this.minSample = minSample;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        ReplayJob job = currentJob.get();
+        if (job != null) {
+            job.requestStop("shutdown");
+        }
+        runner.shutdown();
+    }
+
+    /**
+     * Counts DLQ messages per group without consuming them (everything read is nacked back).
+     * Returns null while a replay job is running, since the job holds part of the queue.
+     */
+    public List<DlqGroupSummary> summarize(int limit) {
+        if (isRunning()) {
+            return null;
+        }
+        return rabbitTemplate.execute(channel -> {
+            Map<String, long[]> counts = new LinkedHashMap<>();
+            Map<String, DlqGroupSummary> samples = new LinkedHashMap<>();
+            long lastTag = -1;
+            try {
+                for (int i = 0; i < limit; i++) {
+                    GetResponse response = channel.basicGet(deadLetterQueue, false);
+                    if (response == null) {
+                        break;
+                    }
+                    lastTag = response.getEnvelope().getDeliveryTag();
+                    DlqMessageClassifier.Classified classified = classifier.classify(toMessage(response));
+                    counts.computeIfAbsent(classified.group(), g -> new long[1])[0]++;
+                    samples.putIfAbsent(classified.group(), new DlqGroupSummary(classified.group(),
+                            classified.isReplayable() ? classified.stage().name() : null, 0, classified.error()));
+                }
+            } finally {
+                if (lastTag >= 0) {
+                    channel.basicNack(lastTag, true, true);
+                }
+            }
+            List<DlqGroupSummary> summary = new ArrayList<>(counts.size());
+            counts.forEach((group, count) -> {
+                DlqGroupSummary sample = samples.get(group);
+                summary.add(new DlqGroupSummary(group, sample.stage(), count[0], sample.sampleError()));
+            });
+            return summary;
+        });
+    }
+
+    /**
+     * Starts a replay job in the background, or returns null when one is already running.
+     */
+    public ReplayProgress start(ReplayRequest request) {
+        ReplayJob job = new ReplayJob(UUID.randomUUID().toString(), Set.copyOf(request.groups()),
+                request.ratePerSecond() != null ? request.ratePerSecond() : defaultRate,
+                request.parallelism() != null ? request.parallelism() : defaultParallelism,
+                request.maxFailureRate() != null ? request.maxFailureRate() : defaultMaxFailureRate,
+                request.maxRecords() != null ? request.maxRecords() : Integer.MAX_VALUE);
+        ReplayJob previous = currentJob.get();
+        if ((previous != null && previous.isRunning()) || !currentJob.compareAndSet(previous, job)) {
+            return null;
+        }
+        log.info("[Replay] Starting job {} for groups {} at {} records/s", job.id, job.groups, job.ratePerSecond);
+        runner.execute(() -> run(job));
+        return job.progress();
+    }
+
+    public ReplayProgress progress() {
+        ReplayJob job = currentJob.get();
+        return job == null ? null : job.progress();
+    }
+
+    public ReplayProgress stop() {
+        ReplayJob job = currentJob.get();
+        if (job == null) {
+            return null;
+        }
+        if (job.isRunning()) {
+            job.requestStop("stopped on request");
+        }
+        return job.progress();
+    }
+
+    public boolean isRunning() {
+        ReplayJob job = currentJob.get();
+        return job != null && job.isRunning();
+    }
+
+    void run(ReplayJob job) {
+        ExecutorService workers = Executors.newFixedThreadPool(job.parallelism, r -> {
+            Thread thread = new Thread(r, "dlq-replay-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        RateLimiter rateLimiter = RateLimiter.of("dlqReplay", RateLimiterConfig.custom()
+                .limitForPeriod(job.ratePerSecond)
+                .limitRefreshPeriod(Duration.ofSeconds(1))
+                .timeoutDuration(Duration.ofSeconds(30))
+                .build());
+        try {
+            rabbitTemplate.execute(channel -> {
+                replay(job, channel, rateLimiter, workers);
+                return null;
+            });
+            job.finish(job.stopReason != null ? "STOPPED" : "COMPLETED");
+        } catch (Exception e) {
+            log.error("[Replay] Job {} failed: {}", job.id, e.getMessage());
+            job.requestStop(e.getMessage());
+            job.finish("FAILED");
+        } finally {
+            workers.shutdown();
+        }
+        log.info("[Replay] Job {} {}: {}", job.id, job.state, job.progress());
+    }
+
+    private void replay(ReplayJob job, Channel channel, RateLimiter rateLimiter, ExecutorService workers) throws IOException {
+        long budget = Math.min(job.maxRecords, channel.messageCount(deadLetterQueue));
+        int windowSize = job.parallelism * 4;
+        List<Long> requeue = new ArrayList<>();
+        try {
+            boolean drained = false;
+            while (!drained && job.stopReason == null && job.scanned.get() < budget) {
+                List<InFlight> window = new ArrayList<>(windowSize);
+                while (window.size() < windowSize && job.scanned.get() < budget) {
+                    GetResponse response = channel.basicGet(deadLetterQueue, false);
+                    if (response == null) {
+                        drained = true;
+                        break;
+                    }
+                    job.scanned.incrementAndGet();
+                    long tag = response.getEnvelope().getDeliveryTag();
+                    Message message = toMessage(response);
+                    DlqMessageClassifier.Classified classified = classifier.classify(message);
+                    String tenant = message.getMessageProperties().getHeader(TenantRegistry.TENANT_HEADER);
+                    Long deliveryId = DeliveryLedger.deliveryId(message);
+                    if (!classified.isReplayable() || !job.groups.contains(classified.group())) {
+                        job.skipped.incrementAndGet();
+                        requeue.add(tag);
+                        continue;
+                    }
+                    if (!rateLimiter.acquirePermission()) {
+                        requeue.add(tag);
+                        job.requestStop("rate limiter timed out");
+                        break;
+                    }
+                    window.add(new InFlight(tag, classified, CompletableFuture
+                            .supplyAsync(() -> publish(job, classified, tenant, deliveryId), workers)
+                            .thenCompose(correlation -> correlation.getFuture().thenApply(CorrelationData.Confirm::isAck))));
+                }
+
+                for (InFlight inFlight : window) {
+                    if (isConfirmed(inFlight)) {
+                        channel.basicAck(inFlight.tag(), false);
+                        job.replayedByGroup.computeIfAbsent(inFlight.classified().group(), g -> new AtomicLong())
+                                .incrementAndGet();
+                        job.replayed.incrementAndGet();
+                        job.stages.add(inFlight.classified().stage());
+                    } else {
+                        job.publishFailures.incrementAndGet();
+                        requeue.add(inFlight.tag());
+                    }
+                }
+                checkFailureRate(job);
+            }
+        } finally {
+            for (long tag : requeue) {
+                channel.basicNack(tag, false, true);
+            }
+        }
+    }
+
+    private static boolean isConfirmed(InFlight inFlight) {
+        try {
+            if (inFlight.confirmed().get(CONFIRM_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+            log.warn("[Replay] Broker did not confirm republished {} message", inFlight.classified().group());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            log.warn("[Replay] Could not republish {} message: {}", inFlight.classified().group(), e.getMessage());
+        }
+        return false;
+    }
+
+    private CorrelationData publish(ReplayJob job, DlqMessageClassifier.Classified classified, String tenant, Long deliveryId) {
+        boolean raw = classified.stage() == DlqMessageClassifier.Stage.RAW;
+        String routingKey = raw ? RAW_ROUTING_KEY : tenantRegistry.enrichedRoutingKey(tenant);
+        // raw replays go back through the shards so they are enriched next to the cache entries for their IP
+        String exchange = raw && shardLayout.isEnabled() ? shardLayout.getShardedExchange() : mainExchange;
+        MessagePostProcessor withShardKey = shardLayout.withShardKey(classified.payload());
+        MessagePostProcessor withTenant = TenantRegistry.withTenant(tenant);
+        // the original delivery id lets the ledger drop a replayed record that did reach the Analytics API
+        MessagePostProcessor withDeliveryId = DeliveryLedger.withDeliveryId(deliveryId);
+        CorrelationData correlation = new CorrelationData();
+        rabbitTemplate.convertAndSend(exchange, routingKey, classified.payload(), message -> {
+            message.getMessageProperties().setHeader(REPLAY_JOB_HEADER, job.id);
+            return withDeliveryId.postProcessMessage(withTenant.postProcessMessage(withShardKey.postProcessMessage(message)));
+        }, correlation);
+        return correlation;
+    }
+
+    private void checkFailureRate(ReplayJob job) {
+        double rate = job.pipelineFailureRate();
+        if (job.replayed.get() >= minSample && rate > job.maxFailureRate) {
+            job.requestStop(String.format("pipeline failure rate %.2f above %.2f", rate, job.maxFailureRate));
+            log.warn("[Replay] Stopping job {}: {}", job.id, job.stopReason);
+        }
+    }
+
+    private Message toMessage(GetResponse response) {
+        return new Message(response.getBody(),
+                propertiesConverter.toMessageProperties(response.getProps(), response.getEnvelope(), "UTF-8"));
+    }
+
+    private record InFlight(long tag, DlqMessageClassifier.Classified classified, CompletableFuture<Boolean> confirmed) {}
+
+    /**
+     * State of one replay run. Counters are read by the progress endpoint while the runner updates them.
+     */
+    final class ReplayJob {
+
+        private final String id;
+        private final Set<String> groups;
+        private final int ratePerSecond;
+        private final int parallelism;
+        private final double maxFailureRate;
+        private final int maxRecords;
+        private final Instant startedAt = Instant.now();
+
+        private final AtomicLong scanned = new AtomicLong();
+        private final AtomicLong replayed = new AtomicLong();
+        private final AtomicLong skipped = new AtomicLong();
+        private final AtomicLong publishFailures = new AtomicLong();
+        private final Map<String, AtomicLong> replayedByGroup = new ConcurrentHashMap<>();
+        private final Set<DlqMessageClassifier.Stage> stages = ConcurrentHashMap.newKeySet();
+
+        private final long enrichedAtStart = metricsService.getRecordsEnriched().get();
+        private final long enrichmentFailuresAtStart = metricsService.getEnrichmentFailures().get();
+        private final long batchesAtStart = metricsService.getBatchesProcessed().get();
+        private final long analyticsFailuresAtStart = metricsService.getAnalyticsFailures().get();
+
+        private volatile String state = "RUNNING";
+        private volatile String stopReason;
+        private volatile Instant finishedAt;
+
+        ReplayJob(String id, Set<String> groups, int ratePerSecond, int parallelism, double maxFailureRate, int maxRecords) {
+            this.id = id;
+            this.groups = new HashSet<>(groups);
+            this.ratePerSecond = ratePerSecond;
+            this.parallelism = parallelism;
+            this.maxFailureRate = maxFailureRate;
+            this.maxRecords = maxRecords;
+        }
+
+        boolean isRunning() {
+            return "RUNNING".equals(state);
+        }
+
+        void requestStop(String reason) {
+            if (stopReason == null) {
+                stopReason = reason;
+            }
+        }
+
+        void finish(String finalState) {
+            finishedAt = Instant.now();
+            state = finalState;
+        }
+
+        /**
+         * Failures over attempts since the job started, for the stages it has replayed into.
+         */
+        double pipelineFailureRate() {
+            long failures = 0;
+            long attempts = 0;
+            if (stages.contains(DlqMessageClassifier.Stage.RAW)) {
+                long failed = metricsService.getEnrichmentFailures().get() - enrichmentFailuresAtStart;
+                failures += failed;
+                attempts += failed + metricsService.getRecordsEnriched().get() - enrichedAtStart;
+            }
+            if (stages.contains(DlqMessageClassifier.Stage.ENRICHED)) {
+                long failed = metricsService.getAnalyticsFailures().get() - analyticsFailuresAtStart;
+                failures += failed;
+                attempts += failed + metricsService.getBatchesProcessed().get() - batchesAtStart;
+            }
+            return attempts == 0 ? 0 : failures / (double) attempts;
+        }
+
+        ReplayProgress progress() {
+            Map<String, Long> byGroup = new LinkedHashMap<>();
+            replayedByGroup.forEach((group, count) -> byGroup.put(group, count.get()));
+            return new ReplayProgress(id, state, scanned.get(), replayed.get(), skipped.get(), publishFailures.get(),
+                    pipelineFailureRate(), byGroup, startedAt, finishedAt, stopReason);
+        }
+    }
+}
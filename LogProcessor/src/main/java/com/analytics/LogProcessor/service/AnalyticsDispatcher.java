@@ -0,0 +1,505 @@
+package com.analytics.LogProcessor.service;
+
+import com.analytics.LogProcessor.model.EnrichedRecord;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rabbitmq.client.Channel;
+import io.github.resilience4j.retry.RetryRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.MessagePostProcessor;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.analytics.LogProcessor.constants.LogProcessorConstants.ANALYTICS_MAX_BATCH_SIZE;
+import static com.analytics.LogProcessor.constants.LogProcessorConstants.ANALYTICS_SERVICE;
+
+/**
+ * Pipelined dispatcher between the enriched queue and the Analytics API.
+ *
+ * Three stages run independently:
+ *  - the listener thread hands records (with their delivery tags) to a bounded intake and goes back to the broker
+ *  - the assembler fills batch N+1 in weighted fair order across tenants ({@link WeightedFairQueue}) and
+ *    builds its body from the records' delivered JSON while batch N is on the wire; records already accepted
+ *    under their delivery id ({@link DeliveryLedger}) or shed by the {@link AnalyticsLoadShedder} are acked
+ *    there without being sent
+ *  - the sender reserves the next rate limiter permit, POSTs when it comes due, and only then acks (or rejects to
+ *    the DLQ) every record of that batch
+ *
+ * Nothing sleeps on the limiter: a transient failure puts the batch back at the front of the send queue for
+ * the next permit, up to the analyticsService retry's maxAttempts, and a batch refused as a bad request
+ * (400, 413, 422) is bisected down to the records the API refuses, which go to the DLQ as
+ * {@link FailedAnalyticsRecord}. Limiter, batch size and Retry-After holds come from {@link AnalyticsRateTuner}.
+ * The intake holds the prefetch window of every enriched queue the listener consumes
+ * ({@link TenantRegistry#enrichedQueues()}), so a slow API pushes back on the listener instead of growing memory
+ * and a quiet tenant's records can overtake a noisy tenant's backlog.
+ */
+@Service
+@Slf4j
+public class AnalyticsDispatcher {
+
+    private static final long IDLE_POLL_MILLIS = 200;
+    // client errors that point at the payload, worth bisecting the batch over
+    private static final Set<Integer> BISECT_STATUSES = Set.of(400, 413, 422);
+
+    private final AnalyticsService analyticsService;
+    private final MetricsService metricsService;
+    private final ConcurrencyLimiter concurrencyLimiter;
+    private final ObjectMapper objectMapper;
+    private final DeliveryLedger deliveryLedger;
+    private final AnalyticsRateTuner rateTuner;
+    private final AnalyticsLoadShedder loadShedder;
+    private final RabbitTemplate rabbitTemplate;
+    private final String deadLetterQueue;
+    private final int maxAttempts;
+
+    private final long lingerMillis;
+    private final WeightedFairQueue<PendingRecord> intake;
+    private final BlockingDeque<PreparedBatch> prepared;
+    // batches waiting for another attempt; only touched on the sender thread, served before prepared ones
+    private final Deque<PreparedBatch> retries = new ArrayDeque<>();
+
+    private volatile boolean running;
+    private Thread assemblerThread;
+    private ScheduledExecutorService sender;
+
+    public AnalyticsDispatcher(AnalyticsService analyticsService,
+                               MetricsService metricsService,
+                               ConcurrencyLimiter concurrencyLimiter,
+                               ObjectMapper objectMapper,
+                               TenantRegistry tenantRegistry,
+                               DeliveryLedger deliveryLedger,
+                               AnalyticsRateTuner rateTuner,
+                               AnalyticsLoadShedder loadShedder,
+                               RetryRegistry retryRegistry,
+                               RabbitTemplate rabbitTemplate,
+                               @Value("${queue.dead-letter}") String deadLetterQueue,
+                               @Value("${app.analytics.batch-size}") int batchSize,
+                               @Value("${app.analytics.pipeline-depth}") int pipelineDepth,
+                               @Value("${app.analytics.linger-ms}") long lingerMillis) {
+        this.analyticsService = analyticsService;
+        this.metricsService = metricsService;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.objectMapper = objectMapper;
+        this.deliveryLedger = deliveryLedger;
+        this.rateTuner = rateTuner;
+        this.loadShedder = loadShedder;
+        this.rabbitTemplate = rabbitTemplate;
+        this.deadLetterQueue = deadLetterQueue;
+        this.maxAttempts = retryRegistry.retry(ANALYTICS_SERVICE).getRetryConfig().getMaxAttempts();
+        this.lingerMillis = lingerMillis;
+        int prefetchWindows = ANALYTICS_MAX_BATCH_SIZE * (pipelineDepth + 2) * tenantRegistry.enrichedQueues().length;
+        this.intake = new WeightedFairQueue<>(Math.max(batchSize, prefetchWindows), tenantRegistry::weight);
+        this.prepared = new LinkedBlockingDeque<>(pipelineDepth);
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        assemblerThread = new Thread(this::assembleLoop, "analytics-assembler");
+        assemblerThread.setDaemon(true);
+        assemblerThread.start();
+        sender = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "analytics-sender");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sender.execute(this::pump);
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (assemblerThread != null) {
+            assemblerThread.interrupt();
+            sender.shutdownNow();
+        }
+        // anything still unacked is redelivered by the broker once the channels close
+    }
+
+    /**
+     * Hands records over to the pipeline. Blocks while the intake is full, which is how
+     * back pressure reaches the listener container.
+     */
+    public void accept(List<PendingRecord> records) throws InterruptedException {
+        for (PendingRecord record : records) {
+            intake.put(record.tenant(), record);
+        }
+    }
+
+    private void assembleLoop() {
+        while (running) {
+            try {
+                int batchSize = rateTuner.batchSize();
+                List<PendingRecord> records = new ArrayList<>(batchSize);
+                Set<Long> keys = new HashSet<>();
+                PendingRecord first = intake.take();
+                if (!admit(first, keys)) {
+                    continue;
+                }
+                records.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(lingerMillis);
+                while (records.size() < batchSize) {
+                    PendingRecord next = intake.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    if (admit(next, keys)) {
+                        records.add(next);
+                    }
+                }
+                PreparedBatch batch = prepare(records);
+                if (batch != null) {
+                    prepared.putLast(batch);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Whether a record still has to go to the Analytics API. Records the ledger has seen delivered, or a
+     * second copy within the batch being assembled, are acked right away so they neither take a slot in
+     * the batch nor spend quota; so are records the {@link AnalyticsLoadShedder} sheds while the backlog
+     * is over its SLA.
+     */
+    private boolean admit(PendingRecord record, Set<Long> batchKeys) {
+        Long key = record.deliveryId();
+        if (key != null && (deliveryLedger.isDelivered(key) || !batchKeys.add(key))) {
+            metricsService.incrementAnalyticsRecordsDeduplicated(1);
+            ack(List.of(record));
+            return false;
+        }
+        if (!loadShedder.admit(record)) {
+            if (key != null) {
+                batchKeys.remove(key);
+            }
+            ack(List.of(record));
+            return false;
+        }
+        return true;
+    }
+
+    private boolean isDelivered(PendingRecord record) {
+        return record.deliveryId() != null && deliveryLedger.isDelivered(record.deliveryId());
+    }
+
+    /**
+     * Serializes a batch. When every record still has the JSON body it was delivered with, the bodies are
+     * joined into the array as they are; otherwise the decoded records are written out.
+     */
+    PreparedBatch prepare(List<PendingRecord> records) {
+        List<byte[]> bodies = new ArrayList<>(records.size());
+        for (PendingRecord record : records) {
+            if (record.body() == null) {
+                bodies = null;
+                break;
+            }
+            bodies.add(record.body());
+        }
+        if (bodies != null) {
+            return new PreparedBatch(records, joinJsonArray(bodies), System.currentTimeMillis(), 0);
+        }
+        List<EnrichedRecord> payload = new ArrayList<>(records.size());
+        for (PendingRecord record : records) {
+            payload.add(record.record());
+        }
+        try {
+            return new PreparedBatch(records, objectMapper.writeValueAsBytes(payload), System.currentTimeMillis(), 0);
+        } catch (JsonProcessingException e) {
+            log.error("Failed to serialize batch of {} records for Analytics: {}", records.size(), e.getMessage());
+            reject(records);
+            return null;
+        }
+    }
+
+    /**
+     * Joins JSON values into one JSON array in a single allocation.
+     */
+    public static byte[] joinJsonArray(List<byte[]> elements) {
+        int length = 2 + Math.max(0, elements.size() - 1);
+        for (byte[] element : elements) {
+            length += element.length;
+        }
+        byte[] array = new byte[length];
+        int position = 0;
+        array[position++] = '[';
+        for (byte[] element : elements) {
+            if (position > 1) {
+                array[position++] = ',';
+            }
+            System.arraycopy(element, 0, array, position, element.length);
+            position += element.length;
+        }
+        array[position] = ']';
+        return array;
+    }
+
+    /**
+     * One step of the sender: picks the next batch (retries first), reserves a permit for it and schedules
+     * the send for when the permit is due; the send schedules the next step. Only waiting for work blocks.
+     */
+    private void pump() {
+        if (!running) {
+            return;
+        }
+        PreparedBatch next = retries.pollFirst();
+        try {
+            if (next == null) {
+                next = prepared.pollFirst(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        PreparedBatch batch = next == null ? null : withoutDelivered(next);
+        if (batch == null) {
+            reschedule(this::pump, 0);
+            return;
+        }
+        long holdNanos = rateTuner.nanosUntilResume();
+        if (holdNanos > 0) {
+            // the server asked us to hold off, reserve the permit once that is over
+            retries.addFirst(batch);
+            reschedule(this::pump, holdNanos);
+            return;
+        }
+        long waitNanos = rateTuner.rateLimiter().reservePermission();
+        if (waitNanos < 0) {
+            // no permit within the limiter's timeout, keep the batch at the front and look again shortly
+            retries.addFirst(batch);
+            reschedule(this::pump, TimeUnit.MILLISECONDS.toNanos(IDLE_POLL_MILLIS));
+            return;
+        }
+        reschedule(() -> {
+            List<PreparedBatch> followUps = send(batch);
+            for (int i = followUps.size() - 1; i >= 0; i--) {
+                retries.addFirst(followUps.get(i));
+            }
+            pump();
+        }, waitNanos);
+    }
+
+    private void reschedule(Runnable step, long delayNanos) {
+        try {
+            sender.schedule(step, delayNanos, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            // shutting down, unacked records are redelivered by the broker
+        }
+    }
+
+    /**
+     * Sends a batch the caller holds a permit for and settles its records.
+     *
+     * @return batches that still have to be sent, in order, ahead of anything else: the same batch after a
+     *         transient failure, its two halves after a bad request, none once every record is settled
+     */
+    List<PreparedBatch> send(PreparedBatch prepared) {
+        PreparedBatch batch = withoutDelivered(prepared);
+        if (batch == null) {
+            return List.of();
+        }
+        int size = batch.records().size();
+        try {
+            concurrencyLimiter.call(ConcurrencyLimiter.Stage.ANALYTICS,
+                    () -> analyticsService.sendBatchToAnalytics(batch.body(), size));
+        } catch (Exception e) {
+            // analytics service already logged the cause
+            metricsService.incrementAnalyticsFailures();
+            if (AnalyticsService.isRetryable(e) && batch.attempts() + 1 < maxAttempts) {
+                metricsService.incrementAnalyticsRetriesScheduled();
+                log.info("Batch of {} records will be retried on the next permit (attempt {} of {})",
+                        size, batch.attempts() + 2, maxAttempts);
+                return List.of(batch.retried());
+            }
+            int status = AnalyticsService.clientErrorStatus(e);
+            if (BISECT_STATUSES.contains(status)) {
+                return bisect(batch, status, e);
+            }
+            // rejected records go to the DLQ via the queue's DLX
+            reject(batch.records());
+            return List.of();
+        }
+
+        ack(batch.records());
+        List<Long> delivered = new ArrayList<>(size);
+        for (PendingRecord record : batch.records()) {
+            if (record.deliveryId() != null) {
+                delivered.add(record.deliveryId());
+            }
+        }
+        deliveryLedger.recordDelivered(delivered);
+        long now = System.currentTimeMillis();
+        for (PendingRecord record : batch.records()) {
+            metricsService.recordTenantDelivery(record.tenant(), now - record.receivedAt());
+        }
+        long duration = System.currentTimeMillis() - batch.preparedAt();
+        metricsService.incrementRecordsSentToAnalytics(size);
+        metricsService.incrementBatchesProcessed();
+        metricsService.recordBatchProcessingTime(duration);
+
+        long totalTime = metricsService.getTotalBatchProcessingTime().get();
+        log.info("Completed batch of {} records in {} ms", size, duration);
+        log.info(" ANALYTICS TOTAL: {} batches processed, {} records sent, TOTAL TIME: {} ms ({} sec)",
+                metricsService.getBatchesProcessed().get(),
+                metricsService.getRecordsSentToAnalytics().get(),
+                totalTime,
+                totalTime / 1000.0);
+        return List.of();
+    }
+
+    /**
+     * Splits a batch the API refused into halves for the next permits; a single record is the culprit
+     * and goes to the DLQ with the API's error.
+     */
+    private List<PreparedBatch> bisect(PreparedBatch batch, int status, Exception error) {
+        List<PendingRecord> records = batch.records();
+        if (records.size() == 1) {
+            deadLetter(records.get(0), status, error);
+            return List.of();
+        }
+        int half = records.size() / 2;
+        PreparedBatch left = prepare(new ArrayList<>(records.subList(0, half)));
+        PreparedBatch right = prepare(new ArrayList<>(records.subList(half, records.size())));
+        metricsService.incrementAnalyticsBatchesBisected();
+        log.warn("Analytics refused batch of {} records with {}, bisecting into {} + {}",
+                records.size(), status, half, records.size() - half);
+        List<PreparedBatch> halves = new ArrayList<>(2);
+        if (left != null) {
+            halves.add(left);
+        }
+        if (right != null) {
+            halves.add(right);
+        }
+        return halves;
+    }
+
+    /**
+     * Publishes a record the API refused to the DLQ together with the refusal, and acks it once the broker
+     * confirmed the copy. If the copy cannot be published the record is rejected into the DLQ via the DLX
+     * (without the error) rather than being redelivered into the same refusal.
+     */
+    private void deadLetter(PendingRecord record, int status, Exception error) {
+        String reason = error.getCause() != null ? error.getCause().getMessage() : error.getMessage();
+        log.error("Analytics refused record {} with {}, sending it to the DLQ: {}", record.record().id(), status, reason);
+        metricsService.incrementAnalyticsPoisonRecords();
+        CorrelationData correlation = new CorrelationData("analytics-" + record.record().id());
+        MessagePostProcessor withTenant = TenantRegistry.withTenant(record.tenant());
+        MessagePostProcessor withDeliveryId = DeliveryLedger.withDeliveryId(record.deliveryId());
+        try {
+            rabbitTemplate.convertAndSend(deadLetterQueue,
+                    new FailedAnalyticsRecord(record.record(), FailedAnalyticsRecord.ERROR_TYPE_PREFIX + status, reason),
+                    message -> withDeliveryId.postProcessMessage(withTenant.postProcessMessage(message)), correlation);
+        } catch (Exception e) {
+            log.error("Could not publish refused record {} to the DLQ: {}", record.record().id(), e.getMessage());
+            reject(List.of(record));
+            return;
+        }
+        correlation.getFuture().whenComplete((confirm, confirmError) -> {
+            if (confirmError == null && confirm.isAck()) {
+                ack(List.of(record));
+            } else {
+                reject(List.of(record));
+            }
+        });
+    }
+
+    /**
+     * Drops records that were delivered (in an earlier batch) while this one waited for its turn.
+     *
+     * @return the batch to send, re-serialized if anything was dropped, or null when nothing is left
+     */
+    private PreparedBatch withoutDelivered(PreparedBatch batch) {
+        List<PendingRecord> fresh = new ArrayList<>(batch.records().size());
+        List<PendingRecord> delivered = new ArrayList<>();
+        for (PendingRecord record : batch.records()) {
+            (isDelivered(record) ? delivered : fresh).add(record);
+        }
+        if (delivered.isEmpty()) {
+            return batch;
+        }
+        metricsService.incrementAnalyticsRecordsDeduplicated(delivered.size());
+        ack(delivered);
+        PreparedBatch rest = fresh.isEmpty() ? null : prepare(fresh);
+        return rest == null ? null : new PreparedBatch(rest.records(), rest.body(), batch.preparedAt(), batch.attempts());
+    }
+
+    private void ack(List<PendingRecord> records) {
+        for (PendingRecord record : records) {
+            try {
+                record.channel().basicAck(record.deliveryTag(), false);
+            } catch (IOException | RuntimeException e) {
+                // channel is gone, the broker will redeliver this record
+                log.warn("Could not ack record {} (tag {}): {}", record.record().id(), record.deliveryTag(), e.getMessage());
+            }
+        }
+    }
+
+    private void reject(List<PendingRecord> records) {
+        for (PendingRecord record : records) {
+            try {
+                record.channel().basicNack(record.deliveryTag(), false, false);
+            } catch (IOException | RuntimeException e) {
+                log.warn("Could not reject record {} (tag {}): {}", record.record().id(), record.deliveryTag(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Records waiting in the intake per tenant.
+     */
+    public Map<String, Integer> backlog() {
+        return intake.backlog();
+    }
+
+    /**
+     * An enriched record together with the delivery it has to be settled against, the tenant it is
+     * accounted to, when the dispatcher received it and when it was ingested (receivedAt if unknown).
+     *
+     * @param body       the JSON the record was delivered as, to be sent as is; null to serialize {@code record}
+     * @param deliveryId id assigned at ingest that the {@link DeliveryLedger} remembers it by, null if unknown
+     */
+    public record PendingRecord(EnrichedRecord record, Channel channel, long deliveryTag,
+                                String tenant, long receivedAt, long ingestedAt, byte[] body, Long deliveryId) {}
+
+    /**
+     * DLQ copy of a record the Analytics API refused, grouped by {@code errorType} (the HTTP status) and
+     * replayed to the enriched stage.
+     */
+    public record FailedAnalyticsRecord(EnrichedRecord enrichedRecord, String errorType, String error) {
+
+        public static final String ERROR_TYPE_PREFIX = "AnalyticsRejected:";
+    }
+
+    /**
+     * A batch that is serialized and ready to go out on the next permit.
+     *
+     * @param attempts sends already tried and failed transiently
+     */
+    public record PreparedBatch(List<PendingRecord> records, byte[] body, long preparedAt, int attempts) {
+
+        PreparedBatch retried() {
+            return new PreparedBatch(records, body, preparedAt, attempts + 1);
+        }
+    }
+}
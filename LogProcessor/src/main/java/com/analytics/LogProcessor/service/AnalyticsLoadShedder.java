@@ -0,0 +1,216 @@
+package com.analytics.LogProcessor.service;
+
+import com.analytics.LogProcessor.model.Category;
+import com.analytics.LogProcessor.service.AnalyticsDispatcher.PendingRecord;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.MessagePostProcessor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Decides which enriched records are still worth a slice of the analytics quota (app.analytics.shedding).
+ *
+ * On every new {@link QueueLagMonitor} sample the backlog ETA is worked out as the enriched backlog over the
+ * drain rate (or, before anything drained, the rate {@link AnalyticsRateTuner} learned). While it is within
+ * the SLA every record goes out. Once it is not, each category's rule applies:
+ *  - {@code keep}: critical, always sent
+ *  - {@code sample:<ratio>}: only that share is sent, picked by record id so a redelivery gets the same answer
+ *  - {@code max-age:<duration>}: sent unless it was ingested longer ago than that
+ * Categories without a rule follow the {@code default} one (keep unless configured). Records that are not
+ * sent are acked and counted, they do not go to the DLQ.
+ *
+ * Age is measured from the {@value #INGESTED_AT_HEADER} header set at ingest and carried through
+ * enrichment and its retry tiers; records without it (e.g. DLQ replays) are as old as their time in the
+ * dispatcher.
+ */
+@Component
+@Slf4j
+public class AnalyticsLoadShedder {
+
+    public static final String INGESTED_AT_HEADER = "x-ingested-at";
+    static final String DEFAULT_RULE = "default";
+
+    private final QueueLagMonitor lagMonitor;
+    private final MetricsService metricsService;
+    private final boolean enabled;
+    private final Duration sla;
+    private final Map<String, Rule> rules;
+    private final Rule defaultRule;
+
+    private volatile double backlogEtaSeconds;
+    private volatile boolean shedding;
+    private volatile QueueLagMonitor.Sample evaluated;
+
+    public AnalyticsLoadShedder(QueueLagMonitor lagMonitor, MetricsService metricsService,
+                                @Value("${app.analytics.shedding.enabled}") boolean enabled,
+                                @Value("${app.analytics.shedding.sla}") Duration sla,
+                                @Value("${app.analytics.shedding.rules}") String rules) {
+        this.lagMonitor = lagMonitor;
+        this.metricsService = metricsService;
+        this.enabled = enabled;
+        this.sla = sla;
+        this.rules = parse(rules);
+        this.defaultRule = this.rules.getOrDefault(DEFAULT_RULE, Rule.KEEP);
+        if (enabled) {
+            log.info("[Shedding] SLA {}, rules {}", sla, this.rules);
+        }
+    }
+
+    /**
+     * Re-evaluates the backlog ETA against the SLA when the lag monitor has taken a new sample.
+     */
+    void evaluate() {
+        QueueLagMonitor.Sample sample = lagMonitor.getLatest();
+        if (sample == evaluated) {
+            return;
+        }
+        evaluated = sample;
+        if (sample.enrichedDepth() < 0) {
+            return;
+        }
+        double rate = sample.drainRatePerSecond() > 0
+                ? sample.drainRatePerSecond() : metricsService.analyticsLearnedRecordsPerSecond();
+        double eta = sample.enrichedDepth() == 0 ? 0
+                : rate > 0 ? sample.enrichedDepth() / rate : Double.POSITIVE_INFINITY;
+        boolean over = eta > sla.toSeconds();
+        if (over != shedding) {
+            log.warn("[Shedding] Analytics backlog of {} records drains in {} s at {} records/s, {} ({} SLA)",
+                    sample.enrichedDepth(), Math.round(eta), String.format(Locale.ROOT, "%.2f", rate),
+                    over ? "shedding by category" : "sending everything again", sla);
+        }
+        backlogEtaSeconds = eta;
+        shedding = over;
+    }
+
+    /**
+     * Whether a record should still be sent; false means the caller acks it without sending.
+     */
+    public boolean admit(PendingRecord record) {
+        if (!enabled) {
+            return true;
+        }
+        evaluate();
+        if (!shedding) {
+            return true;
+        }
+        Rule rule = rules.getOrDefault(record.record().category(), defaultRule);
+        switch (rule.action()) {
+            case SAMPLE -> {
+                if (sampleBucket(record.record().id()) >= rule.ratio()) {
+                    metricsService.incrementAnalyticsRecordsSampledOut(1);
+                    return false;
+                }
+            }
+            case MAX_AGE -> {
+                if (System.currentTimeMillis() - record.ingestedAt() > rule.maxAge().toMillis()) {
+                    metricsService.incrementAnalyticsRecordsShed(1);
+                    return false;
+                }
+            }
+            case KEEP -> {
+                // critical, always sent
+            }
+        }
+        return true;
+    }
+
+    public boolean isShedding() {
+        return shedding;
+    }
+
+    public double getBacklogEtaSeconds() {
+        return backlogEtaSeconds;
+    }
+
+    /**
+     * Stamps a message with the time its record entered the pipeline; a null time leaves it unstamped.
+     */
+    public static MessagePostProcessor withIngestedAt(Long ingestedAt) {
+        return message -> {
+            if (ingestedAt != null) {
+                message.getMessageProperties().setHeader(INGESTED_AT_HEADER, ingestedAt);
+            }
+            return message;
+        };
+    }
+
+    /**
+     * Uniform value in [0, 1) derived from the record id.
+     */
+    private static double sampleBucket(long id) {
+        long h = id * 0x9E3779B97F4A7C15L;
+        h ^= h >>> 32;
+        return (h >>> 11) * 0x1.0p-53;
+    }
+
+    /**
+     * Parses "category=rule" pairs; categories may be given by name or by technique id (what enrichment
+     * reports), e.g. "phishing=keep, T1189=sample:0.1, default=max-age:1h".
+     */
+    static Map<String, Rule> parse(String spec) {
+        Map<String, Rule> rules = new LinkedHashMap<>();
+        if (spec == null || spec.isBlank()) {
+            return rules;
+        }
+        for (String part : spec.split(",")) {
+            String item = part.trim();
+            if (item.isEmpty()) {
+                continue;
+            }
+            int eq = item.indexOf('=');
+            if (eq <= 0 || eq == item.length() - 1) {
+                throw new IllegalArgumentException("Invalid entry '" + item + "' in app.analytics.shedding.rules, expected category=rule");
+            }
+            String category = item.substring(0, eq).trim();
+            if (!category.equals(DEFAULT_RULE) && Category.isValid(category)) {
+                category = Category.fromString(category).getTechniqueId();
+            }
+            rules.put(category, Rule.parse(item.substring(eq + 1).trim()));
+        }
+        return rules;
+    }
+
+    enum Action { KEEP, SAMPLE, MAX_AGE }
+
+    record Rule(Action action, double ratio, Duration maxAge) {
+
+        static final Rule KEEP = new Rule(Action.KEEP, 1, null);
+
+        static Rule parse(String text) {
+            String lower = text.toLowerCase(Locale.ROOT);
+            try {
+                if (lower.equals("keep")) {
+                    return KEEP;
+                }
+                if (lower.startsWith("sample:")) {
+                    double ratio = Double.parseDouble(lower.substring("sample:".length()).trim());
+                    if (ratio < 0 || ratio > 1) {
+                        throw new IllegalArgumentException("ratio must be between 0 and 1");
+                    }
+                    return new Rule(Action.SAMPLE, ratio, null);
+                }
+                if (lower.startsWith("max-age:")) {
+                    return new Rule(Action.MAX_AGE, 1, DurationStyle.detectAndParse(lower.substring("max-age:".length()).trim()));
+                }
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Invalid shedding rule '" + text + "': " + e.getMessage(), e);
+            }
+            throw new IllegalArgumentException("Invalid shedding rule '" + text + "', expected keep, sample:<ratio> or max-age:<duration>");
+        }
+
+        @Override
+        public String toString() {
+            return switch (action) {
+                case KEEP -> "keep";
+                case SAMPLE -> "sample:" + ratio;
+                case MAX_AGE -> "max-age:" + maxAge;
+            };
+        }
+    }
+}
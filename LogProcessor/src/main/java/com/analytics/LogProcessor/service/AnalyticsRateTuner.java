@@ -0,0 +1,263 @@
+package com.analytics.LogProcessor.service;
+
+import io.github.resilience4j.ratelimiter.RateLimiter;
+import io.github.resilience4j.ratelimiter.RateLimiterConfig;
+import io.github.resilience4j.ratelimiter.RateLimiterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static com.analytics.LogProcessor.constants.LogProcessorConstants.ANALYTICS_MAX_BATCH_SIZE;
+import static com.analytics.LogProcessor.constants.LogProcessorConstants.ANALYTICS_SERVICE;
+
+/**
+ * Learns the Analytics API quota from its responses (app.analytics.adaptive) and tunes the sending side to it.
+ *
+ * The configured analyticsService rate limiter is only the starting point. Every response is read for
+ * rate-limit headers: an advertised policy ("RateLimit-Policy: 2;w=10", or X-RateLimit-Limit over the
+ * configured window) sets the interval between batches, and "remaining: 0" holds sends until the
+ * window resets. A 429 doubles the interval (at least Retry-After), halves the batch size for quotas that
+ * count records rather than requests, and holds sends for Retry-After; clean responses then step back towards
+ * the advertised (or configured) interval and grow the batch by one record. Both stay within the configured bounds.
+ *
+ * Resilience4j cannot change a limiter's refresh period in place, so a new interval swaps in a fresh
+ * analyticsService limiter through the registry, with its first permit drained so the swap never adds a send.
+ */
+@Component
+@Slf4j
+public class AnalyticsRateTuner {
+
+    private static final Pattern POLICY = Pattern.compile("^\\s*(\\d+)\\s*;\\s*w\\s*=\\s*(\\d+)");
+    // a clean response closes 1/RECOVERY_STEPS of the gap between a 429 backoff and the target interval
+    private static final int RECOVERY_STEPS = 10;
+
+    private final RateLimiterRegistry rateLimiterRegistry;
+    private final MetricsService metricsService;
+    private final boolean enabled;
+    private final Duration minInterval;
+    private final Duration maxInterval;
+    private final int minBatchSize;
+    private final int maxBatchSize;
+    private final Duration window;
+
+    private volatile RateLimiter rateLimiter;
+    private Duration interval;
+    private Duration targetInterval;
+    private volatile int batchSize;
+    private volatile long resumeAt;
+
+    public AnalyticsRateTuner(RateLimiterRegistry rateLimiterRegistry,
+                              MetricsService metricsService,
+                              @Value("${app.analytics.adaptive.enabled}") boolean enabled,
+                              @Value("${app.analytics.adaptive.min-interval}") Duration minInterval,
+                              @Value("${app.analytics.adaptive.max-interval}") Duration maxInterval,
+                              @Value("${app.analytics.adaptive.min-batch-size}") int minBatchSize,
+                              @Value("${app.analytics.batch-size}") int batchSize) {
+        if (minInterval.isNegative() || minInterval.isZero() || maxInterval.compareTo(minInterval) < 0) {
+            throw new IllegalArgumentException("app.analytics.adaptive needs 0 < min-interval <= max-interval");
+        }
+        this.rateLimiterRegistry = rateLimiterRegistry;
+        this.metricsService = metricsService;
+        this.enabled = enabled;
+        this.minInterval = minInterval;
+        this.maxInterval = maxInterval;
+        this.maxBatchSize = Math.min(batchSize, ANALYTICS_MAX_BATCH_SIZE);
+        this.minBatchSize = Math.max(1, Math.min(minBatchSize, maxBatchSize));
+        this.rateLimiter = rateLimiterRegistry.rateLimiter(ANALYTICS_SERVICE);
+        RateLimiterConfig config = rateLimiter.getRateLimiterConfig();
+        this.window = config.getLimitRefreshPeriod();
+        this.interval = window.dividedBy(Math.max(1, config.getLimitForPeriod()));
+        this.targetInterval = interval;
+        this.batchSize = maxBatchSize;
+        this.resumeAt = System.nanoTime();
+        publish();
+    }
+
+    /**
+     * The limiter to reserve analytics permits from; replaced whenever the learned interval changes.
+     */
+    public RateLimiter rateLimiter() {
+        return rateLimiter;
+    }
+
+    /**
+     * Records the assembler should put in the next batch.
+     */
+    public int batchSize() {
+        return batchSize;
+    }
+
+    /**
+     * How long the server asked us to hold off (Retry-After, or an exhausted window), 0 when sends may go.
+     */
+    public long nanosUntilResume() {
+        return Math.max(0, resumeAt - System.nanoTime());
+    }
+
+    /**
+     * A batch was accepted; the headers may advertise the quota and what is left of it.
+     */
+    public synchronized void onAccepted(HttpHeaders headers) {
+        if (!enabled) {
+            return;
+        }
+        Duration advertised = advertisedInterval(headers);
+        if (advertised != null) {
+            targetInterval = clamp(advertised);
+        }
+        Long remaining = seconds(headers, "RateLimit-Remaining", "X-RateLimit-Remaining");
+        Long reset = seconds(headers, "RateLimit-Reset", "X-RateLimit-Reset");
+        if (remaining != null && remaining == 0 && reset != null) {
+            holdFor(Duration.ofSeconds(reset));
+        }
+        Duration gap = interval.minus(targetInterval);
+        // an advertised policy is taken as is; without one, step back from a 429 backoff gradually
+        Duration next = advertised == null && gap.compareTo(targetInterval.dividedBy(20)) > 0
+                ? interval.minus(gap.dividedBy(RECOVERY_STEPS))
+                : targetInterval;
+        batchSize = Math.min(maxBatchSize, batchSize + 1);
+        changeInterval(next);
+    }
+
+    /**
+     * The server answered 429: back off the interval and the batch size and wait out Retry-After.
+     */
+    public synchronized void onRateLimited(HttpHeaders headers) {
+        metricsService.incrementAnalyticsRateLimited();
+        if (!enabled) {
+            return;
+        }
+        Duration retryAfter = retryAfter(headers);
+        if (retryAfter != null) {
+            holdFor(retryAfter);
+        }
+        Duration advertised = advertisedInterval(headers);
+        if (advertised != null) {
+            targetInterval = clamp(advertised);
+        }
+        Duration next = interval.multipliedBy(2);
+        if (retryAfter != null && retryAfter.compareTo(next) > 0) {
+            next = retryAfter;
+        }
+        batchSize = Math.max(minBatchSize, batchSize / 2);
+        changeInterval(next);
+        log.warn("[RateTuner] 429 from Analytics API, sending one batch of {} records every {} ms{}",
+                batchSize, interval.toMillis(), retryAfter == null ? "" : " after waiting " + retryAfter.toMillis() + " ms");
+    }
+
+    public synchronized Duration interval() {
+        return interval;
+    }
+
+    private void holdFor(Duration wait) {
+        long until = System.nanoTime() + (wait.compareTo(maxInterval) > 0 ? maxInterval : wait).toNanos();
+        if (until - resumeAt > 0) {
+            resumeAt = until;
+        }
+    }
+
+    private void changeInterval(Duration next) {
+        Duration clamped = clamp(next);
+        if (clamped.equals(interval)) {
+            publish();
+            return;
+        }
+        RateLimiterConfig config = RateLimiterConfig.from(rateLimiter.getRateLimiterConfig())
+                .limitForPeriod(1)
+                .limitRefreshPeriod(clamped)
+                .build();
+        RateLimiter replacement = RateLimiter.of(ANALYTICS_SERVICE, config);
+        replacement.drainPermissions();
+        rateLimiterRegistry.replace(ANALYTICS_SERVICE, replacement);
+        rateLimiter = replacement;
+        if (Math.abs(clamped.toMillis() - interval.toMillis()) * 10 >= interval.toMillis()) {
+            log.info("[RateTuner] Analytics interval {} ms -> {} ms (target {} ms), batch size {}",
+                    interval.toMillis(), clamped.toMillis(), targetInterval.toMillis(), batchSize);
+        }
+        interval = clamped;
+        publish();
+    }
+
+    private void publish() {
+        metricsService.setAnalyticsLearnedLimit(interval.toMillis(), batchSize);
+    }
+
+    private Duration clamp(Duration value) {
+        if (value.compareTo(minInterval) < 0) {
+            return minInterval;
+        }
+        return value.compareTo(maxInterval) > 0 ? maxInterval : value;
+    }
+
+    /**
+     * Interval between requests the server advertises: "limit;w=seconds" policy, or a plain limit over
+     * the configured window.
+     */
+    Duration advertisedInterval(HttpHeaders headers) {
+        if (headers == null) {
+            return null;
+        }
+        String policy = first(headers, "RateLimit-Policy", "X-RateLimit-Policy");
+        if (policy != null) {
+            Matcher matcher = POLICY.matcher(policy);
+            if (matcher.find()) {
+                long limit = Long.parseLong(matcher.group(1));
+                long seconds = Long.parseLong(matcher.group(2));
+                return limit > 0 ? Duration.ofSeconds(seconds).dividedBy(limit) : null;
+            }
+        }
+        Long limit = seconds(headers, "RateLimit-Limit", "X-RateLimit-Limit");
+        return limit != null && limit > 0 ? window.dividedBy(limit) : null;
+    }
+
+    /**
+     * Retry-After as delay-seconds or an HTTP date.
+     */
+    static Duration retryAfter(HttpHeaders headers) {
+        String value = headers == null ? null : headers.getFirst(HttpHeaders.RETRY_AFTER);
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        try {
+            return Duration.ofSeconds(Math.max(0, Long.parseLong(value.trim())));
+        } catch (NumberFormatException e) {
+            try {
+                Duration until = Duration.between(ZonedDateTime.now(),
+                        ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME));
+                return until.isNegative() ? Duration.ZERO : until;
+            } catch (DateTimeParseException ignored) {
+                return null;
+            }
+        }
+    }
+
+    private static Long seconds(HttpHeaders headers, String... names) {
+        String value = headers == null ? null : first(headers, names);
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static String first(HttpHeaders headers, String... names) {
+        for (String name : names) {
+            String value = headers.getFirst(name);
+            if (value != null) {
+                return value;
+            }
+        }
+        return null;
+    }
+}
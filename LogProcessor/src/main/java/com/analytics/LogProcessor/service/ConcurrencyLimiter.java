@@ -0,0 +1,76 @@
+package com.analytics.LogProcessor.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+/**
+ * Explicit in-flight limits for the blocking stages of the pipeline.
+ * On platform threads the listener/Tomcat pools already bound concurrency, but once
+ * those stages run on virtual threads (spring.threads.virtual.enabled) the pools are
+ * unbounded, so these semaphores are what keeps us from flooding RabbitMQ and the
+ * downstream APIs. Limits are the same in both modes to keep the comparison fair.
+ */
+@Component
+@Slf4j
+public class ConcurrencyLimiter {
+
+    public enum Stage { INGEST, ENRICHMENT, ANALYTICS }
+
+    private final Map<Stage, Semaphore> permits = new EnumMap<>(Stage.class);
+    private final Map<Stage, Integer> limits = new EnumMap<>(Stage.class);
+
+    public ConcurrencyLimiter(@Value("${app.concurrency.ingest-in-flight}") int ingestInFlight,
+                              @Value("${app.concurrency.enrichment-in-flight}") int enrichmentInFlight,
+                              @Value("${app.concurrency.analytics-in-flight}") int analyticsInFlight) {
+        register(Stage.INGEST, ingestInFlight);
+        register(Stage.ENRICHMENT, enrichmentInFlight);
+        register(Stage.ANALYTICS, analyticsInFlight);
+    }
+
+    private void register(Stage stage, int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("In-flight limit for " + stage + " must be at least 1");
+        }
+        permits.put(stage, new Semaphore(limit, true));
+        limits.put(stage, limit);
+    }
+
+    /**
+     * Runs the work once a permit for the stage is available, blocking the caller until then.
+     */
+    public <T> T call(Stage stage, Supplier<T> work) {
+        Semaphore semaphore = permits.get(stage);
+        try {
+            semaphore.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for " + stage + " permit", e);
+        }
+        try {
+            return work.get();
+        } finally {
+            semaphore.release();
+        }
+    }
+
+    public void run(Stage stage, Runnable work) {
+        call(stage, () -> {
+            work.run();
+            return null;
+        });
+    }
+
+    public int inFlight(Stage stage) {
+        return limits.get(stage) - permits.get(stage).availablePermits();
+    }
+
+    public int limit(Stage stage) {
+        return limits.get(stage);
+    }
+}
@@ -0,0 +1,205 @@
+package com.analytics.LogProcessor.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessagePostProcessor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Local, persistent record of what the Analytics API has already accepted (app.analytics.ledger).
+ *
+ * Records are remembered by the delivery id assigned when they were ingested ({@value #DELIVERY_ID_HEADER}
+ * header, carried through enrichment, retry tiers and DLQ replays), not by their producer-supplied id, so
+ * a re-upload of the same rows is a new delivery while a redelivered or replayed copy is not. Records
+ * without the header are not tracked.
+ *
+ * Every delivered record is appended as one 8-byte key to an append-only file and kept in a primitive
+ * {@link LongHashSet}, so {@link AnalyticsDispatcher} can drop redelivered or replayed records before
+ * they spend a rate-limiter permit. Memory is bounded by two generations: once the current one holds
+ * generation-size keys it becomes the previous one (file renamed to *.prev) and the oldest is forgotten,
+ * so the ledger always remembers between one and two generations of deliveries. A torn last key from a
+ * crash mid-append is ignored on load.
+ */
+@Component
+@Slf4j
+public class DeliveryLedger {
+
+    public static final String DELIVERY_ID_HEADER = "x-delivery-id";
+    private static final int KEY_BYTES = Long.BYTES;
+
+    private final boolean enabled;
+    private final Path file;
+    private final Path previousFile;
+    private final int generationSize;
+
+    private LongHashSet current;
+    private LongHashSet previous;
+    private FileChannel channel;
+
+    public DeliveryLedger(@Value("${app.analytics.ledger.enabled}") boolean enabled,
+                          @Value("${app.analytics.ledger.path}") String path,
+                          @Value("${app.analytics.ledger.generation-size}") int generationSize) {
+        if (generationSize < 1) {
+            throw new IllegalArgumentException("app.analytics.ledger.generation-size must be at least 1");
+        }
+        this.enabled = enabled;
+        this.file = Path.of(path);
+        this.previousFile = file.resolveSibling(file.getFileName() + ".prev");
+        this.generationSize = generationSize;
+        this.current = new LongHashSet(enabled ? generationSize : 0);
+        this.previous = new LongHashSet(0);
+    }
+
+    @PostConstruct
+    public synchronized void load() {
+        if (!enabled) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            previous = read(previousFile);
+            current = read(file);
+            Path parent = file.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            // drop a torn trailing key so appends stay aligned
+            channel.truncate(channel.size() - channel.size() % KEY_BYTES);
+            channel.position(channel.size());
+        } catch (IOException e) {
+            log.error("[Ledger] Could not open delivery ledger {}, deliveries are only kept in memory: {}",
+                    file, e.getMessage());
+            channel = null;
+        }
+        log.info("[Ledger] Loaded {} delivered keys from {} in {} ms", size(), file,
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        if (channel != null) {
+            try {
+                channel.force(false);
+                channel.close();
+            } catch (IOException e) {
+                log.warn("[Ledger] Could not close delivery ledger {}: {}", file, e.getMessage());
+            }
+            channel = null;
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public synchronized boolean isDelivered(long key) {
+        return enabled && (current.contains(key) || previous.contains(key));
+    }
+
+    /**
+     * Remembers keys the Analytics API accepted. Called after the batch was acknowledged by the API, so a
+     * crash between the two at worst costs a resend, never a lost record.
+     */
+    public synchronized void recordDelivered(Collection<Long> keys) {
+        if (!enabled || keys.isEmpty()) {
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(keys.size() * KEY_BYTES);
+        for (long key : keys) {
+            if (!previous.contains(key) && current.add(key)) {
+                buffer.putLong(key);
+            }
+        }
+        buffer.flip();
+        if (channel != null) {
+            try {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            } catch (IOException e) {
+                // still remembered until restart
+                log.warn("[Ledger] Could not append {} keys to {}: {}", keys.size(), file, e.getMessage());
+            }
+        }
+        if (current.size() >= generationSize) {
+            rotate();
+        }
+    }
+
+    public synchronized int size() {
+        return current.size() + previous.size();
+    }
+
+    /**
+     * Delivery id for a record entering the pipeline: 64 random bits, so ids of the keys the ledger
+     * remembers (at most two generations) practically never collide.
+     */
+    public static long newDeliveryId() {
+        return ThreadLocalRandom.current().nextLong();
+    }
+
+    /**
+     * Stamps a message with the delivery id of its record; a null id leaves it unstamped.
+     */
+    public static MessagePostProcessor withDeliveryId(Long deliveryId) {
+        return message -> {
+            if (deliveryId != null) {
+                message.getMessageProperties().setHeader(DELIVERY_ID_HEADER, deliveryId);
+            }
+            return message;
+        };
+    }
+
+    /**
+     * Delivery id header of a message, or null if it has none.
+     */
+    public static Long deliveryId(Message message) {
+        Object id = message.getMessageProperties().getHeader(DELIVERY_ID_HEADER);
+        return id instanceof Number number ? number.longValue() : null;
+    }
+
+    private void rotate() {
+        try {
+            if (channel != null) {
+                channel.force(false);
+                channel.close();
+            }
+            Files.move(file, previousFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+        } catch (IOException e) {
+            log.error("[Ledger] Could not rotate delivery ledger {}, deliveries are only kept in memory: {}",
+                    file, e.getMessage());
+            channel = null;
+        }
+        previous = current;
+        current = new LongHashSet(generationSize);
+        log.info("[Ledger] Rotated delivery ledger, remembering the last {} keys", previous.size());
+    }
+
+    private LongHashSet read(Path path) throws IOException {
+        if (!Files.isRegularFile(path)) {
+            return new LongHashSet(generationSize);
+        }
+        ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(path));
+        LongHashSet keys = new LongHashSet(Math.max(generationSize, bytes.remaining() / KEY_BYTES));
+        while (bytes.remaining() >= KEY_BYTES) {
+            keys.add(bytes.getLong());
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,118 @@
+package com.analytics.LogProcessor.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.MessagePostProcessor;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.Exceptions;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Broker-side delayed retry for enrichment failures.
+ *
+ * Each tier is a TTL queue with no consumers that dead-letters back onto the raw routing key, so a
+ * failed record waits in RabbitMQ instead of in a sleeping listener thread. The attempt number travels
+ * in the {@value #ATTEMPT_HEADER} header; once the last tier has been used the record goes to the DLQ.
+ * Queue names carry the delay because RabbitMQ refuses to redeclare a queue with a different TTL,
+ * and a ".sharded" suffix when they dead-letter to the sharded raw exchange (see {@link RawShardLayout}).
+ */
+@Component
+@Slf4j
+public class EnrichmentRetryTiers {
+
+    public static final String ATTEMPT_HEADER = "x-enrichment-attempt";
+
+    private final RabbitTemplate rabbitTemplate;
+    private final MetricsService metricsService;
+    private final List<Duration> delays;
+    private final String retryExchange;
+    private final String rawRecordsQueue;
+    private final RawShardLayout shardLayout;
+
+    public EnrichmentRetryTiers(RabbitTemplate rabbitTemplate, MetricsService metricsService, RawShardLayout shardLayout,
+                                @Value("${app.enrichment.retry-tiers}") List<Duration> delays,
+                                @Value("${exchange.retry}") String retryExchange,
+                                @Value("${queue.raw-records}") String rawRecordsQueue) {
+        this.rabbitTemplate = rabbitTemplate;
+        this.metricsService = metricsService;
+        this.delays = List.copyOf(delays);
+        this.retryExchange = retryExchange;
+        this.rawRecordsQueue = rawRecordsQueue;
+        this.shardLayout = shardLayout;
+    }
+
+    public int size() {
+        return delays.size();
+    }
+
+    public Duration delay(int tier) {
+        return delays.get(tier);
+    }
+
+    public String queueName(int tier) {
+        String queue = rawRecordsQueue + ".retry." + delays.get(tier).toMillis() + "ms";
+        return shardLayout.isEnabled() ? queue + ".sharded" : queue;
+    }
+
+    /**
+     * Parks the record in the tier for its next attempt.
+     *
+     * @param attempt     retries already made for this record (0 on first delivery)
+     * @param tenant      tenant header to carry back to the raw stage
+     * @param ingestedAt  ingest time header to carry back to the raw stage, null if the record had none
+     * @param deliveryId  delivery id header to carry back to the raw stage, null if the record had none
+     * @param correlation publisher-confirm correlation the caller settles the delivery on
+     * @return false when the error is not transient or every tier has been used, i.e. the caller should DLQ it
+     */
+    public boolean scheduleRetry(Object record, int attempt, String tenant, Long ingestedAt, Long deliveryId,
+                                 Throwable error, CorrelationData correlation) {
+        if (attempt >= delays.size() || !isRetryable(error)) {
+            return false;
+        }
+        String queue = queueName(attempt);
+        MessagePostProcessor withShardKey = shardLayout.withShardKey(record);
+        MessagePostProcessor withTenant = TenantRegistry.withTenant(tenant);
+        MessagePostProcessor withIngestedAt = AnalyticsLoadShedder.withIngestedAt(ingestedAt);
+        MessagePostProcessor withDeliveryId = DeliveryLedger.withDeliveryId(deliveryId);
+        MessagePostProcessor withAttempt = message -> {
+            message.getMessageProperties().setHeader(ATTEMPT_HEADER, attempt + 1);
+            return withDeliveryId.postProcessMessage(withIngestedAt.postProcessMessage(
+                    withTenant.postProcessMessage(withShardKey.postProcessMessage(message))));
+        };
+        try {
+            rabbitTemplate.convertAndSend(retryExchange, queue, record, withAttempt, correlation);
+        } catch (Exception e) {
+            log.error("Failed to park record in retry tier {}: {}", queue, e.getMessage());
+            return false;
+        }
+        metricsService.incrementEnrichmentRetriesScheduled();
+        log.debug("Scheduled enrichment retry {} of {} via {}", attempt + 1, delays.size(), queue);
+        return true;
+    }
+
+    /**
+     * Transient failures worth another attempt: connection errors, timeouts and 5xx/429 responses.
+     * Other 4xx responses will not succeed on retry. Calls rejected by an open circuit breaker never
+     * get here, EnrichmentConsumer requeues those while {@code EnrichmentListenerGate} pauses the listener.
+     */
+    static boolean isRetryable(Throwable error) {
+        for (Throwable cause = Exceptions.unwrap(error); cause != null; cause = cause.getCause()) {
+            if (cause instanceof WebClientResponseException response) {
+                return response.getStatusCode().is5xxServerError() || response.getStatusCode().value() == 429;
+            }
+            if (cause instanceof WebClientRequestException || cause instanceof TimeoutException
+                    || cause instanceof IOException) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -1,61 +1,121 @@
 package com.analytics.LogProcessor.service;
 
+import com.analytics.LogProcessor.cache.CachedEnrichment;
+import com.analytics.LogProcessor.cache.EnrichmentCache;
+import com.analytics.LogProcessor.exception.RetryBudgetExhaustedException;
 import com.analytics.LogProcessor.model.ActivityRecord;
+import com.analytics.LogProcessor.model.Category;
 import com.analytics.LogProcessor.model.EnrichedRecord;
 import com.analytics.LogProcessor.model.EnrichmentResponse;
+import com.analytics.LogProcessor.network.AsnRangeTable;
+import com.analytics.LogProcessor.network.LocalAsnResolver;
 import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
 import io.github.resilience4j.circuitbreaker.CircuitBreaker;
 import io.github.resilience4j.reactor.circuitbreaker.operator.CircuitBreakerOperator;
-import io.github.resilience4j.reactor.retry.RetryOperator;
-import io.github.resilience4j.retry.Retry;
-import io.github.resilience4j.retry.RetryRegistry;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClientException;
 import reactor.core.publisher.Mono;
 
 import java.time.Duration;
-import java.util.Map;
 
 @Slf4j
 @Service
 public class EnrichmentService {
 
     private final WebClient enrichmentWebClient;
-    private final Retry retry;
     private final CircuitBreaker circuitBreaker;
+    private final EnrichmentCache enrichmentCache;
+    private final LocalAsnResolver localAsnResolver;
+    private final MetricsService metricsService;
+    private final RetryBudget retryBudget;
 
-    public EnrichmentService(WebClient enrichmentWebClient, RetryRegistry retryRegistry, CircuitBreakerRegistry circuitBreakerRegistry) {
+    @Value("${app.enrichment.local-asn.asn-prefix}")
+    private String asnPrefix;
+
+    public EnrichmentService(WebClient enrichmentWebClient, CircuitBreakerRegistry circuitBreakerRegistry,
+                             EnrichmentCache enrichmentCache, LocalAsnResolver localAsnResolver, MetricsService metricsService,
+                             RetryBudget retryBudget) {
         this.enrichmentWebClient = enrichmentWebClient;
-        this.retry = retryRegistry.retry("enrichmentService");
         this.circuitBreaker = circuitBreakerRegistry.circuitBreaker("enrichmentService");
+        this.enrichmentCache = enrichmentCache;
+        this.localAsnResolver = localAsnResolver;
+        this.metricsService = metricsService;
+        this.retryBudget = retryBudget;
+    }
+
+    public Mono<EnrichedRecord> enrichRecords(ActivityRecord activityRecord, int attempt){
+        return enrichRecords(activityRecord, attempt, null);
     }
 
-    public Mono<EnrichedRecord> enrichRecords(ActivityRecord activityRecord){
+    /**
+     * @param attempt retries already made for this record; any attempt after the first has to take a
+     *                token from the shared {@link RetryBudget} before it may call the Enrichment API
+     * @param rawBody JSON body of the raw message the record was read from; when given it is the request
+     *                body as is (same id/asset/ip/category fields), otherwise the record is serialized
+     */
+    public Mono<EnrichedRecord> enrichRecords(ActivityRecord activityRecord, int attempt, byte[] rawBody){
+
+        EnrichedRecord local = resolveLocally(activityRecord);
+        if (local != null) {
+            return Mono.just(local);
+        }
+
+        CachedEnrichment cached = enrichmentCache.get(activityRecord.ip(), activityRecord.category());
+        if (cached != null) {
+            // the cached correlation id was issued for another record; no remote call here, so 0
+            return Mono.just(new EnrichedRecord(activityRecord.id(), activityRecord.asset(), activityRecord.ip(),
+                    cached.category(), cached.asn(), 0L));
+        }
+
+        if (attempt > 0 && !retryBudget.tryAcquire()) {
+            metricsService.incrementRetriesDenied();
+            metricsService.setRetryBudgetLevel(retryBudget.getTokens());
+            return Mono.error(new RetryBudgetExhaustedException(
+                    "Retry budget exhausted, not retrying enrichment for record " + activityRecord.id()));
+        }
 
         return Mono.defer(() ->enrichmentWebClient.post()
-                .bodyValue(buildRequestBody(activityRecord))
+                .bodyValue(rawBody != null ? rawBody : activityRecord)
                 .retrieve()
                 .bodyToMono(EnrichmentResponse.class)
+                .doOnNext(response -> enrichmentCache.put(activityRecord.ip(), activityRecord.category(), response))
+                .doOnNext(response -> {
+                    if (attempt == 0) {
+                        retryBudget.onFirstAttemptSuccess();
+                    }
+                    metricsService.setRetryBudgetLevel(retryBudget.getTokens());
+                })
                 .map( response -> mapToEnrichedRecord(activityRecord,response))
                 .doOnError(error ->
-                        log.debug("Error enriching record {}: {}, retry will happen", activityRecord.id(), error.getMessage())
+                        log.debug("Error enriching record {}: {}, retry tier decides next step", activityRecord.id(), error.getMessage())
                         //setting log level to debug to stop flooding app log with false alarms
                 ))
+                // no in-thread retry: transient failures are re-delivered through EnrichmentRetryTiers
                 .transformDeferred(CircuitBreakerOperator.of(circuitBreaker))
-                .transformDeferred(RetryOperator.of(retry))
                 .timeout(Duration.ofSeconds(10));
     }
-    private Map<String, Object> buildRequestBody(ActivityRecord record){
-        return Map.of(
-                "id", record.id(),
-                "asset", record.asset(),
-                "ip", record.ip(),
-                "category", record.category()
-        );
+    /**
+     * Answers from the local prefix table when it covers the IP; the category is the ATT&CK id the
+     * Enrichment API would have returned. There is no remote call, so no correlation id (0).
+     */
+    private EnrichedRecord resolveLocally(ActivityRecord record){
+        if (!localAsnResolver.isAvailable()) {
+            return null;
+        }
+        int asn = localAsnResolver.lookup(record.ip());
+        if (asn == AsnRangeTable.NO_ASN) {
+            metricsService.incrementLocalAsnMisses();
+            return null;
+        }
+        metricsService.incrementLocalAsnHits();
+        return new EnrichedRecord(record.id(), record.asset(), record.ip(),
+                Category.fromString(record.category()).getTechniqueId(),
+                asnPrefix + Integer.toUnsignedString(asn), 0L);
     }
+
     private EnrichedRecord mapToEnrichedRecord(ActivityRecord record, EnrichmentResponse response){
         return  new EnrichedRecord(record.id(), record.asset(), record.ip(), response.category(), response.asn(),response.correlationId());
     }
@@ -0,0 +1,150 @@
+package com.analytics.LogProcessor.service;
+
+import com.analytics.LogProcessor.network.CidrBlock;
+import com.analytics.LogProcessor.network.CidrTrie;
+import com.analytics.LogProcessor.network.IpAddresses;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * CIDR allow/deny stage run at ingest, before records are published to the raw queue.
+ *
+ * Rules are "allow &lt;cidr&gt;" or "deny &lt;cidr&gt;" lines, taken from app.ingest.filter.rules plus an
+ * optional rules file that is re-read when it changes. They are compiled into one {@link CidrTrie}
+ * per family (IPv6 keyed on all 128 bits); the longest matching prefix decides, and an address no
+ * rule covers is allowed. IPv4-mapped IPv6 addresses (::ffff:a.b.c.d) are checked against the IPv4 rules.
+ * Every rule keeps a hit counter, carried over across reloads for rules that are still present.
+ */
+@Component
+@Slf4j
+public class IngestFilter {
+
+    public enum Action { ALLOW, DENY }
+
+    private final boolean enabled;
+    private final List<String> configuredRules;
+    private final Path rulesFile;
+
+    private final Map<String, AtomicLong> hitCounters = new ConcurrentHashMap<>();
+    private volatile CompiledRules compiled = new CompiledRules(new CidrTrie<>(32), new CidrTrie<>(128), List.of(), -1);
+
+    public IngestFilter(@Value("${app.ingest.filter.enabled}") boolean enabled,
+                        @Value("${app.ingest.filter.rules}") List<String> configuredRules,
+                        @Value("${app.ingest.filter.rules-file}") String rulesFile) {
+        this.enabled = enabled;
+        this.configuredRules = configuredRules;
+        this.rulesFile = rulesFile == null || rulesFile.isBlank() ? null : Path.of(rulesFile);
+    }
+
+    @PostConstruct
+    public void reload() {
+        List<String> lines = new ArrayList<>(configuredRules);
+        long modified = -1;
+        if (rulesFile != null && Files.isRegularFile(rulesFile)) {
+            try {
+                modified = Files.getLastModifiedTime(rulesFile).toMillis();
+                lines.addAll(Files.readAllLines(rulesFile, StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                log.error("[Filter] Could not read ingest filter rules {}: {}", rulesFile, e.getMessage());
+                return;
+            }
+        }
+
+        CidrTrie<Rule> ipv4 = new CidrTrie<>(32);
+        CidrTrie<Rule> ipv6 = new CidrTrie<>(128);
+        List<Rule> rules = new ArrayList<>();
+        for (String line : lines) {
+            String text = line.trim();
+            if (text.isEmpty() || text.startsWith("#")) {
+                continue;
+            }
+            try {
+                Rule rule = parse(text);
+                (rule.block().ipv6() ? ipv6 : ipv4).put(rule.block(), rule);
+                rules.add(rule);
+            } catch (IllegalArgumentException e) {
+                log.warn("[Filter] Ignoring invalid ingest filter rule '{}': {}", text, e.getMessage());
+            }
+        }
+        compiled = new CompiledRules(ipv4, ipv6, List.copyOf(rules), modified);
+        hitCounters.keySet().retainAll(rules.stream().map(Rule::text).toList());
+        log.info("[Filter] Loaded {} ingest filter rules", rules.size());
+    }
+
+    @Scheduled(fixedDelayString = "${app.ingest.filter.reload-interval}",
+            initialDelayString = "${app.ingest.filter.reload-interval}")
+    public void reloadIfChanged() {
+        if (rulesFile == null || !Files.isRegularFile(rulesFile)) {
+            return;
+        }
+        try {
+            if (Files.getLastModifiedTime(rulesFile).toMillis() != compiled.rulesFileModifiedAt()) {
+                reload();
+            }
+        } catch (IOException e) {
+            log.warn("[Filter] Could not stat {}: {}", rulesFile, e.getMessage());
+        }
+    }
+
+    /**
+     * The deny rule rejecting this address, or null when the record may be ingested.
+     */
+    public Rule rejectedBy(String ip) {
+        if (!enabled) {
+            return null;
+        }
+        CompiledRules current = compiled;
+        Rule match;
+        long v4 = IpAddresses.parseIpv4(ip);
+        if (v4 >= 0) {
+            match = current.ipv4().longestMatch(v4);
+        } else {
+            byte[] v6 = IpAddresses.ipv6Bytes(ip);
+            if (v6 == null) {
+                match = null;
+            } else if ((v4 = IpAddresses.mappedIpv4(v6)) >= 0) {
+                match = current.ipv4().longestMatch(v4);
+            } else {
+                match = current.ipv6().longestMatch(IpAddresses.high64(v6), IpAddresses.low64(v6));
+            }
+        }
+        if (match == null) {
+            return null;
+        }
+        match.hits().incrementAndGet();
+        return match.action() == Action.DENY ? match : null;
+    }
+
+    public List<Rule> getRules() {
+        return compiled.rules();
+    }
+
+    private Rule parse(String text) {
+        String[] parts = text.split("\\s+");
+        if (parts.length != 2) {
+            throw new IllegalArgumentException("expected '<allow|deny> <cidr>'");
+        }
+        Action action = Action.valueOf(parts[0].toUpperCase(Locale.ROOT));
+        CidrBlock block = CidrBlock.parse(parts[1]);
+        String normalised = action.name().toLowerCase(Locale.ROOT) + " " + parts[1];
+        return new Rule(normalised, action, block, hitCounters.computeIfAbsent(normalised, k -> new AtomicLong()));
+    }
+
+    public record Rule(String text, Action action, CidrBlock block, AtomicLong hits) {}
+
+    private record CompiledRules(CidrTrie<Rule> ipv4, CidrTrie<Rule> ipv6, List<Rule> rules, long rulesFileModifiedAt) {}
+}
@@ -1,15 +1,20 @@
 package com.analytics.LogProcessor.service;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import com.analytics.LogProcessor.exception.MessagePublishException;
 import com.analytics.LogProcessor.model.ActivityRecord;
 import com.analytics.LogProcessor.model.IngestResponse;
+import com.analytics.LogProcessor.model.RejectedRecord;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.MessagePostProcessor;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import static com.analytics.LogProcessor.constants.LogProcessorConstants.RAW_ROUTING_KEY;
+import static com.analytics.LogProcessor.constants.LogProcessorConstants.RAW_STREAM_ROUTING_KEY;
 
 
 
@@ -20,21 +25,117 @@ public class IngestService {
 
     private final RabbitTemplate rabbitTemplate;
     private final MetricsService metricsService;
+    private final ConcurrencyLimiter concurrencyLimiter;
+    private final IngestFilter ingestFilter;
+    private final RawShardLayout shardLayout;
+    private final TenantRegistry tenantRegistry;
 
     @Value("${exchange.main}")
     private String mainExchange;
 
-    public IngestService(RabbitTemplate rabbitTemplate, MetricsService metricsService){
+    @Value("${app.stream.enabled}")
+    private boolean rawStream;
+
+    public IngestService(RabbitTemplate rabbitTemplate, MetricsService metricsService,
+                         ConcurrencyLimiter concurrencyLimiter, IngestFilter ingestFilter,
+                         RawShardLayout shardLayout, TenantRegistry tenantRegistry){
         this.rabbitTemplate = rabbitTemplate;
         this.metricsService = metricsService;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.ingestFilter = ingestFilter;
+        this.shardLayout = shardLayout;
+        this.tenantRegistry = tenantRegistry;
     }
 
     public IngestResponse ingest(List<ActivityRecord> activityRecordList, String authToken){
-        int successCount = 0;
+        Screened screened = screen(activityRecordList);
+        List<ActivityRecord> accepted = screened.accepted();
+        String tenant = tenantOf(authToken);
+
+        // bounds concurrent publishers when Tomcat runs requests on virtual threads
+        int successCount = concurrencyLimiter.call(ConcurrencyLimiter.Stage.INGEST,
+                () -> publishRecords(accepted, tenant));
+
+        metricsService.incrementRecordsIngested(successCount);
+        log.info("Ingested {} out of {} records to raw queue (Total ingested: {})",
+                successCount, accepted.size(), metricsService.getRecordsIngested().get());
+
+        return IngestResponse.builder()
+                .recordsIngested(successCount)
+                .recordsRejected(screened.rejected().size())
+                .rejectedRecords(screened.rejected())
+                .message("Records Ingested to raw queue")
+                .build();
+    }
 
+    /**
+     * Splits a batch into the records to publish and those denied by the ingest filter.
+     */
+    public Screened screen(List<ActivityRecord> activityRecordList){
+        // drop denied ranges before they cost a publish, an enrichment call and analytics quota
+        List<ActivityRecord> accepted = new ArrayList<>(activityRecordList.size());
+        List<RejectedRecord> rejected = new ArrayList<>();
+        for (ActivityRecord activityRecord : activityRecordList) {
+            IngestFilter.Rule rule = ingestFilter.rejectedBy(activityRecord.ip());
+            if (rule == null) {
+                accepted.add(activityRecord);
+            } else {
+                rejected.add(new RejectedRecord(activityRecord.id(), activityRecord.ip(), rule.text()));
+            }
+        }
+        if (!rejected.isEmpty()) {
+            metricsService.incrementRecordsFiltered(rejected.size());
+            log.info("Filtered {} out of {} records at ingest", rejected.size(), activityRecordList.size());
+        }
+        return new Screened(accepted, rejected);
+    }
+
+    /**
+     * Publishes one record, tagged with its tenant, ingest time and a new delivery id, to the raw stage (stream, shards or raw queue,
+     * depending on configuration). With a correlation the caller can wait for the broker's confirm;
+     * exceptions are left to the caller.
+     */
+    public void publish(ActivityRecord activityRecord, String tenant, CorrelationData correlation){
+        publish(activityRecord, tenant, DeliveryLedger.newDeliveryId(), correlation);
+    }
+
+    /**
+     * Publishes one record under a delivery id it was given before, so a re-publish of a record the broker
+     * may already have taken is recognised as the same delivery downstream.
+     */
+    public void publish(ActivityRecord activityRecord, String tenant, long deliveryId, CorrelationData correlation){
+        MessagePostProcessor withTenant = TenantRegistry.withTenant(tenant);
+        MessagePostProcessor withIngestedAt = AnalyticsLoadShedder.withIngestedAt(System.currentTimeMillis());
+        MessagePostProcessor withDeliveryId = DeliveryLedger.withDeliveryId(deliveryId);
+        MessagePostProcessor headers = message -> withDeliveryId.postProcessMessage(
+                withIngestedAt.postProcessMessage(withTenant.postProcessMessage(message)));
+        if (rawStream) {
+            // instances reading the stream pick their records by shard key
+            MessagePostProcessor withShardKey = shardLayout.withShardKey(activityRecord);
+            rabbitTemplate.convertAndSend(mainExchange, RAW_STREAM_ROUTING_KEY, activityRecord,
+                    message -> withShardKey.postProcessMessage(headers.postProcessMessage(message)), correlation);
+        } else if (shardLayout.isEnabled()) {
+            // the consistent-hash exchange routes on the shard-key header, the routing key is ignored
+            MessagePostProcessor withShardKey = shardLayout.withShardKey(activityRecord);
+            rabbitTemplate.convertAndSend(shardLayout.getShardedExchange(), RAW_ROUTING_KEY, activityRecord,
+                    message -> withShardKey.postProcessMessage(headers.postProcessMessage(message)), correlation);
+        } else {
+            rabbitTemplate.convertAndSend(mainExchange, RAW_ROUTING_KEY, activityRecord, headers, correlation);
+        }
+    }
+
+    /**
+     * Tenant the records of a request with this Authorization token are accounted to.
+     */
+    public String tenantOf(String authToken){
+        return tenantRegistry.resolve(authToken);
+    }
+
+    private int publishRecords(List<ActivityRecord> activityRecordList, String tenant){
+        int successCount = 0;
         for (ActivityRecord activityRecord : activityRecordList) {
             try{
-                rabbitTemplate.convertAndSend(mainExchange,RAW_ROUTING_KEY, activityRecord);
+                publish(activityRecord, tenant, null);
                 successCount++;
                 log.debug("Published record {} to raw queue", activityRecord.id());
             }catch(Exception ex){
@@ -42,14 +143,8 @@ public class IngestService {
                         activityRecord.id(), ex.getMessage());
             }
         }
-
-        metricsService.incrementRecordsIngested(successCount);
-        log.info("Ingested {} out of {} records to raw queue (Total ingested: {})",
-                successCount, activityRecordList.size(), metricsService.getRecordsIngested().get());
-
-        return IngestResponse.builder()
-                .recordsIngested(successCount)
-                .message("Records Ingested to raw queue")
-                .build();
+        return successCount;
     }
+
+    public record Screened(List<ActivityRecord> accepted, List<RejectedRecord> rejected) {}
 }
@@ -0,0 +1,205 @@
+package com.analytics.LogProcessor.service;
+
+import com.analytics.LogProcessor.model.ActivityRecord;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Local JSON-lines spool for accepted records the broker did not confirm during async ingest.
+ *
+ * The client already got its 202, so instead of dropping such records they are appended here and
+ * re-published every app.ingest.async.spool-drain-interval until the broker confirms them.
+ * Each line holds the record together with its tenant and delivery id; plain record lines count as the
+ * default tenant. Re-publishes reuse the delivery id, so a record the broker did take despite the missing
+ * confirm is dropped as a duplicate by the enrichment stage's {@link DeliveryLedger}.
+ *
+ * A drain moves the spool aside to a ".draining" file and only deletes it once every record in it is
+ * either confirmed or written back to the spool, so a crash mid-drain loses nothing: the next drain
+ * reads the leftover file again. Records confirmed just before such a crash are published twice.
+ */
+@Component
+@Slf4j
+public class IngestSpool {
+
+    private final IngestService ingestService;
+    private final ObjectMapper objectMapper;
+    private final MetricsService metricsService;
+    private final Path file;
+    private final Duration confirmTimeout;
+
+    public IngestSpool(IngestService ingestService, ObjectMapper objectMapper, MetricsService metricsService,
+                       @Value("${app.ingest.async.spool-file}") String spoolFile,
+                       @Value("${app.ingest.async.confirm-timeout}") Duration confirmTimeout) {
+        this.ingestService = ingestService;
+        this.objectMapper = objectMapper;
+        this.metricsService = metricsService;
+        this.file = Paths.get(spoolFile);
+        this.confirmTimeout = confirmTimeout;
+    }
+
+    /**
+     * Spools records the ticket path could not get confirmed; this is what counts as a spill.
+     *
+     * @return false when the records could not be written, i.e. they are lost
+     */
+    public synchronized boolean append(List<Spooled> records) {
+        if (!write(records)) {
+            return false;
+        }
+        metricsService.incrementIngestSpilled(records.size());
+        return true;
+    }
+
+    private boolean write(List<Spooled> records) {
+        if (records.isEmpty()) {
+            return true;
+        }
+        try {
+            Path parent = file.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                for (Spooled spooled : records) {
+                    writer.write(objectMapper.writeValueAsString(spooled));
+                    writer.newLine();
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            log.error("Could not spool {} records to {}: {}", records.size(), file, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Re-publishes spooled records; whatever is still not confirmed goes back into the spool.
+     */
+    @Scheduled(fixedDelayString = "${app.ingest.async.spool-drain-interval}")
+    public void drain() {
+        List<Spooled> records = take();
+        if (records.isEmpty()) {
+            return;
+        }
+        List<Spooled> unconfirmed = new ArrayList<>();
+        int confirmed = 0;
+        for (Spooled spooled : records) {
+            // stop on the first failure, the broker is most likely still unavailable
+            if (!unconfirmed.isEmpty() || !publishConfirmed(spooled)) {
+                unconfirmed.add(spooled);
+            } else {
+                confirmed++;
+            }
+        }
+        metricsService.incrementRecordsIngested(confirmed);
+        finishDrain(unconfirmed);
+        log.info("Drained {} spooled records, {} left in the spool", confirmed, unconfirmed.size());
+    }
+
+    /**
+     * Drops the draining file once the unconfirmed records are back in the spool. If they cannot be
+     * appended, the draining file is replaced by just those records so the next drain retries them.
+     */
+    private synchronized void finishDrain(List<Spooled> unconfirmed) {
+        Path draining = drainingFile();
+        try {
+            // written back without counting them as spilled again
+            if (write(unconfirmed)) {
+                Files.deleteIfExists(draining);
+                return;
+            }
+            Path tmp = draining.resolveSibling(draining.getFileName() + ".tmp");
+            try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                for (Spooled spooled : unconfirmed) {
+                    writer.write(objectMapper.writeValueAsString(spooled));
+                    writer.newLine();
+                }
+            }
+            Files.move(tmp, draining, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.error("Could not finish draining {}, it will be read again: {}", draining, e.getMessage());
+        }
+    }
+
+    private boolean publishConfirmed(Spooled spooled) {
+        try {
+            CorrelationData correlation = new CorrelationData(String.valueOf(spooled.record().id()));
+            if (spooled.deliveryId() != null) {
+                ingestService.publish(spooled.record(), spooled.tenant(), spooled.deliveryId(), correlation);
+            } else {
+                ingestService.publish(spooled.record(), spooled.tenant(), correlation);
+            }
+            return correlation.getFuture().get(confirmTimeout.toMillis(), TimeUnit.MILLISECONDS).isAck();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    /**
+     * Records of the draining file, moving the spool there first unless a previous drain left one behind.
+     * The file stays until {@link #finishDrain(List)}.
+     */
+    private synchronized List<Spooled> take() {
+        Path draining = drainingFile();
+        List<Spooled> records = new ArrayList<>();
+        try {
+            // a leftover draining file means the previous drain was interrupted before it finished, read it again
+            if (!Files.isRegularFile(draining)) {
+                if (!Files.isRegularFile(file)) {
+                    return records;
+                }
+                Files.move(file, draining);
+            }
+            for (String line : Files.readAllLines(draining, StandardCharsets.UTF_8)) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    JsonNode node = objectMapper.readTree(line);
+                    records.add(node.has("record")
+                            ? objectMapper.treeToValue(node, Spooled.class)
+                            : new Spooled(TenantRegistry.DEFAULT_TENANT, objectMapper.treeToValue(node, ActivityRecord.class), null));
+                } catch (IOException e) {
+                    log.error("Dropping unreadable spool line: {}", e.getMessage());
+                }
+            }
+            if (records.isEmpty()) {
+                Files.delete(draining);
+            }
+        } catch (IOException e) {
+            log.error("Could not read spool {}: {}", draining, e.getMessage());
+        }
+        return records;
+    }
+
+    private Path drainingFile() {
+        return file.resolveSibling(file.getFileName() + ".draining");
+    }
+
+    /**
+     * A spooled record with its tenant and the delivery id of its first publish (null in older spools).
+     */
+    public record Spooled(String tenant, ActivityRecord record, Long deliveryId) {}
+}
@@ -0,0 +1,193 @@
+package com.analytics.LogProcessor.service;
+
+import com.analytics.LogProcessor.model.ActivityRecord;
+import com.analytics.LogProcessor.model.IngestTicketStatus;
+import com.analytics.LogProcessor.model.IngestTicketStatus.Status;
+import com.analytics.LogProcessor.model.RejectedRecord;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Asynchronous ingest: batches are handed to a bounded publisher pool and tracked by ticket.
+ *
+ * The request returns as soon as the batch is queued, so its latency no longer depends on the broker.
+ * A publisher screens the batch, publishes every record with a publisher confirm and waits for the
+ * confirms; records the broker does not confirm are spilled to {@link IngestSpool}. When the pool's
+ * queue is full the batch is refused, which the controller turns into a 503 the CLI retries.
+ * Finished tickets are kept for app.ingest.async.ticket-ttl.
+ */
+@Service
+@Slf4j
+public class IngestTicketService {
+
+    private final IngestService ingestService;
+    private final IngestSpool spool;
+    private final MetricsService metricsService;
+    private final ThreadPoolExecutor publishers;
+    private final Duration confirmTimeout;
+    private final Duration ticketTtl;
+    private final Map<String, Ticket> tickets = new ConcurrentHashMap<>();
+
+    public IngestTicketService(IngestService ingestService, IngestSpool spool, MetricsService metricsService,
+                               @Value("${app.ingest.async.publish-threads}") int publishThreads,
+                               @Value("${app.ingest.async.queue-capacity}") int queueCapacity,
+                               @Value("${app.ingest.async.confirm-timeout}") Duration confirmTimeout,
+                               @Value("${app.ingest.async.ticket-ttl}") Duration ticketTtl) {
+        this.ingestService = ingestService;
+        this.spool = spool;
+        this.metricsService = metricsService;
+        this.confirmTimeout = confirmTimeout;
+        this.ticketTtl = ticketTtl;
+        AtomicInteger threadNo = new AtomicInteger();
+        this.publishers = new ThreadPoolExecutor(publishThreads, publishThreads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), r -> {
+                    Thread thread = new Thread(r, "ingest-publisher-" + threadNo.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        publishers.shutdown();
+        // queued batches were already acknowledged with a 202, give them a chance to reach the broker
+        if (!publishers.awaitTermination(confirmTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+            log.warn("{} accepted ingest batches were not published before shutdown", publishers.getQueue().size());
+        }
+    }
+
+    /**
+     * @return the queued ticket, or null when the publisher queue is full
+     */
+    public IngestTicketStatus submit(List<ActivityRecord> records, String authToken) {
+        Ticket ticket = new Ticket(UUID.randomUUID().toString(), records.size());
+        String tenant = ingestService.tenantOf(authToken);
+        tickets.put(ticket.id, ticket);
+        try {
+            publishers.execute(() -> publish(ticket, records, tenant));
+        } catch (RejectedExecutionException e) {
+            tickets.remove(ticket.id);
+            log.warn("Async ingest queue full, refusing batch of {} records", records.size());
+            return null;
+        }
+        return ticket.status();
+    }
+
+    public IngestTicketStatus status(String ticketId) {
+        Ticket ticket = tickets.get(ticketId);
+        return ticket == null ? null : ticket.status();
+    }
+
+    @Scheduled(fixedDelay = 60_000)
+    public void purgeExpired() {
+        Instant cutoff = Instant.now().minus(ticketTtl);
+        tickets.values().removeIf(ticket -> ticket.completedAt != null && ticket.completedAt.isBefore(cutoff));
+    }
+
+    private void publish(Ticket ticket, List<ActivityRecord> records, String tenant) {
+        ticket.state = Status.PUBLISHING;
+        try {
+            IngestService.Screened screened = ingestService.screen(records);
+            ticket.rejectedRecords = screened.rejected();
+
+            List<ActivityRecord> accepted = screened.accepted();
+            List<CorrelationData> correlations = new ArrayList<>(accepted.size());
+            long[] deliveryIds = new long[accepted.size()];
+            for (int i = 0; i < accepted.size(); i++) {
+                ActivityRecord record = accepted.get(i);
+                CorrelationData correlation = new CorrelationData(String.valueOf(record.id()));
+                deliveryIds[i] = DeliveryLedger.newDeliveryId();
+                try {
+                    ingestService.publish(record, tenant, deliveryIds[i], correlation);
+                } catch (Exception e) {
+                    log.debug("Publish of record {} failed: {}", record.id(), e.getMessage());
+                    correlation = null;
+                }
+                correlations.add(correlation);
+            }
+
+            long deadline = System.nanoTime() + confirmTimeout.toNanos();
+            // unconfirmed records keep their delivery id, the broker may have taken them after all
+            List<IngestSpool.Spooled> unconfirmed = new ArrayList<>();
+            int confirmed = 0;
+            for (int i = 0; i < accepted.size(); i++) {
+                if (isConfirmed(correlations.get(i), deadline)) {
+                    confirmed++;
+                } else {
+                    unconfirmed.add(new IngestSpool.Spooled(tenant, accepted.get(i), deliveryIds[i]));
+                }
+            }
+            metricsService.incrementRecordsIngested(confirmed);
+
+            ticket.confirmed = confirmed;
+            if (spool.append(unconfirmed)) {
+                ticket.spilled = unconfirmed.size();
+            } else {
+                ticket.failed = unconfirmed.size();
+            }
+            log.info("Ticket {}: {} confirmed, {} rejected, {} spilled, {} failed", ticket.id, confirmed,
+                    ticket.rejectedRecords.size(), ticket.spilled, ticket.failed);
+        } catch (RuntimeException e) {
+            log.error("Ticket {} failed: {}", ticket.id, e.getMessage());
+            ticket.failed = ticket.records - ticket.confirmed - ticket.rejectedRecords.size() - ticket.spilled;
+        } finally {
+            ticket.completedAt = Instant.now();
+            ticket.state = Status.COMPLETED;
+        }
+    }
+
+    private static boolean isConfirmed(CorrelationData correlation, long deadlineNanos) {
+        if (correlation == null) {
+            return false;
+        }
+        try {
+            long remaining = Math.max(0, deadlineNanos - System.nanoTime());
+            return correlation.getFuture().get(remaining, TimeUnit.NANOSECONDS).isAck();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private static final class Ticket {
+
+        private final String id;
+        private final int records;
+        private final Instant acceptedAt = Instant.now();
+        private volatile Status state = Status.QUEUED;
+        private volatile List<RejectedRecord> rejectedRecords = List.of();
+        private volatile int confirmed;
+        private volatile int spilled;
+        private volatile int failed;
+        private volatile Instant completedAt;
+
+        private Ticket(String id, int records) {
+            this.id = id;
+            this.records = records;
+        }
+
+        private IngestTicketStatus status() {
+            return new IngestTicketStatus(id, state, records, confirmed, rejectedRecords.size(), spilled, failed,
+                    rejectedRecords, acceptedAt, completedAt);
+        }
+    }
+}
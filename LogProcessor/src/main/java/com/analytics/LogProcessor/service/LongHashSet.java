@@ -0,0 +1,93 @@
+package com.analytics.LogProcessor.service;
+
+/**
+ * Open-addressing set of primitive longs: one long[] slot per entry, no boxing and no per-entry objects.
+ * 0 marks an empty slot, the key 0 itself is tracked with a flag. Not thread-safe.
+ */
+final class LongHashSet {
+
+    private static final double MAX_LOAD = 0.5;
+
+    private long[] slots;
+    private int mask;
+    private int size;
+    private boolean containsZero;
+
+    LongHashSet(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(16, (int) Math.min(1 << 30, (long) (expectedSize / MAX_LOAD)))) << 1;
+        slots = new long[capacity];
+        mask = capacity - 1;
+    }
+
+    boolean contains(long key) {
+        if (key == 0) {
+            return containsZero;
+        }
+        for (int i = index(key); ; i = (i + 1) & mask) {
+            long slot = slots[i];
+            if (slot == 0) {
+                return false;
+            }
+            if (slot == key) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return true when the key was not in the set yet
+     */
+    boolean add(long key) {
+        if (key == 0) {
+            boolean added = !containsZero;
+            containsZero = true;
+            if (added) {
+                size++;
+            }
+            return added;
+        }
+        for (int i = index(key); ; i = (i + 1) & mask) {
+            long slot = slots[i];
+            if (slot == key) {
+                return false;
+            }
+            if (slot == 0) {
+                slots[i] = key;
+                if (++size > slots.length * MAX_LOAD) {
+                    grow();
+                }
+                return true;
+            }
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void grow() {
+        long[] old = slots;
+        slots = new long[old.length << 1];
+        mask = slots.length - 1;
+        for (long key : old) {
+            if (key != 0) {
+                int i = index(key);
+                while (slots[i] != 0) {
+                    i = (i + 1) & mask;
+                }
+                slots[i] = key;
+            }
+        }
+    }
+
+    private int index(long key) {
+        // murmur3 finalizer, so sequential ids spread over the table
+        long h = key;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return (int) h & mask;
+    }
+}
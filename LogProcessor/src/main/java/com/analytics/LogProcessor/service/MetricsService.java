@@ -4,6 +4,8 @@ import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
@@ -17,15 +19,48 @@ public class MetricsService {
 
     // Ingestion metrics
     private final AtomicLong recordsIngested = new AtomicLong(0);
+    private final AtomicLong ingestWireBytes = new AtomicLong(0);
+    private final AtomicLong ingestDecodedBytes = new AtomicLong(0);
+    private final AtomicLong recordsFiltered = new AtomicLong(0);
+    private final AtomicLong ingestSpilled = new AtomicLong(0);
 
     // Enrichment metrics
     private final AtomicLong recordsEnriched = new AtomicLong(0);
     private final AtomicLong enrichmentFailures = new AtomicLong(0);
+    private final AtomicLong enrichmentRetriesScheduled = new AtomicLong(0);
+    private final AtomicLong enrichmentPausedTime = new AtomicLong(0);
+    private final AtomicLong dlqWritesAvoided = new AtomicLong(0);
+    private final AtomicLong retriesDenied = new AtomicLong(0);
+    private final AtomicLong enrichmentAckFrames = new AtomicLong(0);
+    private final AtomicLong enrichmentRecordsAcked = new AtomicLong(0);
+    private volatile double retryBudgetLevel;
+    private final AtomicLong streamRecordsConsumed = new AtomicLong(0);
+    private final AtomicLong streamRewinds = new AtomicLong(0);
+    private final AtomicLong enrichmentCacheHits = new AtomicLong(0);
+    private final AtomicLong enrichmentCacheMisses = new AtomicLong(0);
+    private final AtomicLong enrichmentSnapshotHits = new AtomicLong(0);
+    private final AtomicLong localAsnHits = new AtomicLong(0);
+    private final AtomicLong localAsnMisses = new AtomicLong(0);
 
     // Analytics metrics
     private final AtomicLong batchesProcessed = new AtomicLong(0);
     private final AtomicLong recordsSentToAnalytics = new AtomicLong(0);
     private final AtomicLong analyticsFailures = new AtomicLong(0);
+    private final AtomicLong analyticsRetriesScheduled = new AtomicLong(0);
+    private final AtomicLong analyticsRecordsDeduplicated = new AtomicLong(0);
+    private final AtomicLong analyticsRateLimited = new AtomicLong(0);
+    private final AtomicLong analyticsBatchesBisected = new AtomicLong(0);
+    private final AtomicLong analyticsPoisonRecords = new AtomicLong(0);
+    private final AtomicLong analyticsRecordsShed = new AtomicLong(0);
+    private final AtomicLong analyticsRecordsSampledOut = new AtomicLong(0);
+    private volatile long analyticsLearnedIntervalMs;
+    private volatile int analyticsLearnedBatchSize;
+    private final Map<String, TenantDeliveries> tenantDeliveries = new ConcurrentHashMap<>();
+
+    // Archive metrics
+    private final AtomicLong archiveRecordsWritten = new AtomicLong(0);
+    private final AtomicLong archiveBytesWritten = new AtomicLong(0);
+    private final AtomicLong archiveRecordsDropped = new AtomicLong(0);
 
     // Timing metrics (in milliseconds)
     private final AtomicLong totalBatchProcessingTime = new AtomicLong(0);
@@ -37,6 +72,22 @@ public class MetricsService {
         log.debug("Total records ingested: {}", recordsIngested.get());
     }
 
+    public void incrementRecordsFiltered(int count) {
+        recordsFiltered.addAndGet(count);
+    }
+
+    public void incrementIngestSpilled(int count) {
+        ingestSpilled.addAndGet(count);
+    }
+
+    /**
+     * Bytes of a compressed request body as received and after decompression.
+     */
+    public void recordIngestBytes(long wireBytes, long decodedBytes) {
+        ingestWireBytes.addAndGet(wireBytes);
+        ingestDecodedBytes.addAndGet(decodedBytes);
+    }
+
     // Enrichment
     public void incrementRecordsEnriched() {
         recordsEnriched.incrementAndGet();
@@ -46,6 +97,67 @@ public class MetricsService {
         enrichmentFailures.incrementAndGet();
     }
 
+    public void incrementEnrichmentRetriesScheduled() {
+        enrichmentRetriesScheduled.incrementAndGet();
+    }
+
+    public void recordEnrichmentPausedTime(long milliseconds) {
+        enrichmentPausedTime.addAndGet(milliseconds);
+        log.info("[METRICS] Enrichment paused for {} ms (total paused: {} ms, DLQ writes avoided: {})",
+                milliseconds, enrichmentPausedTime.get(), dlqWritesAvoided.get());
+    }
+
+    public void incrementDlqWritesAvoided() {
+        dlqWritesAvoided.incrementAndGet();
+    }
+
+    public void incrementRetriesDenied() {
+        long denied = retriesDenied.incrementAndGet();
+        if (denied % 100 == 1) {
+            log.warn("[METRICS] Enrichment retries denied by retry budget: {}", denied);
+        }
+    }
+
+    public void setRetryBudgetLevel(double tokens) {
+        retryBudgetLevel = tokens;
+    }
+
+    /**
+     * One basicAck frame covering {@code records} deliveries.
+     */
+    public void recordEnrichmentAcks(int records) {
+        enrichmentAckFrames.incrementAndGet();
+        enrichmentRecordsAcked.addAndGet(records);
+    }
+
+    public void incrementStreamRecordsConsumed(int records) {
+        streamRecordsConsumed.addAndGet(records);
+    }
+
+    public void incrementStreamRewinds() {
+        streamRewinds.incrementAndGet();
+    }
+
+    public void incrementEnrichmentCacheHits() {
+        enrichmentCacheHits.incrementAndGet();
+    }
+
+    public void incrementEnrichmentCacheMisses() {
+        enrichmentCacheMisses.incrementAndGet();
+    }
+
+    public void incrementEnrichmentSnapshotHits() {
+        enrichmentSnapshotHits.incrementAndGet();
+    }
+
+    public void incrementLocalAsnHits() {
+        localAsnHits.incrementAndGet();
+    }
+
+    public void incrementLocalAsnMisses() {
+        localAsnMisses.incrementAndGet();
+    }
+
     public void recordEnrichmentTime(long milliseconds) {
         totalEnrichmentTime.addAndGet(milliseconds);
     }
@@ -63,11 +175,108 @@ public class MetricsService {
         analyticsFailures.incrementAndGet();
     }
 
+    public void incrementAnalyticsRetriesScheduled() {
+        analyticsRetriesScheduled.incrementAndGet();
+    }
+
+    public void incrementAnalyticsRateLimited() {
+        analyticsRateLimited.incrementAndGet();
+    }
+
+    public void incrementAnalyticsBatchesBisected() {
+        analyticsBatchesBisected.incrementAndGet();
+    }
+
+    public void incrementAnalyticsPoisonRecords() {
+        analyticsPoisonRecords.incrementAndGet();
+    }
+
+    /**
+     * Records dropped by a max-age rule while the analytics backlog was over its SLA.
+     */
+    public void incrementAnalyticsRecordsShed(int count) {
+        long total = analyticsRecordsShed.addAndGet(count);
+        if (total % 1000 == 1) {
+            log.warn("[METRICS] Analytics records shed for age: {}, sampled out: {}", total, analyticsRecordsSampledOut.get());
+        }
+    }
+
+    /**
+     * Records left out by a sample rule while the analytics backlog was over its SLA.
+     */
+    public void incrementAnalyticsRecordsSampledOut(int count) {
+        long total = analyticsRecordsSampledOut.addAndGet(count);
+        if (total % 1000 == 1) {
+            log.warn("[METRICS] Analytics records sampled out: {}, shed for age: {}", total, analyticsRecordsShed.get());
+        }
+    }
+
+    public void incrementArchiveRecordsWritten(int records, long bytes) {
+        archiveRecordsWritten.addAndGet(records);
+        archiveBytesWritten.addAndGet(bytes);
+    }
+
+    /**
+     * Enriched records the archive could not keep: its queue was full or the append failed.
+     */
+    public void incrementArchiveRecordsDropped(int count) {
+        long total = archiveRecordsDropped.addAndGet(count);
+        if (total % 1000 == 1) {
+            log.warn("[METRICS] Enriched records dropped by the archive: {}", total);
+        }
+    }
+
+    /**
+     * Analytics quota as currently learned by {@link AnalyticsRateTuner}: one batch of {@code batchSize}
+     * records every {@code intervalMs}.
+     */
+    public void setAnalyticsLearnedLimit(long intervalMs, int batchSize) {
+        analyticsLearnedIntervalMs = intervalMs;
+        analyticsLearnedBatchSize = batchSize;
+    }
+
+    public double analyticsLearnedRecordsPerSecond() {
+        long interval = analyticsLearnedIntervalMs;
+        return interval <= 0 ? 0 : analyticsLearnedBatchSize * 1000.0 / interval;
+    }
+
+    /**
+     * Records already delivered to the Analytics API that were dropped instead of sent again,
+     * i.e. quota saved (one permit per batch-size records).
+     */
+    public void incrementAnalyticsRecordsDeduplicated(int count) {
+        long total = analyticsRecordsDeduplicated.addAndGet(count);
+        log.info("[METRICS] Dropped {} already delivered records (total quota saved: {} records)", count, total);
+    }
+
+    /**
+     * One record of a tenant accepted by the Analytics API, {@code latencyMs} after the dispatcher received it.
+     */
+    public void recordTenantDelivery(String tenant, long latencyMs) {
+        TenantDeliveries deliveries = tenantDeliveries.computeIfAbsent(tenant, t -> new TenantDeliveries());
+        deliveries.sent.incrementAndGet();
+        deliveries.totalLatency.addAndGet(latencyMs);
+        deliveries.maxLatency.accumulateAndGet(latencyMs, Math::max);
+    }
+
     public void recordBatchProcessingTime(long milliseconds) {
         totalBatchProcessingTime.addAndGet(milliseconds);
         log.info("[METRICS] Total batch processing time: {} ms, Batches processed: {}",
                 totalBatchProcessingTime.get(), batchesProcessed.get());
     }
 
-}
+    /**
+     * Records delivered to the Analytics API for one tenant and how long they waited in the dispatcher.
+     */
+    @Getter
+    public static final class TenantDeliveries {
+        private final AtomicLong sent = new AtomicLong(0);
+        private final AtomicLong totalLatency = new AtomicLong(0);
+        private final AtomicLong maxLatency = new AtomicLong(0);
 
+        public double averageLatencyMs() {
+            long count = sent.get();
+            return count == 0 ? 0 : totalLatency.get() / (double) count;
+        }
+    }
+}
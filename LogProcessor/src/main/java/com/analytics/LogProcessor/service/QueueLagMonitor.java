@@ -0,0 +1,116 @@
+package com.analytics.LogProcessor.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.QueueInformation;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Periodic view of how far each stage is behind: raw and enriched queue depths from the broker,
+ * average enrichment latency and the analytics drain rate from {@link MetricsService}.
+ * Rates and latency are per sampling interval, smoothed with an EWMA so a single slow batch
+ * does not swing the consumers of this data (autoscaling, load shedding).
+ */
+@Component
+@Slf4j
+public class QueueLagMonitor {
+
+    private static final double SMOOTHING = 0.3;
+
+    private final AmqpAdmin amqpAdmin;
+    private final MetricsService metricsService;
+    private final RawShardLayout shardLayout;
+    private final TenantRegistry tenantRegistry;
+
+    private long lastSentToAnalytics;
+    private long lastEnriched;
+    private long lastEnrichmentTime;
+    private volatile Sample latest = new Sample(-1, -1, 0, 0, 0);
+
+    public QueueLagMonitor(AmqpAdmin amqpAdmin, MetricsService metricsService,
+                           RawShardLayout shardLayout, TenantRegistry tenantRegistry) {
+        this.amqpAdmin = amqpAdmin;
+        this.metricsService = metricsService;
+        this.shardLayout = shardLayout;
+        this.tenantRegistry = tenantRegistry;
+    }
+
+    @Scheduled(fixedDelayString = "${app.autoscale.sample-interval}")
+    public synchronized void sample() {
+        long now = System.currentTimeMillis();
+        Sample previous = latest;
+        long sent = metricsService.getRecordsSentToAnalytics().get();
+        long enriched = metricsService.getRecordsEnriched().get();
+        long enrichmentTime = metricsService.getTotalEnrichmentTime().get();
+
+        double drainRate = previous.drainRatePerSecond();
+        double latency = previous.enrichmentLatencyMs();
+        if (previous.sampledAt() > 0 && now > previous.sampledAt()) {
+            double seconds = (now - previous.sampledAt()) / 1000.0;
+            drainRate = smooth(drainRate, (sent - lastSentToAnalytics) / seconds);
+            long enrichedDelta = enriched - lastEnriched;
+            if (enrichedDelta > 0) {
+                latency = smooth(latency, (enrichmentTime - lastEnrichmentTime) / (double) enrichedDelta);
+            }
+        }
+        lastSentToAnalytics = sent;
+        lastEnriched = enriched;
+        lastEnrichmentTime = enrichmentTime;
+
+        latest = new Sample(totalDepth(shardLayout.listenerQueues()),
+                totalDepth(tenantRegistry.enrichedQueues()), drainRate, latency, now);
+        log.debug("[Lag] {}", latest);
+    }
+
+    public Sample getLatest() {
+        return latest;
+    }
+
+    /**
+     * Combined depth of a stage's queues: the raw queue plus this instance's owned shards,
+     * or the enriched queue plus the tenant lanes. -1 when any of them is unknown.
+     */
+    private long totalDepth(String[] queues) {
+        long total = 0;
+        for (String queue : queues) {
+            long depth = depth(queue);
+            if (depth < 0) {
+                return -1;
+            }
+            total += depth;
+        }
+        return total;
+    }
+
+    /**
+     * Ready messages in a queue, -1 when the broker cannot be asked.
+     */
+    public long depth(String queue) {
+        try {
+            QueueInformation info = amqpAdmin.getQueueInfo(queue);
+            return info == null ? -1 : info.getMessageCount();
+        } catch (Exception e) {
+            log.debug("[Lag] Could not read depth of {}: {}", queue, e.getMessage());
+            return -1;
+        }
+    }
+
+    private static double smooth(double previous, double current) {
+        return previous == 0 ? current : previous + SMOOTHING * (current - previous);
+    }
+
+    /**
+     * @param rawDepth            ready messages in the raw queue and owned shards, -1 when unknown
+     * @param enrichedDepth       ready messages in the enriched queue and tenant lanes, -1 when unknown
+     * @param drainRatePerSecond  records accepted by the Analytics API per second
+     * @param enrichmentLatencyMs average time to enrich one record, 0 until the first enrichment
+     */
+    public record Sample(long rawDepth, long enrichedDepth, double drainRatePerSecond,
+                         double enrichmentLatencyMs, long sampledAt) {
+
+        public boolean isKnown() {
+            return rawDepth >= 0 && enrichedDepth >= 0;
+        }
+    }
+}
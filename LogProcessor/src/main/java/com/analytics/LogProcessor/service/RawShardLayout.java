@@ -0,0 +1,140 @@
+package com.analytics.LogProcessor.service;
+
+import com.analytics.LogProcessor.model.ActivityRecord;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.MessagePostProcessor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Optional sharding of the raw stage by IP (app.sharding).
+ *
+ * When enabled, raw records are published to an x-consistent-hash exchange that hashes the
+ * {@value #SHARD_KEY_HEADER} header, so every record for an IP lands in the same shard queue and is
+ * enriched by the instance that owns that shard, keeping its enrichment cache hot for those IPs.
+ * Hashing a header rather than the routing key keeps the affinity when retry tiers dead-letter records
+ * back. Every instance declares all shards; it only consumes the ones in app.sharding.owned-shards,
+ * plus the unsharded raw queue so anything queued before sharding was switched on still drains.
+ *
+ * In stream mode (app.stream) every instance reads the whole raw stream, so the same shards and owned
+ * shards partition it instead: an instance only enriches the records whose key hashes to a shard it owns,
+ * see {@link #ownsKey(String)}. This applies whether or not app.sharding.enabled is set.
+ */
+@Component("rawShardLayout")
+@Slf4j
+public class RawShardLayout {
+
+    public static final String SHARD_KEY_HEADER = "x-shard-key";
+
+    private final boolean enabled;
+    private final int shards;
+    private final List<Integer> ownedShards;
+    private final boolean[] owned;
+    private final String rawRecordsQueue;
+    private final String shardedExchange;
+
+    public RawShardLayout(@Value("${app.sharding.enabled}") boolean enabled,
+                          @Value("${app.sharding.shards}") int shards,
+                          @Value("${app.sharding.owned-shards}") String ownedShards,
+                          @Value("${queue.raw-records}") String rawRecordsQueue,
+                          @Value("${exchange.raw-sharded}") String shardedExchange) {
+        if (enabled && shards < 1) {
+            throw new IllegalArgumentException("app.sharding.shards must be at least 1");
+        }
+        this.enabled = enabled;
+        this.shards = Math.max(1, shards);
+        List<Integer> parsed = parseOwned(ownedShards, this.shards);
+        this.ownedShards = enabled ? parsed : List.of();
+        this.owned = new boolean[this.shards];
+        parsed.forEach(shard -> owned[shard] = true);
+        this.rawRecordsQueue = rawRecordsQueue;
+        this.shardedExchange = shardedExchange;
+        if (enabled) {
+            log.info("[Sharding] Raw stage split into {} shards, this instance consumes {}", this.shards, this.ownedShards);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int getShards() {
+        return shards;
+    }
+
+    public List<Integer> getOwnedShards() {
+        return ownedShards;
+    }
+
+    public String getShardedExchange() {
+        return shardedExchange;
+    }
+
+    public String shardQueue(int shard) {
+        return rawRecordsQueue + ".shard-" + shard;
+    }
+
+    /**
+     * Queues the raw-records listener consumes: the raw queue, plus the owned shards when sharding is on.
+     */
+    public String[] listenerQueues() {
+        List<String> queues = new ArrayList<>(ownedShards.size() + 1);
+        queues.add(rawRecordsQueue);
+        for (int shard : ownedShards) {
+            queues.add(shardQueue(shard));
+        }
+        return queues.toArray(String[]::new);
+    }
+
+    /**
+     * Whether a record with this {@value #SHARD_KEY_HEADER} belongs to one of the owned shards in stream mode.
+     * Records without a key belong to shard 0, so exactly one instance enriches them.
+     */
+    public boolean ownsKey(String shardKey) {
+        return owned[shardKey == null ? 0 : Math.floorMod(shardKey.hashCode(), shards)];
+    }
+
+    /**
+     * Sets the header the consistent-hash exchange routes on; a no-op for other payloads.
+     */
+    public MessagePostProcessor withShardKey(Object record) {
+        return message -> {
+            if (record instanceof ActivityRecord activityRecord && activityRecord.ip() != null) {
+                message.getMessageProperties().setHeader(SHARD_KEY_HEADER, activityRecord.ip());
+            }
+            return message;
+        };
+    }
+
+    /**
+     * Parses "all" or a comma-separated list of shard numbers and ranges, e.g. "0-3, 7".
+     */
+    static List<Integer> parseOwned(String spec, int shards) {
+        String trimmed = spec == null ? "" : spec.trim();
+        if (trimmed.isEmpty() || trimmed.equalsIgnoreCase("all")) {
+            List<Integer> all = new ArrayList<>(shards);
+            for (int shard = 0; shard < shards; shard++) {
+                all.add(shard);
+            }
+            return List.copyOf(all);
+        }
+        TreeSet<Integer> owned = new TreeSet<>();
+        for (String part : trimmed.split(",")) {
+            String item = part.trim();
+            int dash = item.indexOf('-');
+            int from = Integer.parseInt((dash < 0 ? item : item.substring(0, dash)).trim());
+            int to = dash < 0 ? from : Integer.parseInt(item.substring(dash + 1).trim());
+            if (from < 0 || to >= shards || from > to) {
+                throw new IllegalArgumentException("Invalid shard range '" + item + "' for " + shards + " shards");
+            }
+            for (int shard = from; shard <= to; shard++) {
+                owned.add(shard);
+            }
+        }
+        return List.copyOf(owned);
+    }
+}
@@ -0,0 +1,57 @@
+package com.analytics.LogProcessor.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-wide token bucket for Enrichment API retries.
+ *
+ * Every successful first attempt deposits app.enrichment.retry-budget.ratio of a token, and every retry
+ * that reaches the API withdraws a whole one, so retries stay a bounded fraction of healthy traffic
+ * instead of multiplying load during an outage. Tokens are kept in thousandths to allow fractional
+ * deposits without a lock. The bucket starts full so a cold start can still retry.
+ */
+@Component
+public class RetryBudget {
+
+    private static final long SCALE = 1000;
+
+    private final long capacity;
+    private final long deposit;
+    private final AtomicLong balance;
+
+    public RetryBudget(@Value("${app.enrichment.retry-budget.max-tokens}") int maxTokens,
+                       @Value("${app.enrichment.retry-budget.ratio}") double ratio) {
+        if (maxTokens < 1 || ratio <= 0) {
+            throw new IllegalArgumentException("Retry budget needs max-tokens >= 1 and ratio > 0");
+        }
+        this.capacity = maxTokens * SCALE;
+        this.deposit = Math.max(1, Math.round(ratio * SCALE));
+        this.balance = new AtomicLong(capacity);
+    }
+
+    public void onFirstAttemptSuccess() {
+        balance.accumulateAndGet(deposit, (current, add) -> Math.min(capacity, current + add));
+    }
+
+    /**
+     * Takes one token for a retry; false when the budget is exhausted and the retry must fail fast.
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            long current = balance.get();
+            if (current < SCALE) {
+                return false;
+            }
+            if (balance.compareAndSet(current, current - SCALE)) {
+                return true;
+            }
+        }
+    }
+
+    public double getTokens() {
+        return balance.get() / (double) SCALE;
+    }
+}
@@ -0,0 +1,157 @@
+package com.analytics.LogProcessor.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.MessagePostProcessor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import static com.analytics.LogProcessor.constants.LogProcessorConstants.ENRICHED_ROUTING_KEY;
+
+/**
+ * Tenants sharing the analytics quota (app.tenants).
+ *
+ * Ingest resolves the Authorization token to a tenant and every message of the record carries it in the
+ * {@value #TENANT_HEADER} header. Tenants with a configured weight get their own enriched lane queue, so a
+ * noisy tenant's backlog cannot sit in front of theirs in the broker; everyone else shares the enriched queue.
+ * {@link AnalyticsDispatcher} then assembles batches across tenants by weighted fair queueing.
+ */
+@Component("tenantRegistry")
+@Slf4j
+public class TenantRegistry {
+
+    public static final String TENANT_HEADER = "x-tenant";
+    public static final String DEFAULT_TENANT = "default";
+
+    private static final Pattern TENANT_NAME = Pattern.compile("[A-Za-z0-9_-]+");
+
+    private final Map<String, String> tenantsByToken;
+    private final Map<String, Integer> weights;
+    private final int defaultWeight;
+    private final String enrichedRecordsQueue;
+
+    public TenantRegistry(@Value("${app.tenants.tokens}") String tokens,
+                          @Value("${app.tenants.weights}") String weights,
+                          @Value("${app.tenants.default-weight}") int defaultWeight,
+                          @Value("${queue.enriched-records}") String enrichedRecordsQueue) {
+        if (defaultWeight < 1) {
+            throw new IllegalArgumentException("app.tenants.default-weight must be at least 1");
+        }
+        this.tenantsByToken = parse(tokens, "app.tenants.tokens");
+        this.weights = new LinkedHashMap<>();
+        parse(weights, "app.tenants.weights").forEach((tenant, weight) -> {
+            int value = Integer.parseInt(weight);
+            if (!TENANT_NAME.matcher(tenant).matches()) {
+                throw new IllegalArgumentException("Invalid tenant name '" + tenant + "' in app.tenants.weights");
+            }
+            if (value < 1) {
+                throw new IllegalArgumentException("Weight of tenant '" + tenant + "' must be at least 1");
+            }
+            this.weights.put(tenant, value);
+        });
+        this.defaultWeight = defaultWeight;
+        this.enrichedRecordsQueue = enrichedRecordsQueue;
+        if (!this.weights.isEmpty()) {
+            log.info("[Tenants] Weighted lanes: {} (others weigh {})", this.weights, defaultWeight);
+        }
+    }
+
+    /**
+     * Tenant for an ingest request: the mapped name, or a stable pseudonym derived from an unmapped token
+     * so its traffic is still accounted separately without the token ending up in headers and metrics.
+     */
+    public String resolve(String authToken) {
+        if (authToken == null || authToken.isBlank()) {
+            return DEFAULT_TENANT;
+        }
+        String token = authToken.trim();
+        String tenant = tenantsByToken.get(token);
+        return tenant != null ? tenant : "t-" + fingerprint(token);
+    }
+
+    public int weight(String tenant) {
+        return weights.getOrDefault(tenant, defaultWeight);
+    }
+
+    /**
+     * Tenants with a configured weight, i.e. those with their own enriched lane.
+     */
+    public List<String> laneTenants() {
+        return List.copyOf(weights.keySet());
+    }
+
+    public String laneQueue(String tenant) {
+        return enrichedRecordsQueue + "." + tenant;
+    }
+
+    public String enrichedRoutingKey(String tenant) {
+        return tenant != null && weights.containsKey(tenant) ? ENRICHED_ROUTING_KEY + "." + tenant : ENRICHED_ROUTING_KEY;
+    }
+
+    /**
+     * Queues the analytics listener consumes: the shared enriched queue plus every lane.
+     */
+    public String[] enrichedQueues() {
+        List<String> queues = new ArrayList<>(weights.size() + 1);
+        queues.add(enrichedRecordsQueue);
+        for (String tenant : weights.keySet()) {
+            queues.add(laneQueue(tenant));
+        }
+        return queues.toArray(String[]::new);
+    }
+
+    /**
+     * Tags a message with its tenant; records without one count as {@value #DEFAULT_TENANT}.
+     */
+    public static MessagePostProcessor withTenant(String tenant) {
+        return message -> {
+            message.getMessageProperties().setHeader(TENANT_HEADER, tenant == null ? DEFAULT_TENANT : tenant);
+            return message;
+        };
+    }
+
+    /**
+     * Parses comma-separated "key=value" pairs; values must be tenant-safe names (or weights).
+     */
+    static Map<String, String> parse(String spec, String property) {
+        Map<String, String> entries = new LinkedHashMap<>();
+        if (spec == null || spec.isBlank()) {
+            return entries;
+        }
+        for (String part : spec.split(",")) {
+            String item = part.trim();
+            if (item.isEmpty()) {
+                continue;
+            }
+            int eq = item.indexOf('=');
+            if (eq <= 0 || eq == item.length() - 1) {
+                throw new IllegalArgumentException("Invalid entry '" + item + "' in " + property + ", expected key=value");
+            }
+            String key = item.substring(0, eq).trim();
+            String value = item.substring(eq + 1).trim();
+            if (!TENANT_NAME.matcher(value).matches()) {
+                throw new IllegalArgumentException("Invalid value '" + value + "' in " + property);
+            }
+            entries.put(key, value);
+        }
+        return entries;
+    }
+
+    private static String fingerprint(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 4);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.analytics.LogProcessor.service;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ToIntFunction;
+
+/**
+ * Bounded blocking queue that hands out items by self-clocked weighted fair queueing across tenants.
+ *
+ * Each item is stamped with a virtual finish time, max(virtual clock, tenant's last finish) + 1/weight,
+ * and the item with the earliest finish among the tenant heads goes next; serving it advances the clock.
+ * Backlogged tenants therefore share the output in proportion to their weights, and a tenant that was
+ * idle restarts at the current clock instead of cashing in credit it saved up while away.
+ */
+class WeightedFairQueue<T> {
+
+    private final int capacity;
+    private final ToIntFunction<String> weights;
+    private final Map<String, Lane<T>> lanes = new HashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+
+    private double virtualTime;
+    private long sequence;
+    private int size;
+
+    WeightedFairQueue(int capacity, ToIntFunction<String> weights) {
+        this.capacity = capacity;
+        this.weights = weights;
+    }
+
+    /**
+     * Adds an item for a tenant, blocking while the queue is full.
+     */
+    void put(String tenant, T item) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (size >= capacity) {
+                notFull.await();
+            }
+            Lane<T> lane = lanes.computeIfAbsent(tenant, t -> new Lane<>());
+            double start = Math.max(virtualTime, lane.lastFinish);
+            lane.lastFinish = start + 1.0 / Math.max(1, weights.applyAsInt(tenant));
+            lane.items.addLast(new Tagged<>(item, lane.lastFinish, sequence++));
+            size++;
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Takes the next item in fair order, waiting up to the timeout for one to arrive.
+     *
+     * @return the item, or null when the timeout elapsed first
+     */
+    T poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (size == 0) {
+                if (nanos <= 0) {
+                    return null;
+                }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            String nextTenant = null;
+            Lane<T> next = null;
+            for (Map.Entry<String, Lane<T>> entry : lanes.entrySet()) {
+                Tagged<T> head = entry.getValue().items.peekFirst();
+                if (next == null || head.before(next.items.peekFirst())) {
+                    nextTenant = entry.getKey();
+                    next = entry.getValue();
+                }
+            }
+            Tagged<T> served = next.items.pollFirst();
+            virtualTime = served.finish();
+            if (next.items.isEmpty()) {
+                // its last finish is now the clock, so dropping the lane loses nothing
+                lanes.remove(nextTenant);
+            }
+            size--;
+            notFull.signal();
+            return served.item();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    T take() throws InterruptedException {
+        T item;
+        do {
+            item = poll(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } while (item == null);
+        return item;
+    }
+
+    /**
+     * Items waiting per tenant; tenants without a backlog are absent.
+     */
+    Map<String, Integer> backlog() {
+        lock.lock();
+        try {
+            Map<String, Integer> backlog = new HashMap<>();
+            lanes.forEach((tenant, lane) -> backlog.put(tenant, lane.items.size()));
+            return backlog;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int size() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static final class Lane<T> {
+        private final ArrayDeque<Tagged<T>> items = new ArrayDeque<>();
+        private double lastFinish;
+    }
+
+    private record Tagged<T>(T item, double finish, long sequence) {
+
+        /**
+         * Earlier finish first; ties go to the item that arrived first.
+         */
+        boolean before(Tagged<?> other) {
+            return finish < other.finish || (finish == other.finish && sequence < other.sequence);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.analytics.LogProcessor.sketch;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Count-Min sketch: depth rows of width counters, a key adds to one counter per row and its count is
+ * estimated as the smallest of them. Never underestimates; overestimates by at most e/width of the total
+ * with probability 1 - e^-depth. Counters are atomics, so concurrent adds need no lock.
+ */
+final class CountMinSketch {
+
+    private final int depth;
+    private final int mask;
+    private final AtomicLongArray counters;
+
+    CountMinSketch(int width, int depth) {
+        if (Integer.bitCount(width) != 1 || depth < 1) {
+            throw new IllegalArgumentException("Count-Min width must be a power of two and depth at least 1");
+        }
+        this.depth = depth;
+        this.mask = width - 1;
+        this.counters = new AtomicLongArray(width * depth);
+    }
+
+    void add(long hash) {
+        for (int row = 0; row < depth; row++) {
+            counters.incrementAndGet(slot(hash, row));
+        }
+    }
+
+    long estimate(long hash) {
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, counters.get(slot(hash, row)));
+        }
+        return estimate;
+    }
+
+    private int slot(long hash, int row) {
+        // double hashing: row i uses h1 + i * h2 (h2 odd so rows differ)
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        return row * (mask + 1) + ((h1 + row * h2) & mask);
+    }
+}
@@ -0,0 +1,53 @@
+package com.analytics.LogProcessor.sketch;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * HyperLogLog distinct counter with 2^precision registers (standard error about 1.04 / sqrt(2^precision)).
+ * A register only ever grows, so updates are a lock-free compare-and-set max.
+ */
+final class HyperLogLog {
+
+    private final int precision;
+    private final AtomicIntegerArray registers;
+
+    HyperLogLog(int precision) {
+        if (precision < 4 || precision > 18) {
+            throw new IllegalArgumentException("HyperLogLog precision must be between 4 and 18");
+        }
+        this.precision = precision;
+        this.registers = new AtomicIntegerArray(1 << precision);
+    }
+
+    void add(long hash) {
+        int index = (int) (hash >>> (64 - precision));
+        // rank of the first 1 bit in the remaining bits, capped when they are all zero
+        int rank = Math.min(Long.numberOfLeadingZeros(hash << precision), 64 - precision) + 1;
+        int current;
+        while (rank > (current = registers.get(index))) {
+            if (registers.compareAndSet(index, current, rank)) {
+                return;
+            }
+        }
+    }
+
+    long estimate() {
+        int m = registers.length();
+        double sum = 0;
+        int zeros = 0;
+        for (int i = 0; i < m; i++) {
+            int register = registers.get(i);
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+        double alpha = m == 16 ? 0.673 : m == 32 ? 0.697 : m == 64 ? 0.709 : 0.7213 / (1 + 1.079 / m);
+        double estimate = alpha * m * m / sum;
+        if (estimate <= 2.5 * m && zeros > 0) {
+            // small range: linear counting is more accurate
+            estimate = m * Math.log((double) m / zeros);
+        }
+        return Math.round(estimate);
+    }
+}
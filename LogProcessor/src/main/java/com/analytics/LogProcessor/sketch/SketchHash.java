@@ -0,0 +1,25 @@
+package com.analytics.LogProcessor.sketch;
+
+/**
+ * 64-bit hash shared by the sketches: FNV-1a over the chars, finished with the murmur3 fmix64 mixer
+ * so every output bit depends on every input char (HyperLogLog reads leading zeros, Count-Min slices bits).
+ */
+final class SketchHash {
+
+    private SketchHash() {
+    }
+
+    static long hash(String value) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            h ^= value.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,111 @@
+package com.analytics.LogProcessor.sketch;
+
+import com.analytics.LogProcessor.model.Category;
+import com.analytics.LogProcessor.model.EnrichedRecord;
+import com.analytics.LogProcessor.model.HeavyHitter;
+import com.analytics.LogProcessor.model.SketchSummary;
+
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * All sketches of one tumbling window. Its size is fixed by the configuration, not by the traffic:
+ * categories beyond MAX_CATEGORIES share one distinct counter.
+ */
+final class SketchWindow {
+
+    static final int MAX_CATEGORIES = 64;
+    static final String OTHER_CATEGORIES = "other";
+    private static final int STRIPES = 8;
+
+    final long start;
+    final long end;
+    private final LongAdder records = new LongAdder();
+    private final TopK ips;
+    private final TopK asns;
+    private final TopK assets;
+    private final HyperLogLog distinctIps;
+    private final Map<String, HyperLogLog> distinctIpsByCategory = new ConcurrentHashMap<>();
+    private final int hllPrecision;
+
+    SketchWindow(long start, long end, int topK, int countMinWidth, int countMinDepth, int hllPrecision) {
+        this.start = start;
+        this.end = end;
+        this.ips = new TopK(countMinWidth, countMinDepth, topK);
+        this.asns = new TopK(countMinWidth, countMinDepth, topK);
+        this.assets = new TopK(countMinWidth, countMinDepth, topK);
+        this.distinctIps = new HyperLogLog(hllPrecision);
+        this.hllPrecision = hllPrecision;
+    }
+
+    void add(EnrichedRecord record) {
+        records.increment();
+        ips.add(record.ip());
+        asns.add(record.asn());
+        assets.add(record.asset());
+        if (record.ip() != null) {
+            long ipHash = SketchHash.hash(record.ip());
+            distinctIps.add(ipHash);
+            categoryCounter(record.category()).add(ipHash);
+        }
+    }
+
+    SketchSummary summary(int topK) {
+        Map<String, Long> byCategory = new TreeMap<>();
+        distinctIpsByCategory.forEach((category, hll) -> byCategory.put(category, hll.estimate()));
+        return new SketchSummary(Instant.ofEpochMilli(start), Instant.ofEpochMilli(end), records.sum(),
+                ips.top(topK), asns.top(topK), assets.top(topK), distinctIps.estimate(), byCategory);
+    }
+
+    private HyperLogLog categoryCounter(String techniqueId) {
+        Category category = Category.fromTechniqueId(techniqueId);
+        String name = category != null ? category.getValue() : techniqueId == null ? OTHER_CATEGORIES : techniqueId;
+        HyperLogLog counter = distinctIpsByCategory.get(name);
+        if (counter != null) {
+            return counter;
+        }
+        if (distinctIpsByCategory.size() >= MAX_CATEGORIES - 1) {
+            name = OTHER_CATEGORIES;
+        }
+        return distinctIpsByCategory.computeIfAbsent(name, n -> new HyperLogLog(hllPrecision));
+    }
+
+    /**
+     * Heavy hitters of one dimension: Space-Saving picks the candidates, Count-Min tightens their counts.
+     */
+    private static final class TopK {
+
+        private final CountMinSketch counts;
+        private final SpaceSaving candidates;
+
+        TopK(int countMinWidth, int countMinDepth, int topK) {
+            this.counts = new CountMinSketch(countMinWidth, countMinDepth);
+            this.candidates = new SpaceSaving(STRIPES, Math.max(16, 2 * topK));
+        }
+
+        void add(String key) {
+            if (key == null) {
+                return;
+            }
+            long hash = SketchHash.hash(key);
+            counts.add(hash);
+            candidates.add(key, hash);
+        }
+
+        List<HeavyHitter> top(int k) {
+            return candidates.counters().stream()
+                    .map(counter -> new HeavyHitter(counter.key(),
+                            Math.min(counter.count(), counts.estimate(SketchHash.hash(counter.key()))),
+                            counter.count() - counter.error()))
+                    .sorted(Comparator.comparingLong(HeavyHitter::estimate).reversed()
+                            .thenComparing(HeavyHitter::key))
+                    .limit(k)
+                    .toList();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.analytics.LogProcessor.sketch;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Space-Saving heavy hitters over a fixed number of counters, striped by key hash.
+ *
+ * Each stripe runs Space-Saving over its share of the keys: a tracked key counts up, an untracked key
+ * takes over the smallest counter and inherits its count as error. A key always lands in the same stripe,
+ * so any key occurring more than total / (capacity per stripe) times within its stripe is tracked, and its
+ * count minus error is a guaranteed lower bound. Stripes are locked independently, so consumer threads
+ * only contend when their keys share a stripe.
+ */
+final class SpaceSaving {
+
+    private final Stripe[] stripes;
+
+    SpaceSaving(int stripes, int countersPerStripe) {
+        if (Integer.bitCount(stripes) != 1 || countersPerStripe < 1) {
+            throw new IllegalArgumentException("Space-Saving stripes must be a power of two and counters at least 1");
+        }
+        this.stripes = new Stripe[stripes];
+        for (int i = 0; i < stripes; i++) {
+            this.stripes[i] = new Stripe(countersPerStripe);
+        }
+    }
+
+    void add(String key, long hash) {
+        Stripe stripe = stripes[(int) (hash >>> 40) & (stripes.length - 1)];
+        synchronized (stripe) {
+            stripe.add(key);
+        }
+    }
+
+    /**
+     * Every tracked key, unordered.
+     */
+    List<Counter> counters() {
+        List<Counter> counters = new ArrayList<>();
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                for (int i = 0; i < stripe.size; i++) {
+                    counters.add(new Counter(stripe.keys[i], stripe.counts[i], stripe.errors[i]));
+                }
+            }
+        }
+        return counters;
+    }
+
+    /**
+     * @param count an overestimate of the key's occurrences; count - error never overestimates
+     */
+    record Counter(String key, long count, long error) {}
+
+    private static final class Stripe {
+
+        private final String[] keys;
+        private final long[] counts;
+        private final long[] errors;
+        private final Map<String, Integer> slots;
+        private int size;
+
+        Stripe(int capacity) {
+            keys = new String[capacity];
+            counts = new long[capacity];
+            errors = new long[capacity];
+            slots = new HashMap<>(capacity * 2);
+        }
+
+        void add(String key) {
+            Integer slot = slots.get(key);
+            if (slot != null) {
+                counts[slot]++;
+                return;
+            }
+            if (size < keys.length) {
+                keys[size] = key;
+                counts[size] = 1;
+                errors[size] = 0;
+                slots.put(key, size++);
+                return;
+            }
+            int min = 0;
+            for (int i = 1; i < size; i++) {
+                if (counts[i] < counts[min]) {
+                    min = i;
+                }
+            }
+            slots.remove(keys[min]);
+            keys[min] = key;
+            errors[min] = counts[min];
+            counts[min]++;
+            slots.put(key, min);
+        }
+    }
+}
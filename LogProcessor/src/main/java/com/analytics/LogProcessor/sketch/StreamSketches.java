@@ -0,0 +1,106 @@
+package com.analytics.LogProcessor.sketch;
+
+import com.analytics.LogProcessor.archive.EnrichedRecordSink;
+import com.analytics.LogProcessor.model.EnrichedRecord;
+import com.analytics.LogProcessor.model.SketchSummary;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Live traffic sketches over tumbling windows (app.sketch), fed with every enriched record:
+ *  - top IPs, ASNs and assets: Space-Saving candidates with Count-Min counts ({@link SketchWindow})
+ *  - distinct IPs overall and per category: HyperLogLog
+ *
+ * Only the current and the previous window are kept, so memory is fixed by the configuration however much
+ * traffic arrives. Updates from the consumer threads are lock-free (Count-Min and HyperLogLog are
+ * atomics) or take one of the Space-Saving stripes; the window itself is swapped with a compare-and-set
+ * by whichever update first sees it has ended.
+ */
+@Component
+@Slf4j
+public class StreamSketches implements EnrichedRecordSink {
+
+    private final boolean enabled;
+    private final long windowMillis;
+    private final int topK;
+    private final int countMinWidth;
+    private final int countMinDepth;
+    private final int hllPrecision;
+    private final AtomicReference<SketchWindow> current = new AtomicReference<>();
+    private volatile SketchWindow previous;
+
+    public StreamSketches(@Value("${app.sketch.enabled}") boolean enabled,
+                          @Value("${app.sketch.window}") Duration window,
+                          @Value("${app.sketch.top-k}") int topK,
+                          @Value("${app.sketch.count-min-width}") int countMinWidth,
+                          @Value("${app.sketch.count-min-depth}") int countMinDepth,
+                          @Value("${app.sketch.hll-precision}") int hllPrecision) {
+        if (window.isNegative() || window.isZero() || topK < 1) {
+            throw new IllegalArgumentException("app.sketch needs a positive window and top-k");
+        }
+        this.enabled = enabled;
+        this.windowMillis = window.toMillis();
+        this.topK = topK;
+        this.countMinWidth = countMinWidth;
+        this.countMinDepth = countMinDepth;
+        this.hllPrecision = hllPrecision;
+        if (enabled) {
+            current.set(newWindow(System.currentTimeMillis()));
+        }
+    }
+
+    @Override
+    public void accept(EnrichedRecord record, String tenant) {
+        if (enabled) {
+            add(System.currentTimeMillis(), record);
+        }
+    }
+
+    void add(long time, EnrichedRecord record) {
+        window(time).add(record);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Answers for the window in progress, or for the one before it (null if there was none).
+     */
+    public SketchSummary summary(boolean previousWindow) {
+        return summary(System.currentTimeMillis(), previousWindow);
+    }
+
+    SketchSummary summary(long now, boolean previousWindow) {
+        SketchWindow window = window(now);
+        if (previousWindow) {
+            SketchWindow last = previous;
+            return last == null ? null : last.summary(topK);
+        }
+        return window.summary(topK);
+    }
+
+    private SketchWindow window(long now) {
+        SketchWindow window = current.get();
+        while (now >= window.end) {
+            SketchWindow next = newWindow(now);
+            if (current.compareAndSet(window, next)) {
+                // a window nobody wrote to in between is not "previous" of anything
+                previous = window.end == next.start ? window : null;
+                log.debug("[Sketch] Window {} - {} closed", window.start, window.end);
+                return next;
+            }
+            window = current.get();
+        }
+        return window;
+    }
+
+    private SketchWindow newWindow(long now) {
+        long start = now - Math.floorMod(now, windowMillis);
+        return new SketchWindow(start, start + windowMillis, topK, countMinWidth, countMinDepth, hllPrecision);
+    }
+}
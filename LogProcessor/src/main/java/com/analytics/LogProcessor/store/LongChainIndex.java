@@ -0,0 +1,126 @@
+package com.analytics.LogProcessor.store;
+
+import java.util.Arrays;
+
+/**
+ * Primitive long key to row list index for one {@link RecentPartition}.
+ *
+ * An open-addressing table maps each key to its newest row; older rows with the same key are chained
+ * through a next[] array parallel to the partition's rows. No boxing and no per-entry objects: memory is
+ * one long and one int per table slot plus one int per row. 0 marks an empty slot, the key 0 itself has
+ * its own head. Not thread-safe.
+ */
+final class LongChainIndex {
+
+    static final int NONE = -1;
+    private static final double MAX_LOAD = 0.5;
+
+    private long[] keys;
+    private int[] heads;
+    private int mask;
+    private int size;
+    private int zeroHead = NONE;
+    private int[] next;
+
+    LongChainIndex(int expectedRows) {
+        int capacity = Integer.highestOneBit(Math.max(16, (int) Math.min(1 << 30, (long) (expectedRows / MAX_LOAD)))) << 1;
+        keys = new long[capacity];
+        heads = new int[capacity];
+        mask = capacity - 1;
+        next = new int[Math.max(16, expectedRows)];
+    }
+
+    /**
+     * Newest row with the key, or {@link #NONE}.
+     */
+    int head(long key) {
+        if (key == 0) {
+            return zeroHead;
+        }
+        for (int i = index(key); ; i = (i + 1) & mask) {
+            long slot = keys[i];
+            if (slot == 0) {
+                return NONE;
+            }
+            if (slot == key) {
+                return heads[i];
+            }
+        }
+    }
+
+    /**
+     * Next older row with the same key as {@code row}, or {@link #NONE}.
+     */
+    int next(int row) {
+        return next[row];
+    }
+
+    /**
+     * Adds a row; rows must be added in increasing order.
+     */
+    void add(long key, int row) {
+        if (row >= next.length) {
+            next = Arrays.copyOf(next, Math.max(next.length * 2, row + 1));
+        }
+        if (key == 0) {
+            next[row] = zeroHead;
+            zeroHead = row;
+            return;
+        }
+        for (int i = index(key); ; i = (i + 1) & mask) {
+            long slot = keys[i];
+            if (slot == key) {
+                next[row] = heads[i];
+                heads[i] = row;
+                return;
+            }
+            if (slot == 0) {
+                keys[i] = key;
+                heads[i] = row;
+                next[row] = NONE;
+                if (++size > keys.length * MAX_LOAD) {
+                    grow();
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Distinct keys indexed.
+     */
+    int keys() {
+        return size + (zeroHead == NONE ? 0 : 1);
+    }
+
+    /**
+     * Bytes held by the table and the chain array.
+     */
+    long bytes() {
+        return (long) keys.length * (Long.BYTES + Integer.BYTES) + (long) next.length * Integer.BYTES;
+    }
+
+    private int index(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldHeads = heads;
+        keys = new long[oldKeys.length << 1];
+        heads = new int[oldKeys.length << 1];
+        mask = keys.length - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            long key = oldKeys[j];
+            if (key != 0) {
+                int i = index(key);
+                while (keys[i] != 0) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = key;
+                heads[i] = oldHeads[j];
+            }
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.analytics.LogProcessor.store;
+
+import com.analytics.LogProcessor.model.EnrichedRecord;
+
+import java.util.Arrays;
+
+/**
+ * The records of one time slice of the {@link RecentRecordStore}: parallel row arrays in arrival order
+ * plus IP, ASN and category indexes over them. Evicted as a whole. Not thread-safe.
+ */
+final class RecentPartition {
+
+    // object header and fields of an EnrichedRecord, and of each of its four strings (contents extra)
+    private static final int RECORD_OVERHEAD = 48;
+    private static final int STRING_OVERHEAD = 40;
+    // time, tenant and record slots of a row
+    private static final int ROW_BYTES = Long.BYTES + 2 * 8;
+
+    final long start;
+    final long end;
+    final LongChainIndex byIp;
+    final LongChainIndex byAsn;
+    final LongChainIndex byCategory;
+
+    private long[] times;
+    private String[] tenants;
+    private EnrichedRecord[] records;
+    private int size;
+    private long recordBytes;
+
+    RecentPartition(long start, long end, int expectedRows) {
+        this.start = start;
+        this.end = end;
+        int capacity = Math.max(16, expectedRows);
+        this.times = new long[capacity];
+        this.tenants = new String[capacity];
+        this.records = new EnrichedRecord[capacity];
+        this.byIp = new LongChainIndex(capacity);
+        this.byAsn = new LongChainIndex(capacity);
+        this.byCategory = new LongChainIndex(16);
+    }
+
+    void add(long time, String tenant, EnrichedRecord record) {
+        if (size == times.length) {
+            int capacity = size * 2;
+            times = Arrays.copyOf(times, capacity);
+            tenants = Arrays.copyOf(tenants, capacity);
+            records = Arrays.copyOf(records, capacity);
+        }
+        int row = size++;
+        times[row] = time;
+        tenants[row] = tenant;
+        records[row] = record;
+        Long ip = RecentRecordStore.ipKey(record.ip());
+        if (ip != null) {
+            byIp.add(ip, row);
+        }
+        Long asn = RecentRecordStore.asnKey(record.asn());
+        if (asn != null) {
+            byAsn.add(asn, row);
+        }
+        byCategory.add(RecentRecordStore.categoryKey(record.category()), row);
+        recordBytes += RECORD_OVERHEAD + stringBytes(record.asset()) + stringBytes(record.ip())
+                + stringBytes(record.category()) + stringBytes(record.asn());
+    }
+
+    int size() {
+        return size;
+    }
+
+    long time(int row) {
+        return times[row];
+    }
+
+    String tenant(int row) {
+        return tenants[row];
+    }
+
+    EnrichedRecord record(int row) {
+        return records[row];
+    }
+
+    /**
+     * Estimated heap held by the partition: records and their strings, row arrays and indexes.
+     */
+    long bytes() {
+        return recordBytes + (long) times.length * ROW_BYTES + byIp.bytes() + byAsn.bytes() + byCategory.bytes();
+    }
+
+    private static long stringBytes(String value) {
+        return value == null ? 0 : STRING_OVERHEAD + value.length();
+    }
+}
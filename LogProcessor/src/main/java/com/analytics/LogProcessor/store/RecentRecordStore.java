@@ -0,0 +1,239 @@
+package com.analytics.LogProcessor.store;
+
+import com.analytics.LogProcessor.archive.ArchivedRecord;
+import com.analytics.LogProcessor.archive.EnrichedRecordSink;
+import com.analytics.LogProcessor.model.Category;
+import com.analytics.LogProcessor.model.EnrichedRecord;
+import com.analytics.LogProcessor.model.RecentRecordsResult;
+import com.analytics.LogProcessor.network.IpAddresses;
+import com.analytics.LogProcessor.service.TenantRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * The last window of enriched records in memory (app.recent), indexed for incident questions such as
+ * "what did this IP or ASN do in the last hour" without touching RabbitMQ, the archive or the remote APIs.
+ *
+ * Records are appended to the partition for their partition-width slice of time. Each partition indexes its
+ * rows by packed IP ({@link IpAddresses#packedKey}, so an IPv6 query matches its /64), by ASN number and by
+ * category ordinal in primitive {@link LongChainIndex}es, so a query walks only the rows with the key it
+ * asks for, newest first. Whole partitions are evicted once they fall out of the window, or oldest first
+ * while the estimated heap of the store is over max-bytes (which should hold at least one partition).
+ *
+ * Appends take a write lock for the few array stores they do; queries share a read lock.
+ */
+@Component
+@Slf4j
+public class RecentRecordStore implements EnrichedRecordSink {
+
+    private static final int INITIAL_PARTITION_ROWS = 1024;
+
+    private final boolean enabled;
+    private final long windowMillis;
+    private final long partitionMillis;
+    private final long maxBytes;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // oldest first; the last one takes the appends
+    private final Deque<RecentPartition> partitions = new ArrayDeque<>();
+    private long closedBytes;
+    private long evictedRecords;
+
+    public RecentRecordStore(@Value("${app.recent.enabled}") boolean enabled,
+                             @Value("${app.recent.window}") Duration window,
+                             @Value("${app.recent.partition-width}") Duration partitionWidth,
+                             @Value("${app.recent.max-bytes}") long maxBytes) {
+        if (partitionWidth.isNegative() || partitionWidth.isZero() || window.compareTo(partitionWidth) < 0) {
+            throw new IllegalArgumentException("app.recent needs 0 < partition-width <= window");
+        }
+        this.enabled = enabled;
+        this.windowMillis = window.toMillis();
+        this.partitionMillis = partitionWidth.toMillis();
+        this.maxBytes = maxBytes;
+    }
+
+    @Override
+    public void accept(EnrichedRecord record, String tenant) {
+        if (enabled) {
+            add(System.currentTimeMillis(), tenant == null ? TenantRegistry.DEFAULT_TENANT : tenant, record);
+        }
+    }
+
+    void add(long time, String tenant, EnrichedRecord record) {
+        lock.writeLock().lock();
+        try {
+            evictExpired(time);
+            RecentPartition current = partitions.peekLast();
+            if (current == null || time >= current.end) {
+                if (current != null) {
+                    closedBytes += current.bytes();
+                }
+                long start = time - Math.floorMod(time, partitionMillis);
+                current = new RecentPartition(start, start + partitionMillis,
+                        current == null ? INITIAL_PARTITION_ROWS : current.size());
+                partitions.addLast(current);
+            }
+            current.add(time, tenant, record);
+            while (closedBytes + current.bytes() > maxBytes && partitions.size() > 1) {
+                evictOldest();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Records matching every given filter, newest first.
+     *
+     * @param ip       IP literal (IPv6 matches its /64), null for any
+     * @param asn      "AS13335" or "13335", null for any
+     * @param category name or technique id, null for any
+     * @param from     inclusive, clamped to the start of the window; null for the whole window
+     * @param to       exclusive, null for now
+     * @throws IllegalArgumentException if ip is not an IP literal
+     */
+    public RecentRecordsResult query(String ip, String asn, String category, Instant from, Instant to, int limit) {
+        Long ipKey = null;
+        if (ip != null) {
+            ipKey = ipKey(ip.trim());
+            if (ipKey == null) {
+                throw new IllegalArgumentException("Not an IP address: " + ip);
+            }
+        }
+        Long asnKey = asnKey(asn);
+        Long categoryKey = category == null ? null
+                : categoryKey(Category.isValid(category) ? Category.fromString(category).getTechniqueId() : category);
+        long lower = Math.max(from == null ? Long.MIN_VALUE : from.toEpochMilli(), System.currentTimeMillis() - windowMillis);
+        long upper = to == null ? Long.MAX_VALUE : to.toEpochMilli();
+
+        List<ArchivedRecord> records = new ArrayList<>(Math.min(limit, 1024));
+        int scanned = 0;
+        long examined = 0;
+        lock.readLock().lock();
+        try {
+            Iterator<RecentPartition> newestFirst = partitions.descendingIterator();
+            while (newestFirst.hasNext() && records.size() < limit) {
+                RecentPartition partition = newestFirst.next();
+                if (partition.end <= lower || partition.start >= upper) {
+                    continue;
+                }
+                scanned++;
+                LongChainIndex index = ipKey != null ? partition.byIp
+                        : asnKey != null ? partition.byAsn
+                        : categoryKey != null ? partition.byCategory : null;
+                long key = ipKey != null ? ipKey : asnKey != null ? asnKey : categoryKey != null ? categoryKey : 0;
+                int row = index != null ? index.head(key) : partition.size() - 1;
+                while (row >= 0 && records.size() < limit) {
+                    examined++;
+                    long time = partition.time(row);
+                    EnrichedRecord record = partition.record(row);
+                    if (time >= lower && time < upper
+                            && (ipKey == null || ipKey.equals(ipKey(record.ip())))
+                            && (asnKey == null || asnKey.equals(asnKey(record.asn())))
+                            && (categoryKey == null || categoryKey == categoryKey(record.category()))) {
+                        records.add(new ArchivedRecord(time, partition.tenant(row), record));
+                    }
+                    row = index != null ? index.next(row) : row - 1;
+                }
+            }
+            return new RecentRecordsResult(records, scanned, examined, storedRecords(), estimatedBytes(), evictedRecords);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    private void evictExpired(long now) {
+        RecentPartition oldest;
+        while ((oldest = partitions.peekFirst()) != null && oldest.end <= now - windowMillis) {
+            evictOldest();
+        }
+    }
+
+    private void evictOldest() {
+        RecentPartition oldest = partitions.pollFirst();
+        if (oldest == null) {
+            return;
+        }
+        if (!partitions.isEmpty()) {
+            closedBytes -= oldest.bytes();
+        }
+        evictedRecords += oldest.size();
+        log.debug("[Recent] Evicted partition starting {} with {} records", Instant.ofEpochMilli(oldest.start), oldest.size());
+    }
+
+    private long storedRecords() {
+        long stored = 0;
+        for (RecentPartition partition : partitions) {
+            stored += partition.size();
+        }
+        return stored;
+    }
+
+    private long estimatedBytes() {
+        RecentPartition current = partitions.peekLast();
+        return closedBytes + (current == null ? 0 : current.bytes());
+    }
+
+    static Long ipKey(String ip) {
+        return IpAddresses.packedKey(ip);
+    }
+
+    /**
+     * ASN number for "AS13335" or "13335", otherwise a hash of the text (top bit set so it never equals a number).
+     */
+    static Long asnKey(String asn) {
+        if (asn == null) {
+            return null;
+        }
+        String value = asn.trim();
+        int digits = value.regionMatches(true, 0, "AS", 0, 2) ? 2 : 0;
+        if (digits < value.length() && value.length() - digits <= 10) {
+            long number = 0;
+            int i = digits;
+            while (i < value.length() && Character.isDigit(value.charAt(i))) {
+                number = number * 10 + (value.charAt(i++) - '0');
+            }
+            if (i == value.length()) {
+                return number;
+            }
+        }
+        return hash(value) | Long.MIN_VALUE;
+    }
+
+    /**
+     * Category ordinal + 1 for a technique id we know, otherwise a hash of the text (top bit set).
+     */
+    static long categoryKey(String techniqueId) {
+        Category category = Category.fromTechniqueId(techniqueId);
+        if (category != null) {
+            return category.ordinal() + 1L;
+        }
+        return techniqueId == null ? 0 : hash(techniqueId.trim()) | Long.MIN_VALUE;
+    }
+
+    /**
+     * FNV-1a over the UTF-16 chars.
+     */
+    private static long hash(String value) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            h ^= value.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+}
@@ -0,0 +1,132 @@
+package com.analytics.LogProcessor.archive;
+
+import com.analytics.LogProcessor.model.EnrichedRecord;
+import com.analytics.LogProcessor.service.MetricsService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for EnrichedRecordArchive and EnrichedArchiveReader
+ */
+class EnrichedRecordArchiveTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void archivedRecordsReadBackAsWritten() throws Exception {
+        MetricsService metricsService = new MetricsService();
+        EnrichedRecordArchive archive = archive(metricsService, 4);
+        archive.start();
+        List<EnrichedRecord> written = List.of(
+                new EnrichedRecord(1L, "a.mp4", "1.2.3.4", "T1566", "AS13335", 7L),
+                new EnrichedRecord(2L, "b.mp4", "2001:db8:0:0:0:0:0:1", "T1189", "AS15169", -3L),
+                new EnrichedRecord(3L, null, "not-an-ip", "T1566", null, 0L),
+                new EnrichedRecord(10L, "d.mp4", "255.255.255.255", "T1078", "AS13335", Long.MAX_VALUE),
+                new EnrichedRecord(4L, "e.mp4", "10.0.0.1", "T1566", "AS13335", 9L));
+        for (EnrichedRecord record : written) {
+            archive.accept(record, record.id() == 2L ? "soc" : null);
+        }
+        archive.stop();
+
+        List<ArchivedRecord> read = scan(new EnrichedArchiveReader.Filter(null, null, null, null));
+        assertEquals(written, read.stream().map(ArchivedRecord::record).toList());
+        assertEquals("soc", read.get(1).tenant());
+        assertEquals("default", read.get(0).tenant());
+        assertEquals(5, metricsService.getArchiveRecordsWritten().get());
+        assertTrue(metricsService.getArchiveBytesWritten().get() > 0);
+    }
+
+    @Test
+    void filtersByCategoryAsnAndTimeAndSkipsBlocksThatCannotMatch() throws Exception {
+        EnrichedRecordArchive archive = archive(new MetricsService(), 2);
+        archive.start();
+        archive.accept(new EnrichedRecord(1L, "a", "1.1.1.1", "T1566", "AS1", 1L), null);
+        archive.accept(new EnrichedRecord(2L, "b", "1.1.1.2", "T1566", "AS2", 2L), null);
+        archive.accept(new EnrichedRecord(3L, "c", "1.1.1.3", "T1189", "AS3", 3L), null);
+        archive.accept(new EnrichedRecord(4L, "d", "1.1.1.4", "T1189", "AS3", 4L), null);
+        archive.stop();
+
+        List<ArchivedRecord> matched = new ArrayList<>();
+        EnrichedArchiveReader.ScanStats stats = EnrichedArchiveReader.scan(dir,
+                new EnrichedArchiveReader.Filter(null, null, "T1566", "AS2"), matched::add);
+        assertEquals(List.of(2L), matched.stream().map(r -> r.record().id()).toList());
+        assertEquals(2, stats.blocks());
+        // the T1189 block holds neither and is never decompressed
+        assertEquals(1, stats.blocksSkipped());
+        assertEquals(2, stats.recordsDecoded());
+
+        assertEquals(List.of(), scan(new EnrichedArchiveReader.Filter(null, null, "T9999", null)));
+        Instant future = Instant.now().plus(Duration.ofHours(1));
+        EnrichedArchiveReader.ScanStats none = EnrichedArchiveReader.scan(dir,
+                new EnrichedArchiveReader.Filter(future, null, null, null), record -> true);
+        assertEquals(0, none.matched());
+        assertEquals(2, none.blocksSkipped());
+    }
+
+    @Test
+    void tornLastBlockIsIgnoredAndRestartOpensANewSegment() throws Exception {
+        EnrichedRecordArchive first = archive(new MetricsService(), 1);
+        first.start();
+        first.accept(new EnrichedRecord(1L, "a", "1.1.1.1", "T1566", "AS1", 1L), null);
+        first.accept(new EnrichedRecord(2L, "b", "1.1.1.2", "T1566", "AS1", 2L), null);
+        first.stop();
+        Path segment = segments().get(0);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+
+        EnrichedRecordArchive second = archive(new MetricsService(), 1);
+        second.start();
+        second.accept(new EnrichedRecord(3L, "c", "1.1.1.3", "T1566", "AS1", 3L), null);
+        second.stop();
+
+        assertEquals(2, segments().size());
+        assertEquals(List.of(1L, 3L), scan(new EnrichedArchiveReader.Filter(null, null, null, null)).stream()
+                .map(r -> r.record().id()).toList());
+    }
+
+    @Test
+    void sinkStopsTheScan() throws Exception {
+        EnrichedRecordArchive archive = archive(new MetricsService(), 8);
+        archive.start();
+        for (long id = 1; id <= 5; id++) {
+            archive.accept(new EnrichedRecord(id, "a", "1.1.1.1", "T1566", "AS1", id), null);
+        }
+        archive.stop();
+
+        List<ArchivedRecord> firstTwo = new ArrayList<>();
+        EnrichedArchiveReader.scan(dir, new EnrichedArchiveReader.Filter(null, null, null, null),
+                record -> firstTwo.add(record) && firstTwo.size() < 2);
+        assertEquals(2, firstTwo.size());
+    }
+
+    private EnrichedRecordArchive archive(MetricsService metricsService, int blockRecords) {
+        return new EnrichedRecordArchive(metricsService, true, dir.toString(), blockRecords, 60_000,
+                64L << 20, Duration.ofHours(1), Duration.ofDays(30), 1024);
+    }
+
+    private List<ArchivedRecord> scan(EnrichedArchiveReader.Filter filter) throws Exception {
+        List<ArchivedRecord> records = new ArrayList<>();
+        EnrichedArchiveReader.scan(dir, filter, records::add);
+        return records;
+    }
+
+    private List<Path> segments() throws Exception {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.sorted().toList();
+        }
+    }
+}
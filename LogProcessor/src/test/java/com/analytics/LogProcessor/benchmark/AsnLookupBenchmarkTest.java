@@ -0,0 +1,57 @@
+package com.analytics.LogProcessor.benchmark;
+
+import com.analytics.LogProcessor.network.AsnRangeTable;
+import com.analytics.LogProcessor.network.CidrBlock;
+import com.analytics.LogProcessor.network.IpAddresses;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Lookup cost of the local ASN range table at full-table size (~1M IPv4 prefixes).
+ * Run with: mvn test -Pbenchmark
+ */
+@Tag("benchmark")
+class AsnLookupBenchmarkTest {
+
+    private static final int PREFIXES = 1_000_000;
+    private static final int LOOKUPS = 5_000_000;
+
+    @Test
+    void lookupLatency() {
+        Random random = new Random(42);
+        List<AsnRangeTable.Prefix> prefixes = new ArrayList<>(PREFIXES);
+        for (int i = 0; i < PREFIXES; i++) {
+            long base = (random.nextLong() & 0xFFFFFFFFL) & 0xFFFFFF00L;
+            String cidr = ((base >>> 24) & 0xFF) + "." + ((base >>> 16) & 0xFF) + "." + ((base >>> 8) & 0xFF) + ".0/24";
+            prefixes.add(new AsnRangeTable.Prefix(CidrBlock.parse(cidr), 64_512 + (i % 1000)));
+        }
+        long buildStart = System.nanoTime();
+        AsnRangeTable table = AsnRangeTable.build(false, prefixes);
+        long buildMs = (System.nanoTime() - buildStart) / 1_000_000;
+
+        long[] addresses = new long[1 << 16];
+        for (int i = 0; i < addresses.length; i++) {
+            addresses[i] = IpAddresses.parseIpv4((random.nextInt(223) + 1) + ".1.2." + random.nextInt(256));
+        }
+
+        long found = 0;
+        for (int i = 0; i < LOOKUPS; i++) { // warm-up
+            found += table.lookup(addresses[i & (addresses.length - 1)]) >>> 31;
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < LOOKUPS; i++) {
+            found += table.lookup(addresses[i & (addresses.length - 1)]) >>> 31;
+        }
+        double nsPerLookup = (System.nanoTime() - start) / (double) LOOKUPS;
+
+        System.out.printf("[AsnLookupBenchmarkTest] %d segments built in %d ms, %.1f ns/lookup (%d)%n",
+                table.size(), buildMs, nsPerLookup, found);
+        assertTrue(nsPerLookup < 10_000);
+    }
+}
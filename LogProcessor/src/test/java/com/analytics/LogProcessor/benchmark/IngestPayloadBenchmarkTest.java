@@ -0,0 +1,137 @@
+package com.analytics.LogProcessor.benchmark;
+
+import com.analytics.LogProcessor.model.ActivityRecord;
+import com.analytics.LogProcessor.model.IngestRequest;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdInputStreamNoFinalizer;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Bytes on the wire and server CPU per record for each ingest body format, on CLI-sized batches
+ * (200 records). CPU covers what the server does per request: inflate and parse into an IngestRequest.
+ * Run with: mvn test -Pbenchmark
+ */
+@Tag("benchmark")
+class IngestPayloadBenchmarkTest {
+
+    private static final int BATCH_SIZE = 200;
+    private static final int BATCHES = 500;
+    private static final String[] CATEGORIES = {"phishing", "validaccounts", "drivebycompromise", "supplychaincompromise"};
+
+    private final ObjectMapper json = new ObjectMapper();
+    private final ObjectMapper cbor = new CBORMapper();
+    private final ObjectMapper smile = new SmileMapper();
+
+    @Test
+    void bytesAndCpuPerRecord() throws Exception {
+        List<IngestRequest> batches = batches();
+        long jsonBytes = 0;
+        for (Format format : Format.values()) {
+            List<byte[]> bodies = new ArrayList<>(batches.size());
+            long wireBytes = 0;
+            for (IngestRequest batch : batches) {
+                byte[] body = format.encode(mapper(format), batch);
+                bodies.add(body);
+                wireBytes += body.length;
+            }
+            if (format == Format.JSON) {
+                jsonBytes = wireBytes;
+            }
+
+            decodeAll(format, bodies); // warm-up
+            ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            long cpuStart = threads.getCurrentThreadCpuTime();
+            long parsed = decodeAll(format, bodies);
+            double cpuNsPerRecord = (threads.getCurrentThreadCpuTime() - cpuStart) / (double) parsed;
+
+            double bytesPerRecord = wireBytes / (double) parsed;
+            System.out.printf("[IngestPayloadBenchmarkTest] %-11s %7.1f bytes/record (%5.1f%% of JSON) %8.0f ns CPU/record%n",
+                    format, bytesPerRecord, 100.0 * wireBytes / jsonBytes, cpuNsPerRecord);
+            if (format != Format.JSON && format.compressed) {
+                assertTrue(wireBytes < jsonBytes);
+            }
+        }
+    }
+
+    private long decodeAll(Format format, List<byte[]> bodies) throws IOException {
+        long records = 0;
+        ObjectMapper mapper = mapper(format);
+        for (byte[] body : bodies) {
+            try (InputStream in = format.decode(new ByteArrayInputStream(body))) {
+                records += mapper.readValue(in, IngestRequest.class).activityRecordList().size();
+            }
+        }
+        return records;
+    }
+
+    private ObjectMapper mapper(Format format) {
+        return switch (format) {
+            case JSON, JSON_GZIP, JSON_ZSTD -> json;
+            case CBOR, CBOR_ZSTD -> cbor;
+            case SMILE, SMILE_ZSTD -> smile;
+        };
+    }
+
+    private static List<IngestRequest> batches() {
+        Random random = new Random(42);
+        List<IngestRequest> batches = new ArrayList<>(BATCHES);
+        long id = 0;
+        for (int b = 0; b < BATCHES; b++) {
+            List<ActivityRecord> records = new ArrayList<>(BATCH_SIZE);
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                String ip = (random.nextInt(223) + 1) + "." + random.nextInt(256) + "." + random.nextInt(256) + "." + random.nextInt(256);
+                records.add(new ActivityRecord(++id, "asset-" + random.nextInt(5_000), ip,
+                        CATEGORIES[random.nextInt(CATEGORIES.length)]));
+            }
+            batches.add(new IngestRequest(records));
+        }
+        return batches;
+    }
+
+    private enum Format {
+        JSON(false), JSON_GZIP(true), JSON_ZSTD(true), CBOR(false), CBOR_ZSTD(true), SMILE(false), SMILE_ZSTD(true);
+
+        private final boolean compressed;
+
+        Format(boolean compressed) {
+            this.compressed = compressed;
+        }
+
+        byte[] encode(ObjectMapper mapper, IngestRequest batch) throws IOException {
+            byte[] plain = mapper.writeValueAsBytes(batch);
+            if (this == JSON_GZIP) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream(plain.length / 3);
+                try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+                    gzip.write(plain);
+                }
+                return out.toByteArray();
+            }
+            return compressed ? Zstd.compress(plain, 3) : plain;
+        }
+
+        InputStream decode(InputStream body) throws IOException {
+            if (this == JSON_GZIP) {
+                return new GZIPInputStream(body, 8192);
+            }
+            return compressed ? new ZstdInputStreamNoFinalizer(body) : body;
+        }
+    }
+}
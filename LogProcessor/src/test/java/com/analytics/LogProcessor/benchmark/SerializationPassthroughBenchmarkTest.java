@@ -0,0 +1,143 @@
+package com.analytics.LogProcessor.benchmark;
+
+import com.analytics.LogProcessor.model.ActivityRecord;
+import com.analytics.LogProcessor.model.EnrichedRecord;
+import com.analytics.LogProcessor.service.AnalyticsDispatcher;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Allocation and CPU per record for building the outgoing HTTP bodies, re-serialized vs passed through
+ * (app.serialization.passthrough). Decoding the delivery is left out: both paths still do it.
+ *  - enrichment: Map request body encoded by Jackson (before), the raw message body (after)
+ *  - analytics: the batch's EnrichedRecord list encoded by Jackson (before), the delivered bodies joined (after)
+ * Run with: mvn test -Pbenchmark
+ */
+@Tag("benchmark")
+class SerializationPassthroughBenchmarkTest {
+
+    private static final int RECORDS = 200_000;
+    private static final int BATCH_SIZE = 20;
+    private static final String[] CATEGORIES = {"phishing", "validaccounts", "drivebycompromise", "supplychaincompromise"};
+
+    private final ObjectMapper json = new ObjectMapper();
+
+    @Test
+    void enrichmentRequestBody() throws Exception {
+        List<ActivityRecord> records = new ArrayList<>(RECORDS);
+        List<byte[]> bodies = new ArrayList<>(RECORDS);
+        Random random = new Random(42);
+        for (int i = 0; i < RECORDS; i++) {
+            ActivityRecord record = new ActivityRecord((long) i, "asset-" + random.nextInt(5_000), ip(random),
+                    CATEGORIES[random.nextInt(CATEGORIES.length)]);
+            records.add(record);
+            bodies.add(json.writeValueAsBytes(record));
+        }
+
+        Cost mapBody = measure(() -> {
+            long sink = 0;
+            for (ActivityRecord record : records) {
+                sink += json.writeValueAsBytes(Map.of("id", record.id(), "asset", record.asset(),
+                        "ip", record.ip(), "category", record.category())).length;
+            }
+            return sink;
+        });
+        Cost recordBody = measure(() -> {
+            long sink = 0;
+            for (ActivityRecord record : records) {
+                sink += json.writeValueAsBytes(record).length;
+            }
+            return sink;
+        });
+        Cost rawBody = measure(() -> {
+            long sink = 0;
+            for (byte[] body : bodies) {
+                sink += body.length;
+            }
+            return sink;
+        });
+
+        print("enrichment", "Map body (before)", mapBody);
+        print("enrichment", "record body", recordBody);
+        print("enrichment", "raw body (after)", rawBody);
+        assertTrue(rawBody.bytesPerRecord() < mapBody.bytesPerRecord());
+    }
+
+    @Test
+    void analyticsBatchBody() throws Exception {
+        List<List<EnrichedRecord>> batches = new ArrayList<>();
+        List<List<byte[]>> batchBodies = new ArrayList<>();
+        Random random = new Random(42);
+        for (int b = 0; b < RECORDS / BATCH_SIZE; b++) {
+            List<EnrichedRecord> batch = new ArrayList<>(BATCH_SIZE);
+            List<byte[]> bodies = new ArrayList<>(BATCH_SIZE);
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                EnrichedRecord record = new EnrichedRecord((long) b * BATCH_SIZE + i, "asset-" + random.nextInt(5_000),
+                        ip(random), "T1566", "AS" + random.nextInt(65_000), random.nextLong());
+                batch.add(record);
+                bodies.add(json.writeValueAsBytes(record));
+            }
+            batches.add(batch);
+            batchBodies.add(bodies);
+        }
+        assertArrayEquals(json.writeValueAsBytes(batches.get(0)), AnalyticsDispatcher.joinJsonArray(batchBodies.get(0)));
+
+        Cost serialized = measure(() -> {
+            long sink = 0;
+            for (List<EnrichedRecord> batch : batches) {
+                sink += json.writeValueAsBytes(batch).length;
+            }
+            return sink;
+        });
+        Cost joined = measure(() -> {
+            long sink = 0;
+            for (List<byte[]> bodies : batchBodies) {
+                sink += AnalyticsDispatcher.joinJsonArray(bodies).length;
+            }
+            return sink;
+        });
+
+        print("analytics", "serialized (before)", serialized);
+        print("analytics", "joined (after)", joined);
+        assertTrue(joined.cpuNsPerRecord() < serialized.cpuNsPerRecord());
+    }
+
+    private static Cost measure(Work work) throws Exception {
+        work.run(); // warm-up
+        work.run();
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long allocatedStart = threads.getCurrentThreadAllocatedBytes();
+        long cpuStart = threads.getCurrentThreadCpuTime();
+        long sink = work.run();
+        long cpu = threads.getCurrentThreadCpuTime() - cpuStart;
+        long allocated = threads.getCurrentThreadAllocatedBytes() - allocatedStart;
+        assertTrue(sink > 0);
+        return new Cost(allocated / (double) RECORDS, cpu / (double) RECORDS);
+    }
+
+    private static void print(String stage, String path, Cost cost) {
+        System.out.printf("[SerializationPassthroughBenchmarkTest] %-10s %-20s %7.1f bytes allocated/record %6.0f ns CPU/record%n",
+                stage, path, cost.bytesPerRecord(), cost.cpuNsPerRecord());
+    }
+
+    private static String ip(Random random) {
+        return (random.nextInt(223) + 1) + "." + random.nextInt(256) + "." + random.nextInt(256) + "." + random.nextInt(256);
+    }
+
+    private interface Work {
+        long run() throws Exception;
+    }
+
+    private record Cost(double bytesPerRecord, double cpuNsPerRecord) {
+    }
+}
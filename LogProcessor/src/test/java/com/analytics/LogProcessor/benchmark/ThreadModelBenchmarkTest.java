@@ -0,0 +1,100 @@
+package com.analytics.LogProcessor.benchmark;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Compares the current platform-pool thread model with virtual threads bounded by a
+ * semaphore, at the same in-flight limit. The work item simulates a blocking
+ * enrichment call (fixed latency). Run with: mvn test -Pbenchmark
+ */
+@Tag("benchmark")
+class ThreadModelBenchmarkTest {
+
+    private static final int TASKS = 2_000;
+    private static final long BLOCKING_CALL_MS = 20;
+    private static final int[] IN_FLIGHT_LIMITS = {8, 64, 256};
+
+    @Test
+    void platformPoolVersusVirtualThreads() throws Exception {
+        boolean virtualAvailable = Runtime.version().feature() >= 21;
+
+        for (int limit : IN_FLIGHT_LIMITS) {
+            long platformMs = runOnPlatformPool(limit);
+            report("platform pool", limit, platformMs);
+
+            if (virtualAvailable) {
+                long virtualMs = runOnVirtualThreads(limit);
+                report("virtual + semaphore", limit, virtualMs);
+            }
+        }
+        assumeTrue(virtualAvailable, "virtual threads need a Java 21+ runtime, only the platform model was measured");
+    }
+
+    private long runOnPlatformPool(int limit) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(limit);
+        try {
+            CountDownLatch done = new CountDownLatch(TASKS);
+            long start = System.nanoTime();
+            for (int i = 0; i < TASKS; i++) {
+                pool.execute(() -> {
+                    blockingCall();
+                    done.countDown();
+                });
+            }
+            assertTrue(done.await(5, TimeUnit.MINUTES));
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private long runOnVirtualThreads(int limit) throws InterruptedException {
+        VirtualThreadTaskExecutor executor = new VirtualThreadTaskExecutor("bench-");
+        Semaphore inFlight = new Semaphore(limit);
+        CountDownLatch done = new CountDownLatch(TASKS);
+        long start = System.nanoTime();
+        for (int i = 0; i < TASKS; i++) {
+            executor.execute(() -> {
+                try {
+                    inFlight.acquire();
+                    try {
+                        blockingCall();
+                    } finally {
+                        inFlight.release();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        assertTrue(done.await(5, TimeUnit.MINUTES));
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    private static void blockingCall() {
+        try {
+            Thread.sleep(BLOCKING_CALL_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void report(String model, int limit, long elapsedMs) {
+        double perSecond = TASKS * 1000.0 / Math.max(1, elapsedMs);
+        System.out.printf("[ThreadModelBenchmarkTest] %-20s in-flight=%-4d %6d ms  %8.1f calls/s%n",
+                model, limit, elapsedMs, perSecond);
+    }
+}
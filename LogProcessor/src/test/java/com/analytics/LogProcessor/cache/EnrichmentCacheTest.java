@@ -0,0 +1,119 @@
+package com.analytics.LogProcessor.cache;
+
+import com.analytics.LogProcessor.model.EnrichmentResponse;
+import com.analytics.LogProcessor.service.MetricsService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for EnrichmentCache and its snapshot file
+ */
+class EnrichmentCacheTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testPutAndGetIsKeyedByIpAndCategory() {
+        MetricsService metricsService = new MetricsService();
+        EnrichmentCache cache = cache(metricsService, Duration.ofHours(1));
+
+        cache.put("1.2.3.4", "phishing", new EnrichmentResponse("AS13335", "T1566", 42L));
+
+        CachedEnrichment hit = cache.get("1.2.3.4", " Phishing ");
+        assertNotNull(hit);
+        assertEquals("AS13335", hit.asn());
+        assertNull(cache.get("1.2.3.4", "validaccounts"));
+        assertEquals(1, metricsService.getEnrichmentCacheHits().get());
+        assertEquals(1, metricsService.getEnrichmentCacheMisses().get());
+    }
+
+    @Test
+    void testExpiredEntriesAreNotReturned() {
+        EnrichmentCache cache = cache(new MetricsService(), Duration.ZERO);
+
+        cache.put("1.2.3.4", "phishing", new EnrichmentResponse("AS1", "T1566", 1L));
+
+        assertNull(cache.get("1.2.3.4", "phishing"));
+    }
+
+    @Test
+    void testSnapshotIsLoadedLazilyAfterRestart() {
+        EnrichmentCache before = cache(new MetricsService(), Duration.ofHours(1));
+        before.put("10.0.0.1", "phishing", new EnrichmentResponse("AS1", "T1566", 1L));
+        before.put("10.0.0.2", "validaccounts", new EnrichmentResponse("AS2", "T1078", 2L));
+        before.shutdown();
+
+        MetricsService metricsService = new MetricsService();
+        EnrichmentCache after = cache(metricsService, Duration.ofHours(1));
+        after.openSnapshot();
+
+        assertEquals(0, after.size());
+        CachedEnrichment restored = after.get("10.0.0.2", "validaccounts");
+        assertNotNull(restored);
+        assertEquals("AS2", restored.asn());
+        assertEquals("T1078", restored.category());
+        assertEquals(1, after.size());
+        assertEquals(1, metricsService.getEnrichmentSnapshotHits().get());
+    }
+
+    @Test
+    void testSnapshotFileRespectsTtl() throws Exception {
+        Path path = tempDir.resolve("snap.bin");
+        Map<String, CachedEnrichment> entries = new HashMap<>();
+        entries.put("10.0.0.1|phishing", new CachedEnrichment("AS1", "T1566", System.currentTimeMillis() - 1));
+        for (int i = 0; i < 1000; i++) {
+            entries.put("10.1.0." + i + "|phishing", new CachedEnrichment("AS" + i, "T1566", Long.MAX_VALUE));
+        }
+        EnrichmentSnapshotFile.write(path, entries);
+
+        try (EnrichmentSnapshotFile file = EnrichmentSnapshotFile.open(path)) {
+            assertEquals(1001, file.size());
+            assertEquals("AS777", file.lookup("10.1.0.777|phishing").asn());
+            assertNull(file.lookup("10.9.9.9|phishing"));
+            assertTrue(file.lookup("10.0.0.1|phishing").isExpired(System.currentTimeMillis()));
+        }
+        assertFalse(Files.exists(tempDir.resolve("snap.bin.tmp")));
+    }
+
+    @Test
+    void testSnapshotCarriesOverUnexpiredEntriesUpToMaxEntries() throws Exception {
+        Path path = tempDir.resolve("enrichment-cache.snap");
+        Map<String, CachedEnrichment> stored = new HashMap<>();
+        stored.put("10.0.0.1|phishing", new CachedEnrichment("AS1", "T1566", System.currentTimeMillis() - 1));
+        for (int i = 0; i < 20; i++) {
+            stored.put("10.1.0." + i + "|phishing", new CachedEnrichment("AS" + i, "T1566", Long.MAX_VALUE));
+        }
+        EnrichmentSnapshotFile.write(path, stored);
+
+        EnrichmentCache cache = cache(new MetricsService(), Duration.ofHours(1), 10);
+        cache.openSnapshot();
+        cache.put("10.2.0.1", "phishing", new EnrichmentResponse("AS99", "T1566", 99L));
+        cache.snapshot();
+        cache.snapshot();
+
+        try (EnrichmentSnapshotFile file = EnrichmentSnapshotFile.open(path)) {
+            assertEquals(10, file.size());
+            assertEquals("AS99", file.lookup("10.2.0.1|phishing").asn());
+            assertNull(file.lookup("10.0.0.1|phishing"));
+        }
+        cache.shutdown();
+    }
+
+    private EnrichmentCache cache(MetricsService metricsService, Duration ttl) {
+        return cache(metricsService, ttl, 1000);
+    }
+
+    private EnrichmentCache cache(MetricsService metricsService, Duration ttl, int maxEntries) {
+        return new EnrichmentCache(metricsService, true, ttl, maxEntries,
+                tempDir.resolve("enrichment-cache.snap").toString(), 0.8);
+    }
+}
@@ -1,40 +1,90 @@
 package com.analytics.LogProcessor.consumer;
 
 import com.analytics.LogProcessor.model.EnrichedRecord;
-import com.analytics.LogProcessor.service.AnalyticsService;
-import com.analytics.LogProcessor.service.MetricsService;
+import com.analytics.LogProcessor.service.AnalyticsDispatcher;
+import com.analytics.LogProcessor.service.AnalyticsDispatcher.PendingRecord;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rabbitmq.client.Channel;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.test.util.ReflectionTestUtils;
 
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.mockito.Mockito.*;
 
 class AnalyticsConsumerTest {
 
-    private AnalyticsService analyticsService;
-    private MetricsService metricsService;
+    private AnalyticsDispatcher analyticsDispatcher;
+    private ObjectMapper objectMapper;
+    private Channel channel;
     private AnalyticsConsumer analyticsConsumer;
 
     @BeforeEach
     void setUp() {
-        analyticsService = mock(AnalyticsService.class);
-        metricsService = spy(new MetricsService());
-        analyticsConsumer = new AnalyticsConsumer(analyticsService, metricsService);
+        analyticsDispatcher = mock(AnalyticsDispatcher.class);
+        objectMapper = new ObjectMapper();
+        channel = mock(Channel.class);
+        analyticsConsumer = new AnalyticsConsumer(analyticsDispatcher, objectMapper);
     }
 
     @Test
-    void processBatch_sendsToAnalytics_andUpdatesMetrics() {
-        List<EnrichedRecord> batch = List.of(
-                new EnrichedRecord(1L, "a.mp4", "1.1.1.1", "AUTH", "AS1", 100L),
-                new EnrichedRecord(2L, "b.mp4", "2.2.2.2", "MEDIA", "AS2", 101L)
-        );
+    @SuppressWarnings("unchecked")
+    void consumeBatch_handsRecordsToDispatcher_withDeliveryTags() throws Exception {
+        EnrichedRecord first = new EnrichedRecord(1L, "a.mp4", "1.1.1.1", "AUTH", "AS1", 100L);
+        EnrichedRecord second = new EnrichedRecord(2L, "b.mp4", "2.2.2.2", "MEDIA", "AS2", 101L);
 
-        analyticsConsumer.consumeBatch(batch);
+        analyticsConsumer.consumeBatch(List.of(message(first, 1), message(second, 2)), channel);
 
-        verify(analyticsService, times(1)).sendBatchToAnalytics(batch);
-        assertEquals(2, metricsService.getRecordsSentToAnalytics().get());
-        assertEquals(1, metricsService.getBatchesProcessed().get());
+        ArgumentCaptor<List<PendingRecord>> captor = ArgumentCaptor.forClass(List.class);
+        verify(analyticsDispatcher).accept(captor.capture());
+        List<PendingRecord> pending = captor.getValue();
+        assertEquals(2, pending.size());
+        assertEquals(first, pending.get(0).record());
+        assertEquals(2L, pending.get(1).deliveryTag());
+        verifyNoInteractions(channel);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void consumeBatch_passthrough_keepsJsonBodies() throws Exception {
+        ReflectionTestUtils.setField(analyticsConsumer, "passthrough", true);
+        EnrichedRecord first = new EnrichedRecord(1L, "a.mp4", "1.1.1.1", "AUTH", "AS1", 100L);
+        EnrichedRecord second = new EnrichedRecord(2L, "b.mp4", "2.2.2.2", "MEDIA", "AS2", 101L);
+        Message json = message(first, 1);
+        json.getMessageProperties().setContentType(MessageProperties.CONTENT_TYPE_JSON);
+
+        analyticsConsumer.consumeBatch(List.of(json, message(second, 2)), channel);
+
+        ArgumentCaptor<List<PendingRecord>> captor = ArgumentCaptor.forClass(List.class);
+        verify(analyticsDispatcher).accept(captor.capture());
+        assertSame(json.getBody(), captor.getValue().get(0).body());
+        // not declared as JSON, serialized from the decoded record instead
+        assertNull(captor.getValue().get(1).body());
+    }
+
+    @Test
+    void consumeBatch_rejectsUnreadableMessage() throws Exception {
+        MessageProperties properties = new MessageProperties();
+        properties.setDeliveryTag(7);
+        Message garbage = new Message("not json".getBytes(StandardCharsets.UTF_8), properties);
+
+        analyticsConsumer.consumeBatch(List.of(garbage), channel);
+
+        verify(channel).basicNack(7, false, false);
+        verify(analyticsDispatcher).accept(List.of());
+    }
+
+    private Message message(EnrichedRecord record, long deliveryTag) throws Exception {
+        MessageProperties properties = new MessageProperties();
+        properties.setDeliveryTag(deliveryTag);
+        return new Message(objectMapper.writeValueAsBytes(record), properties);
     }
 }
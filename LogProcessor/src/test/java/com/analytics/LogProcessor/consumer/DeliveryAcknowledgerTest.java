@@ -0,0 +1,74 @@
+package com.analytics.LogProcessor.consumer;
+
+import com.analytics.LogProcessor.service.MetricsService;
+import com.rabbitmq.client.Channel;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for DeliveryAcknowledger
+ */
+class DeliveryAcknowledgerTest {
+
+    private MetricsService metricsService;
+    private DeliveryAcknowledger acknowledger;
+    private Channel channel;
+
+    @BeforeEach
+    void setUp() {
+        metricsService = new MetricsService();
+        acknowledger = new DeliveryAcknowledger(metricsService);
+        channel = mock(Channel.class);
+        when(channel.isOpen()).thenReturn(true);
+        for (long tag = 1; tag <= 5; tag++) {
+            acknowledger.received(channel, tag);
+        }
+    }
+
+    @Test
+    void testContiguousCompletionsAreCoalescedIntoOneAck() throws Exception {
+        acknowledger.ack(channel, 3);
+        acknowledger.ack(channel, 2);
+        verify(channel, never()).basicAck(anyLong(), anyBoolean());
+
+        acknowledger.ack(channel, 1);
+        verify(channel).basicAck(3, true);
+
+        acknowledger.ack(channel, 5);
+        acknowledger.ack(channel, 4);
+        verify(channel).basicAck(5, true);
+
+        assertEquals(2, metricsService.getEnrichmentAckFrames().get());
+        assertEquals(5, metricsService.getEnrichmentRecordsAcked().get());
+    }
+
+    @Test
+    void testRequeuedDeliveryDoesNotBlockTheOnesAfterIt() throws Exception {
+        acknowledger.ack(channel, 2);
+        acknowledger.ack(channel, 3);
+
+        acknowledger.requeue(channel, 1);
+
+        InOrder inOrder = inOrder(channel);
+        inOrder.verify(channel).basicNack(1, false, true);
+        inOrder.verify(channel).basicAck(3, true);
+    }
+
+    @Test
+    void testChannelsAreTrackedSeparately() throws Exception {
+        Channel other = mock(Channel.class);
+        when(other.isOpen()).thenReturn(true);
+        acknowledger.received(other, 1);
+
+        acknowledger.ack(other, 1);
+
+        verify(other).basicAck(1, true);
+        verify(channel, never()).basicAck(anyLong(), anyBoolean());
+    }
+}
@@ -0,0 +1,51 @@
+package com.analytics.LogProcessor.consumer;
+
+import com.analytics.LogProcessor.service.QueueLagMonitor;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for EnrichmentAutoscaler
+ */
+class EnrichmentAutoscalerTest {
+
+    private static final EnrichmentAutoscaler.Settings SETTINGS =
+            new EnrichmentAutoscaler.Settings(true, 200, 60, 10, 1, 8, 1, 32);
+
+    @Test
+    void testLargeEnrichedBacklogScalesDownToMinimum() {
+        QueueLagMonitor.Sample sample = new QueueLagMonitor.Sample(50_000, 100_000, 2.0, 400, 1);
+
+        EnrichmentAutoscaler.Decision decision = EnrichmentAutoscaler.decide(sample, 4, SETTINGS);
+
+        assertEquals(1, decision.consumers());
+        assertEquals(1, decision.prefetch());
+        assertEquals(0.0, decision.neededRate());
+    }
+
+    @Test
+    void testStarvingAnalyticsScalesUpWithLatency() {
+        // 200 short of target over 60s + 2/s drain = 5.33/s; at 1.2s per enrichment that needs 7 consumers
+        QueueLagMonitor.Sample sample = new QueueLagMonitor.Sample(50_000, 0, 2.0, 1200, 1);
+
+        EnrichmentAutoscaler.Decision decision = EnrichmentAutoscaler.decide(sample, 4, SETTINGS);
+
+        assertEquals(7, decision.consumers());
+        assertEquals(8, decision.prefetch());
+    }
+
+    @Test
+    void testConsumersAreCappedAtMaxConcurrency() {
+        QueueLagMonitor.Sample sample = new QueueLagMonitor.Sample(50_000, 0, 2.0, 10_000, 1);
+
+        assertEquals(8, EnrichmentAutoscaler.decide(sample, 4, SETTINGS).consumers());
+    }
+
+    @Test
+    void testEmptyRawQueueIdlesAndUnknownDataKeepsCurrentSize() {
+        assertEquals(1, EnrichmentAutoscaler.decide(new QueueLagMonitor.Sample(0, 10, 2.0, 300, 1), 4, SETTINGS).consumers());
+        assertNull(EnrichmentAutoscaler.decide(new QueueLagMonitor.Sample(-1, -1, 0, 0, 0), 4, SETTINGS));
+        assertNull(EnrichmentAutoscaler.decide(new QueueLagMonitor.Sample(500, 0, 0, 0, 1), 4, SETTINGS));
+    }
+}
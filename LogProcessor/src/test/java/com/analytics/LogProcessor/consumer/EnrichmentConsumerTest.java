@@ -1,15 +1,40 @@
 package com.analytics.LogProcessor.consumer;
 
+import com.analytics.LogProcessor.archive.EnrichedRecordSink;
 import com.analytics.LogProcessor.model.ActivityRecord;
 import com.analytics.LogProcessor.model.EnrichedRecord;
+import com.analytics.LogProcessor.service.ConcurrencyLimiter;
+import com.analytics.LogProcessor.service.DeliveryLedger;
+import com.analytics.LogProcessor.service.EnrichmentRetryTiers;
 import com.analytics.LogProcessor.service.EnrichmentService;
 import com.analytics.LogProcessor.service.MetricsService;
+import com.analytics.LogProcessor.service.RawShardLayout;
+import com.analytics.LogProcessor.service.TenantRegistry;
+import com.rabbitmq.client.Channel;
 import org.junit.jupiter.api.BeforeEach;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.amqp.AmqpConnectException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessagePostProcessor;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
 import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
 import reactor.core.publisher.Mono;
 
+import java.net.ConnectException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.*;
 
@@ -18,43 +43,167 @@ class EnrichmentConsumerTest {
     private EnrichmentService enrichmentService;
     private MetricsService metricsService;
     private RabbitTemplate rabbitTemplate;
+    private Channel channel;
     private EnrichmentConsumer enrichmentConsumer;
+    private EnrichedRecordSink recordSink;
 
     @BeforeEach
     void setUp() {
         enrichmentService = mock(EnrichmentService.class);
         metricsService = spy(new MetricsService());
         rabbitTemplate = mock(RabbitTemplate.class);
-        enrichmentConsumer = new EnrichmentConsumer(enrichmentService, rabbitTemplate, metricsService);
+        channel = mock(Channel.class);
+        recordSink = mock(EnrichedRecordSink.class);
+        EnrichmentRetryTiers retryTiers = new EnrichmentRetryTiers(rabbitTemplate, metricsService,
+                new RawShardLayout(false, 1, "all", "raw-records-queue", "raw-sharded"), List.of(Duration.ofSeconds(1), Duration.ofSeconds(5)), "retry-exchange", "raw-records-queue");
+        enrichmentConsumer = new EnrichmentConsumer(enrichmentService, rabbitTemplate, metricsService,
+                new ConcurrencyLimiter(16, 8, 1), retryTiers, new DeliveryAcknowledger(metricsService),
+                new TenantRegistry("", "soc=3", 1, "enriched-records-queue"), List.of(recordSink));
 
         ReflectionTestUtils.setField(enrichmentConsumer, "deadLetterQueue", "dlq");
     }
 
     @Test
-    void processRawRecord_success_publishesToAnalyticsQueue() {
+    void processRawRecord_success_publishesToAnalyticsQueue() throws Exception {
         ActivityRecord record = new ActivityRecord(10L, "asset1", "9.9.9.9", "phishing");
         EnrichedRecord enriched = new EnrichedRecord(10L, "asset1", "9.9.9.9", "TS159", "AS1234", 23599);
 
-        when(enrichmentService.enrichRecords(record)).thenReturn(Mono.just(enriched));
+        when(enrichmentService.enrichRecords(eq(record), anyInt(), any())).thenReturn(Mono.just(enriched));
 
-        enrichmentConsumer.processRawRecord(record);
+        enrichmentConsumer.processRawRecord(record, null, null, null, null, null, channel, 1L);
 
+        ArgumentCaptor<CorrelationData> correlation = ArgumentCaptor.forClass(CorrelationData.class);
         verify(rabbitTemplate, timeout(1000))
-                .convertAndSend(any(), eq("enriched"), eq(enriched));
+                .convertAndSend(any(), eq("enriched"), eq(enriched), any(MessagePostProcessor.class), correlation.capture());
 
         verify(metricsService, atLeastOnce()).incrementRecordsEnriched();
         verify(metricsService, atLeastOnce()).recordEnrichmentTime(anyLong());
 
+        // not acked (nor archived) until the broker confirms the enriched publish
+        verify(channel, never()).basicAck(anyLong(), anyBoolean());
+        verifyNoInteractions(recordSink);
+        correlation.getValue().getFuture().complete(new CorrelationData.Confirm(true, null));
+        verify(channel).basicAck(1L, true);
+        verify(recordSink).accept(enriched, null);
     }
 
     @Test
-    void processRawRecord_failure_publishesToDlq() {
+    void processRawRecord_failure_publishesToDlq() throws Exception {
         ActivityRecord record = new ActivityRecord(11L, "x", "8.8.8.8", "phishing");
-        when(enrichmentService.enrichRecords(record)).thenReturn(Mono.error(new RuntimeException("fail")));
+        when(enrichmentService.enrichRecords(eq(record), anyInt(), any())).thenReturn(Mono.error(new RuntimeException("fail")));
+
+        enrichmentConsumer.processRawRecord(record, null, null, null, null, null, channel, 1L);
+
+        ArgumentCaptor<CorrelationData> correlation = ArgumentCaptor.forClass(CorrelationData.class);
+        verify(rabbitTemplate, timeout(1000)).convertAndSend(eq("dlq"), any(EnrichmentConsumer.FailedRecordMessage.class),
+                any(MessagePostProcessor.class), correlation.capture());
+        correlation.getValue().getFuture().complete(new CorrelationData.Confirm(true, null));
+        verify(channel).basicAck(1L, true);
+    }
+
+    @Test
+    void processRawRecord_dlqPublishFails_requeuesInsteadOfAcking() throws Exception {
+        ActivityRecord record = new ActivityRecord(15L, "x", "8.8.8.8", "phishing");
+        when(enrichmentService.enrichRecords(eq(record), anyInt(), any())).thenReturn(Mono.error(new RuntimeException("fail")));
+        doThrow(new AmqpConnectException(new ConnectException("refused")))
+                .when(rabbitTemplate).convertAndSend(eq("dlq"), any(Object.class), any(MessagePostProcessor.class), any(CorrelationData.class));
+
+        enrichmentConsumer.processRawRecord(record, null, null, null, null, null, channel, 1L);
+
+        verify(channel).basicNack(1L, false, true);
+        verify(channel, never()).basicAck(anyLong(), anyBoolean());
+    }
+
+    @Test
+    void processRawRecord_negativeConfirm_requeues() throws Exception {
+        ActivityRecord record = new ActivityRecord(16L, "asset1", "9.9.9.9", "phishing");
+        EnrichedRecord enriched = new EnrichedRecord(16L, "asset1", "9.9.9.9", "T1566", "AS1234", 1);
+        when(enrichmentService.enrichRecords(eq(record), anyInt(), any())).thenReturn(Mono.just(enriched));
+
+        enrichmentConsumer.processRawRecord(record, null, null, null, null, null, channel, 1L);
+
+        ArgumentCaptor<CorrelationData> correlation = ArgumentCaptor.forClass(CorrelationData.class);
+        verify(rabbitTemplate).convertAndSend(any(), eq("enriched"), eq(enriched), any(MessagePostProcessor.class), correlation.capture());
+        correlation.getValue().getFuture().complete(new CorrelationData.Confirm(false, "nack"));
+        verify(channel).basicNack(1L, false, true);
+        verifyNoInteractions(recordSink);
+    }
+
+    @Test
+    void processRawRecord_weightedTenant_publishesToItsLaneWithTenantAndDeliveryIdHeaders() throws Exception {
+        ActivityRecord record = new ActivityRecord(17L, "asset1", "9.9.9.9", "phishing");
+        EnrichedRecord enriched = new EnrichedRecord(17L, "asset1", "9.9.9.9", "T1566", "AS1234", 1);
+        when(enrichmentService.enrichRecords(eq(record), anyInt(), any())).thenReturn(Mono.just(enriched));
+
+        enrichmentConsumer.processRawRecord(record, null, "soc", null, 4242L, null, channel, 1L);
+
+        ArgumentCaptor<MessagePostProcessor> postProcessor = ArgumentCaptor.forClass(MessagePostProcessor.class);
+        verify(rabbitTemplate).convertAndSend(any(), eq("enriched.soc"), eq(enriched), postProcessor.capture(),
+                any(CorrelationData.class));
+        Message message = postProcessor.getValue().postProcessMessage(new Message(new byte[0]));
+        assertEquals("soc", message.getMessageProperties().getHeader(TenantRegistry.TENANT_HEADER));
+        assertEquals(4242L, DeliveryLedger.deliveryId(message));
+    }
 
-        enrichmentConsumer.processRawRecord(record);
+    @Test
+    void processRawRecord_passthrough_sendsRawBodyToEnrichmentApi() {
+        ReflectionTestUtils.setField(enrichmentConsumer, "passthrough", true);
+        ActivityRecord record = new ActivityRecord(18L, "asset1", "9.9.9.9", "phishing");
+        EnrichedRecord enriched = new EnrichedRecord(18L, "asset1", "9.9.9.9", "T1566", "AS1234", 1);
+        MessageProperties properties = new MessageProperties();
+        properties.setContentType(MessageProperties.CONTENT_TYPE_JSON);
+        Message raw = new Message("{\"id\":18,\"asset\":\"asset1\",\"ip\":\"9.9.9.9\",\"category\":\"phishing\"}"
+                .getBytes(StandardCharsets.UTF_8), properties);
+        when(enrichmentService.enrichRecords(eq(record), anyInt(), any())).thenReturn(Mono.just(enriched));
+
+        enrichmentConsumer.processRawRecord(record, null, null, null, null, raw, channel, 1L);
+
+        verify(enrichmentService).enrichRecords(eq(record), eq(0), same(raw.getBody()));
+    }
+
+    @Test
+    void processRawRecord_transientFailure_parksRecordInNextRetryTier() {
+        ActivityRecord record = new ActivityRecord(12L, "x", "8.8.8.8", "phishing");
+        when(enrichmentService.enrichRecords(eq(record), anyInt(), any())).thenReturn(Mono.error(connectionRefused()));
+
+        enrichmentConsumer.processRawRecord(record, 1, null, null, null, null, channel, 1L);
+
+        verify(rabbitTemplate).convertAndSend(eq("retry-exchange"), eq("raw-records-queue.retry.5000ms"),
+                eq(record), any(MessagePostProcessor.class), any(CorrelationData.class));
+        verify(rabbitTemplate, never()).convertAndSend(eq("dlq"), any(Object.class), any(MessagePostProcessor.class), any(CorrelationData.class));
+        verify(metricsService).incrementEnrichmentRetriesScheduled();
+    }
+
+    @Test
+    void processRawRecord_transientFailureAfterLastTier_publishesToDlq() {
+        ActivityRecord record = new ActivityRecord(13L, "x", "8.8.8.8", "phishing");
+        when(enrichmentService.enrichRecords(eq(record), anyInt(), any())).thenReturn(Mono.error(connectionRefused()));
+
+        enrichmentConsumer.processRawRecord(record, 2, null, null, null, null, channel, 1L);
+
+        verify(rabbitTemplate).convertAndSend(eq("dlq"), any(EnrichmentConsumer.FailedRecordMessage.class),
+                any(MessagePostProcessor.class), any(CorrelationData.class));
+        verify(rabbitTemplate, never()).convertAndSend(eq("retry-exchange"), anyString(), any(Object.class),
+                any(MessagePostProcessor.class), any(CorrelationData.class));
+    }
+
+    @Test
+    void processRawRecord_circuitOpen_requeuesInsteadOfDlq() throws Exception {
+        ActivityRecord record = new ActivityRecord(14L, "x", "8.8.8.8", "phishing");
+        CircuitBreaker open = CircuitBreaker.ofDefaults("enrichmentService");
+        open.transitionToOpenState();
+        when(enrichmentService.enrichRecords(eq(record), anyInt(), any()))
+                .thenReturn(Mono.error(CallNotPermittedException.createCallNotPermittedException(open)));
+
+        enrichmentConsumer.processRawRecord(record, null, null, null, null, null, channel, 1L);
+
+        verify(channel).basicNack(1L, false, true);
+        verify(rabbitTemplate, never()).convertAndSend(eq("dlq"), any(Object.class), any(MessagePostProcessor.class), any(CorrelationData.class));
+        verify(metricsService).incrementDlqWritesAvoided();
+    }
 
-        verify(rabbitTemplate, timeout(1000)).convertAndSend(eq("dlq"), any(EnrichmentConsumer.FailedRecordMessage.class));
-        // Do not throw: method should swallow publish errors and log them.
+    private static WebClientRequestException connectionRefused() {
+        return new WebClientRequestException(new ConnectException("Connection refused"),
+                HttpMethod.POST, URI.create("http://enrichment"), new HttpHeaders());
     }
 }
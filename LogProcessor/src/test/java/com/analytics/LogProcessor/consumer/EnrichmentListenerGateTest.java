@@ -0,0 +1,97 @@
+package com.analytics.LogProcessor.consumer;
+
+import com.analytics.LogProcessor.service.MetricsService;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistry;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for EnrichmentListenerGate
+ */
+class EnrichmentListenerGateTest {
+
+    private SimpleMessageListenerContainer container;
+    private MetricsService metricsService;
+    private CircuitBreaker circuitBreaker;
+    private EnrichmentListenerGate gate;
+
+    @BeforeEach
+    void setUp() {
+        container = mock(SimpleMessageListenerContainer.class);
+        RabbitListenerEndpointRegistry listenerRegistry = mock(RabbitListenerEndpointRegistry.class);
+        when(listenerRegistry.getListenerContainer(EnrichmentListenerGate.LISTENER_ID)).thenReturn(container);
+        CircuitBreakerRegistry circuitBreakerRegistry = CircuitBreakerRegistry.ofDefaults();
+        circuitBreaker = circuitBreakerRegistry.circuitBreaker("enrichmentService");
+        metricsService = spy(new MetricsService());
+
+        gate = new EnrichmentListenerGate(listenerRegistry, circuitBreakerRegistry, metricsService, 3);
+        gate.subscribe();
+    }
+
+    @AfterEach
+    void tearDown() {
+        gate.shutdown();
+    }
+
+    @Test
+    void testOpenCircuitStopsListener() {
+        circuitBreaker.transitionToOpenState();
+
+        verify(container, timeout(1000)).stop();
+        assertTrue(gate.isPaused());
+    }
+
+    @Test
+    void testHalfOpenResumesWithSingleConsumerAndRecordsPausedTime() {
+        circuitBreaker.transitionToOpenState();
+        verify(container, timeout(1000)).stop();
+
+        circuitBreaker.transitionToHalfOpenState();
+
+        verify(container, timeout(1000)).start();
+        verify(container).setConcurrentConsumers(1);
+        verify(metricsService).recordEnrichmentPausedTime(anyLong());
+        assertFalse(gate.isPaused());
+    }
+
+    @Test
+    void testClosedCircuitRampsConsumersBackOneStepAtATime() {
+        when(container.isRunning()).thenReturn(true);
+        circuitBreaker.transitionToOpenState();
+        circuitBreaker.transitionToHalfOpenState();
+        circuitBreaker.transitionToClosedState();
+        verify(container, timeout(1000).times(2)).setConcurrentConsumers(1);
+
+        gate.rampUp();
+        verify(container, timeout(1000)).setConcurrentConsumers(2);
+        gate.rampUp();
+        verify(container, timeout(1000)).setConcurrentConsumers(3);
+        gate.rampUp();
+        verify(container, after(200).never()).setConcurrentConsumers(4);
+    }
+
+    @Test
+    void testContainerMaxConsumersFollowsTheTarget() {
+        InOrder inOrder = inOrder(container);
+
+        gate.setTargetConsumers(2);
+        gate.rampUp();
+        inOrder.verify(container, timeout(1000)).setConcurrentConsumers(2);
+        inOrder.verify(container, timeout(1000)).setMaxConcurrentConsumers(2);
+
+        gate.setTargetConsumers(3);
+        gate.rampUp();
+        inOrder.verify(container, timeout(1000)).setMaxConcurrentConsumers(3);
+        inOrder.verify(container, timeout(1000)).setConcurrentConsumers(3);
+        assertEquals(3, gate.getConsumers());
+    }
+}
@@ -0,0 +1,144 @@
+package com.analytics.LogProcessor.consumer;
+
+import com.analytics.LogProcessor.model.ActivityRecord;
+import com.analytics.LogProcessor.service.DeliveryLedger;
+import com.analytics.LogProcessor.service.MetricsService;
+import com.analytics.LogProcessor.service.RawShardLayout;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rabbitmq.client.Channel;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.listener.MessageListenerContainer;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistry;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class RawStreamConsumerTest {
+
+    private static final RawShardLayout ALL_SHARDS = new RawShardLayout(false, 1, "all", "raw-records-queue", "raw-sharded");
+
+    @TempDir
+    Path dir;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private EnrichmentConsumer enrichmentConsumer;
+    private RawStreamOffsets offsets;
+    private Channel channel;
+    private RawStreamConsumer streamConsumer;
+
+    @BeforeEach
+    void setUp() {
+        enrichmentConsumer = mock(EnrichmentConsumer.class);
+        offsets = new RawStreamOffsets(dir.resolve("raw-stream.offset").toString());
+        channel = mock(Channel.class);
+        streamConsumer = new RawStreamConsumer(enrichmentConsumer, objectMapper, offsets, ALL_SHARDS,
+                mock(RabbitListenerEndpointRegistry.class), new MetricsService(), true, 2, 60_000);
+    }
+
+    @AfterEach
+    void tearDown() {
+        streamConsumer.shutdown();
+    }
+
+    @Test
+    void consumeBatch_commitsLastOffsetOnceEveryOutputIsConfirmed() throws Exception {
+        when(enrichmentConsumer.enrich(any(), anyInt(), any(), any(), any(), any())).thenAnswer(invocation -> confirmed());
+
+        streamConsumer.consumeBatch(List.of(message(100, 1), message(101, 2), message(102, 3)), channel);
+
+        assertEquals(102, offsets.getCommitted());
+        verify(channel).basicAck(3L, true);
+        assertNull(streamConsumer.status().pendingRewind());
+    }
+
+    @Test
+    void consumeBatch_unpublishedRecord_commitsBeforeItAndRewinds() throws Exception {
+        when(enrichmentConsumer.enrich(any(), anyInt(), any(), any(), any(), any())).thenAnswer(invocation ->
+                ((ActivityRecord) invocation.getArgument(0)).id() == 2L ? null : confirmed());
+
+        streamConsumer.consumeBatch(List.of(message(100, 1), message(101, 2), message(102, 3)), channel);
+
+        assertEquals(100, offsets.getCommitted());
+        assertEquals("101", streamConsumer.status().pendingRewind());
+        // deliveries still return their credit, the stream keeps the messages anyway
+        verify(channel).basicAck(3L, true);
+
+        // batches already in flight are not processed until the consumer re-attaches
+        streamConsumer.consumeBatch(List.of(message(103, 4)), channel);
+        verify(enrichmentConsumer, times(3)).enrich(any(), anyInt(), any(), any(), any(), any());
+        assertEquals(100, offsets.getCommitted());
+    }
+
+    @Test
+    void replayFrom_givesReplayedRecordsNewDeliveryIdsButRewindsKeepThem() throws Exception {
+        // delivery id each record (id = delivery tag) was enriched under
+        Map<Long, Long> deliveryIds = new ConcurrentHashMap<>();
+        when(enrichmentConsumer.enrich(any(), anyInt(), any(), any(), any(), any())).thenAnswer(invocation -> {
+            deliveryIds.put(((ActivityRecord) invocation.getArgument(0)).id(), invocation.getArgument(4));
+            return confirmed();
+        });
+        streamConsumer.consumeBatch(List.of(message(100, 1), message(101, 2)), channel);
+
+        RabbitListenerEndpointRegistry listenerRegistry = mock(RabbitListenerEndpointRegistry.class);
+        when(listenerRegistry.getListenerContainer(RawStreamConsumer.LISTENER_ID)).thenReturn(mock(MessageListenerContainer.class));
+        streamConsumer.shutdown();
+        streamConsumer = new RawStreamConsumer(enrichmentConsumer, objectMapper, offsets, ALL_SHARDS,
+                listenerRegistry, new MetricsService(), true, 2, 60_000);
+        streamConsumer.replayFrom(100);
+        for (int i = 0; i < 100 && streamConsumer.status().pendingRewind() != null; i++) {
+            Thread.sleep(10);
+        }
+        // re-attached at 100: 100 and 101 are replays, 102 is read for the first time
+        streamConsumer.consumeBatch(List.of(message(100, 3), message(101, 4), message(102, 5)), channel);
+
+        assertEquals(1100L, deliveryIds.get(1L));
+        assertEquals(1101L, deliveryIds.get(2L));
+        assertNotEquals(1100L, deliveryIds.get(3L));
+        assertNotEquals(1101L, deliveryIds.get(4L));
+        assertEquals(1102L, deliveryIds.get(5L));
+    }
+
+    @Test
+    void consumeBatch_skipsRecordsOfShardsOwnedByOtherInstances() throws Exception {
+        when(enrichmentConsumer.enrich(any(), anyInt(), any(), any(), any(), any())).thenAnswer(invocation -> confirmed());
+        RawShardLayout layout = new RawShardLayout(false, 2, "1", "raw-records-queue", "raw-sharded");
+        streamConsumer.shutdown();
+        streamConsumer = new RawStreamConsumer(enrichmentConsumer, objectMapper, offsets, layout,
+                mock(RabbitListenerEndpointRegistry.class), new MetricsService(), true, 2, 60_000);
+        List<Message> batch = List.of(message(100, 1), message(101, 2), message(102, 3), message(103, 4));
+
+        streamConsumer.consumeBatch(batch, channel);
+
+        long owned = batch.stream().filter(message -> layout.ownsKey("8.8.8." + message.getMessageProperties().getDeliveryTag())).count();
+        assertTrue(owned > 0 && owned < batch.size());
+        verify(enrichmentConsumer, times((int) owned)).enrich(any(), anyInt(), any(), any(), any(), any());
+        assertEquals(103, offsets.getCommitted());
+    }
+
+    private static CorrelationData confirmed() {
+        CorrelationData correlation = new CorrelationData();
+        correlation.getFuture().complete(new CorrelationData.Confirm(true, null));
+        return correlation;
+    }
+
+    private Message message(long offset, long tag) throws Exception {
+        MessageProperties properties = new MessageProperties();
+        properties.setDeliveryTag(tag);
+        properties.setHeader(RawStreamOffsets.OFFSET_ARGUMENT, offset);
+        properties.setHeader(DeliveryLedger.DELIVERY_ID_HEADER, 1000 + offset);
+        return new Message(objectMapper.writeValueAsBytes(
+                new ActivityRecord(tag, "asset" + tag, "8.8.8." + tag, "phishing")), properties);
+    }
+}
@@ -0,0 +1,38 @@
+package com.analytics.LogProcessor.consumer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RawStreamOffsetsTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void startOffset_isNextUntilSomethingIsCommitted() {
+        RawStreamOffsets offsets = new RawStreamOffsets(dir.resolve("raw-stream.offset").toString());
+        offsets.load();
+
+        assertEquals("next", offsets.startOffset());
+        offsets.commit(41);
+        assertEquals(42L, offsets.startOffset());
+    }
+
+    @Test
+    void flush_persistsTheCommittedOffsetForTheNextStart() {
+        String file = dir.resolve("nested/raw-stream.offset").toString();
+        RawStreamOffsets offsets = new RawStreamOffsets(file);
+        offsets.commit(1_000);
+        offsets.flush();
+
+        RawStreamOffsets restarted = new RawStreamOffsets(file);
+        restarted.load();
+
+        assertEquals(1_000, restarted.getCommitted());
+        assertEquals(1_001L, restarted.startOffset());
+    }
+}
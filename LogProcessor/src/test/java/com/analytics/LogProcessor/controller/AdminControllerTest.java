@@ -0,0 +1,201 @@
+package com.analytics.LogProcessor.controller;
+
+import com.analytics.LogProcessor.archive.EnrichedRecordArchive;
+import com.analytics.LogProcessor.consumer.EnrichmentAutoscaler;
+import com.analytics.LogProcessor.consumer.EnrichmentListenerGate;
+import com.analytics.LogProcessor.consumer.RawStreamConsumer;
+import com.analytics.LogProcessor.model.ReplayProgress;
+import com.analytics.LogProcessor.model.ReplayRequest;
+import com.analytics.LogProcessor.model.StreamStatus;
+import com.analytics.LogProcessor.replay.DlqReplayService;
+import com.analytics.LogProcessor.service.AnalyticsDispatcher;
+import com.analytics.LogProcessor.service.AnalyticsLoadShedder;
+import com.analytics.LogProcessor.service.IngestFilter;
+import com.analytics.LogProcessor.service.MetricsService;
+import com.analytics.LogProcessor.service.QueueLagMonitor;
+import com.analytics.LogProcessor.service.TenantRegistry;
+import com.analytics.LogProcessor.sketch.StreamSketches;
+import com.analytics.LogProcessor.store.RecentRecordStore;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+/**
+ * Unit tests for AdminController
+ */
+@WebMvcTest(AdminController.class)
+class AdminControllerTest {
+
+    private static final String ADMIN = "/private/v1/admin";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @MockitoBean
+    private IngestFilter ingestFilter;
+
+    @MockitoBean
+    private QueueLagMonitor lagMonitor;
+
+    @MockitoBean
+    private EnrichmentListenerGate listenerGate;
+
+    @MockitoBean
+    private EnrichmentAutoscaler autoscaler;
+
+    @MockitoBean
+    private DlqReplayService replayService;
+
+    @MockitoBean
+    private RawStreamConsumer streamConsumer;
+
+    @MockitoBean
+    private TenantRegistry tenantRegistry;
+
+    @MockitoBean
+    private AnalyticsDispatcher analyticsDispatcher;
+
+    @MockitoBean
+    private MetricsService metricsService;
+
+    @MockitoBean
+    private AnalyticsLoadShedder loadShedder;
+
+    @MockitoBean
+    private EnrichedRecordArchive archive;
+
+    @MockitoBean
+    private RecentRecordStore recentRecords;
+
+    @MockitoBean
+    private StreamSketches sketches;
+
+    @Test
+    void testStartReplayAcceptsTheJob() throws Exception {
+        when(replayService.start(any())).thenReturn(progress("job-1", "RUNNING"));
+
+        mockMvc.perform(post(ADMIN + "/dlq/replay")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(replayRequest(List.of("TimeoutException")))))
+                .andExpect(status().isAccepted())
+                .andExpect(jsonPath("$.jobId").value("job-1"));
+    }
+
+    @Test
+    void testStartReplayWhileAJobRunsReturnsConflictWithThatJob() throws Exception {
+        when(replayService.start(any())).thenReturn(null);
+        when(replayService.progress()).thenReturn(progress("running-job", "RUNNING"));
+
+        mockMvc.perform(post(ADMIN + "/dlq/replay")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(replayRequest(List.of("TimeoutException")))))
+                .andExpect(status().isConflict())
+                .andExpect(jsonPath("$.jobId").value("running-job"));
+    }
+
+    @Test
+    void testStartReplayWithoutGroupsIsRejected() throws Exception {
+        mockMvc.perform(post(ADMIN + "/dlq/replay")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(replayRequest(List.of()))))
+                .andExpect(status().isBadRequest());
+
+        verify(replayService, never()).start(any());
+    }
+
+    @Test
+    void testReplayProgressAndStopWithoutJobReturnNotFound() throws Exception {
+        when(replayService.progress()).thenReturn(null);
+        when(replayService.stop()).thenReturn(null);
+
+        mockMvc.perform(get(ADMIN + "/dlq/replay")).andExpect(status().isNotFound());
+        mockMvc.perform(delete(ADMIN + "/dlq/replay")).andExpect(status().isNotFound());
+    }
+
+    @Test
+    void testStopReplayReturnsTheStoppedJob() throws Exception {
+        when(replayService.stop()).thenReturn(progress("job-1", "STOPPED"));
+
+        mockMvc.perform(delete(ADMIN + "/dlq/replay"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.state").value("STOPPED"));
+    }
+
+    @Test
+    void testStreamReplayNeedsExactlyOneOfOffsetAndFrom() throws Exception {
+        when(streamConsumer.status()).thenReturn(new StreamStatus(true, true, 10, null));
+
+        mockMvc.perform(post(ADMIN + "/stream/replay")).andExpect(status().isBadRequest());
+        mockMvc.perform(post(ADMIN + "/stream/replay")
+                        .param("offset", "5")
+                        .param("from", "2026-01-01T00:00:00Z"))
+                .andExpect(status().isBadRequest());
+
+        verify(streamConsumer, never()).replayFrom(anyLong());
+        verify(streamConsumer, never()).replayFrom(any(Instant.class));
+    }
+
+    @Test
+    void testStreamReplayFromOffset() throws Exception {
+        when(streamConsumer.status()).thenReturn(new StreamStatus(true, true, 10, null));
+        when(streamConsumer.replayFrom(5L)).thenReturn(new StreamStatus(true, true, 10, "5"));
+
+        mockMvc.perform(post(ADMIN + "/stream/replay").param("offset", "5"))
+                .andExpect(status().isAccepted())
+                .andExpect(jsonPath("$.pendingRewind").value("5"));
+    }
+
+    @Test
+    void testStreamReplayWithStreamDisabledReturnsConflict() throws Exception {
+        when(streamConsumer.status()).thenReturn(new StreamStatus(false, false, -1, null));
+
+        mockMvc.perform(post(ADMIN + "/stream/replay").param("offset", "5"))
+                .andExpect(status().isConflict());
+    }
+
+    @Test
+    void testArchiveRejectsLimitBelowOne() throws Exception {
+        when(archive.isEnabled()).thenReturn(true);
+
+        mockMvc.perform(get(ADMIN + "/archive").param("limit", "0"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void testRecentRejectsLimitBelowOneAndBadFilters() throws Exception {
+        when(recentRecords.isEnabled()).thenReturn(true);
+        when(recentRecords.query(eq("not-an-ip"), any(), any(), any(), any(), anyInt()))
+                .thenThrow(new IllegalArgumentException("bad ip"));
+
+        mockMvc.perform(get(ADMIN + "/recent").param("limit", "0"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get(ADMIN + "/recent").param("ip", "not-an-ip"))
+                .andExpect(status().isBadRequest());
+    }
+
+    private static ReplayRequest replayRequest(List<String> groups) {
+        return new ReplayRequest(groups, null, null, null, null);
+    }
+
+    private static ReplayProgress progress(String jobId, String state) {
+        return new ReplayProgress(jobId, state, 0, 0, 0, 0, 0, Map.of(), Instant.now(), null, null);
+    }
+}
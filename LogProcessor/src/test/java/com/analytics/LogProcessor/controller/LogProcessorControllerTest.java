@@ -3,7 +3,12 @@ package com.analytics.LogProcessor.controller;
 import com.analytics.LogProcessor.model.ActivityRecord;
 import com.analytics.LogProcessor.model.IngestRequest;
 import com.analytics.LogProcessor.model.IngestResponse;
+import com.analytics.LogProcessor.model.IngestTicketStatus;
 import com.analytics.LogProcessor.service.IngestService;
+import com.analytics.LogProcessor.service.IngestTicketService;
+import com.analytics.LogProcessor.service.MetricsService;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.github.luben.zstd.Zstd;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -12,11 +17,16 @@ import org.springframework.http.MediaType;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.servlet.MockMvc;
 
+import java.io.ByteArrayOutputStream;
+import java.time.Instant;
 import java.util.Arrays;
 import java.util.List;
+import java.util.zip.GZIPOutputStream;
 
 import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
@@ -35,6 +45,12 @@ class LogProcessorControllerTest {
     @MockitoBean
     private IngestService ingestService;
 
+    @MockitoBean
+    private IngestTicketService ticketService;
+
+    @MockitoBean
+    private MetricsService metricsService;
+
     @Test
     void testIngestSuccess() throws Exception {
         // Arrange
@@ -103,5 +119,95 @@ class LogProcessorControllerTest {
                 .andExpect(status().isBadRequest());
     }
 
-}
+    @Test
+    void testIngestGzipCompressedJson() throws Exception {
+        when(ingestService.ingest(anyList(), anyString())).thenReturn(IngestResponse.builder().recordsIngested(2).build());
+        byte[] json = objectMapper.writeValueAsBytes(twoRecords());
+        ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(gzipped)) {
+            gzip.write(json);
+        }
+
+        mockMvc.perform(post("/private/v1/ingest")
+                        .header("Authorization", "test-token")
+                        .header("Content-Encoding", "gzip")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(gzipped.toByteArray()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.recordsIngested").value(2));
+        verify(metricsService).recordIngestBytes(gzipped.size(), json.length);
+    }
+
+    @Test
+    void testIngestZstdCompressedCbor() throws Exception {
+        when(ingestService.ingest(anyList(), anyString())).thenReturn(IngestResponse.builder().recordsIngested(2).build());
+        byte[] cbor = new CBORMapper().writeValueAsBytes(twoRecords());
+
+        mockMvc.perform(post("/private/v1/ingest")
+                        .header("Authorization", "test-token")
+                        .header("Content-Encoding", "zstd")
+                        .contentType(MediaType.parseMediaType("application/cbor"))
+                        .content(Zstd.compress(cbor)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.recordsIngested").value(2));
+    }
+
+    @Test
+    void testIngestUnsupportedEncoding() throws Exception {
+        mockMvc.perform(post("/private/v1/ingest")
+                        .header("Authorization", "test-token")
+                        .header("Content-Encoding", "br")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(new byte[] {1, 2, 3}))
+                .andExpect(status().isUnsupportedMediaType());
+    }
+
+    @Test
+    void testIngestCorruptGzipBody() throws Exception {
+        mockMvc.perform(post("/private/v1/ingest")
+                        .header("Authorization", "test-token")
+                        .header("Content-Encoding", "gzip")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"activityRecordList\":[]}"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void testIngestAsyncReturnsTicket() throws Exception {
+        when(ticketService.submit(anyList(), anyString())).thenReturn(new IngestTicketStatus("t-1",
+                IngestTicketStatus.Status.QUEUED, 2, 0, 0, 0, 0, List.of(), Instant.now(), null));
+
+        mockMvc.perform(post("/private/v1/ingest/async")
+                        .header("Authorization", "test-token")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(twoRecords())))
+                .andExpect(status().isAccepted())
+                .andExpect(header().string("Location", "/private/v1/ingest/tickets/t-1"))
+                .andExpect(jsonPath("$.status").value("QUEUED"));
+    }
+
+    @Test
+    void testIngestAsyncQueueFull() throws Exception {
+        when(ticketService.submit(anyList(), anyString())).thenReturn(null);
 
+        mockMvc.perform(post("/private/v1/ingest/async")
+                        .header("Authorization", "test-token")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(twoRecords())))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string("Retry-After", "1"));
+    }
+
+    @Test
+    void testUnknownTicket() throws Exception {
+        mockMvc.perform(get("/private/v1/ingest/tickets/missing"))
+                .andExpect(status().isNotFound());
+    }
+
+    private static IngestRequest twoRecords() {
+        return new IngestRequest(Arrays.asList(
+                new ActivityRecord(1L, "asset1", "192.168.1.1", "phishing"),
+                new ActivityRecord(2L, "asset2", "10.0.0.1", "phishing")
+        ));
+    }
+}
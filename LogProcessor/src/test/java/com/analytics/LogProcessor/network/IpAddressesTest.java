@@ -0,0 +1,30 @@
+package com.analytics.LogProcessor.network;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for IpAddresses
+ */
+class IpAddressesTest {
+
+    @Test
+    void testIpv6LiteralsAreParsedWithTheirZoneDropped() {
+        byte[] bytes = IpAddresses.ipv6Bytes("2001:db8::5");
+        assertEquals(0x20010db800000000L, IpAddresses.high64(bytes));
+        assertEquals(5L, IpAddresses.low64(bytes));
+        assertNotNull(IpAddresses.ipv6Bytes("fe80::1%eth0"));
+        assertEquals(0x08080808L, IpAddresses.mappedIpv4(IpAddresses.ipv6Bytes("::ffff:8.8.8.8")));
+        assertEquals(-1, IpAddresses.mappedIpv4(IpAddresses.ipv6Bytes("::1")));
+    }
+
+    @Test
+    void testHostNamesAreRejectedWithoutALookup() {
+        assertNull(IpAddresses.ipv6Bytes("localhost:80"));
+        assertNull(IpAddresses.ipv6Bytes("example.com:443"));
+        assertNull(IpAddresses.ipv6Bytes("[::1]"));
+        assertNull(IpAddresses.ipv6Bytes(":"));
+        assertThrows(IllegalArgumentException.class, () -> CidrBlock.parse("localhost:80/32"));
+    }
+}
@@ -0,0 +1,94 @@
+package com.analytics.LogProcessor.network;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for LocalAsnResolver and AsnRangeTable
+ */
+class LocalAsnResolverTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testMostSpecificPrefixWins() {
+        AsnRangeTable table = AsnRangeTable.build(false, List.of(
+                prefix("10.0.0.0/8", 100),
+                prefix("10.1.0.0/16", 200),
+                prefix("10.1.2.0/24", 300),
+                prefix("192.168.0.0/16", 400)
+        ));
+
+        assertEquals(100, table.lookup(IpAddresses.parseIpv4("10.0.0.1")));
+        assertEquals(200, table.lookup(IpAddresses.parseIpv4("10.1.3.4")));
+        assertEquals(300, table.lookup(IpAddresses.parseIpv4("10.1.2.255")));
+        assertEquals(200, table.lookup(IpAddresses.parseIpv4("10.1.255.255")));
+        assertEquals(100, table.lookup(IpAddresses.parseIpv4("10.255.255.255")));
+        assertEquals(400, table.lookup(IpAddresses.parseIpv4("192.168.1.1")));
+        assertEquals(AsnRangeTable.NO_ASN, table.lookup(IpAddresses.parseIpv4("11.0.0.1")));
+        assertEquals(AsnRangeTable.NO_ASN, table.lookup(IpAddresses.parseIpv4("9.255.255.255")));
+    }
+
+    @Test
+    void testIpv6PrefixesUpToTheTopOfTheSpace() {
+        AsnRangeTable table = AsnRangeTable.build(true, List.of(
+                prefix("2001:db8::/32", 64500),
+                prefix("2001:db8:1::/48", 64501),
+                prefix("ff00::/8", 64502)
+        ));
+
+        assertEquals(64500, table.lookup(IpAddresses.parseIpv6Prefix("2001:db8:2::1")));
+        assertEquals(64501, table.lookup(IpAddresses.parseIpv6Prefix("2001:db8:1:ffff::1")));
+        assertEquals(64502, table.lookup(IpAddresses.parseIpv6Prefix("ffff:ffff:ffff:ffff::")));
+        assertEquals(AsnRangeTable.NO_ASN, table.lookup(IpAddresses.parseIpv6Prefix("2001:db9::1")));
+    }
+
+    @Test
+    void testLoadsDumpFileAndSkipsMalformedLines() throws Exception {
+        Path dump = tempDir.resolve("ipasn.dat");
+        Files.writeString(dump, """
+                ; IP-ASN32-DAT file
+                1.0.0.0/24\t13335
+                8.8.8.0/24 AS15169
+                2606:4700::/32\t13335
+                not-a-prefix\t1
+                """);
+
+        LocalAsnResolver resolver = new LocalAsnResolver(true, dump.toString(), Duration.ofDays(7));
+        resolver.load();
+
+        assertTrue(resolver.isAvailable());
+        assertEquals(13335, resolver.lookup("1.0.0.1"));
+        assertEquals(15169, resolver.lookup("8.8.8.8"));
+        assertEquals(13335, resolver.lookup("2606:4700:10::1"));
+        assertEquals(AsnRangeTable.NO_ASN, resolver.lookup("9.9.9.9"));
+        assertEquals(AsnRangeTable.NO_ASN, resolver.lookup("localhost"));
+    }
+
+    @Test
+    void testStaleDatasetIsIgnored() throws Exception {
+        Path dump = tempDir.resolve("ipasn.dat");
+        Files.writeString(dump, "1.0.0.0/24\t13335\n");
+        Files.setLastModifiedTime(dump, FileTime.from(Instant.now().minus(Duration.ofDays(30))));
+
+        LocalAsnResolver resolver = new LocalAsnResolver(true, dump.toString(), Duration.ofDays(7));
+        resolver.load();
+
+        assertFalse(resolver.isAvailable());
+        assertEquals(AsnRangeTable.NO_ASN, resolver.lookup("1.0.0.1"));
+    }
+
+    private static AsnRangeTable.Prefix prefix(String cidr, int asn) {
+        return new AsnRangeTable.Prefix(CidrBlock.parse(cidr), asn);
+    }
+}
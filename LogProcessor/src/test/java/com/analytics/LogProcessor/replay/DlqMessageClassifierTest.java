@@ -0,0 +1,78 @@
+package com.analytics.LogProcessor.replay;
+
+import com.analytics.LogProcessor.consumer.EnrichmentConsumer;
+import com.analytics.LogProcessor.model.ActivityRecord;
+import com.analytics.LogProcessor.model.EnrichedRecord;
+import com.analytics.LogProcessor.service.AnalyticsDispatcher;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for DlqMessageClassifier
+ */
+class DlqMessageClassifierTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final DlqMessageClassifier classifier =
+            new DlqMessageClassifier(objectMapper, "raw-records-queue", "enriched-records-queue");
+
+    @Test
+    void testFailedRecordWrapperIsGroupedByErrorTypeAndReplayedToRaw() throws Exception {
+        ActivityRecord record = new ActivityRecord(1L, "asset1", "8.8.8.8", "phishing");
+        byte[] body = objectMapper.writeValueAsBytes(
+                new EnrichmentConsumer.FailedRecordMessage(record, "WebClientResponseException", "503 Service Unavailable"));
+
+        DlqMessageClassifier.Classified classified = classifier.classify(new Message(body, new MessageProperties()));
+
+        assertEquals("WebClientResponseException", classified.group());
+        assertEquals(DlqMessageClassifier.Stage.RAW, classified.stage());
+        assertEquals(record, classified.payload());
+        assertEquals("503 Service Unavailable", classified.error());
+    }
+
+    @Test
+    void testRecordRefusedByAnalyticsIsGroupedByStatusAndReplayedToEnriched() throws Exception {
+        EnrichedRecord record = new EnrichedRecord(3L, "asset3", "9.9.9.9", "T1566", "AS19281", 8L);
+        byte[] body = objectMapper.writeValueAsBytes(
+                new AnalyticsDispatcher.FailedAnalyticsRecord(record, "AnalyticsRejected:400", "400 Bad Request"));
+
+        DlqMessageClassifier.Classified classified = classifier.classify(new Message(body, new MessageProperties()));
+
+        assertEquals("AnalyticsRejected:400", classified.group());
+        assertEquals(DlqMessageClassifier.Stage.ENRICHED, classified.stage());
+        assertEquals(record, classified.payload());
+        assertEquals("400 Bad Request", classified.error());
+    }
+
+    @Test
+    void testDeadLetteredEnrichedRecordGoesBackToEnrichedStage() throws Exception {
+        EnrichedRecord record = new EnrichedRecord(2L, "asset2", "1.1.1.1", "T1566", "AS13335", 7L);
+        MessageProperties properties = new MessageProperties();
+        properties.setHeader("x-death", List.of(Map.of("queue", "enriched-records-queue", "reason", "rejected")));
+
+        DlqMessageClassifier.Classified classified =
+                classifier.classify(new Message(objectMapper.writeValueAsBytes(record), properties));
+
+        assertEquals("rejected@enriched-records-queue", classified.group());
+        assertEquals(DlqMessageClassifier.Stage.ENRICHED, classified.stage());
+        assertEquals(record, classified.payload());
+    }
+
+    @Test
+    void testUnknownPayloadIsNotReplayable() {
+        Message garbage = new Message("not json".getBytes(StandardCharsets.UTF_8), new MessageProperties());
+        Message plain = new Message("{\"id\":1}".getBytes(StandardCharsets.UTF_8), new MessageProperties());
+
+        assertFalse(classifier.classify(garbage).isReplayable());
+        assertEquals(DlqMessageClassifier.UNREADABLE, classifier.classify(plain).group());
+        assertFalse(classifier.classify(plain).isReplayable());
+    }
+}
@@ -0,0 +1,154 @@
+package com.analytics.LogProcessor.replay;
+
+import com.analytics.LogProcessor.consumer.EnrichmentConsumer;
+import com.analytics.LogProcessor.model.ActivityRecord;
+import com.analytics.LogProcessor.model.DlqGroupSummary;
+import com.analytics.LogProcessor.model.ReplayProgress;
+import com.analytics.LogProcessor.model.ReplayRequest;
+import com.analytics.LogProcessor.service.MetricsService;
+import com.analytics.LogProcessor.service.RawShardLayout;
+import com.analytics.LogProcessor.service.TenantRegistry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Envelope;
+import com.rabbitmq.client.GetResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.MessagePostProcessor;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.ChannelCallback;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for DlqReplayService
+ */
+class DlqReplayServiceTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private RabbitTemplate rabbitTemplate;
+    private Channel channel;
+    private MetricsService metricsService;
+    private DlqReplayService replayService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        rabbitTemplate = mock(RabbitTemplate.class);
+        channel = mock(Channel.class);
+        when(rabbitTemplate.execute(any())).thenAnswer(invocation ->
+                invocation.<ChannelCallback<?>>getArgument(0).doInRabbit(channel));
+        metricsService = new MetricsService();
+        DlqMessageClassifier classifier = new DlqMessageClassifier(objectMapper, "raw-records-queue", "enriched-records-queue");
+        replayService = new DlqReplayService(rabbitTemplate, classifier, metricsService,
+                new RawShardLayout(false, 1, "all", "raw-records-queue", "raw-sharded"),
+                new TenantRegistry("", "", 1, "enriched-records-queue"),
+                "dead-letter-queue", "main-exchange", 1000, 2, 0.5, 2);
+        confirmRepublishes(-1);
+    }
+
+    @Test
+    void testSummaryGroupsByErrorTypeAndRequeuesEverything() throws Exception {
+        when(channel.basicGet("dead-letter-queue", false))
+                .thenReturn(failed(1, "TimeoutException"), failed(2, "TimeoutException"), failed(3, "AnalyticsException"), null);
+
+        List<DlqGroupSummary> summary = replayService.summarize(100);
+
+        assertEquals(2, summary.size());
+        assertEquals(new DlqGroupSummary("TimeoutException", "RAW", 2, "boom"), summary.get(0));
+        assertEquals(new DlqGroupSummary("AnalyticsException", "RAW", 1, "boom"), summary.get(1));
+        verify(channel).basicNack(3, true, true);
+    }
+
+    @Test
+    void testReplaysSelectedGroupAndRequeuesTheRest() throws Exception {
+        when(channel.messageCount("dead-letter-queue")).thenReturn(3L);
+        when(channel.basicGet("dead-letter-queue", false))
+                .thenReturn(failed(1, "TimeoutException"), failed(2, "BadRequest"), failed(3, "TimeoutException"), null);
+
+        replayService.start(new ReplayRequest(List.of("TimeoutException"), null, null, null, null));
+        ReplayProgress progress = awaitFinished();
+
+        assertEquals("COMPLETED", progress.state());
+        assertEquals(3, progress.scanned());
+        assertEquals(2, progress.replayed());
+        assertEquals(1, progress.skipped());
+        assertEquals(2L, progress.replayedByGroup().get("TimeoutException"));
+        verify(rabbitTemplate, times(2)).convertAndSend(eq("main-exchange"), eq("raw"), any(ActivityRecord.class),
+                any(MessagePostProcessor.class), any(CorrelationData.class));
+        verify(channel).basicAck(1, false);
+        verify(channel).basicAck(3, false);
+        verify(channel).basicNack(2, false, true);
+    }
+
+    @Test
+    void testUnconfirmedRepublishIsRequeuedInsteadOfAcked() throws Exception {
+        when(channel.messageCount("dead-letter-queue")).thenReturn(2L);
+        when(channel.basicGet("dead-letter-queue", false))
+                .thenReturn(failed(1, "TimeoutException"), failed(2, "TimeoutException"), null);
+        confirmRepublishes(1);
+
+        replayService.start(new ReplayRequest(List.of("TimeoutException"), null, null, null, null));
+        ReplayProgress progress = awaitFinished();
+
+        assertEquals(1, progress.replayed());
+        assertEquals(1, progress.publishFailures());
+        verify(channel).basicAck(2, false);
+        verify(channel, never()).basicAck(1, false);
+        verify(channel).basicNack(1, false, true);
+    }
+
+    @Test
+    void testStopsWhenPipelineFailureRateClimbs() throws Exception {
+        when(channel.messageCount("dead-letter-queue")).thenReturn(100L);
+        when(channel.basicGet("dead-letter-queue", false)).thenAnswer(invocation -> {
+            // every replayed record fails enrichment again
+            metricsService.incrementEnrichmentFailures();
+            return failed(System.nanoTime(), "TimeoutException");
+        });
+
+        replayService.start(new ReplayRequest(List.of("TimeoutException"), null, null, null, null));
+        ReplayProgress progress = awaitFinished();
+
+        assertEquals("STOPPED", progress.state());
+        assertTrue(progress.stopReason().startsWith("pipeline failure rate"));
+        assertTrue(progress.scanned() < 100);
+    }
+
+    /**
+     * Acks every republish except the one of the record with id {@code nackedId}.
+     */
+    private void confirmRepublishes(long nackedId) {
+        doAnswer(invocation -> {
+            ActivityRecord record = invocation.getArgument(2);
+            invocation.<CorrelationData>getArgument(4).getFuture()
+                    .complete(new CorrelationData.Confirm(record.id() != nackedId, null));
+            return null;
+        }).when(rabbitTemplate).convertAndSend(anyString(), anyString(), any(ActivityRecord.class),
+                any(MessagePostProcessor.class), any(CorrelationData.class));
+    }
+
+    private ReplayProgress awaitFinished() throws InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            ReplayProgress progress = replayService.progress();
+            if (!"RUNNING".equals(progress.state())) {
+                return progress;
+            }
+            Thread.sleep(50);
+        }
+        fail("replay job did not finish");
+        return null;
+    }
+
+    private GetResponse failed(long tag, String errorType) throws Exception {
+        ActivityRecord record = new ActivityRecord(tag, "asset", "8.8.8.8", "phishing");
+        byte[] body = objectMapper.writeValueAsBytes(new EnrichmentConsumer.FailedRecordMessage(record, errorType, "boom"));
+        return new GetResponse(new Envelope(tag, false, "", "dead-letter-queue"),
+                new AMQP.BasicProperties.Builder().build(), body, 0);
+    }
+}
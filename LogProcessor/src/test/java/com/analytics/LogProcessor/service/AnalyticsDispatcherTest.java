@@ -0,0 +1,295 @@
+package com.analytics.LogProcessor.service;
+
+import com.analytics.LogProcessor.exception.AnalyticsException;
+import com.analytics.LogProcessor.exception.RateLimitExceededException;
+import com.analytics.LogProcessor.model.AnalyticsBatchResponse;
+import com.analytics.LogProcessor.model.EnrichedRecord;
+import com.analytics.LogProcessor.service.AnalyticsDispatcher.PendingRecord;
+import com.analytics.LogProcessor.service.AnalyticsDispatcher.PreparedBatch;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rabbitmq.client.Channel;
+import io.github.resilience4j.ratelimiter.RateLimiterConfig;
+import io.github.resilience4j.ratelimiter.RateLimiterRegistry;
+import io.github.resilience4j.retry.RetryConfig;
+import io.github.resilience4j.retry.RetryRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.springframework.amqp.core.MessagePostProcessor;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for AnalyticsDispatcher
+ */
+class AnalyticsDispatcherTest {
+
+    private AnalyticsService analyticsService;
+    private MetricsService metricsService;
+    private Channel channel;
+    private RabbitTemplate rabbitTemplate;
+    private AnalyticsDispatcher dispatcher;
+    private DeliveryLedger ledger;
+
+    @TempDir
+    Path dir;
+
+    @BeforeEach
+    void setUp() {
+        analyticsService = mock(AnalyticsService.class);
+        metricsService = new MetricsService();
+        channel = mock(Channel.class);
+        rabbitTemplate = mock(RabbitTemplate.class);
+        ledger = new DeliveryLedger(true, dir.resolve("ledger.bin").toString(), 1000);
+        ledger.load();
+        dispatcher = new AnalyticsDispatcher(analyticsService, metricsService,
+                new ConcurrencyLimiter(16, 8, 1), new ObjectMapper(),
+                new TenantRegistry("", "", 1, "enriched"), ledger,
+                new AnalyticsRateTuner(RateLimiterRegistry.of(RateLimiterConfig.custom()
+                        .limitForPeriod(1).limitRefreshPeriod(Duration.ofMillis(50)).timeoutDuration(Duration.ofSeconds(1)).build()),
+                        metricsService, true, Duration.ofMillis(10), Duration.ofSeconds(1), 1, 2),
+                new AnalyticsLoadShedder(mock(QueueLagMonitor.class), metricsService, false, Duration.ofMinutes(15), ""),
+                RetryRegistry.of(RetryConfig.custom().maxAttempts(2).build()),
+                rabbitTemplate, "dead-letter-queue",
+                2, 1, 50);
+    }
+
+    @AfterEach
+    void tearDown() {
+        dispatcher.stop();
+        ledger.close();
+    }
+
+    @Test
+    void testPrepareSerializesBatchAsJsonArray() {
+        PreparedBatch batch = dispatcher.prepare(List.of(pending(1L, 1), pending(2L, 2)));
+
+        String json = new String(batch.body(), StandardCharsets.UTF_8);
+        assertTrue(json.startsWith("[{\"id\":1,"));
+        assertTrue(json.contains("\"correlationId\":102"));
+        assertEquals(2, batch.records().size());
+    }
+
+    @Test
+    void testPrepareJoinsDeliveredBodiesAsIs() throws Exception {
+        ObjectMapper objectMapper = new ObjectMapper();
+        PreparedBatch batch = dispatcher.prepare(List.of(withBody(pending(1L, 1), " "), withBody(pending(2L, 2), " ")));
+
+        assertEquals("[" + objectMapper.writeValueAsString(pending(1L, 1).record()) + " ,"
+                + objectMapper.writeValueAsString(pending(2L, 2).record()) + " ]",
+                new String(batch.body(), StandardCharsets.UTF_8));
+        assertEquals(2, objectMapper.readTree(batch.body()).size());
+    }
+
+    @Test
+    void testPrepareSerializesRecordsWhenABodyIsMissing() throws Exception {
+        PreparedBatch batch = dispatcher.prepare(List.of(withBody(pending(1L, 1), " "), pending(2L, 2)));
+
+        String json = new String(batch.body(), StandardCharsets.UTF_8);
+        assertTrue(json.startsWith("[{\"id\":1,"));
+        assertFalse(json.contains(" "));
+    }
+
+    @Test
+    void testSendAcksEveryRecordOnSuccess() throws Exception {
+        when(analyticsService.sendBatchToAnalytics(any(byte[].class), eq(2)))
+                .thenReturn(new AnalyticsBatchResponse("Success", 2));
+
+        dispatcher.send(dispatcher.prepare(List.of(pending(1L, 1), pending(2L, 2))));
+
+        verify(channel).basicAck(1, false);
+        verify(channel).basicAck(2, false);
+        assertEquals(2, metricsService.getRecordsSentToAnalytics().get());
+        assertEquals(1, metricsService.getBatchesProcessed().get());
+    }
+
+    @Test
+    void testSendRejectsEveryRecordOnceAttemptsAreUsedUp() throws Exception {
+        when(analyticsService.sendBatchToAnalytics(any(byte[].class), anyInt()))
+                .thenThrow(new AnalyticsException("boom", new RuntimeException()));
+        PreparedBatch batch = dispatcher.prepare(List.of(pending(1L, 1), pending(2L, 2)));
+
+        // first failure asks for another attempt without touching the records
+        assertEquals(1, dispatcher.send(batch).size());
+        verify(channel, never()).basicNack(anyLong(), anyBoolean(), anyBoolean());
+
+        assertTrue(dispatcher.send(batch.retried()).isEmpty());
+        verify(channel).basicNack(1, false, false);
+        verify(channel).basicNack(2, false, false);
+        verify(channel, never()).basicAck(anyLong(), anyBoolean());
+        assertEquals(2, metricsService.getAnalyticsFailures().get());
+        assertEquals(1, metricsService.getAnalyticsRetriesScheduled().get());
+    }
+
+    @Test
+    void testClientErrorsAreRejectedWithoutRetry() throws Exception {
+        when(analyticsService.sendBatchToAnalytics(any(byte[].class), anyInt()))
+                .thenThrow(new AnalyticsException("unauthorized",
+                        HttpClientErrorException.create(HttpStatus.UNAUTHORIZED, "Unauthorized", null, null, null)));
+
+        assertTrue(dispatcher.send(dispatcher.prepare(List.of(pending(1L, 1), pending(2L, 2)))).isEmpty());
+
+        verify(channel).basicNack(1, false, false);
+        assertEquals(0, metricsService.getAnalyticsRetriesScheduled().get());
+    }
+
+    @Test
+    void testRateLimitedBatchGetsAnotherAttempt() throws Exception {
+        when(analyticsService.sendBatchToAnalytics(any(byte[].class), anyInt()))
+                .thenThrow(new RateLimitExceededException("slow down", null));
+
+        assertEquals(1, dispatcher.send(dispatcher.prepare(List.of(pending(1L, 1)))).size());
+
+        verify(channel, never()).basicNack(anyLong(), anyBoolean(), anyBoolean());
+    }
+
+    @Test
+    void testFailedBatchTakesTheNextPermitAheadOfNewerBatches() throws Exception {
+        List<Integer> sentSizes = new CopyOnWriteArrayList<>();
+        when(analyticsService.sendBatchToAnalytics(any(byte[].class), anyInt())).thenAnswer(invocation -> {
+            int size = invocation.getArgument(1);
+            sentSizes.add(size);
+            if (sentSizes.size() == 1) {
+                throw new AnalyticsException("upstream hiccup", new RuntimeException());
+            }
+            return new AnalyticsBatchResponse("Success", size);
+        });
+        dispatcher.start();
+
+        dispatcher.accept(List.of(pending(1L, 1), pending(2L, 2)));
+        dispatcher.accept(List.of(pending(3L, 3)));
+
+        verify(channel, timeout(3000)).basicAck(3, false);
+        // failed batch of 2, its retry, then the newer batch of 1
+        assertEquals(List.of(2, 2, 1), sentSizes);
+        verify(channel).basicAck(1, false);
+        verify(channel).basicAck(2, false);
+        verify(channel, never()).basicNack(anyLong(), anyBoolean(), anyBoolean());
+    }
+
+    @Test
+    void testPipelineAssemblesAndSendsWhileListenerReturns() throws Exception {
+        when(analyticsService.sendBatchToAnalytics(any(byte[].class), anyInt()))
+                .thenReturn(new AnalyticsBatchResponse("Success", 2));
+        dispatcher.start();
+
+        dispatcher.accept(List.of(pending(1L, 1), pending(2L, 2), pending(3L, 3)));
+
+        // two full batches of 2 and 1 (after linger) end up acked
+        verify(channel, timeout(2000)).basicAck(3, false);
+        verify(analyticsService, timeout(2000).times(2)).sendBatchToAnalytics(any(byte[].class), anyInt());
+        verify(channel).basicAck(1, false);
+        verify(channel).basicAck(2, false);
+    }
+
+    @Test
+    void testAlreadyDeliveredRecordsAreAckedWithoutBeingSentAgain() throws Exception {
+        when(analyticsService.sendBatchToAnalytics(any(byte[].class), anyInt()))
+                .thenReturn(new AnalyticsBatchResponse("Success", 2));
+        dispatcher.send(dispatcher.prepare(List.of(pending(1L, 1), pending(2L, 2))));
+
+        // the same records come back (redelivery or DLQ replay) together with a new one
+        dispatcher.send(dispatcher.prepare(List.of(pending(1L, 3), pending(2L, 4), pending(5L, 5))));
+
+        verify(channel).basicAck(3, false);
+        verify(channel).basicAck(4, false);
+        verify(analyticsService).sendBatchToAnalytics(any(byte[].class), eq(1));
+        assertEquals(2, metricsService.getAnalyticsRecordsDeduplicated().get());
+
+        // a batch of nothing but resends never reaches the API
+        dispatcher.send(dispatcher.prepare(List.of(pending(5L, 6))));
+        verify(channel).basicAck(6, false);
+        verify(analyticsService, times(2)).sendBatchToAnalytics(any(byte[].class), anyInt());
+    }
+
+    @Test
+    void testRecordsAreDeduplicatedByDeliveryIdNotRecordId() throws Exception {
+        when(analyticsService.sendBatchToAnalytics(any(byte[].class), anyInt()))
+                .thenAnswer(invocation -> new AnalyticsBatchResponse("Success", invocation.getArgument(1, Integer.class)));
+        dispatcher.send(dispatcher.prepare(List.of(pending(1L, 1, 11L), pending(2L, 2, 12L))));
+
+        // the same file uploaded again: same record ids, new deliveries; records without a delivery id always go
+        dispatcher.send(dispatcher.prepare(List.of(pending(1L, 3, 21L), pending(2L, 4, 22L), pending(2L, 5, null))));
+
+        verify(analyticsService).sendBatchToAnalytics(any(byte[].class), eq(2));
+        verify(analyticsService).sendBatchToAnalytics(any(byte[].class), eq(3));
+        assertEquals(0, metricsService.getAnalyticsRecordsDeduplicated().get());
+        assertEquals(5, metricsService.getRecordsSentToAnalytics().get());
+    }
+
+    @Test
+    void testBadRequestIsBisectedDownToThePoisonRecord() throws Exception {
+        when(analyticsService.sendBatchToAnalytics(any(byte[].class), anyInt())).thenAnswer(invocation -> {
+            String body = new String(invocation.getArgument(0, byte[].class), StandardCharsets.UTF_8);
+            if (body.contains("\"id\":3,")) {
+                throw new AnalyticsException("bad request",
+                        HttpClientErrorException.create(HttpStatus.BAD_REQUEST, "Bad Request", null, null, null));
+            }
+            return new AnalyticsBatchResponse("Success", invocation.getArgument(1, Integer.class));
+        });
+        doAnswer(invocation -> {
+            invocation.getArgument(3, CorrelationData.class).getFuture().complete(new CorrelationData.Confirm(true, null));
+            return null;
+        }).when(rabbitTemplate).convertAndSend(anyString(), any(Object.class), any(MessagePostProcessor.class), any(CorrelationData.class));
+
+        // a batch of 4 with record 3 bad: [1,2,3,4] -> [1,2] ok, [3,4] -> [3] poison, [4] ok
+        Deque<PreparedBatch> queue = new ArrayDeque<>(List.of(dispatcher.prepare(
+                List.of(pending(1L, 1), pending(2L, 2), pending(3L, 3), pending(4L, 4)))));
+        int sends = 0;
+        while (!queue.isEmpty()) {
+            List<PreparedBatch> followUps = dispatcher.send(queue.pollFirst());
+            for (int i = followUps.size() - 1; i >= 0; i--) {
+                queue.addFirst(followUps.get(i));
+            }
+            sends++;
+        }
+
+        assertEquals(5, sends);
+        ArgumentCaptor<Object> dead = ArgumentCaptor.forClass(Object.class);
+        verify(rabbitTemplate).convertAndSend(eq("dead-letter-queue"), dead.capture(),
+                any(MessagePostProcessor.class), any(CorrelationData.class));
+        AnalyticsDispatcher.FailedAnalyticsRecord failed = (AnalyticsDispatcher.FailedAnalyticsRecord) dead.getValue();
+        assertEquals(3L, failed.enrichedRecord().id());
+        assertEquals("AnalyticsRejected:400", failed.errorType());
+        // every record is acked: three delivered, the poison one once its DLQ copy is confirmed
+        for (long tag = 1; tag <= 4; tag++) {
+            verify(channel).basicAck(tag, false);
+        }
+        verify(channel, never()).basicNack(anyLong(), anyBoolean(), anyBoolean());
+        assertEquals(3, metricsService.getRecordsSentToAnalytics().get());
+        assertEquals(1, metricsService.getAnalyticsPoisonRecords().get());
+        assertEquals(2, metricsService.getAnalyticsBatchesBisected().get());
+    }
+
+    private PendingRecord pending(long id, long deliveryTag) {
+        return pending(id, deliveryTag, 1000 + id);
+    }
+
+    private PendingRecord pending(long id, long deliveryTag, Long deliveryId) {
+        long now = System.currentTimeMillis();
+        return new PendingRecord(new EnrichedRecord(id, "asset" + id, "10.0.0." + id, "T1566", "AS1", 100 + id),
+                channel, deliveryTag, TenantRegistry.DEFAULT_TENANT, now, now, null, deliveryId);
+    }
+
+    private static PendingRecord withBody(PendingRecord pending, String suffix) throws Exception {
+        byte[] body = (new ObjectMapper().writeValueAsString(pending.record()) + suffix).getBytes(StandardCharsets.UTF_8);
+        return new PendingRecord(pending.record(), pending.channel(), pending.deliveryTag(), pending.tenant(),
+                pending.receivedAt(), pending.ingestedAt(), body, pending.deliveryId());
+    }
+}
@@ -0,0 +1,104 @@
+package com.analytics.LogProcessor.service;
+
+import com.analytics.LogProcessor.model.EnrichedRecord;
+import com.analytics.LogProcessor.service.AnalyticsDispatcher.PendingRecord;
+import com.rabbitmq.client.Channel;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for AnalyticsLoadShedder
+ */
+class AnalyticsLoadShedderTest {
+
+    private QueueLagMonitor lagMonitor;
+    private MetricsService metricsService;
+    private final Channel channel = mock(Channel.class);
+    private AnalyticsLoadShedder shedder;
+
+    @BeforeEach
+    void setUp() {
+        lagMonitor = mock(QueueLagMonitor.class);
+        metricsService = new MetricsService();
+        shedder = new AnalyticsLoadShedder(lagMonitor, metricsService, true, Duration.ofMinutes(10),
+                "phishing=keep, T1189=sample:0.25, default=max-age:1h");
+    }
+
+    @Test
+    void testEverythingGoesOutWhileTheBacklogDrainsWithinTheSla() {
+        // 1000 records at 2/s drain in about 8 minutes
+        backlog(1000, 2.0);
+
+        long now = System.currentTimeMillis();
+        assertTrue(shedder.admit(pending(1, "T1133", now - Duration.ofHours(5).toMillis())));
+        assertFalse(shedder.isShedding());
+        assertEquals(500, shedder.getBacklogEtaSeconds(), 0.001);
+    }
+
+    @Test
+    void testOverTheSlaOldRecordsAreShedAndCriticalOnesKept() {
+        backlog(100_000, 2.0);
+        long now = System.currentTimeMillis();
+
+        assertFalse(shedder.admit(pending(1, "T1133", now - Duration.ofHours(2).toMillis())));
+        assertTrue(shedder.admit(pending(2, "T1133", now - Duration.ofMinutes(5).toMillis())));
+        assertTrue(shedder.admit(pending(3, "T1566", now - Duration.ofHours(2).toMillis())));
+        assertTrue(shedder.isShedding());
+        assertEquals(1, metricsService.getAnalyticsRecordsShed().get());
+    }
+
+    @Test
+    void testSampledCategoryKeepsRoughlyItsRatioAndDecidesTheSameOnRedelivery() {
+        backlog(100_000, 2.0);
+        long now = System.currentTimeMillis();
+
+        int kept = 0;
+        for (long id = 0; id < 10_000; id++) {
+            if (shedder.admit(pending(id, "T1189", now))) {
+                kept++;
+            }
+        }
+        assertEquals(2500, kept, 200);
+        assertEquals(10_000 - kept, metricsService.getAnalyticsRecordsSampledOut().get());
+        boolean first = shedder.admit(pending(42, "T1189", now));
+        assertEquals(first, shedder.admit(pending(42, "T1189", now)));
+    }
+
+    @Test
+    void testLearnedRateStandsInBeforeAnythingDrained() {
+        // one batch of 20 every 10 s
+        metricsService.setAnalyticsLearnedLimit(10_000, 20);
+        backlog(2000, 0);
+
+        shedder.admit(pending(1, "T1566", System.currentTimeMillis()));
+
+        assertEquals(1000, shedder.getBacklogEtaSeconds(), 0.001);
+        assertTrue(shedder.isShedding());
+    }
+
+    @Test
+    void testRulesAreParsedByNameOrTechniqueId() {
+        var rules = AnalyticsLoadShedder.parse("phishing=keep, T1189=sample:0.5, default=max-age:30m");
+
+        assertEquals(AnalyticsLoadShedder.Action.KEEP, rules.get("T1566").action());
+        assertEquals(0.5, rules.get("T1189").ratio());
+        assertEquals(Duration.ofMinutes(30), rules.get("default").maxAge());
+        assertThrows(IllegalArgumentException.class, () -> AnalyticsLoadShedder.parse("phishing=drop"));
+        assertThrows(IllegalArgumentException.class, () -> AnalyticsLoadShedder.parse("phishing=sample:2"));
+    }
+
+    private void backlog(long enrichedDepth, double drainRate) {
+        when(lagMonitor.getLatest()).thenReturn(
+                new QueueLagMonitor.Sample(0, enrichedDepth, drainRate, 0, System.nanoTime()));
+    }
+
+    private PendingRecord pending(long id, String category, long ingestedAt) {
+        return new PendingRecord(new EnrichedRecord(id, "asset", "8.8.8.8", category, "AS1", 1),
+                channel, id, TenantRegistry.DEFAULT_TENANT, System.currentTimeMillis(), ingestedAt, null, null);
+    }
+}
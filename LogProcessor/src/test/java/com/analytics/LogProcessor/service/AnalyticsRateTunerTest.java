@@ -0,0 +1,125 @@
+package com.analytics.LogProcessor.service;
+
+import io.github.resilience4j.ratelimiter.RateLimiter;
+import io.github.resilience4j.ratelimiter.RateLimiterConfig;
+import io.github.resilience4j.ratelimiter.RateLimiterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for AnalyticsRateTuner
+ */
+class AnalyticsRateTunerTest {
+
+    private RateLimiterRegistry registry;
+    private MetricsService metricsService;
+    private AnalyticsRateTuner tuner;
+
+    @BeforeEach
+    void setUp() {
+        registry = RateLimiterRegistry.of(RateLimiterConfig.custom()
+                .limitForPeriod(1).limitRefreshPeriod(Duration.ofSeconds(10)).timeoutDuration(Duration.ofSeconds(10)).build());
+        metricsService = new MetricsService();
+        tuner = new AnalyticsRateTuner(registry, metricsService, true,
+                Duration.ofSeconds(1), Duration.ofSeconds(60), 5, 20);
+    }
+
+    @Test
+    void testStartsFromTheConfiguredLimiter() {
+        assertEquals(Duration.ofSeconds(10), tuner.interval());
+        assertEquals(20, tuner.batchSize());
+        assertEquals(0, tuner.nanosUntilResume());
+        assertEquals(10_000, metricsService.getAnalyticsLearnedIntervalMs());
+    }
+
+    @Test
+    void testAdvertisedPolicyRaisesTheRateAndSwapsTheLimiter() {
+        RateLimiter original = tuner.rateLimiter();
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("RateLimit-Policy", "5;w=10");
+
+        tuner.onAccepted(headers);
+
+        assertEquals(Duration.ofSeconds(2), tuner.interval());
+        assertNotSame(original, tuner.rateLimiter());
+        assertSame(tuner.rateLimiter(), registry.rateLimiter("analyticsService"));
+        assertEquals(Duration.ofSeconds(2), tuner.rateLimiter().getRateLimiterConfig().getLimitRefreshPeriod());
+        // the swap does not hand out a free permit
+        assertTrue(tuner.rateLimiter().reservePermission() > Duration.ofSeconds(1).toNanos());
+        assertEquals(10.0, metricsService.analyticsLearnedRecordsPerSecond());
+    }
+
+    @Test
+    void testPlainLimitIsReadOverTheConfiguredWindowAndClamped() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("X-RateLimit-Limit", "100");
+
+        tuner.onAccepted(headers);
+
+        assertEquals(Duration.ofSeconds(1), tuner.interval());
+    }
+
+    @Test
+    void testTooManyRequestsBacksOffAndHoldsForRetryAfter() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RETRY_AFTER, "30");
+
+        tuner.onRateLimited(headers);
+
+        assertEquals(Duration.ofSeconds(30), tuner.interval());
+        assertEquals(10, tuner.batchSize());
+        assertTrue(tuner.nanosUntilResume() > Duration.ofSeconds(29).toNanos());
+        assertEquals(1, metricsService.getAnalyticsRateLimited().get());
+
+        tuner.onRateLimited(new HttpHeaders());
+        tuner.onRateLimited(new HttpHeaders());
+        assertEquals(Duration.ofSeconds(60), tuner.interval());
+        assertEquals(5, tuner.batchSize());
+    }
+
+    @Test
+    void testCleanResponsesRecoverTowardsTheTarget() {
+        tuner.onRateLimited(new HttpHeaders());
+        assertEquals(Duration.ofSeconds(20), tuner.interval());
+
+        tuner.onAccepted(new HttpHeaders());
+        assertEquals(Duration.ofSeconds(19), tuner.interval());
+        assertEquals(11, tuner.batchSize());
+
+        for (int i = 0; i < 50; i++) {
+            tuner.onAccepted(new HttpHeaders());
+        }
+        assertEquals(Duration.ofSeconds(10), tuner.interval());
+        assertEquals(20, tuner.batchSize());
+    }
+
+    @Test
+    void testExhaustedWindowHoldsUntilReset() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("X-RateLimit-Remaining", "0");
+        headers.set("X-RateLimit-Reset", "5");
+
+        tuner.onAccepted(headers);
+
+        assertTrue(tuner.nanosUntilResume() > Duration.ofSeconds(4).toNanos());
+    }
+
+    @Test
+    void testDisabledTunerKeepsTheConfiguredLimit() {
+        AnalyticsRateTuner fixed = new AnalyticsRateTuner(registry, metricsService, false,
+                Duration.ofSeconds(1), Duration.ofSeconds(60), 5, 20);
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RETRY_AFTER, "30");
+
+        fixed.onRateLimited(headers);
+
+        assertEquals(Duration.ofSeconds(10), fixed.interval());
+        assertEquals(20, fixed.batchSize());
+        assertEquals(0, fixed.nanosUntilResume());
+    }
+}
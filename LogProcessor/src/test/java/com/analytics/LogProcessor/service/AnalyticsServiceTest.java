@@ -1,21 +1,20 @@
 package com.analytics.LogProcessor.service;
 
+import com.analytics.LogProcessor.exception.AnalyticsException;
+import com.analytics.LogProcessor.exception.RateLimitExceededException;
 import com.analytics.LogProcessor.model.AnalyticsBatchResponse;
-import com.analytics.LogProcessor.model.EnrichedRecord;
-import io.github.resilience4j.ratelimiter.RateLimiter;
-import io.github.resilience4j.ratelimiter.RateLimiterRegistry;
-import io.github.resilience4j.retry.Retry;
-import io.github.resilience4j.retry.RetryRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
 import org.springframework.web.client.RestClient;
 
-import java.util.Arrays;
-import java.util.List;
+import java.nio.charset.StandardCharsets;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
@@ -40,54 +39,31 @@ class AnalyticsServiceTest {
     private RestClient.ResponseSpec responseSpec;
 
     @Mock
-    private RateLimiterRegistry rateLimiterRegistry;
-
-    @Mock
-    private RetryRegistry retryRegistry;
-
-    @Mock
-    private RateLimiter rateLimiter;
-
-    @Mock
-    private Retry retry;
+    private AnalyticsRateTuner rateTuner;
 
     private AnalyticsService analyticsService;
 
     @BeforeEach
     void setUp() {
-        when(rateLimiterRegistry.rateLimiter("analyticsService")).thenReturn(rateLimiter);
-        when(retryRegistry.retry("analyticsService")).thenReturn(retry);
-
-        // Configure default rate limiter behavior
-        when(rateLimiter.executeSupplier(any())).thenAnswer(invocation -> {
-            return invocation.getArgument(0, java.util.function.Supplier.class).get();
-        });
-
-        // Configure default retry behavior
-        when(retry.executeSupplier(any())).thenAnswer(invocation -> {
-            return invocation.getArgument(0, java.util.function.Supplier.class).get();
-        });
-
-        analyticsService = new AnalyticsService(analyticsRestClient, rateLimiterRegistry, retryRegistry);
+        analyticsService = new AnalyticsService(analyticsRestClient, rateTuner);
     }
 
     @Test
     void testSendBatchToAnalyticsSuccess() {
         // Arrange
-        List<EnrichedRecord> batch = Arrays.asList(
-                new EnrichedRecord(1L, "asset1", "192.168.1.1", "T1659", "ASN1337", 23517),
-                new EnrichedRecord(2L, "asset2", "192.168.1.2", "T1659", "ASN1337", 23518)
-        );
+        byte[] batch = ("[{\"id\":1,\"asset\":\"asset1\",\"ip\":\"192.168.1.1\",\"category\":\"T1659\",\"asn\":\"ASN1337\",\"correlationId\":23517},"
+                + "{\"id\":2,\"asset\":\"asset2\",\"ip\":\"192.168.1.2\",\"category\":\"T1659\",\"asn\":\"ASN1337\",\"correlationId\":23518}]")
+                .getBytes(StandardCharsets.UTF_8);
 
         AnalyticsBatchResponse expectedResponse = new AnalyticsBatchResponse("Success",2);
 
         when(analyticsRestClient.post()).thenReturn(requestBodyUriSpec);
-        when(requestBodyUriSpec.body(any())).thenReturn(requestBodySpec);
+        when(requestBodyUriSpec.body(any(byte[].class))).thenReturn(requestBodySpec);
         when(requestBodySpec.retrieve()).thenReturn(responseSpec);
-        when(responseSpec.body(AnalyticsBatchResponse.class)).thenReturn(expectedResponse);
+        when(responseSpec.toEntity(AnalyticsBatchResponse.class)).thenReturn(ResponseEntity.ok(expectedResponse));
 
         // Act
-        AnalyticsBatchResponse response = analyticsService.sendBatchToAnalytics(batch);
+        AnalyticsBatchResponse response = analyticsService.sendBatchToAnalytics(batch, 2);
 
         // Assert
         assertNotNull(response);
@@ -95,29 +71,46 @@ class AnalyticsServiceTest {
         assertEquals("Success", response.status());
 
         verify(analyticsRestClient).post();
-        verify(rateLimiter).executeSupplier(any());
-        verify(retry).executeSupplier(any());
+        verify(rateTuner).onAccepted(any());
     }
 
     @Test
     void testSendBatchToAnalyticsTooManyRequests() {
         // Arrange
-        List<EnrichedRecord> batch = List.of(
-                new EnrichedRecord(1L, "asset1", "192.168.1.1", "T1659", "ASN1337", 12889)
-        );
+        byte[] batch = "[{\"id\":1,\"asset\":\"asset1\",\"ip\":\"192.168.1.1\",\"category\":\"T1659\",\"asn\":\"ASN1337\",\"correlationId\":12889}]"
+                .getBytes(StandardCharsets.UTF_8);
 
         when(analyticsRestClient.post()).thenReturn(requestBodyUriSpec);
-        when(requestBodyUriSpec.body(any())).thenReturn(requestBodySpec);
+        when(requestBodyUriSpec.body(any(byte[].class))).thenReturn(requestBodySpec);
         when(requestBodySpec.retrieve()).thenReturn(responseSpec);
-        when(responseSpec.body(AnalyticsBatchResponse.class))
-                .thenThrow(HttpClientErrorException.TooManyRequests.class);
+        when(responseSpec.toEntity(AnalyticsBatchResponse.class))
+                .thenThrow(HttpClientErrorException.create(HttpStatus.TOO_MANY_REQUESTS, "Too Many Requests", null, null, null));
 
-        // Act & Assert
-        assertThrows(HttpClientErrorException.TooManyRequests.class, () -> {
-            analyticsService.sendBatchToAnalytics(batch);
+        // Act & Assert - 429s are surfaced as RateLimitExceededException, retried once the tuner backed off
+        RateLimitExceededException e = assertThrows(RateLimitExceededException.class, () -> {
+            analyticsService.sendBatchToAnalytics(batch, 1);
         });
 
         verify(analyticsRestClient).post();
+        verify(rateTuner).onRateLimited(any());
+        assertTrue(AnalyticsService.isRetryable(e));
+    }
+
+    @Test
+    void testServerErrorIsRetryable() {
+        byte[] batch = "[]".getBytes(StandardCharsets.UTF_8);
+
+        when(analyticsRestClient.post()).thenReturn(requestBodyUriSpec);
+        when(requestBodyUriSpec.body(any(byte[].class))).thenReturn(requestBodySpec);
+        when(requestBodySpec.retrieve()).thenReturn(responseSpec);
+        when(responseSpec.toEntity(AnalyticsBatchResponse.class))
+                .thenThrow(HttpServerErrorException.create(HttpStatus.BAD_GATEWAY, "Bad Gateway", null, null, null));
+
+        // a single attempt, the dispatcher schedules the retry on the next permit
+        AnalyticsException e = assertThrows(AnalyticsException.class, () -> analyticsService.sendBatchToAnalytics(batch, 0));
+
+        verify(analyticsRestClient, times(1)).post();
+        assertTrue(AnalyticsService.isRetryable(e));
     }
 
 }
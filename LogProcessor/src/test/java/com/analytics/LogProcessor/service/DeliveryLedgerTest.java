@@ -0,0 +1,76 @@
+package com.analytics.LogProcessor.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DeliveryLedgerTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void deliveriesSurviveARestart() throws Exception {
+        Path file = dir.resolve("ledger.bin");
+        DeliveryLedger ledger = open(file, 100);
+        ledger.recordDelivered(List.of(1L, 2L, 2L));
+        ledger.close();
+        assertEquals(16, Files.size(file));
+
+        // a crash mid-append leaves a torn key behind
+        Files.write(file, new byte[]{1, 2, 3}, StandardOpenOption.APPEND);
+
+        DeliveryLedger reopened = open(file, 100);
+        assertTrue(reopened.isDelivered(1L));
+        assertTrue(reopened.isDelivered(2L));
+        assertFalse(reopened.isDelivered(3L));
+        reopened.recordDelivered(List.of(3L));
+        reopened.close();
+        assertEquals(24, Files.size(file));
+    }
+
+    @Test
+    void oldestGenerationIsForgottenOnRotation() {
+        DeliveryLedger ledger = open(dir.resolve("ledger.bin"), 2);
+        ledger.recordDelivered(List.of(1L, 2L));
+        ledger.recordDelivered(List.of(3L));
+        assertTrue(ledger.isDelivered(1L));
+        assertTrue(ledger.isDelivered(3L));
+
+        // the current generation fills up and replaces the previous one
+        ledger.recordDelivered(List.of(4L));
+        assertFalse(ledger.isDelivered(1L));
+        assertTrue(ledger.isDelivered(3L));
+        ledger.recordDelivered(List.of(5L));
+        assertTrue(ledger.isDelivered(4L));
+        assertTrue(ledger.isDelivered(5L));
+        ledger.close();
+
+        DeliveryLedger reopened = open(dir.resolve("ledger.bin"), 2);
+        assertEquals(3, reopened.size());
+        assertTrue(reopened.isDelivered(3L));
+        assertTrue(reopened.isDelivered(5L));
+        reopened.close();
+    }
+
+    @Test
+    void disabledLedgerRemembersNothing() {
+        DeliveryLedger ledger = new DeliveryLedger(false, dir.resolve("ledger.bin").toString(), 10);
+        ledger.load();
+        ledger.recordDelivered(List.of(1L));
+        assertFalse(ledger.isDelivered(1L));
+        assertFalse(Files.exists(dir.resolve("ledger.bin")));
+    }
+
+    private static DeliveryLedger open(Path file, int generationSize) {
+        DeliveryLedger ledger = new DeliveryLedger(true, file.toString(), generationSize);
+        ledger.load();
+        return ledger;
+    }
+}
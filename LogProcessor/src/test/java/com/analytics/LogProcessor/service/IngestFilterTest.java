@@ -0,0 +1,111 @@
+package com.analytics.LogProcessor.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for IngestFilter
+ */
+class IngestFilterTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testLongestPrefixDecides() {
+        IngestFilter filter = new IngestFilter(true, List.of(
+                "deny 10.0.0.0/8",
+                "allow 10.1.0.0/16",
+                "deny 10.1.2.0/24",
+                "deny fc00::/7"
+        ), "");
+        filter.reload();
+
+        assertEquals("deny 10.0.0.0/8", filter.rejectedBy("10.9.9.9").text());
+        assertNull(filter.rejectedBy("10.1.9.9"));
+        assertEquals("deny 10.1.2.0/24", filter.rejectedBy("10.1.2.3").text());
+        assertEquals("deny fc00::/7", filter.rejectedBy("fd12:3456::1").text());
+        assertNull(filter.rejectedBy("8.8.8.8"));
+        assertNull(filter.rejectedBy("2001:db8::1"));
+    }
+
+    @Test
+    void testIpv6RulesMatchOnAll128Bits() {
+        IngestFilter filter = new IngestFilter(true, List.of("deny ::1/128", "deny 2001:db8::5/128",
+                "deny 2001:db8:0:1::/120"), "");
+        filter.reload();
+
+        assertEquals("deny ::1/128", filter.rejectedBy("::1").text());
+        assertNull(filter.rejectedBy("::2"));
+        assertEquals("deny 2001:db8::5/128", filter.rejectedBy("2001:db8::5").text());
+        assertNull(filter.rejectedBy("2001:db8::6"));
+        assertEquals("deny 2001:db8:0:1::/120", filter.rejectedBy("2001:db8:0:1::ff").text());
+        assertNull(filter.rejectedBy("2001:db8:0:1::1:0"));
+    }
+
+    @Test
+    void testIpv4MappedAddressesUseTheIpv4Rules() {
+        IngestFilter filter = new IngestFilter(true, List.of("deny ::1/128", "deny 10.0.0.0/8"), "");
+        filter.reload();
+
+        assertNull(filter.rejectedBy("::ffff:8.8.8.8"));
+        assertEquals("deny 10.0.0.0/8", filter.rejectedBy("::ffff:10.1.2.3").text());
+        assertEquals("deny 10.0.0.0/8", filter.rejectedBy("::ffff:a01:203").text());
+    }
+
+    @Test
+    void testHitCountersPerRule() {
+        IngestFilter filter = new IngestFilter(true, List.of("deny 127.0.0.0/8", "allow 127.0.0.1/32"), "");
+        filter.reload();
+
+        filter.rejectedBy("127.0.0.1");
+        filter.rejectedBy("127.0.0.1");
+        filter.rejectedBy("127.0.0.2");
+
+        assertEquals(1, hits(filter, "deny 127.0.0.0/8"));
+        assertEquals(2, hits(filter, "allow 127.0.0.1/32"));
+    }
+
+    @Test
+    void testRulesFileIsReloadedWhenChanged() throws Exception {
+        Path rules = tempDir.resolve("ingest-filter.rules");
+        Files.writeString(rules, "# scanners\ndeny 198.51.100.0/24\nnot a rule\n");
+        IngestFilter filter = new IngestFilter(true, List.of("deny 192.168.0.0/16"), rules.toString());
+        filter.reload();
+
+        assertNotNull(filter.rejectedBy("198.51.100.7"));
+        assertNotNull(filter.rejectedBy("192.168.0.1"));
+        assertEquals(2, filter.getRules().size());
+
+        Files.writeString(rules, "deny 203.0.113.0/24\n");
+        Files.setLastModifiedTime(rules, FileTime.from(Instant.now().plusSeconds(5)));
+        filter.reloadIfChanged();
+
+        assertNull(filter.rejectedBy("198.51.100.7"));
+        assertNotNull(filter.rejectedBy("203.0.113.9"));
+        assertEquals(1, hits(filter, "deny 192.168.0.0/16"));
+    }
+
+    @Test
+    void testDisabledFilterAllowsEverything() {
+        IngestFilter filter = new IngestFilter(false, List.of("deny 0.0.0.0/0"), "");
+        filter.reload();
+
+        assertNull(filter.rejectedBy("8.8.8.8"));
+    }
+
+    private static long hits(IngestFilter filter, String rule) {
+        return filter.getRules().stream()
+                .filter(r -> r.text().equals(rule))
+                .findFirst().orElseThrow()
+                .hits().get();
+    }
+}
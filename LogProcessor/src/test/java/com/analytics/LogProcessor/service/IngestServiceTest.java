@@ -6,9 +6,13 @@ import com.analytics.LogProcessor.model.IngestResponse;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessagePostProcessor;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.test.util.ReflectionTestUtils;
 
@@ -31,6 +35,18 @@ class IngestServiceTest {
     @Mock
     private MetricsService metricsService;
 
+    @Spy
+    private ConcurrencyLimiter concurrencyLimiter = new ConcurrencyLimiter(16, 8, 1);
+
+    @Spy
+    private IngestFilter ingestFilter = new IngestFilter(false, List.of(), "");
+
+    @Spy
+    private RawShardLayout shardLayout = new RawShardLayout(false, 1, "all", "raw-records-queue", "raw-sharded");
+
+    @Spy
+    private TenantRegistry tenantRegistry = new TenantRegistry("test-token=soc", "", 1, "enriched-records-queue");
+
     @InjectMocks
     private IngestService ingestService;
 
@@ -50,7 +66,7 @@ class IngestServiceTest {
                 new ActivityRecord(2L, "asset2", "192.168.1.2", "phishing")
         );
 
-        doNothing().when(rabbitTemplate).convertAndSend(eq(MAIN_EXCHANGE), eq(LogProcessorConstants.RAW_ROUTING_KEY), any(ActivityRecord.class));
+        doNothing().when(rabbitTemplate).convertAndSend(eq(MAIN_EXCHANGE), eq(LogProcessorConstants.RAW_ROUTING_KEY), any(ActivityRecord.class), any(MessagePostProcessor.class), isNull());
         doNothing().when(metricsService).incrementRecordsIngested(anyInt());
         when(metricsService.getRecordsIngested()).thenReturn(new java.util.concurrent.atomic.AtomicLong(2));
 
@@ -62,7 +78,7 @@ class IngestServiceTest {
         assertEquals(2, response.getRecordsIngested());
         assertEquals("Records Ingested to raw queue", response.getMessage());
         
-        verify(rabbitTemplate, times(2)).convertAndSend(anyString(), anyString(), any(ActivityRecord.class));
+        verify(rabbitTemplate, times(2)).convertAndSend(anyString(), anyString(), any(ActivityRecord.class), any(MessagePostProcessor.class), isNull());
         verify(metricsService).incrementRecordsIngested(2);
     }
 
@@ -75,9 +91,9 @@ class IngestServiceTest {
         );
 
         // First call succeeds, second fails
-        doNothing().when(rabbitTemplate).convertAndSend(anyString(), anyString(), eq(records.get(0)));
+        doNothing().when(rabbitTemplate).convertAndSend(anyString(), anyString(), eq(records.get(0)), any(MessagePostProcessor.class), isNull());
         doThrow(new RuntimeException("RabbitMQ error"))
-                .when(rabbitTemplate).convertAndSend(anyString(), anyString(), eq(records.get(1)));
+                .when(rabbitTemplate).convertAndSend(anyString(), anyString(), eq(records.get(1)), any(MessagePostProcessor.class), isNull());
         
         doNothing().when(metricsService).incrementRecordsIngested(anyInt());
         when(metricsService.getRecordsIngested()).thenReturn(new java.util.concurrent.atomic.AtomicLong(1));
@@ -104,7 +120,7 @@ class IngestServiceTest {
         // Assert
         assertNotNull(response);
         assertEquals(0, response.getRecordsIngested());
-        verify(rabbitTemplate, never()).convertAndSend(eq(MAIN_EXCHANGE), eq(LogProcessorConstants.RAW_ROUTING_KEY), any(ActivityRecord.class));
+        verify(rabbitTemplate, never()).convertAndSend(eq(MAIN_EXCHANGE), eq(LogProcessorConstants.RAW_ROUTING_KEY), any(ActivityRecord.class), any(MessagePostProcessor.class), isNull());
         verify(metricsService).incrementRecordsIngested(0);
     }
 
@@ -116,7 +132,7 @@ class IngestServiceTest {
         );
 
         doThrow(new RuntimeException("RabbitMQ error"))
-                .when(rabbitTemplate).convertAndSend(eq(MAIN_EXCHANGE), eq(LogProcessorConstants.RAW_ROUTING_KEY), any(ActivityRecord.class));
+                .when(rabbitTemplate).convertAndSend(eq(MAIN_EXCHANGE), eq(LogProcessorConstants.RAW_ROUTING_KEY), any(ActivityRecord.class), any(MessagePostProcessor.class), isNull());
         
         doNothing().when(metricsService).incrementRecordsIngested(anyInt());
         when(metricsService.getRecordsIngested()).thenReturn(new java.util.concurrent.atomic.AtomicLong(0));
@@ -129,5 +145,65 @@ class IngestServiceTest {
         assertEquals(0, response.getRecordsIngested());
         verify(metricsService).incrementRecordsIngested(0);
     }
-}
 
+    @Test
+    void testDeniedRecordsAreReportedAndNotPublished() {
+        // Arrange
+        IngestFilter filter = new IngestFilter(true, List.of("deny 192.168.0.0/16"), "");
+        filter.reload();
+        IngestService filteringService = new IngestService(rabbitTemplate, metricsService, concurrencyLimiter, filter, shardLayout, tenantRegistry);
+        ReflectionTestUtils.setField(filteringService, "mainExchange", MAIN_EXCHANGE);
+        List<ActivityRecord> records = Arrays.asList(
+                new ActivityRecord(1L, "asset1", "192.168.1.1", "phishing"),
+                new ActivityRecord(2L, "asset2", "8.8.8.8", "phishing")
+        );
+        when(metricsService.getRecordsIngested()).thenReturn(new java.util.concurrent.atomic.AtomicLong(1));
+
+        // Act
+        IngestResponse response = filteringService.ingest(records, AUTH_TOKEN);
+
+        // Assert
+        assertEquals(1, response.getRecordsIngested());
+        assertEquals(1, response.getRecordsRejected());
+        assertEquals(1L, response.getRejectedRecords().get(0).id());
+        assertEquals("deny 192.168.0.0/16", response.getRejectedRecords().get(0).rule());
+        verify(rabbitTemplate, times(1)).convertAndSend(anyString(), anyString(), any(ActivityRecord.class), any(MessagePostProcessor.class), isNull());
+        verify(metricsService).incrementRecordsFiltered(1);
+    }
+
+    @Test
+    void testShardingPublishesToConsistentHashExchangeWithShardKey() throws Exception {
+        // Arrange
+        RawShardLayout sharded = new RawShardLayout(true, 4, "all", "raw-records-queue", "raw-sharded");
+        IngestService shardedService = new IngestService(rabbitTemplate, metricsService, concurrencyLimiter, ingestFilter, sharded, tenantRegistry);
+        ActivityRecord record = new ActivityRecord(1L, "asset1", "8.8.8.8", "phishing");
+        when(metricsService.getRecordsIngested()).thenReturn(new java.util.concurrent.atomic.AtomicLong(1));
+
+        // Act
+        shardedService.ingest(List.of(record), AUTH_TOKEN);
+
+        // Assert
+        ArgumentCaptor<MessagePostProcessor> postProcessor = ArgumentCaptor.forClass(MessagePostProcessor.class);
+        verify(rabbitTemplate).convertAndSend(eq("raw-sharded"), anyString(), eq(record), postProcessor.capture(), isNull());
+        Message message = postProcessor.getValue().postProcessMessage(new Message(new byte[0]));
+        assertEquals("8.8.8.8", message.getMessageProperties().getHeader(RawShardLayout.SHARD_KEY_HEADER));
+        assertEquals("soc", message.getMessageProperties().getHeader(TenantRegistry.TENANT_HEADER));
+    }
+
+    @Test
+    void testRecordsAreTaggedWithTheTenantOfTheToken() throws Exception {
+        // Arrange
+        ActivityRecord record = new ActivityRecord(1L, "asset1", "8.8.8.8", "phishing");
+        when(metricsService.getRecordsIngested()).thenReturn(new java.util.concurrent.atomic.AtomicLong(1));
+
+        // Act
+        ingestService.ingest(List.of(record), "other-token");
+
+        // Assert
+        ArgumentCaptor<MessagePostProcessor> postProcessor = ArgumentCaptor.forClass(MessagePostProcessor.class);
+        verify(rabbitTemplate).convertAndSend(eq(MAIN_EXCHANGE), eq(LogProcessorConstants.RAW_ROUTING_KEY), eq(record),
+                postProcessor.capture(), isNull());
+        Message message = postProcessor.getValue().postProcessMessage(new Message(new byte[0]));
+        assertEquals(tenantRegistry.resolve("other-token"), message.getMessageProperties().getHeader(TenantRegistry.TENANT_HEADER));
+    }
+}
@@ -0,0 +1,182 @@
+package com.analytics.LogProcessor.service;
+
+import com.analytics.LogProcessor.model.ActivityRecord;
+import com.analytics.LogProcessor.model.IngestTicketStatus;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessagePostProcessor;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class IngestTicketServiceTest {
+
+    @TempDir
+    Path dir;
+
+    private RabbitTemplate rabbitTemplate;
+    private MetricsService metricsService;
+    private IngestService ingestService;
+    private IngestSpool spool;
+    private IngestTicketService ticketService;
+
+    @BeforeEach
+    void setUp() {
+        rabbitTemplate = mock(RabbitTemplate.class);
+        metricsService = new MetricsService();
+        IngestFilter filter = new IngestFilter(true, List.of("deny 10.0.0.0/8"), "");
+        filter.reload();
+        ingestService = new IngestService(rabbitTemplate, metricsService, new ConcurrencyLimiter(16, 8, 1), filter,
+                new RawShardLayout(false, 1, "all", "raw-records-queue", "raw-sharded"),
+                new TenantRegistry("token=soc", "", 1, "enriched-records-queue"));
+        ReflectionTestUtils.setField(ingestService, "mainExchange", "main-exchange");
+        spool = new IngestSpool(ingestService, new ObjectMapper(), metricsService,
+                dir.resolve("ingest-spool.jsonl").toString(), Duration.ofMillis(200));
+        ticketService = new IngestTicketService(ingestService, spool, metricsService, 1, 1,
+                Duration.ofMillis(200), Duration.ofMinutes(15));
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        ticketService.shutdown();
+    }
+
+    @Test
+    void submit_reportsConfirmedRejectedAndSpilledRecords() throws Exception {
+        // 8.8.8.8 is confirmed, 9.9.9.9 is nacked, 10.1.1.1 is denied by the filter
+        doAnswer(invocation -> {
+            ActivityRecord record = invocation.getArgument(2);
+            CorrelationData correlation = invocation.getArgument(4);
+            correlation.getFuture().complete(new CorrelationData.Confirm(record.ip().equals("8.8.8.8"), null));
+            return null;
+        }).when(rabbitTemplate).convertAndSend(anyString(), anyString(), any(ActivityRecord.class), any(MessagePostProcessor.class), any(CorrelationData.class));
+
+        IngestTicketStatus queued = ticketService.submit(List.of(
+                new ActivityRecord(1L, "a", "8.8.8.8", "phishing"),
+                new ActivityRecord(2L, "a", "9.9.9.9", "phishing"),
+                new ActivityRecord(3L, "a", "10.1.1.1", "phishing")), "token");
+
+        IngestTicketStatus done = awaitCompletion(queued.ticketId());
+        assertEquals(1, done.confirmed());
+        assertEquals(1, done.rejected());
+        assertEquals(1, done.spilled());
+        assertEquals(0, done.failed());
+        assertTrue(Files.readString(dir.resolve("ingest-spool.jsonl")).contains("9.9.9.9"));
+
+        // the spooled record keeps the delivery id it was first published with
+        ArgumentCaptor<MessagePostProcessor> postProcessor = ArgumentCaptor.forClass(MessagePostProcessor.class);
+        verify(rabbitTemplate).convertAndSend(anyString(), anyString(), eq(new ActivityRecord(2L, "a", "9.9.9.9", "phishing")),
+                postProcessor.capture(), any(CorrelationData.class));
+        Long deliveryId = DeliveryLedger.deliveryId(postProcessor.getValue().postProcessMessage(new Message(new byte[0])));
+        IngestSpool.Spooled spooled = new ObjectMapper().readValue(
+                Files.readString(dir.resolve("ingest-spool.jsonl")).trim(), IngestSpool.Spooled.class);
+        assertEquals(deliveryId, spooled.deliveryId());
+    }
+
+    @Test
+    void submit_fullQueue_refusesTheBatch() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            // confirmed, so nothing is spooled into the temp dir after the test
+            ((CorrelationData) invocation.getArgument(4)).getFuture().complete(new CorrelationData.Confirm(true, null));
+            return null;
+        }).when(rabbitTemplate).convertAndSend(anyString(), anyString(), any(ActivityRecord.class), any(MessagePostProcessor.class), any(CorrelationData.class));
+        List<ActivityRecord> batch = List.of(new ActivityRecord(1L, "a", "8.8.8.8", "phishing"));
+
+        assertNotNull(ticketService.submit(batch, "token")); // running
+        Thread.sleep(100);
+        assertNotNull(ticketService.submit(batch, "token")); // queued
+        assertNull(ticketService.submit(batch, "token"));
+        release.countDown();
+    }
+
+    @Test
+    void drain_republishesSpooledRecordsOnceConfirmed() throws Exception {
+        spool.append(List.of(new IngestSpool.Spooled("soc", new ActivityRecord(7L, "a", "9.9.9.9", "phishing"), 42L)));
+        doAnswer(invocation -> {
+            ((CorrelationData) invocation.getArgument(4)).getFuture().complete(new CorrelationData.Confirm(true, null));
+            return null;
+        }).when(rabbitTemplate).convertAndSend(anyString(), anyString(), any(ActivityRecord.class), any(MessagePostProcessor.class), any(CorrelationData.class));
+
+        spool.drain();
+
+        ArgumentCaptor<MessagePostProcessor> postProcessor = ArgumentCaptor.forClass(MessagePostProcessor.class);
+        verify(rabbitTemplate).convertAndSend(anyString(), anyString(), eq(new ActivityRecord(7L, "a", "9.9.9.9", "phishing")),
+                postProcessor.capture(), any(CorrelationData.class));
+        Message message = postProcessor.getValue().postProcessMessage(new Message(new byte[0]));
+        assertEquals("soc", message.getMessageProperties().getHeader(TenantRegistry.TENANT_HEADER));
+        assertEquals(42L, DeliveryLedger.deliveryId(message));
+        assertFalse(Files.exists(dir.resolve("ingest-spool.jsonl")));
+        assertEquals(1, metricsService.getRecordsIngested().get());
+    }
+
+    @Test
+    void drain_crashBeforeConfirm_keepsTheRecordsForTheNextDrain() throws Exception {
+        spool.append(List.of(new IngestSpool.Spooled("soc", new ActivityRecord(7L, "a", "9.9.9.9", "phishing"), 42L)));
+        doThrow(new Error("simulated crash")).when(rabbitTemplate)
+                .convertAndSend(anyString(), anyString(), any(ActivityRecord.class), any(MessagePostProcessor.class), any(CorrelationData.class));
+
+        assertThrows(Error.class, spool::drain);
+        assertTrue(Files.exists(dir.resolve("ingest-spool.jsonl.draining")));
+
+        // restarted instance, broker confirms again
+        reset(rabbitTemplate);
+        doAnswer(invocation -> {
+            ((CorrelationData) invocation.getArgument(4)).getFuture().complete(new CorrelationData.Confirm(true, null));
+            return null;
+        }).when(rabbitTemplate).convertAndSend(anyString(), anyString(), any(ActivityRecord.class), any(MessagePostProcessor.class), any(CorrelationData.class));
+        new IngestSpool(ingestService, new ObjectMapper(), metricsService,
+                dir.resolve("ingest-spool.jsonl").toString(), Duration.ofMillis(200)).drain();
+
+        verify(rabbitTemplate).convertAndSend(anyString(), anyString(), eq(new ActivityRecord(7L, "a", "9.9.9.9", "phishing")),
+                any(MessagePostProcessor.class), any(CorrelationData.class));
+        assertFalse(Files.exists(dir.resolve("ingest-spool.jsonl.draining")));
+        assertEquals(1, metricsService.getRecordsIngested().get());
+    }
+
+    @Test
+    void drain_unconfirmedRecordsGoBackToTheSpool() throws Exception {
+        spool.append(List.of(new IngestSpool.Spooled("soc", new ActivityRecord(7L, "a", "9.9.9.9", "phishing"), 42L)));
+        doAnswer(invocation -> {
+            ((CorrelationData) invocation.getArgument(4)).getFuture().complete(new CorrelationData.Confirm(false, "nack"));
+            return null;
+        }).when(rabbitTemplate).convertAndSend(anyString(), anyString(), any(ActivityRecord.class), any(MessagePostProcessor.class), any(CorrelationData.class));
+
+        spool.drain();
+        spool.drain();
+
+        assertFalse(Files.exists(dir.resolve("ingest-spool.jsonl.draining")));
+        assertTrue(Files.readString(dir.resolve("ingest-spool.jsonl")).contains("9.9.9.9"));
+        // spooled once by the ticket path, the retries do not count as new spills
+        assertEquals(1, metricsService.getIngestSpilled().get());
+    }
+
+    private IngestTicketStatus awaitCompletion(String ticketId) throws InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            IngestTicketStatus status = ticketService.status(ticketId);
+            if (status.status() == IngestTicketStatus.Status.COMPLETED) {
+                return status;
+            }
+            Thread.sleep(20);
+        }
+        fail("ticket did not complete");
+        return null;
+    }
+}
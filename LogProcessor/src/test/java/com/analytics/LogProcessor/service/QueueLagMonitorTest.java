@@ -0,0 +1,59 @@
+package com.analytics.LogProcessor.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.AmqpConnectException;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.QueueInformation;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.net.ConnectException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for QueueLagMonitor
+ */
+class QueueLagMonitorTest {
+
+    @Test
+    void testSamplesDepthsDrainRateAndLatency() {
+        AmqpAdmin amqpAdmin = mock(AmqpAdmin.class);
+        when(amqpAdmin.getQueueInfo("raw")).thenReturn(new QueueInformation("raw", 1200, 4));
+        when(amqpAdmin.getQueueInfo("enriched")).thenReturn(new QueueInformation("enriched", 300, 1));
+        MetricsService metricsService = new MetricsService();
+        QueueLagMonitor monitor = new QueueLagMonitor(amqpAdmin, metricsService, new RawShardLayout(false, 1, "all", "raw", "raw-sharded"),
+                new TenantRegistry("", "", 1, "enriched"));
+
+        monitor.sample();
+        QueueLagMonitor.Sample first = monitor.getLatest();
+        // pretend the first sample was taken 10s ago, then 20 records drained and 10 enriched in 5s total
+        ReflectionTestUtils.setField(monitor, "latest",
+                new QueueLagMonitor.Sample(first.rawDepth(), first.enrichedDepth(), 0, 0, first.sampledAt() - 10_000));
+        metricsService.incrementRecordsSentToAnalytics(20);
+        for (int i = 0; i < 10; i++) {
+            metricsService.incrementRecordsEnriched();
+            metricsService.recordEnrichmentTime(500);
+        }
+        monitor.sample();
+
+        QueueLagMonitor.Sample sample = monitor.getLatest();
+        assertEquals(1200, sample.rawDepth());
+        assertEquals(300, sample.enrichedDepth());
+        assertEquals(2.0, sample.drainRatePerSecond(), 0.1);
+        assertEquals(500.0, sample.enrichmentLatencyMs(), 0.001);
+        assertTrue(sample.isKnown());
+    }
+
+    @Test
+    void testUnreachableBrokerGivesUnknownDepth() {
+        AmqpAdmin amqpAdmin = mock(AmqpAdmin.class);
+        when(amqpAdmin.getQueueInfo(anyString())).thenThrow(new AmqpConnectException(new ConnectException("refused")));
+        QueueLagMonitor monitor = new QueueLagMonitor(amqpAdmin, new MetricsService(), new RawShardLayout(false, 1, "all", "raw", "raw-sharded"),
+                new TenantRegistry("", "", 1, "enriched"));
+
+        monitor.sample();
+
+        assertFalse(monitor.getLatest().isKnown());
+    }
+}
@@ -0,0 +1,51 @@
+package com.analytics.LogProcessor.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RawShardLayoutTest {
+
+    @Test
+    void parseOwned_acceptsAllNumbersAndRanges() {
+        assertEquals(List.of(0, 1, 2, 3), RawShardLayout.parseOwned("all", 4));
+        assertEquals(List.of(0, 1, 2, 3), RawShardLayout.parseOwned(" ", 4));
+        assertEquals(List.of(1, 4, 5, 6), RawShardLayout.parseOwned("4-6, 1", 8));
+    }
+
+    @Test
+    void parseOwned_rejectsShardsOutsideTheRing() {
+        assertThrows(IllegalArgumentException.class, () -> RawShardLayout.parseOwned("2-8", 8));
+        assertThrows(IllegalArgumentException.class, () -> RawShardLayout.parseOwned("5-3", 8));
+    }
+
+    @Test
+    void listenerQueues_includeRawQueueAndOwnedShardsOnly() {
+        RawShardLayout layout = new RawShardLayout(true, 4, "2-3", "raw", "raw-sharded");
+
+        assertArrayEquals(new String[] {"raw", "raw.shard-2", "raw.shard-3"}, layout.listenerQueues());
+    }
+
+    @Test
+    void disabled_consumesOnlyTheRawQueue() {
+        RawShardLayout layout = new RawShardLayout(false, 8, "0-3", "raw", "raw-sharded");
+
+        assertFalse(layout.isEnabled());
+        assertArrayEquals(new String[] {"raw"}, layout.listenerQueues());
+    }
+
+    @Test
+    void ownsKey_partitionsKeysOverTheInstancesEvenWithoutShardQueues() {
+        RawShardLayout low = new RawShardLayout(false, 4, "0-1", "raw", "raw-sharded");
+        RawShardLayout high = new RawShardLayout(false, 4, "2-3", "raw", "raw-sharded");
+
+        for (int i = 0; i < 256; i++) {
+            String ip = "10.0." + (i >> 4) + "." + i;
+            assertNotEquals(low.ownsKey(ip), high.ownsKey(ip), ip);
+        }
+        assertTrue(low.ownsKey(null));
+        assertFalse(high.ownsKey(null));
+    }
+}
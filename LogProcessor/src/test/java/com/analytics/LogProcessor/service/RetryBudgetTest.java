@@ -0,0 +1,72 @@
+package com.analytics.LogProcessor.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for RetryBudget
+ */
+class RetryBudgetTest {
+
+    @Test
+    void testBudgetDrainsAndFailsFast() {
+        RetryBudget budget = new RetryBudget(3, 0.1);
+
+        assertTrue(budget.tryAcquire());
+        assertTrue(budget.tryAcquire());
+        assertTrue(budget.tryAcquire());
+        assertFalse(budget.tryAcquire());
+        assertEquals(0.0, budget.getTokens());
+    }
+
+    @Test
+    void testFirstAttemptSuccessesRefillAFractionOfAToken() {
+        RetryBudget budget = new RetryBudget(3, 0.1);
+        while (budget.tryAcquire()) {
+            // drain
+        }
+
+        for (int i = 0; i < 9; i++) {
+            budget.onFirstAttemptSuccess();
+        }
+        assertFalse(budget.tryAcquire());
+
+        budget.onFirstAttemptSuccess();
+        assertTrue(budget.tryAcquire());
+    }
+
+    @Test
+    void testRefillIsCappedAtMaxTokens() {
+        RetryBudget budget = new RetryBudget(2, 0.5);
+
+        for (int i = 0; i < 100; i++) {
+            budget.onFirstAttemptSuccess();
+        }
+
+        assertEquals(2.0, budget.getTokens());
+    }
+
+    @Test
+    void testConcurrentRetriesNeverOverdraw() throws Exception {
+        RetryBudget budget = new RetryBudget(50, 0.1);
+        AtomicInteger granted = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int i = 0; i < 1000; i++) {
+            executor.execute(() -> {
+                if (budget.tryAcquire()) {
+                    granted.incrementAndGet();
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+
+        assertEquals(50, granted.get());
+    }
+}
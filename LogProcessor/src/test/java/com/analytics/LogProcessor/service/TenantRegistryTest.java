@@ -0,0 +1,41 @@
+package com.analytics.LogProcessor.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TenantRegistryTest {
+
+    private final TenantRegistry registry = new TenantRegistry("abc123=soc, def456=fraud", "soc=3", 1, "enriched");
+
+    @Test
+    void resolve_mapsKnownTokensAndPseudonymizesOthers() {
+        assertEquals("soc", registry.resolve("abc123"));
+        assertEquals("fraud", registry.resolve(" def456 "));
+        assertEquals(TenantRegistry.DEFAULT_TENANT, registry.resolve(null));
+        assertEquals(TenantRegistry.DEFAULT_TENANT, registry.resolve(" "));
+
+        String unknown = registry.resolve("unmapped-token");
+        assertTrue(unknown.matches("t-[0-9a-f]{8}"));
+        assertEquals(unknown, registry.resolve("unmapped-token"));
+        assertFalse(unknown.contains("unmapped"));
+    }
+
+    @Test
+    void weightedTenantsGetTheirOwnLane() {
+        assertEquals(3, registry.weight("soc"));
+        assertEquals(1, registry.weight("fraud"));
+        assertEquals("enriched.soc", registry.enrichedRoutingKey("soc"));
+        assertEquals("enriched", registry.enrichedRoutingKey("fraud"));
+        assertEquals("enriched", registry.enrichedRoutingKey(null));
+        assertArrayEquals(new String[]{"enriched", "enriched.soc"}, registry.enrichedQueues());
+    }
+
+    @Test
+    void invalidConfigurationIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new TenantRegistry("abc", "", 1, "enriched"));
+        assertThrows(IllegalArgumentException.class, () -> new TenantRegistry("", "soc=0", 1, "enriched"));
+        assertThrows(IllegalArgumentException.class, () -> new TenantRegistry("", "s o c=2", 1, "enriched"));
+        assertThrows(IllegalArgumentException.class, () -> new TenantRegistry("abc=so/c", "", 1, "enriched"));
+    }
+}
@@ -0,0 +1,60 @@
+package com.analytics.LogProcessor.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WeightedFairQueueTest {
+
+    private final WeightedFairQueue<String> queue =
+            new WeightedFairQueue<>(100, tenant -> tenant.equals("soc") ? 3 : 1);
+
+    @Test
+    void backloggedTenantsShareOutputByWeight() throws Exception {
+        for (int i = 0; i < 40; i++) {
+            queue.put("noisy", "noisy-" + i);
+        }
+        for (int i = 0; i < 20; i++) {
+            queue.put("soc", "soc-" + i);
+        }
+
+        List<String> batch = take(20);
+
+        // soc weighs 3, so it gets three of every four slots despite arriving behind the noisy backlog
+        assertEquals(15, batch.stream().filter(item -> item.startsWith("soc")).count());
+        assertEquals(Map.of("noisy", 35, "soc", 5), queue.backlog());
+    }
+
+    @Test
+    void idleTenantDoesNotBankCredit() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            queue.put("noisy", "noisy-" + i);
+        }
+        take(8);
+        queue.put("quiet", "quiet-0");
+        queue.put("quiet", "quiet-1");
+
+        // the quiet tenant starts at the current clock: it alternates with noisy instead of taking over
+        assertEquals(List.of("noisy-8", "quiet-0", "noisy-9", "quiet-1"), take(4));
+    }
+
+    @Test
+    void pollTimesOutWhenEmpty() throws Exception {
+        assertNull(queue.poll(10, TimeUnit.MILLISECONDS));
+        assertEquals(0, queue.size());
+        assertTrue(queue.backlog().isEmpty());
+    }
+
+    private List<String> take(int count) throws InterruptedException {
+        List<String> items = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            items.add(queue.take());
+        }
+        return items;
+    }
+}
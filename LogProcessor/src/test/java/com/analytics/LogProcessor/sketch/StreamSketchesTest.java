@@ -0,0 +1,131 @@
+package com.analytics.LogProcessor.sketch;
+
+import com.analytics.LogProcessor.model.EnrichedRecord;
+import com.analytics.LogProcessor.model.HeavyHitter;
+import com.analytics.LogProcessor.model.SketchSummary;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for StreamSketches and its sketches
+ */
+class StreamSketchesTest {
+
+    private static final long HOUR = 3_600_000;
+
+    @Test
+    void countMinNeverUnderestimates() {
+        CountMinSketch sketch = new CountMinSketch(256, 4);
+        Map<String, Long> exact = new HashMap<>();
+        for (int i = 0; i < 50_000; i++) {
+            String key = "key" + (i % 3000) * (i % 7);
+            sketch.add(SketchHash.hash(key));
+            exact.merge(key, 1L, Long::sum);
+        }
+
+        exact.forEach((key, count) -> assertTrue(sketch.estimate(SketchHash.hash(key)) >= count, key));
+    }
+
+    @Test
+    void concurrentCountMinAddsAreNotLost() throws Exception {
+        CountMinSketch sketch = new CountMinSketch(1024, 4);
+        long hash = SketchHash.hash("10.0.0.1");
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                futures.add(pool.submit(() -> {
+                    for (int i = 0; i < 25_000; i++) {
+                        sketch.add(hash);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        assertEquals(100_000, sketch.estimate(hash));
+    }
+
+    @Test
+    void hyperLogLogIsWithinAFewPercent() {
+        HyperLogLog small = new HyperLogLog(12);
+        HyperLogLog large = new HyperLogLog(12);
+        for (int i = 0; i < 100; i++) {
+            small.add(SketchHash.hash("10.1.0." + i));
+        }
+        for (int i = 0; i < 100_000; i++) {
+            String ip = "10." + (i >> 16) + "." + ((i >> 8) & 0xff) + "." + (i & 0xff);
+            large.add(SketchHash.hash(ip));
+            large.add(SketchHash.hash(ip));
+        }
+
+        assertEquals(100, small.estimate(), 3);
+        assertEquals(100_000, large.estimate(), 5_000);
+    }
+
+    @Test
+    void heavyHittersStandOutOfTheNoise() {
+        StreamSketches sketches = sketches(3);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 60_000; i++) {
+            String ip = switch (i % 6) {
+                case 0, 3 -> "203.0.113.7";
+                case 1 -> "198.51.100.9";
+                default -> "10.9." + (i % 251) + "." + (i % 241);
+            };
+            sketches.add(now, record(ip, "AS" + (i % 3 == 0 ? 13335 : i % 400), i % 2 == 0 ? "T1566" : "T1189"));
+        }
+
+        SketchSummary summary = sketches.summary(now, false);
+        assertEquals(60_000, summary.records());
+        assertEquals(List.of("203.0.113.7", "198.51.100.9"), summary.topIps().stream().limit(2).map(HeavyHitter::key).toList());
+        HeavyHitter top = summary.topIps().get(0);
+        assertTrue(top.guaranteed() <= 20_000 && top.estimate() >= 20_000, top.toString());
+        assertEquals("AS13335", summary.topAsns().get(0).key());
+        assertEquals(3, summary.topAssets().size());
+        assertEquals(2, summary.distinctIpsByCategory().size());
+        long distinct = summary.distinctIps();
+        assertTrue(distinct > 27_000 && distinct < 33_000, "distinct " + distinct);
+    }
+
+    @Test
+    void windowsTumbleAndKeepThePreviousOne() {
+        StreamSketches sketches = sketches(5);
+        long start = (System.currentTimeMillis() / HOUR) * HOUR;
+        sketches.add(start + 10, record("1.2.3.4", "AS1", "T1566"));
+        assertNull(sketches.summary(start + 20, true));
+
+        sketches.add(start + HOUR + 10, record("5.6.7.8", "AS2", "T1566"));
+        SketchSummary previous = sketches.summary(start + HOUR + 20, true);
+        SketchSummary current = sketches.summary(start + HOUR + 20, false);
+        assertEquals(1, previous.records());
+        assertEquals("1.2.3.4", previous.topIps().get(0).key());
+        assertEquals(start + HOUR, current.windowStart().toEpochMilli());
+        assertEquals("5.6.7.8", current.topIps().get(0).key());
+
+        // a skipped window leaves nothing to report as previous
+        assertNull(sketches.summary(start + 3 * HOUR, true));
+    }
+
+    private static StreamSketches sketches(int topK) {
+        return new StreamSketches(true, Duration.ofHours(1), topK, 2048, 4, 12);
+    }
+
+    private static EnrichedRecord record(String ip, String asn, String category) {
+        return new EnrichedRecord(1L, "asset-" + ip.hashCode() % 5, ip, category, asn, 1L);
+    }
+}
@@ -0,0 +1,101 @@
+package com.analytics.LogProcessor.store;
+
+import com.analytics.LogProcessor.archive.ArchivedRecord;
+import com.analytics.LogProcessor.model.EnrichedRecord;
+import com.analytics.LogProcessor.model.RecentRecordsResult;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for RecentRecordStore
+ */
+class RecentRecordStoreTest {
+
+    private static final long MINUTE = 60_000;
+
+    @Test
+    void queriesWalkTheIndexesNewestFirst() {
+        RecentRecordStore store = store(256L << 20);
+        long now = System.currentTimeMillis();
+        store.add(now - 20 * MINUTE, "soc", record(1, "1.2.3.4", "AS13335", "T1566"));
+        store.add(now - 10 * MINUTE, "default", record(2, "5.6.7.8", "AS13335", "T1189"));
+        store.add(now - 5 * MINUTE, "default", record(3, "1.2.3.4", "AS15169", "T1189"));
+        store.add(now, "default", record(4, "2001:db8::1", "AS15169", "T1566"));
+
+        assertEquals(List.of(3L, 1L), ids(store.query("1.2.3.4", null, null, null, null, 100)));
+        assertEquals(List.of(2L, 1L), ids(store.query(null, "AS13335", null, null, null, 100)));
+        assertEquals(List.of(2L, 1L), ids(store.query(null, "13335", null, null, null, 100)));
+        assertEquals(List.of(4L, 1L), ids(store.query(null, null, "phishing", null, null, 100)));
+        assertEquals(List.of(3L), ids(store.query("1.2.3.4", "AS15169", "T1189", null, null, 100)));
+        // IPv6 matches on the /64
+        assertEquals(List.of(4L), ids(store.query("2001:db8::ffff", null, null, null, null, 100)));
+
+        RecentRecordsResult lastQuarter = store.query(null, null, null, Instant.ofEpochMilli(now - 15 * MINUTE), null, 100);
+        assertEquals(List.of(4L, 3L, 2L), ids(lastQuarter));
+        assertEquals(List.of(4L), ids(store.query(null, null, null, null, null, 1)));
+        assertEquals(4, lastQuarter.storedRecords());
+        assertEquals("soc", store.query("1.2.3.4", "AS13335", null, null, null, 1).records().get(0).tenant());
+    }
+
+    @Test
+    void ipQueryOnlyExaminesThatIpsRows() {
+        RecentRecordStore store = store(256L << 20);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 10_000; i++) {
+            store.add(now, "default", record(i, "10.0." + (i % 200) + "." + (i % 7), "AS" + (i % 50), "T1566"));
+        }
+
+        RecentRecordsResult result = store.query("10.0.3.3", null, null, null, null, 1000);
+
+        assertEquals(result.records().size(), result.rowsExamined());
+        assertTrue(result.records().stream().allMatch(r -> r.record().ip().equals("10.0.3.3")));
+        assertFalse(result.records().isEmpty());
+    }
+
+    @Test
+    void partitionsOutsideTheWindowAreEvicted() {
+        RecentRecordStore store = store(256L << 20);
+        long now = System.currentTimeMillis();
+        store.add(now - 2 * 60 * MINUTE, "default", record(1, "1.2.3.4", "AS1", "T1566"));
+        store.add(now, "default", record(2, "1.2.3.4", "AS1", "T1566"));
+
+        RecentRecordsResult result = store.query("1.2.3.4", null, null, null, null, 100);
+        assertEquals(List.of(2L), ids(result));
+        assertEquals(1, result.storedRecords());
+        assertEquals(1, result.evictedRecords());
+    }
+
+    @Test
+    void oldestPartitionsAreEvictedOverTheMemoryBudget() {
+        RecentRecordStore store = store(200_000);
+        long now = System.currentTimeMillis();
+        for (int p = 3; p >= 0; p--) {
+            for (int i = 0; i < 300; i++) {
+                store.add(now - p * 10 * MINUTE, "default", record(p * 1000 + i, "1.2.3.4", "AS1", "T1566"));
+            }
+        }
+
+        RecentRecordsResult result = store.query(null, null, null, null, null, 10_000);
+        assertTrue(result.estimatedBytes() <= 200_000, "estimated " + result.estimatedBytes());
+        assertTrue(result.evictedRecords() > 0);
+        // newest partition is always kept
+        assertEquals(0L, ids(result).get(0) / 1000);
+    }
+
+    private static RecentRecordStore store(long maxBytes) {
+        return new RecentRecordStore(true, Duration.ofHours(1), Duration.ofMinutes(5), maxBytes);
+    }
+
+    private static EnrichedRecord record(long id, String ip, String asn, String category) {
+        return new EnrichedRecord(id, "asset" + id, ip, category, asn, id);
+    }
+
+    private static List<Long> ids(RecentRecordsResult result) {
+        return result.records().stream().map(ArchivedRecord::record).map(EnrichedRecord::id).toList();
+    }
+}
@@ -19,6 +19,7 @@ OVERRIDES = {
 
 # API 
 ENDPOINT_URL = "http://localhost:8080/private/v1/ingest"
+ASYNC_ENDPOINT_URL = ENDPOINT_URL + "/async"   # 202 + ticket; 503 when the server's publish queue is full
 AUTH_TOKEN = "eye-am-hiring"
 
 # httpx.Timeout params (seconds)
@@ -27,6 +28,11 @@ TIMEOUT_READ = 30.0
 TIMEOUT_WRITE = 30.0
 TIMEOUT_POOL = 5.0
 
+# Request body compression: "gzip", "zstd" (needs the zstandard package) or "none"
+DEFAULT_COMPRESSION = "gzip"
+GZIP_LEVEL = 6
+ZSTD_LEVEL = 3
+
 # Concurrency / batching
 DEFAULT_BATCH_SIZE = 200
 DEFAULT_CONCURRENCY = 10
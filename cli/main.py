@@ -1,7 +1,7 @@
 import argparse
 import asyncio
 
-from constants import DEFAULT_BATCH_SIZE
+from constants import DEFAULT_BATCH_SIZE, DEFAULT_COMPRESSION
 from utils.data import preprocess
 from utils.ingestion_api import process_batches
 from utils.timing import measure_time
@@ -22,10 +22,15 @@ def main():
     parser.add_argument("--filter", help="Optional filter condition, e.g., category=server")
     parser.add_argument("--batch-size", type=int, default=DEFAULT_BATCH_SIZE, help="Batch size (default: 200)")
     parser.add_argument("--concurrency", type=int, default=10, help="Number of concurrent requests (default: 10)")
+    parser.add_argument("--compression", choices=["gzip", "zstd", "none"], default=DEFAULT_COMPRESSION,
+                        help=f"Request body compression (default: {DEFAULT_COMPRESSION}; zstd needs the zstandard package)")
+    parser.add_argument("--async", dest="async_ingest", action="store_true",
+                        help="Use the 202-accepted ingest endpoint; outcomes are tracked per ticket on the server")
     args = parser.parse_args()
 
     df_cleaned = _preprocess(args.file, args.filter)
-    asyncio.run(process_batches(df_cleaned, batch_size=args.batch_size, concurrency=args.concurrency))
+    asyncio.run(process_batches(df_cleaned, batch_size=args.batch_size, concurrency=args.concurrency,
+                                compression=args.compression, async_ingest=args.async_ingest))
     logger.info("[DONE] All batches sent successfully ✅")
 
 
@@ -1,6 +1,8 @@
 from __future__ import annotations
 
 import asyncio
+import gzip
+import json
 import random
 import logging
 
@@ -13,6 +15,7 @@ logger = logging.getLogger("__name__")
 
 from constants import (
     ENDPOINT_URL,
+    ASYNC_ENDPOINT_URL,
     AUTH_TOKEN,
     MAX_RETRIES,
     BASE_DELAY,
@@ -22,6 +25,9 @@ from constants import (
     TIMEOUT_WRITE,
     TIMEOUT_POOL,
     DEFAULT_CONCURRENCY,
+    DEFAULT_COMPRESSION,
+    GZIP_LEVEL,
+    ZSTD_LEVEL,
 )
 
 # ---- Robust async retry with exponential backoff + jitter ----
@@ -51,22 +57,45 @@ def make_http_client() -> httpx.AsyncClient:
     )
 
 
-async def send_batch(client: httpx.AsyncClient, batched_df: pd.DataFrame) -> None:
+def encode_body(payload: dict, compression: str = DEFAULT_COMPRESSION) -> tuple[bytes, dict[str, str]]:
+    """
+    Serializes the payload to JSON and compresses it; returns the body and the extra headers to send.
+    """
+    body = json.dumps(payload, separators=(",", ":")).encode("utf-8")
+    if compression == "gzip":
+        return gzip.compress(body, compresslevel=GZIP_LEVEL), {"Content-Encoding": "gzip"}
+    if compression == "zstd":
+        import zstandard  # optional dependency, only needed for --compression zstd
+        return zstandard.ZstdCompressor(level=ZSTD_LEVEL).compress(body), {"Content-Encoding": "zstd"}
+    if compression == "none":
+        return body, {}
+    raise ValueError(f"Unsupported compression: {compression}")
+
+
+async def send_batch(client: httpx.AsyncClient, batched_df: pd.DataFrame, compression: str = DEFAULT_COMPRESSION,
+                     async_ingest: bool = False) -> None:
     """
     Sends a batch with retries on transient errors (read/connect timeouts, network issues, 5xx).
+    The body is compressed once (gzip by default) and reused across retries.
+    With async_ingest the server answers 202 with a ticket as soon as the batch is queued.
     """
+    url = ASYNC_ENDPOINT_URL if async_ingest else ENDPOINT_URL
     # Replace NaN with None for JSON
     batched_df = batched_df.where(pd.notnull(batched_df), None)
 
     payload = {"activityRecordList": batched_df.to_dict(orient="records")}
+    body, headers = encode_body(payload, compression)
 
     last_exc: Exception | None = None
     for attempt in range(MAX_RETRIES + 1):
         try:
-            resp = await client.post(ENDPOINT_URL, json=payload)
+            resp = await client.post(url, content=body, headers=headers)
             # Raise for non-2xx
             resp.raise_for_status()
-            logger.info(f"[SUCCESS] Sent batch of {len(batched_df)} records → {resp.status_code}")
+            if resp.status_code == 202:
+                logger.info(f"[ACCEPTED] Queued batch of {len(batched_df)} records → ticket {resp.json().get('ticketId')}")
+            else:
+                logger.info(f"[SUCCESS] Sent batch of {len(batched_df)} records → {resp.status_code}")
             return
         except (httpx.ReadTimeout, httpx.ConnectTimeout, httpx.RemoteProtocolError, httpx.NetworkError) as exc:
             last_exc = exc
@@ -98,7 +127,8 @@ async def send_batch(client: httpx.AsyncClient, batched_df: pd.DataFrame) -> Non
     raise last_exc
 
 
-async def process_batches(df: pd.DataFrame, batch_size: int = 200, concurrency: int = DEFAULT_CONCURRENCY) -> None:
+async def process_batches(df: pd.DataFrame, batch_size: int = 200, concurrency: int = DEFAULT_CONCURRENCY,
+                          compression: str = DEFAULT_COMPRESSION, async_ingest: bool = False) -> None:
     """
     Sends DataFrame rows in batches with bounded concurrency.
     """
@@ -106,7 +136,7 @@ async def process_batches(df: pd.DataFrame, batch_size: int = 200, concurrency:
     async with make_http_client() as client:
         async def _bounded_send(batch: pd.DataFrame) -> None:
             async with sem:
-                await send_batch(client, batch)
+                await send_batch(client, batch, compression, async_ingest)
 
         tasks = []
         for i in range(0, len(df), batch_size):